@@ -7,12 +7,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.StringJoiner;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -437,6 +435,180 @@ public class Newton {
 		}
 	}
 
+	/**
+	 * This class performs the Newton-Raphson iteration for a single point
+	 * without creating any objects. <br>
+	 * Coefficients of the polynomial and of its first derivative, as well as
+	 * the roots, are kept in arrays of real and imaginary parts. Polynomials
+	 * are evaluated with Horner's scheme on local variables, so each iteration
+	 * takes a multiplication and an addition per coefficient instead of the
+	 * powers, products and sums allocated by {@link ComplexPolynomial#apply}.
+	 * Instances are immutable and can be shared between threads.
+	 * 
+	 * @author Dan
+	 *
+	 */
+	public static class NewtonKernel {
+
+		/**
+		 * Real parts of the polynomial coefficients, from the lowest power.
+		 */
+		private final double[] re;
+
+		/**
+		 * Imaginary parts of the polynomial coefficients, from the lowest
+		 * power.
+		 */
+		private final double[] im;
+
+		/**
+		 * Real parts of the derivative coefficients, from the lowest power.
+		 */
+		private final double[] derivedRe;
+
+		/**
+		 * Imaginary parts of the derivative coefficients, from the lowest
+		 * power.
+		 */
+		private final double[] derivedIm;
+
+		/**
+		 * Real parts of the roots.
+		 */
+		private final double[] rootsRe;
+
+		/**
+		 * Imaginary parts of the roots.
+		 */
+		private final double[] rootsIm;
+
+		/**
+		 * Creates a new {@link NewtonKernel} for the given polynomial.
+		 * 
+		 * @param polynomial
+		 *            polynomial whose roots are searched for
+		 */
+		public NewtonKernel(ComplexRootedPolynomial polynomial) {
+			ComplexPolynomial coefficients = polynomial.toComplexPolynom();
+			ComplexPolynomial derivative = coefficients.derive();
+
+			re = new double[coefficients.factors.length];
+			im = new double[re.length];
+			for (int i = 0; i < re.length; i++) {
+				re[i] = coefficients.factors[i].real;
+				im[i] = coefficients.factors[i].img;
+			}
+
+			derivedRe = new double[derivative.factors.length];
+			derivedIm = new double[derivedRe.length];
+			for (int i = 0; i < derivedRe.length; i++) {
+				derivedRe[i] = derivative.factors[i].real;
+				derivedIm[i] = derivative.factors[i].img;
+			}
+
+			rootsRe = new double[polynomial.roots.length];
+			rootsIm = new double[rootsRe.length];
+			for (int i = 0; i < rootsRe.length; i++) {
+				rootsRe[i] = polynomial.roots[i].real;
+				rootsIm[i] = polynomial.roots[i].img;
+			}
+		}
+
+		/**
+		 * Iterates from the given point until it converges or the maximum
+		 * number of iterations is reached, and finds the root it converged to.
+		 * <br>
+		 * Iteration also stops at a point where the derivative is zero, since
+		 * the next point can't be calculated there.
+		 * 
+		 * @param cre
+		 *            real part of the point
+		 * @param cim
+		 *            imaginary part of the point
+		 * @param m
+		 *            maximum number of iterations
+		 * @param convergenceThreshold
+		 *            distance between two points below which the iteration
+		 *            has converged
+		 * @param rootThreshold
+		 *            maximum distance from the closest root
+		 * @return index of the closest root or -1 if there is no root within
+		 *         the {@code rootThreshold}
+		 */
+		public int calculateIndex(double cre, double cim, int m, double convergenceThreshold,
+				double rootThreshold) {
+			double zre = cre;
+			double zim = cim;
+			double threshold = convergenceThreshold * convergenceThreshold;
+			int last = re.length - 1;
+			int derivedLast = derivedRe.length - 1;
+
+			for (int iters = 0; iters < m; iters++) {
+				double pre = re[last];
+				double pim = im[last];
+				for (int i = last - 1; i >= 0; i--) {
+					double t = pre * zre - pim * zim + re[i];
+					pim = pre * zim + pim * zre + im[i];
+					pre = t;
+				}
+
+				double dre = derivedRe[derivedLast];
+				double dim = derivedIm[derivedLast];
+				for (int i = derivedLast - 1; i >= 0; i--) {
+					double t = dre * zre - dim * zim + derivedRe[i];
+					dim = dre * zim + dim * zre + derivedIm[i];
+					dre = t;
+				}
+
+				double denominator = dre * dre + dim * dim;
+				if (denominator == 0) {
+					break;
+				}
+				double fre = (pre * dre + pim * dim) / denominator;
+				double fim = (pim * dre - pre * dim) / denominator;
+				zre -= fre;
+				zim -= fim;
+
+				if (fre * fre + fim * fim <= threshold) {
+					break;
+				}
+			}
+
+			return indexOfClosestRoot(zre, zim, rootThreshold);
+		}
+
+		/**
+		 * Finds index of closest root for the given point that is within the
+		 * threshold.
+		 * 
+		 * @param zre
+		 *            real part of the point
+		 * @param zim
+		 *            imaginary part of the point
+		 * @param threshold
+		 *            threshold
+		 * @return index of the closest root or -1 if there is no such root
+		 *         within the {@code threshold}
+		 */
+		public int indexOfClosestRoot(double zre, double zim, double threshold) {
+			int index = -1;
+			double min = threshold * threshold;
+
+			for (int i = 0; i < rootsRe.length; i++) {
+				double dre = rootsRe[i] - zre;
+				double dim = rootsIm[i] - zim;
+				double distance = dre * dre + dim * dim;
+				if (distance < min || (index == -1 && distance == min)) {
+					min = distance;
+					index = i;
+				}
+			}
+
+			return index;
+		}
+
+	}
+
 	/**
 	 * Convergence threshold.
 	 */
@@ -453,15 +625,26 @@ public class Newton {
 	private static ComplexRootedPolynomial polynomial;
 
 	/**
-	 * Derived polynomial.
+	 * Kernel iterating the {@link #polynomial}.
 	 */
-	private static ComplexPolynomial derived;
+	private static NewtonKernel kernel;
 
 	/**
 	 * Implementation of {@link IFractalProducer} that renders fractals based on
 	 * Newton-Raphson iteration. <br>
-	 * Rendering task is split into {@code 8*numberOfAvailableProcessors} and
-	 * divided between threads. Daemon threads are used.
+	 * Image is split into square tiles by {@link CalculationJob}s which run in
+	 * a {@link ForkJoinPool}, so idle threads steal the tiles left by threads
+	 * stuck in slowly converging regions. The pool's threads are daemon
+	 * threads. <br>
+	 * In progressive mode, a coarse image in which only every
+	 * {@value #COARSE_STEP}-th pixel in each direction is calculated is
+	 * delivered first, and the full image follows. This way the viewer shows
+	 * the new region almost immediately even for large images. <br>
+	 * A request is abandoned as soon as the viewer issues a newer one, which
+	 * happens all the time while the user pans or zooms. Its jobs stop at the
+	 * next tile and nothing is delivered for it, so the newest request gets
+	 * the whole pool. A request which arrives after a newer one is not
+	 * calculated at all.
 	 * 
 	 * @author Dan
 	 *
@@ -469,79 +652,118 @@ public class Newton {
 	public static class IFractalProducerImpl implements IFractalProducer {
 
 		/**
-		 * {@link ThreadFactory} which produces daemon threads.
-		 * 
-		 * @author Dan
-		 *
-		 */
-		private static class DaemonicThreadFactory implements ThreadFactory {
-			@Override
-			public Thread newThread(Runnable r) {
-				Thread t = new Thread(r);
-				t.setDaemon(true);
-				return t;
-			}
-		}
+		 * Distance between the calculated pixels of the coarse image.
+		 */
+		private static final int COARSE_STEP = 8;
+
+		/**
+		 * Minimal number of pixels for which the coarse image is delivered;
+		 * smaller images are calculated quickly anyway.
+		 */
+		private static final int PROGRESSIVE_MIN_PIXELS = 256 * 256;
 
 		/**
 		 * Thread pool.
 		 */
-		private ExecutorService pool;
+		private ForkJoinPool pool;
 
 		/**
-		 * Creates a new {@link IFractalProducerImpl} for fractal rendering.
+		 * {@code true} if the coarse image is delivered before the full one.
+		 */
+		private boolean progressive;
+
+		/**
+		 * Number of the newest request.
+		 */
+		private AtomicLong newestRequest = new AtomicLong(Long.MIN_VALUE);
+
+		/**
+		 * Creates a new {@link IFractalProducerImpl} for fractal rendering
+		 * which delivers only the full image.
 		 */
 		public IFractalProducerImpl() {
-			pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
-					new DaemonicThreadFactory());
+			this(false);
+		}
+
+		/**
+		 * Creates a new {@link IFractalProducerImpl} for fractal rendering.
+		 * 
+		 * @param progressive
+		 *            {@code true} if a coarse image is delivered before the
+		 *            full one
+		 */
+		public IFractalProducerImpl(boolean progressive) {
+			pool = new ForkJoinPool();
+			this.progressive = progressive;
 		}
 
 		@Override
 		public void produce(double reMin, double reMax, double imMin, double imMax, int width, int height,
 				long requestNo, IFractalResultObserver observer) {
+			if (newestRequest.accumulateAndGet(requestNo, Math::max) != requestNo) {
+				return;
+			}
+			BooleanSupplier cancelled = () -> newestRequest.get() != requestNo;
 			int m = 16 * 16 * 16;
-			short[] data = new short[width * height];
-			final int numberOfJobs = 8 * Runtime.getRuntime().availableProcessors();
-			int rangeOfYPerJob = height / numberOfJobs;
-
-			List<Future<Void>> results = new ArrayList<>();
-
-			for (int i = 0; i < numberOfJobs; i++) {
-				int yMin = i * rangeOfYPerJob;
-				int yMax = (i + 1) * rangeOfYPerJob - 1;
-				if (i == numberOfJobs - 1) {
-					yMax = height - 1;
+			short order = (short) (polynomial.toComplexPolynom().order() + 1);
+
+			if (progressive && width * height >= PROGRESSIVE_MIN_PIXELS) {
+				short[] coarse = new short[width * height];
+				pool.invoke(new CalculationJob(reMin, reMax, imMin, imMax, width, height, COARSE_STEP, m, coarse,
+						cancelled));
+				if (cancelled.getAsBoolean()) {
+					return;
 				}
-
-				CalculationJob job = new CalculationJob(reMin, reMax, imMin, imMax, width, height, yMin, yMax, m, data);
-				results.add(pool.submit(job));
+				observer.acceptResult(coarse, order, requestNo);
 			}
 
-			for (Future<Void> job : results) {
-				while (true) {
-					try {
-						job.get();
-						break;
-					} catch (InterruptedException ignorable) {
-					} catch (ExecutionException e) {
-						throw new RuntimeException("Exception during fractal calculation.");
-					}
-				}
-
+			short[] data = new short[width * height];
+			pool.invoke(new CalculationJob(reMin, reMax, imMin, imMax, width, height, 1, m, data, cancelled));
+			if (cancelled.getAsBoolean()) {
+				return;
 			}
-
-			observer.acceptResult(data, (short) (polynomial.toComplexPolynom().order() + 1), requestNo);
+			observer.acceptResult(data, order, requestNo);
 		}
 
 	}
 
 	/**
-	 * This class calculates a part of the fractal image.
+	 * This class calculates a rectangular tile of the fractal image. <br>
+	 * Image is divided into square blocks of {@code step*step} pixels, and only
+	 * the upper left pixel of each block is calculated and copied to the rest
+	 * of the block, so a step larger than 1 gives a coarse image. <br>
+	 * A tile is split in half along its longer side until it has at most
+	 * {@value #MAX_TILE} blocks. Below that it is split further, down to
+	 * {@value #MIN_TILE} blocks, only while the pool has few queued tasks, so
+	 * there is always work to steal near the end of the calculation without
+	 * creating many tiny tasks while all threads are busy. <br>
+	 * Jobs check whether their request was cancelled before splitting and
+	 * before each row of blocks, and stop without finishing the tile if it
+	 * was.
 	 * 
 	 * @author Dan
 	 *
 	 */
-	public static class CalculationJob implements Callable<Void> {
+	public static class CalculationJob extends RecursiveAction {
+
+		/** */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Maximum number of blocks of a tile which is not split.
+		 */
+		private static final int MAX_TILE = 64 * 64;
+
+		/**
+		 * Minimum number of blocks of a tile which is split.
+		 */
+		private static final int MIN_TILE = 16 * 16;
+
+		/**
+		 * Number of queued tasks above which a tile smaller than
+		 * {@link #MAX_TILE} is calculated without splitting.
+		 */
+		private static final int SURPLUS_THRESHOLD = 2;
 
 		/**
 		 * Minimum value of the real part.
@@ -568,13 +790,25 @@ public class Newton {
 		 */
 		private int height;
 		/**
-		 * Minimal y-axis value that is calculated by this job.
+		 * Minimal x-axis block index that is calculated by this job.
+		 */
+		private int xMin;
+		/**
+		 * Maximal x-axis block index that is calculated by this job.
+		 */
+		private int xMax;
+		/**
+		 * Minimal y-axis block index that is calculated by this job.
 		 */
 		private int yMin;
 		/**
-		 * Maximal y-axis value that is calculated by this job.
+		 * Maximal y-axis block index that is calculated by this job.
 		 */
 		private int yMax;
+		/**
+		 * Width and height of a block in pixels.
+		 */
+		private int step;
 		/**
 		 * Maximum number of iterations.
 		 */
@@ -583,12 +817,49 @@ public class Newton {
 		 * Array with calculated results that need to be visualized.
 		 */
 		private short[] data;
+		/**
+		 * Tells whether the request this job belongs to was cancelled.
+		 */
+		private BooleanSupplier cancelled;
+
+		/**
+		 * Creates a new {@link CalculationJob} which calculates the whole
+		 * image.
+		 * 
+		 * @param reMin
+		 *            Minimum value of the real part.
+		 * @param reMax
+		 *            Maximum value of the real part.
+		 * @param imMin
+		 *            Minimum value of the imaginary part.
+		 * @param imMax
+		 *            Maximum value of the imaginary part.
+		 * @param width
+		 *            Raster width used for image visualization.
+		 * @param height
+		 *            Raster height used for image visualization.
+		 * @param step
+		 *            Width and height of a block in pixels; 1 to calculate
+		 *            every pixel.
+		 * @param m
+		 *            Maximum number of iterations.
+		 * @param data
+		 *            Array with calculated results that need to be visualized.
+		 * @param cancelled
+		 *            Tells whether the request this job belongs to was
+		 *            cancelled.
+		 */
+		public CalculationJob(double reMin, double reMax, double imMin, double imMax, int width, int height, int step,
+				int m, short[] data, BooleanSupplier cancelled) {
+			this(reMin, reMax, imMin, imMax, width, height, 0, (width - 1) / step, 0, (height - 1) / step, step, m,
+					data, cancelled);
+		}
 
 		/**
 		 * Creates a new {@link CalculationJob} with given arguments. <br>
-		 * Only a part of the image from {@code yMin} to {@code yMax} is
-		 * calculated by this job, meaning only a part od the {@code data} array
-		 * is written on.
+		 * Only a tile of the image from {@code xMin} to {@code xMax} and from
+		 * {@code yMin} to {@code yMax} is calculated by this job, meaning only
+		 * a part od the {@code data} array is written on.
 		 * 
 		 * @param reMin
 		 *            Minimum value of the real part.
@@ -602,59 +873,108 @@ public class Newton {
 		 *            Raster width used for image visualization.
 		 * @param height
 		 *            Raster height used for image visualization.
+		 * @param xMin
+		 *            Minimal x-axis block index that is calculated by this job.
+		 * @param xMax
+		 *            Maximal x-axis block index that is calculated by this job.
 		 * @param yMin
-		 *            Minimal y-axis value that is calculated by this job.
+		 *            Minimal y-axis block index that is calculated by this job.
 		 * @param yMax
-		 *            Maximal y-axis value that is calculated by this job.
+		 *            Maximal y-axis block index that is calculated by this job.
+		 * @param step
+		 *            Width and height of a block in pixels.
 		 * @param m
 		 *            Maximum number of iterations.
 		 * @param data
 		 *            Array with calculated results that need to be visualized.
+		 * @param cancelled
+		 *            Tells whether the request this job belongs to was
+		 *            cancelled.
 		 */
-		public CalculationJob(double reMin, double reMax, double imMin, double imMax, int width, int height, int yMin,
-				int yMax, int m, short[] data) {
+		public CalculationJob(double reMin, double reMax, double imMin, double imMax, int width, int height, int xMin,
+				int xMax, int yMin, int yMax, int step, int m, short[] data, BooleanSupplier cancelled) {
 			this.reMin = reMin;
 			this.reMax = reMax;
 			this.imMin = imMin;
 			this.imMax = imMax;
 			this.width = width;
 			this.height = height;
+			this.xMin = xMin;
+			this.xMax = xMax;
 			this.yMin = yMin;
 			this.yMax = yMax;
+			this.step = step;
 			this.m = m;
 			this.data = data;
+			this.cancelled = cancelled;
 		}
 
 		@Override
-		public Void call() throws Exception {
-			int offset = yMin * width;
+		protected void compute() {
+			if (cancelled.getAsBoolean()) {
+				return;
+			}
+			int columns = xMax - xMin + 1;
+			int rows = yMax - yMin + 1;
+			int blocks = columns * rows;
+			if (blocks <= MIN_TILE || (blocks <= MAX_TILE && getSurplusQueuedTaskCount() > SURPLUS_THRESHOLD)) {
+				computeDirect();
+			} else if (columns >= rows) {
+				int half = xMin + (xMax - xMin) / 2;
+				invokeAll(tile(xMin, half, yMin, yMax), tile(half + 1, xMax, yMin, yMax));
+			} else {
+				int half = yMin + (yMax - yMin) / 2;
+				invokeAll(tile(xMin, xMax, yMin, half), tile(xMin, xMax, half + 1, yMax));
+			}
+		}
+
+		/**
+		 * Creates a job for a part of this job's tile.
+		 * 
+		 * @param xMin
+		 *            Minimal x-axis block index of the part.
+		 * @param xMax
+		 *            Maximal x-axis block index of the part.
+		 * @param yMin
+		 *            Minimal y-axis block index of the part.
+		 * @param yMax
+		 *            Maximal y-axis block index of the part.
+		 * @return job for the part
+		 */
+		private CalculationJob tile(int xMin, int xMax, int yMin, int yMax) {
+			return new CalculationJob(reMin, reMax, imMin, imMax, width, height, xMin, xMax, yMin, yMax, step, m,
+					data, cancelled);
+		}
 
-			for (int y = yMin; y <= yMax; y++) {
-				for (int x = 0; x < width; x++) {
+		/**
+		 * Used for this {@code CalculationJob's} computation. <br>
+		 * Computes blocks from {@link #xMin} to {@link #xMax} and from
+		 * {@link #yMin} to {@link #yMax}, unless the request is cancelled.
+		 */
+		private void computeDirect() {
+			for (int by = yMin; by <= yMax; by++) {
+				if (cancelled.getAsBoolean()) {
+					return;
+				}
+				int y = by * step;
+				int yEnd = Math.min(y + step, height);
+				double cim = (height - 1.0 - y) / (height - 1) * (imMax - imMin) + imMin;
+
+				for (int bx = xMin; bx <= xMax; bx++) {
+					int x = bx * step;
+					int xEnd = Math.min(x + step, width);
 					double cre = x / (width - 1.0) * (reMax - reMin) + reMin;
-					double cim = (height - 1.0 - y) / (height - 1) * (imMax - imMin) + imMin;
-					Complex c = new Complex(cre, cim);
-					Complex zn = c;
-					Complex zn1;
-					double module;
-					int iters = 0;
-
-					do {
-						Complex numerator = polynomial.apply(zn);
-						Complex denominator = derived.apply(zn);
-						Complex fraction = numerator.divide(denominator);
-						zn1 = zn.sub(fraction);
-						module = zn1.sub(zn).module();
-						zn = zn1;
-						iters++;
-					} while (iters < m && module > CONVERGENCE_THRESHOLD);
-
-					int index = polynomial.indexOfClosestRootFor(zn1, ROOT_THRESHOLD);
-					data[offset++] = (short) (index + 1);
+					int index = kernel.calculateIndex(cre, cim, m, CONVERGENCE_THRESHOLD, ROOT_THRESHOLD);
+					short value = (short) (index + 1);
+
+					for (int py = y; py < yEnd; py++) {
+						int offset = py * width;
+						for (int px = x; px < xEnd; px++) {
+							data[offset + px] = value;
+						}
+					}
 				}
 			}
-
-			return null;
 		}
 
 	}
@@ -699,10 +1019,10 @@ public class Newton {
 		System.out.println("Image of fractal will appear shortly. Thank you.");
 
 		polynomial = new ComplexRootedPolynomial(roots.toArray(new Complex[roots.size()]));
-		derived = polynomial.toComplexPolynom().derive();
+		kernel = new NewtonKernel(polynomial);
 
 		try {
-			FractalViewer.show(new IFractalProducerImpl());
+			FractalViewer.show(new IFractalProducerImpl(true));
 		} catch (RuntimeException e) {
 			System.err.println("An exception occured: " + e.getMessage() + "\nExiting.");
 		}
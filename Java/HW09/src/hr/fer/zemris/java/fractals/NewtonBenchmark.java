@@ -0,0 +1,185 @@
+package hr.fer.zemris.java.fractals;
+
+import hr.fer.zemris.java.fractals.Newton.Complex;
+import hr.fer.zemris.java.fractals.Newton.ComplexPolynomial;
+import hr.fer.zemris.java.fractals.Newton.ComplexRootedPolynomial;
+import hr.fer.zemris.java.fractals.Newton.NewtonKernel;
+
+/**
+ * Compares the {@link NewtonKernel} with the iteration over {@link Complex}
+ * objects which it replaced. <br>
+ * Both calculate the same image on a single thread, first several times to
+ * warm up the JIT compiler and then several measured times. The average time
+ * of an image and the number of pixels for which the two disagree are
+ * printed. <br>
+ * Arguments are optional: the size of the square image, default 512, and the
+ * roots of the polynomial in the form accepted by {@link Newton#parse},
+ * default {@code 1}, {@code -1}, {@code i} and {@code -i}.
+ * 
+ * @author Dan
+ *
+ */
+public class NewtonBenchmark {
+
+	/**
+	 * Maximum number of iterations, the same as in the renderer.
+	 */
+	private static final int M = 16 * 16 * 16;
+
+	/**
+	 * Convergence threshold, the same as in the renderer.
+	 */
+	private static final double CONVERGENCE_THRESHOLD = 1E-3;
+
+	/**
+	 * Root threshold, the same as in the renderer.
+	 */
+	private static final double ROOT_THRESHOLD = 2E-3;
+
+	/**
+	 * Number of images calculated before the measurement.
+	 */
+	private static final int WARMUP = 5;
+
+	/**
+	 * Number of measured images.
+	 */
+	private static final int ROUNDS = 10;
+
+	/**
+	 * Program entry point. Runs the benchmark.
+	 * 
+	 * @param args
+	 *            size of the image followed by the roots; all optional
+	 */
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+		Complex[] roots;
+		if (args.length > 1) {
+			roots = new Complex[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				roots[i - 1] = Newton.parse(args[i]);
+			}
+		} else {
+			roots = new Complex[] { Complex.ONE, Complex.ONE_NEG, Complex.IM, Complex.IM_NEG };
+		}
+
+		ComplexRootedPolynomial polynomial = new ComplexRootedPolynomial(roots);
+		ComplexPolynomial derived = polynomial.toComplexPolynom().derive();
+		NewtonKernel kernel = new NewtonKernel(polynomial);
+
+		short[] complexData = new short[size * size];
+		short[] kernelData = new short[size * size];
+		for (int i = 0; i < WARMUP; i++) {
+			renderComplex(polynomial, derived, size, complexData);
+			renderKernel(kernel, size, kernelData);
+		}
+
+		long complexTime = 0;
+		long kernelTime = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			renderComplex(polynomial, derived, size, complexData);
+			complexTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			renderKernel(kernel, size, kernelData);
+			kernelTime += System.nanoTime() - start;
+		}
+
+		int differences = 0;
+		for (int i = 0; i < complexData.length; i++) {
+			if (complexData[i] != kernelData[i]) {
+				differences++;
+			}
+		}
+
+		System.out.printf("Polynomial %s, %dx%d image, %d rounds after %d warm up rounds%n", polynomial, size, size,
+				ROUNDS, WARMUP);
+		System.out.printf("Complex: %10.2f ms per image%n", complexTime / 1e6 / ROUNDS);
+		System.out.printf("Kernel:  %10.2f ms per image (%.1fx)%n", kernelTime / 1e6 / ROUNDS,
+				(double) complexTime / kernelTime);
+		System.out.printf("Pixels with a different root: %d%n", differences);
+	}
+
+	/**
+	 * Calculates the image of the area from -2-2i to 2+2i with the
+	 * {@link Complex} based iteration.
+	 * 
+	 * @param polynomial
+	 *            polynomial whose roots are searched for
+	 * @param derived
+	 *            first derivative of the polynomial
+	 * @param size
+	 *            width and height of the image
+	 * @param data
+	 *            array for the calculated root indexes
+	 */
+	private static void renderComplex(ComplexRootedPolynomial polynomial, ComplexPolynomial derived, int size,
+			short[] data) {
+		int offset = 0;
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				Complex zn = new Complex(re(x, size), im(y, size));
+				Complex zn1;
+				double module;
+				int iters = 0;
+
+				do {
+					Complex fraction = polynomial.apply(zn).divide(derived.apply(zn));
+					zn1 = zn.sub(fraction);
+					module = fraction.module();
+					zn = zn1;
+					iters++;
+				} while (iters < M && module > CONVERGENCE_THRESHOLD);
+
+				data[offset++] = (short) (polynomial.indexOfClosestRootFor(zn1, ROOT_THRESHOLD) + 1);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the image of the area from -2-2i to 2+2i with the
+	 * {@link NewtonKernel}.
+	 * 
+	 * @param kernel
+	 *            kernel for the polynomial
+	 * @param size
+	 *            width and height of the image
+	 * @param data
+	 *            array for the calculated root indexes
+	 */
+	private static void renderKernel(NewtonKernel kernel, int size, short[] data) {
+		int offset = 0;
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				double cre = re(x, size);
+				double cim = im(y, size);
+				int index = kernel.calculateIndex(cre, cim, M, CONVERGENCE_THRESHOLD, ROOT_THRESHOLD);
+				data[offset++] = (short) (index + 1);
+			}
+		}
+	}
+
+	/**
+	 * @param x
+	 *            x-axis position of the pixel
+	 * @param size
+	 *            width of the image
+	 * @return real part of the point at the pixel
+	 */
+	private static double re(int x, int size) {
+		return x / (size - 1.0) * 4 - 2;
+	}
+
+	/**
+	 * @param y
+	 *            y-axis position of the pixel
+	 * @param size
+	 *            height of the image
+	 * @return imaginary part of the point at the pixel
+	 */
+	private static double im(int y, int size) {
+		return (size - 1.0 - y) / (size - 1) * 4 - 2;
+	}
+}
@@ -0,0 +1,408 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import hr.fer.zemris.java.raytracer.model.GraphicalObject;
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+import hr.fer.zemris.java.raytracer.model.RayIntersection;
+import hr.fer.zemris.java.raytracer.model.Sphere;
+
+/**
+ * Bounding volume hierarchy over the {@link GraphicalObject}s of a scene,
+ * which finds intersections of a ray while checking only the objects whose
+ * axis aligned bounding boxes the ray passes through. <br>
+ * Hierarchy is built once, by splitting the objects in half along the longest
+ * axis of their centers until at most {@code leafSize} objects are left in a
+ * node. Nodes are kept in flat arrays in depth first order, so the first
+ * child of a node always follows it. <br>
+ * Bounds are known only for {@link Sphere}s. Other objects are kept aside
+ * and checked for every ray, as they were before the hierarchy existed. <br>
+ * Hierarchy doesn't change after it is built and can be shared between
+ * threads.
+ * 
+ * @author Dan
+ *
+ */
+public class BoundingVolumeHierarchy {
+
+	/**
+	 * Default maximum number of objects in a leaf.
+	 */
+	public static final int DEFAULT_LEAF_SIZE = 4;
+
+	/**
+	 * Number of values describing a box: minimal and maximal x, y and z.
+	 */
+	private static final int BOX = 6;
+
+	/**
+	 * Objects with known bounds, ordered so that each leaf refers to a range.
+	 */
+	private GraphicalObject[] objects;
+	/**
+	 * Objects without known bounds, checked for every ray.
+	 */
+	private GraphicalObject[] unbounded;
+	/**
+	 * Bounding boxes of the nodes, {@value #BOX} values per node.
+	 */
+	private double[] bounds;
+	/**
+	 * Index of the first object of a leaf, or of the second child of an
+	 * inner node.
+	 */
+	private int[] first;
+	/**
+	 * Number of objects of a leaf, or 0 for an inner node.
+	 */
+	private int[] count;
+	/**
+	 * Axis along which an inner node is split.
+	 */
+	private byte[] axis;
+	/**
+	 * Number of nodes.
+	 */
+	private int nodes;
+	/**
+	 * Largest number of nodes on a path from the root to a leaf.
+	 */
+	private int depth;
+
+	/**
+	 * Creates a new {@link BoundingVolumeHierarchy} over given objects with at
+	 * most {@value #DEFAULT_LEAF_SIZE} objects in a leaf.
+	 * 
+	 * @param objects
+	 *            objects of the scene
+	 */
+	public BoundingVolumeHierarchy(List<GraphicalObject> objects) {
+		this(objects, DEFAULT_LEAF_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link BoundingVolumeHierarchy} over given objects.
+	 * 
+	 * @param objects
+	 *            objects of the scene
+	 * @param leafSize
+	 *            maximum number of objects in a leaf
+	 * @throws IllegalArgumentException
+	 *             if {@code leafSize} is not positive
+	 */
+	public BoundingVolumeHierarchy(List<GraphicalObject> objects, int leafSize) {
+		if (leafSize <= 0) {
+			throw new IllegalArgumentException("Leaf size has to be positive. Given value: " + leafSize);
+		}
+
+		List<GraphicalObject> bounded = new ArrayList<>();
+		List<GraphicalObject> unbounded = new ArrayList<>();
+		for (GraphicalObject object : objects) {
+			if (object instanceof Sphere) {
+				bounded.add(object);
+			} else {
+				unbounded.add(object);
+			}
+		}
+		this.objects = bounded.toArray(new GraphicalObject[bounded.size()]);
+		this.unbounded = unbounded.toArray(new GraphicalObject[unbounded.size()]);
+
+		int n = this.objects.length;
+		int capacity = Math.max(1, 2 * n);
+		bounds = new double[capacity * BOX];
+		first = new int[capacity];
+		count = new int[capacity];
+		axis = new byte[capacity];
+		if (n > 0) {
+			build(0, n, leafSize, 1);
+		}
+	}
+
+	/**
+	 * Builds the subtree over objects from {@code start} to {@code end} and
+	 * stores it from the next free node on.
+	 * 
+	 * @param start
+	 *            index of the first object (inclusive)
+	 * @param end
+	 *            index after the last object (exclusive)
+	 * @param leafSize
+	 *            maximum number of objects in a leaf
+	 * @param level
+	 *            number of nodes on the path from the root to this node
+	 */
+	private void build(int start, int end, int leafSize, int level) {
+		int node = nodes++;
+		depth = Math.max(depth, level);
+
+		double[] centers = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		int offset = node * BOX;
+		for (int i = 0; i < 3; i++) {
+			bounds[offset + i] = Double.POSITIVE_INFINITY;
+			bounds[offset + 3 + i] = Double.NEGATIVE_INFINITY;
+		}
+		for (int i = start; i < end; i++) {
+			Sphere sphere = (Sphere) objects[i];
+			for (int j = 0; j < 3; j++) {
+				double center = coordinate(sphere.getCenter(), j);
+				bounds[offset + j] = Math.min(bounds[offset + j], center - sphere.getRadius());
+				bounds[offset + 3 + j] = Math.max(bounds[offset + 3 + j], center + sphere.getRadius());
+				centers[j] = Math.min(centers[j], center);
+				centers[3 + j] = Math.max(centers[3 + j], center);
+			}
+		}
+
+		if (end - start <= leafSize) {
+			first[node] = start;
+			count[node] = end - start;
+			return;
+		}
+
+		int longest = 0;
+		for (int j = 1; j < 3; j++) {
+			if (centers[3 + j] - centers[j] > centers[3 + longest] - centers[longest]) {
+				longest = j;
+			}
+		}
+		int splitAxis = longest;
+		Arrays.sort(objects, start, end,
+				Comparator.comparingDouble(o -> coordinate(((Sphere) o).getCenter(), splitAxis)));
+
+		int middle = start + (end - start) / 2;
+		axis[node] = (byte) splitAxis;
+		build(start, middle, leafSize, level + 1);
+		first[node] = nodes;
+		build(middle, end, leafSize, level + 1);
+	}
+
+	/**
+	 * @return objects with known bounds, in the order referred to by leaves
+	 */
+	GraphicalObject[] getObjects() {
+		return objects;
+	}
+
+	/**
+	 * @return {@code true} if there are objects without known bounds
+	 */
+	boolean hasUnbounded() {
+		return unbounded.length > 0;
+	}
+
+	/**
+	 * @return bounding boxes of the nodes, {@value #BOX} values per node
+	 */
+	double[] getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * @return indexes of the first objects of leaves, or of the second
+	 *         children of inner nodes
+	 */
+	int[] getFirst() {
+		return first;
+	}
+
+	/**
+	 * @return numbers of objects of leaves, or 0 for inner nodes
+	 */
+	int[] getCount() {
+		return count;
+	}
+
+	/**
+	 * @return axes along which inner nodes are split
+	 */
+	byte[] getAxis() {
+		return axis;
+	}
+
+	/**
+	 * @return number of nodes
+	 */
+	int getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return largest number of nodes on a path from the root to a leaf
+	 */
+	int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @param point
+	 *            point
+	 * @param axis
+	 *            0 for x, 1 for y or 2 for z
+	 * @return coordinate of the given point on the given axis
+	 */
+	private static double coordinate(Point3D point, int axis) {
+		return axis == 0 ? point.x : axis == 1 ? point.y : point.z;
+	}
+
+	/**
+	 * @param point
+	 *            point
+	 * @return array with x, y and z coordinates of the given point
+	 */
+	private static double[] coordinates(Point3D point) {
+		return new double[] { point.x, point.y, point.z };
+	}
+
+	/**
+	 * Finds the intersection of the given ray and any object which is the
+	 * closest to the start of the ray.
+	 * 
+	 * @param ray
+	 *            ray to check
+	 * @return closest {@link RayIntersection} or {@code null} if none is found
+	 */
+	public RayIntersection findClosestIntersection(Ray ray) {
+		RayIntersection closest = null;
+		double closestDistance = Double.POSITIVE_INFINITY;
+
+		for (GraphicalObject object : unbounded) {
+			RayIntersection intersection = object.findClosestRayIntersection(ray);
+			if (intersection != null && intersection.getDistance() < closestDistance) {
+				closest = intersection;
+				closestDistance = intersection.getDistance();
+			}
+		}
+		if (nodes == 0) {
+			return closest;
+		}
+
+		double norm = ray.direction.norm();
+		double[] start = coordinates(ray.start);
+		double[] inverse = { 1 / ray.direction.x, 1 / ray.direction.y, 1 / ray.direction.z };
+		int[] stack = new int[depth + 1];
+		int top = 0;
+		stack[top++] = 0;
+
+		while (top > 0) {
+			int node = stack[--top];
+			if (!hitsBox(node, start, inverse, closestDistance / norm)) {
+				continue;
+			}
+
+			if (count[node] > 0) {
+				for (int i = first[node], end = first[node] + count[node]; i < end; i++) {
+					RayIntersection intersection = objects[i].findClosestRayIntersection(ray);
+					if (intersection != null && intersection.getDistance() < closestDistance) {
+						closest = intersection;
+						closestDistance = intersection.getDistance();
+					}
+				}
+			} else if (inverse[axis[node]] >= 0) {
+				stack[top++] = first[node];
+				stack[top++] = node + 1;
+			} else {
+				stack[top++] = node + 1;
+				stack[top++] = first[node];
+			}
+		}
+
+		return closest;
+	}
+
+	/**
+	 * Checks if the given ray intersects any object closer than
+	 * {@code maxDistance} to its start. Search stops at the first such
+	 * intersection, so this is faster than
+	 * {@link #findClosestIntersection(Ray)} for shadow rays.
+	 * 
+	 * @param ray
+	 *            ray to check
+	 * @param maxDistance
+	 *            distance from the start of the ray
+	 * @return {@code true} if there is an intersection closer than
+	 *         {@code maxDistance}
+	 */
+	public boolean isOccluded(Ray ray, double maxDistance) {
+		for (GraphicalObject object : unbounded) {
+			RayIntersection intersection = object.findClosestRayIntersection(ray);
+			if (intersection != null && intersection.getDistance() < maxDistance) {
+				return true;
+			}
+		}
+		if (nodes == 0) {
+			return false;
+		}
+
+		double limit = maxDistance / ray.direction.norm();
+		double[] start = coordinates(ray.start);
+		double[] inverse = { 1 / ray.direction.x, 1 / ray.direction.y, 1 / ray.direction.z };
+		int[] stack = new int[depth + 1];
+		int top = 0;
+		stack[top++] = 0;
+
+		while (top > 0) {
+			int node = stack[--top];
+			if (!hitsBox(node, start, inverse, limit)) {
+				continue;
+			}
+
+			if (count[node] > 0) {
+				for (int i = first[node], end = first[node] + count[node]; i < end; i++) {
+					RayIntersection intersection = objects[i].findClosestRayIntersection(ray);
+					if (intersection != null && intersection.getDistance() < maxDistance) {
+						return true;
+					}
+				}
+			} else {
+				stack[top++] = first[node];
+				stack[top++] = node + 1;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks if the ray passes through the bounding box of the given node
+	 * before it travels {@code limit} lengths of its direction vector. <br>
+	 * If the ray lies in a plane of the box, the result may be {@code true}
+	 * even if it misses the box, which only costs a few extra checks.
+	 * 
+	 * @param node
+	 *            index of the node
+	 * @param start
+	 *            coordinates of the start of the ray
+	 * @param inverse
+	 *            inverse coordinates of the direction of the ray
+	 * @param limit
+	 *            maximum multiple of the direction vector
+	 * @return {@code true} if the ray passes through the box
+	 */
+	private boolean hitsBox(int node, double[] start, double[] inverse, double limit) {
+		int offset = node * BOX;
+		double tMin = 0;
+		double tMax = limit;
+
+		for (int i = 0; i < 3; i++) {
+			double t1 = (bounds[offset + i] - start[i]) * inverse[i];
+			double t2 = (bounds[offset + 3 + i] - start[i]) * inverse[i];
+			if (t1 > t2) {
+				double t = t1;
+				t1 = t2;
+				t2 = t;
+			}
+			tMin = Math.max(tMin, t1);
+			tMax = Math.min(tMax, t2);
+			if (tMin > tMax) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+}
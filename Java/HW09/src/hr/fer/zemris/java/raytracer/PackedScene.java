@@ -0,0 +1,217 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.List;
+
+import hr.fer.zemris.java.raytracer.model.GraphicalObject;
+import hr.fer.zemris.java.raytracer.model.LightSource;
+import hr.fer.zemris.java.raytracer.model.Scene;
+import hr.fer.zemris.java.raytracer.model.Sphere;
+
+/**
+ * {@link Scene} of spheres packed into arrays of primitive values, one array
+ * per property, for {@link PackedTracer}. <br>
+ * Spheres are stored in the order of the leaves of a
+ * {@link BoundingVolumeHierarchy}, whose nodes are shared, so a leaf refers
+ * to a range of indexes in these arrays. Only scenes made of {@link Sphere}s
+ * can be packed, which is checked by {@link #isSupported(Scene)}. <br>
+ * Packed scene doesn't change and can be shared between threads and frames.
+ * 
+ * @author Dan
+ *
+ */
+public class PackedScene {
+
+	/**
+	 * X coordinates of the sphere centers.
+	 */
+	final double[] cx;
+	/**
+	 * Y coordinates of the sphere centers.
+	 */
+	final double[] cy;
+	/**
+	 * Z coordinates of the sphere centers.
+	 */
+	final double[] cz;
+	/**
+	 * Radii of the spheres.
+	 */
+	final double[] radius;
+	/**
+	 * Coefficients for diffuse component for red color.
+	 */
+	final double[] kdr;
+	/**
+	 * Coefficients for diffuse component for green color.
+	 */
+	final double[] kdg;
+	/**
+	 * Coefficients for diffuse component for blue color.
+	 */
+	final double[] kdb;
+	/**
+	 * Coefficients for reflective component for red color.
+	 */
+	final double[] krr;
+	/**
+	 * Coefficients for reflective component for green color.
+	 */
+	final double[] krg;
+	/**
+	 * Coefficients for reflective component for blue color.
+	 */
+	final double[] krb;
+	/**
+	 * Coefficients {@code n} for reflective component.
+	 */
+	final double[] krn;
+	/**
+	 * X coordinates of the light sources.
+	 */
+	final double[] lx;
+	/**
+	 * Y coordinates of the light sources.
+	 */
+	final double[] ly;
+	/**
+	 * Z coordinates of the light sources.
+	 */
+	final double[] lz;
+	/**
+	 * Red intensities of the light sources.
+	 */
+	final int[] lr;
+	/**
+	 * Green intensities of the light sources.
+	 */
+	final int[] lg;
+	/**
+	 * Blue intensities of the light sources.
+	 */
+	final int[] lb;
+	/**
+	 * Bounding boxes of the hierarchy nodes.
+	 */
+	final double[] bounds;
+	/**
+	 * Index of the first sphere of a leaf, or of the second child of an inner
+	 * node.
+	 */
+	final int[] first;
+	/**
+	 * Number of spheres of a leaf, or 0 for an inner node.
+	 */
+	final int[] count;
+	/**
+	 * Axis along which an inner node is split.
+	 */
+	final byte[] axis;
+	/**
+	 * Number of hierarchy nodes.
+	 */
+	final int nodes;
+	/**
+	 * Largest number of nodes on a path from the root to a leaf.
+	 */
+	final int depth;
+
+	/**
+	 * Creates a new {@link PackedScene} from the given scene, building a new
+	 * {@link BoundingVolumeHierarchy} over its spheres.
+	 * 
+	 * @param scene
+	 *            scene made of spheres
+	 * @throws IllegalArgumentException
+	 *             if the scene contains objects other than spheres
+	 */
+	public PackedScene(Scene scene) {
+		this(scene, new BoundingVolumeHierarchy(scene.getObjects()));
+	}
+
+	/**
+	 * Creates a new {@link PackedScene} from the given scene and hierarchy
+	 * over its objects.
+	 * 
+	 * @param scene
+	 *            scene made of spheres
+	 * @param hierarchy
+	 *            hierarchy over the objects of the {@code scene}
+	 * @throws IllegalArgumentException
+	 *             if the scene contains objects other than spheres
+	 */
+	public PackedScene(Scene scene, BoundingVolumeHierarchy hierarchy) {
+		if (!isSupported(scene) || hierarchy.hasUnbounded()) {
+			throw new IllegalArgumentException("Only scenes made of spheres can be packed.");
+		}
+
+		GraphicalObject[] objects = hierarchy.getObjects();
+		int n = objects.length;
+		cx = new double[n];
+		cy = new double[n];
+		cz = new double[n];
+		radius = new double[n];
+		kdr = new double[n];
+		kdg = new double[n];
+		kdb = new double[n];
+		krr = new double[n];
+		krg = new double[n];
+		krb = new double[n];
+		krn = new double[n];
+		for (int i = 0; i < n; i++) {
+			Sphere sphere = (Sphere) objects[i];
+			cx[i] = sphere.getCenter().x;
+			cy[i] = sphere.getCenter().y;
+			cz[i] = sphere.getCenter().z;
+			radius[i] = sphere.getRadius();
+			kdr[i] = sphere.getKdr();
+			kdg[i] = sphere.getKdg();
+			kdb[i] = sphere.getKdb();
+			krr[i] = sphere.getKrr();
+			krg[i] = sphere.getKrg();
+			krb[i] = sphere.getKrb();
+			krn[i] = sphere.getKrn();
+		}
+
+		List<LightSource> lights = scene.getLights();
+		int m = lights.size();
+		lx = new double[m];
+		ly = new double[m];
+		lz = new double[m];
+		lr = new int[m];
+		lg = new int[m];
+		lb = new int[m];
+		for (int i = 0; i < m; i++) {
+			LightSource light = lights.get(i);
+			lx[i] = light.getPoint().x;
+			ly[i] = light.getPoint().y;
+			lz[i] = light.getPoint().z;
+			lr[i] = light.getR();
+			lg[i] = light.getG();
+			lb[i] = light.getB();
+		}
+
+		bounds = hierarchy.getBounds();
+		first = hierarchy.getFirst();
+		count = hierarchy.getCount();
+		axis = hierarchy.getAxis();
+		nodes = hierarchy.getNodes();
+		depth = hierarchy.getDepth();
+	}
+
+	/**
+	 * Checks if the given scene can be packed.
+	 * 
+	 * @param scene
+	 *            scene to check
+	 * @return {@code true} if all objects of the scene are spheres
+	 */
+	public static boolean isSupported(Scene scene) {
+		for (GraphicalObject object : scene.getObjects()) {
+			if (!(object instanceof Sphere)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,598 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Objects;
+
+import hr.fer.zemris.java.raytracer.model.Point3D;
+
+/**
+ * {@link PixelTracer} which renders a {@link PackedScene} with the same Phong
+ * reflection model as {@link Tracer}, but only with primitive values. <br>
+ * Rays, intersection points and normals are kept in local variables, spheres
+ * are intersected straight from the arrays of the packed scene and its
+ * hierarchy is walked with a stack which each thread allocates once, so no
+ * object is created for a pixel. <br>
+ * Reflections are followed the same way as in {@link Tracer}, in a loop
+ * which keeps only the current ray in local variables and walks the
+ * hierarchy for each reflection with the same stack, so their depth doesn't
+ * add any allocation either. <br>
+ * Results match {@link Tracer} except for rounding of the last bits, which
+ * can change a component by one on a few pixels.
+ * 
+ * @author Dan
+ *
+ */
+public class PackedTracer implements PixelTracer {
+
+	/**
+	 * Ambient component that is added to each seen pixel's RGB values.
+	 */
+	private static final int AMBIENT_COMPONENT = 15;
+
+	/**
+	 * Scene packed into arrays.
+	 */
+	private PackedScene scene;
+	/**
+	 * Stack for walking the hierarchy, one for each thread.
+	 */
+	private ThreadLocal<int[]> stacks;
+	/**
+	 * X coordinate of the point of the observer.
+	 */
+	private double eyeX;
+	/**
+	 * Y coordinate of the point of the observer.
+	 */
+	private double eyeY;
+	/**
+	 * Z coordinate of the point of the observer.
+	 */
+	private double eyeZ;
+	/**
+	 * X coordinate of the normalized vector defining x-axis.
+	 */
+	private double xAxisX;
+	/**
+	 * Y coordinate of the normalized vector defining x-axis.
+	 */
+	private double xAxisY;
+	/**
+	 * Z coordinate of the normalized vector defining x-axis.
+	 */
+	private double xAxisZ;
+	/**
+	 * X coordinate of the normalized vector defining y-axis.
+	 */
+	private double yAxisX;
+	/**
+	 * Y coordinate of the normalized vector defining y-axis.
+	 */
+	private double yAxisY;
+	/**
+	 * Z coordinate of the normalized vector defining y-axis.
+	 */
+	private double yAxisZ;
+	/**
+	 * X coordinate of the upper left corner of the screen.
+	 */
+	private double cornerX;
+	/**
+	 * Y coordinate of the upper left corner of the screen.
+	 */
+	private double cornerY;
+	/**
+	 * Z coordinate of the upper left corner of the screen.
+	 */
+	private double cornerZ;
+	/**
+	 * Horizontal distance between two pixels.
+	 */
+	private double stepX;
+	/**
+	 * Vertical distance between two pixels.
+	 */
+	private double stepY;
+	/**
+	 * Largest number of reflections of a ray; 0 if rays are not reflected.
+	 */
+	private int maxDepth;
+	/**
+	 * Smallest weight of a reflected ray which is still traced.
+	 */
+	private double cutoff;
+
+	/**
+	 * Creates a new {@link PackedTracer} with given arguments.
+	 * 
+	 * @param scene
+	 *            Scene packed into arrays.
+	 * @param eye
+	 *            Point of the observer.
+	 * @param view
+	 *            Position that is observed; center of the screen.
+	 * @param viewUp
+	 *            Specification of view-up vector which is used to determine
+	 *            y-axis for the screen.
+	 * @param horizontal
+	 *            Horizontal width of the observed space.
+	 * @param vertical
+	 *            Vertical height of the observed space.
+	 * @param width
+	 *            Number of pixels per screen row.
+	 * @param height
+	 *            Number of pixels per screen column.
+	 * @throws IllegalArgumentException
+	 *             if the {@code view-up} vector is collinear with the
+	 *             {@code eye-view} vector
+	 */
+	public PackedTracer(PackedScene scene, Point3D eye, Point3D view, Point3D viewUp, double horizontal,
+			double vertical, int width, int height) {
+		this(scene, eye, view, viewUp, horizontal, vertical, width, height, 0, 1);
+	}
+
+	/**
+	 * Creates a new {@link PackedTracer} with given arguments which reflects
+	 * rays from the surfaces they hit, the same way as {@link Tracer}.
+	 * 
+	 * @param scene
+	 *            Scene packed into arrays.
+	 * @param eye
+	 *            Point of the observer.
+	 * @param view
+	 *            Position that is observed; center of the screen.
+	 * @param viewUp
+	 *            Specification of view-up vector which is used to determine
+	 *            y-axis for the screen.
+	 * @param horizontal
+	 *            Horizontal width of the observed space.
+	 * @param vertical
+	 *            Vertical height of the observed space.
+	 * @param width
+	 *            Number of pixels per screen row.
+	 * @param height
+	 *            Number of pixels per screen column.
+	 * @param maxDepth
+	 *            Largest number of reflections of a ray; 0 if rays are not
+	 *            reflected.
+	 * @param cutoff
+	 *            Smallest weight of a reflected ray which is still traced.
+	 * @throws IllegalArgumentException
+	 *             if the {@code view-up} vector is collinear with the
+	 *             {@code eye-view} vector, or if {@code maxDepth} is negative
+	 */
+	public PackedTracer(PackedScene scene, Point3D eye, Point3D view, Point3D viewUp, double horizontal,
+			double vertical, int width, int height, int maxDepth, double cutoff) {
+		if (maxDepth < 0) {
+			throw new IllegalArgumentException("Depth of reflections can't be negative. Given value: " + maxDepth);
+		}
+		this.maxDepth = maxDepth;
+		this.cutoff = cutoff;
+		this.scene = Objects.requireNonNull(scene);
+		int stackSize = scene.depth + 1;
+		stacks = ThreadLocal.withInitial(() -> new int[stackSize]);
+
+		Point3D og = view.sub(eye).normalize();
+		if (og.scalarProduct(viewUp) == og.norm() * viewUp.norm()) {
+			throw new IllegalArgumentException("The view-up vector is collinear with O-G vector.");
+		}
+
+		Point3D viewUpNorm = viewUp.normalize();
+		Point3D yAxis = viewUpNorm.sub(og.scalarMultiply(og.scalarProduct(viewUpNorm))).normalize();
+		Point3D xAxis = og.vectorProduct(yAxis).normalize();
+		Point3D corner = view.sub(xAxis.scalarMultiply(horizontal / 2)).add(yAxis.scalarMultiply(vertical / 2));
+
+		eyeX = eye.x;
+		eyeY = eye.y;
+		eyeZ = eye.z;
+		xAxisX = xAxis.x;
+		xAxisY = xAxis.y;
+		xAxisZ = xAxis.z;
+		yAxisX = yAxis.x;
+		yAxisY = yAxis.y;
+		yAxisZ = yAxis.z;
+		cornerX = corner.x;
+		cornerY = corner.y;
+		cornerZ = corner.z;
+		stepX = horizontal / (width - 1);
+		stepY = vertical / (height - 1);
+	}
+
+	@Override
+	public void calculateRGB(double x, double y, short[] rgb) {
+		rgb[0] = 0;
+		rgb[1] = 0;
+		rgb[2] = 0;
+
+		double u = x * stepX;
+		double v = y * stepY;
+		double dx = cornerX + xAxisX * u - yAxisX * v - eyeX;
+		double dy = cornerY + xAxisY * u - yAxisY * v - eyeY;
+		double dz = cornerZ + xAxisZ * u - yAxisZ * v - eyeZ;
+		double norm = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		dx /= norm;
+		dy /= norm;
+		dz /= norm;
+
+		int[] stack = stacks.get();
+		PackedScene sc = scene;
+		double sx = eyeX;
+		double sy = eyeY;
+		double sz = eyeZ;
+		double weightR = 1;
+		double weightG = 1;
+		double weightB = 1;
+		for (int depth = 0;; depth++) {
+			int s = findClosest(sx, sy, sz, dx, dy, dz, stack);
+			if (s < 0) {
+				return;
+			}
+
+			double lambda = intersect(s, sx, sy, sz, dx, dy, dz);
+			double px = sx + dx * lambda;
+			double py = sy + dy * lambda;
+			double pz = sz + dz * lambda;
+
+			double nx = px - sc.cx[s];
+			double ny = py - sc.cy[s];
+			double nz = pz - sc.cz[s];
+			norm = Math.sqrt(nx * nx + ny * ny + nz * nz);
+			nx /= norm;
+			ny /= norm;
+			nz /= norm;
+
+			shade(s, px, py, pz, nx, ny, nz, sx, sy, sz, weightR, weightG, weightB, rgb, stack);
+
+			weightR *= sc.krr[s];
+			weightG *= sc.krg[s];
+			weightB *= sc.krb[s];
+			if (depth == maxDepth || Math.max(weightR, Math.max(weightG, weightB)) < cutoff) {
+				return;
+			}
+
+			double dn = dx * nx + dy * ny + dz * nz;
+			double offset = dn < 0 ? Tracer.SURFACE_OFFSET : -Tracer.SURFACE_OFFSET;
+			sx = px + nx * offset;
+			sy = py + ny * offset;
+			sz = pz + nz * offset;
+			dx -= 2 * dn * nx;
+			dy -= 2 * dn * ny;
+			dz -= 2 * dn * nz;
+			norm = Math.sqrt(dx * dx + dy * dy + dz * dz);
+			dx /= norm;
+			dy /= norm;
+			dz /= norm;
+		}
+	}
+
+	/**
+	 * Adds the color of the given point of a sphere, seen from the start of
+	 * the ray which hit it, to the RGB components. Color is the sum of
+	 * ambient, diffuse and specular components, multiplied by the weights.
+	 * 
+	 * @param s
+	 *            index of the sphere
+	 * @param px
+	 *            x coordinate of the point
+	 * @param py
+	 *            y coordinate of the point
+	 * @param pz
+	 *            z coordinate of the point
+	 * @param nx
+	 *            x coordinate of the normal in the point
+	 * @param ny
+	 *            y coordinate of the normal in the point
+	 * @param nz
+	 *            z coordinate of the normal in the point
+	 * @param sx
+	 *            x coordinate of the start of the ray
+	 * @param sy
+	 *            y coordinate of the start of the ray
+	 * @param sz
+	 *            z coordinate of the start of the ray
+	 * @param weightR
+	 *            weight of the red component
+	 * @param weightG
+	 *            weight of the green component
+	 * @param weightB
+	 *            weight of the blue component
+	 * @param rgb
+	 *            RGB components to which the color is added
+	 * @param stack
+	 *            stack for walking the hierarchy
+	 */
+	private void shade(int s, double px, double py, double pz, double nx, double ny, double nz, double sx,
+			double sy, double sz, double weightR, double weightG, double weightB, short[] rgb, int[] stack) {
+		PackedScene sc = scene;
+		rgb[0] += (short) (weightR * AMBIENT_COMPONENT);
+		rgb[1] += (short) (weightG * AMBIENT_COMPONENT);
+		rgb[2] += (short) (weightB * AMBIENT_COMPONENT);
+
+		double vx = sx - px;
+		double vy = sy - py;
+		double vz = sz - pz;
+		double norm = Math.sqrt(vx * vx + vy * vy + vz * vz);
+		vx /= norm;
+		vy /= norm;
+		vz /= norm;
+
+		for (int i = 0; i < sc.lx.length; i++) {
+			double lx = px - sc.lx[i];
+			double ly = py - sc.ly[i];
+			double lz = pz - sc.lz[i];
+			double distance = Math.sqrt(lx * lx + ly * ly + lz * lz);
+			lx /= distance;
+			ly /= distance;
+			lz /= distance;
+			if (isOccluded(sc.lx[i], sc.ly[i], sc.lz[i], lx, ly, lz, distance - 1E-3, stack)) {
+				continue;
+			}
+
+			// l points from the surface to the light
+			lx = -lx;
+			ly = -ly;
+			lz = -lz;
+			double nl = nx * lx + ny * ly + nz * lz;
+			double product = Double.max(nl, 0);
+			rgb[0] += (short) (weightR * sc.lr[i] * sc.kdr[s] * product);
+			rgb[1] += (short) (weightG * sc.lg[i] * sc.kdg[s] * product);
+			rgb[2] += (short) (weightB * sc.lb[i] * sc.kdb[s] * product);
+
+			double rx = nx * 2 * nl - lx;
+			double ry = ny * 2 * nl - ly;
+			double rz = nz * 2 * nl - lz;
+			norm = Math.sqrt(rx * rx + ry * ry + rz * rz);
+			double rv = (rx * vx + ry * vy + rz * vz) / norm;
+			double product2 = Math.pow(Double.max(rv, 0), sc.krn[s]);
+			rgb[0] += (short) (weightR * sc.lr[i] * sc.krr[s] * product2);
+			rgb[1] += (short) (weightG * sc.lg[i] * sc.krg[s] * product2);
+			rgb[2] += (short) (weightB * sc.lb[i] * sc.krb[s] * product2);
+		}
+	}
+
+	/**
+	 * Finds the sphere whose intersection with the given ray is the closest
+	 * to the start of the ray.
+	 * 
+	 * @param sx
+	 *            x coordinate of the start of the ray
+	 * @param sy
+	 *            y coordinate of the start of the ray
+	 * @param sz
+	 *            z coordinate of the start of the ray
+	 * @param dx
+	 *            x coordinate of the normalized direction of the ray
+	 * @param dy
+	 *            y coordinate of the normalized direction of the ray
+	 * @param dz
+	 *            z coordinate of the normalized direction of the ray
+	 * @param stack
+	 *            stack for walking the hierarchy
+	 * @return index of the sphere or -1 if the ray doesn't intersect any
+	 */
+	private int findClosest(double sx, double sy, double sz, double dx, double dy, double dz, int[] stack) {
+		PackedScene sc = scene;
+		if (sc.nodes == 0) {
+			return -1;
+		}
+		double ix = 1 / dx;
+		double iy = 1 / dy;
+		double iz = 1 / dz;
+		int closest = -1;
+		double closestDistance = Double.POSITIVE_INFINITY;
+		int top = 0;
+		stack[top++] = 0;
+
+		while (top > 0) {
+			int node = stack[--top];
+			if (!hitsBox(node, sx, sy, sz, ix, iy, iz, closestDistance)) {
+				continue;
+			}
+
+			int count = sc.count[node];
+			if (count > 0) {
+				for (int i = sc.first[node], end = i + count; i < end; i++) {
+					double lambda = intersect(i, sx, sy, sz, dx, dy, dz);
+					if (lambda >= 0 && lambda < closestDistance) {
+						closest = i;
+						closestDistance = lambda;
+					}
+				}
+			} else {
+				int axis = sc.axis[node];
+				double inverse = axis == 0 ? ix : axis == 1 ? iy : iz;
+				if (inverse >= 0) {
+					stack[top++] = sc.first[node];
+					stack[top++] = node + 1;
+				} else {
+					stack[top++] = node + 1;
+					stack[top++] = sc.first[node];
+				}
+			}
+		}
+
+		return closest;
+	}
+
+	/**
+	 * Checks if the given ray intersects any sphere closer than
+	 * {@code maxDistance} to its start, stopping at the first such sphere.
+	 * 
+	 * @param sx
+	 *            x coordinate of the start of the ray
+	 * @param sy
+	 *            y coordinate of the start of the ray
+	 * @param sz
+	 *            z coordinate of the start of the ray
+	 * @param dx
+	 *            x coordinate of the normalized direction of the ray
+	 * @param dy
+	 *            y coordinate of the normalized direction of the ray
+	 * @param dz
+	 *            z coordinate of the normalized direction of the ray
+	 * @param maxDistance
+	 *            distance from the start of the ray
+	 * @param stack
+	 *            stack for walking the hierarchy
+	 * @return {@code true} if there is an intersection closer than
+	 *         {@code maxDistance}
+	 */
+	private boolean isOccluded(double sx, double sy, double sz, double dx, double dy, double dz, double maxDistance,
+			int[] stack) {
+		PackedScene sc = scene;
+		if (sc.nodes == 0) {
+			return false;
+		}
+		double ix = 1 / dx;
+		double iy = 1 / dy;
+		double iz = 1 / dz;
+		int top = 0;
+		stack[top++] = 0;
+
+		while (top > 0) {
+			int node = stack[--top];
+			if (!hitsBox(node, sx, sy, sz, ix, iy, iz, maxDistance)) {
+				continue;
+			}
+
+			int count = sc.count[node];
+			if (count > 0) {
+				for (int i = sc.first[node], end = i + count; i < end; i++) {
+					double lambda = intersect(i, sx, sy, sz, dx, dy, dz);
+					if (lambda >= 0 && lambda < maxDistance) {
+						return true;
+					}
+				}
+			} else {
+				stack[top++] = sc.first[node];
+				stack[top++] = node + 1;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Intersects the given ray with a sphere, the same way as
+	 * {@link hr.fer.zemris.java.raytracer.model.Sphere#findClosestRayIntersection}.
+	 * 
+	 * @param i
+	 *            index of the sphere
+	 * @param sx
+	 *            x coordinate of the start of the ray
+	 * @param sy
+	 *            y coordinate of the start of the ray
+	 * @param sz
+	 *            z coordinate of the start of the ray
+	 * @param dx
+	 *            x coordinate of the normalized direction of the ray
+	 * @param dy
+	 *            y coordinate of the normalized direction of the ray
+	 * @param dz
+	 *            z coordinate of the normalized direction of the ray
+	 * @return distance from the start of the ray to the closest intersection
+	 *         in front of it, or a negative number if there is none
+	 */
+	private double intersect(int i, double sx, double sy, double sz, double dx, double dy, double dz) {
+		PackedScene sc = scene;
+		double ox = sx - sc.cx[i];
+		double oy = sy - sc.cy[i];
+		double oz = sz - sc.cz[i];
+		double scalar = dx * ox + dy * oy + dz * oz;
+		double r = sc.radius[i];
+		double value = scalar * scalar - (ox * ox + oy * oy + oz * oz) + r * r;
+		if (value < 0) {
+			return -1;
+		}
+
+		double root = Math.sqrt(value);
+		double lambda1 = -scalar + root;
+		double lambda2 = -scalar - root;
+		if (lambda1 < 0) {
+			return lambda2;
+		} else if (lambda2 < 0) {
+			return lambda1;
+		}
+		return Double.min(lambda1, lambda2);
+	}
+
+	/**
+	 * Checks if the ray passes through the bounding box of the given node
+	 * closer than {@code limit} to its start.
+	 * 
+	 * @param node
+	 *            index of the node
+	 * @param sx
+	 *            x coordinate of the start of the ray
+	 * @param sy
+	 *            y coordinate of the start of the ray
+	 * @param sz
+	 *            z coordinate of the start of the ray
+	 * @param ix
+	 *            inverse x coordinate of the direction of the ray
+	 * @param iy
+	 *            inverse y coordinate of the direction of the ray
+	 * @param iz
+	 *            inverse z coordinate of the direction of the ray
+	 * @param limit
+	 *            distance from the start of the ray
+	 * @return {@code true} if the ray passes through the box
+	 */
+	private boolean hitsBox(int node, double sx, double sy, double sz, double ix, double iy, double iz,
+			double limit) {
+		double[] bounds = scene.bounds;
+		int offset = node * 6;
+
+		// comparisons are false for NaN, so a slab the ray lies in is ignored
+		double tMin = 0;
+		double tMax = limit;
+		double t1 = (bounds[offset] - sx) * ix;
+		double t2 = (bounds[offset + 3] - sx) * ix;
+		if (ix < 0) {
+			double t = t1;
+			t1 = t2;
+			t2 = t;
+		}
+		if (t1 > tMin) {
+			tMin = t1;
+		}
+		if (t2 < tMax) {
+			tMax = t2;
+		}
+		if (tMin > tMax) {
+			return false;
+		}
+
+		t1 = (bounds[offset + 1] - sy) * iy;
+		t2 = (bounds[offset + 4] - sy) * iy;
+		if (iy < 0) {
+			double t = t1;
+			t1 = t2;
+			t2 = t;
+		}
+		if (t1 > tMin) {
+			tMin = t1;
+		}
+		if (t2 < tMax) {
+			tMax = t2;
+		}
+		if (tMin > tMax) {
+			return false;
+		}
+
+		t1 = (bounds[offset + 2] - sz) * iz;
+		t2 = (bounds[offset + 5] - sz) * iz;
+		if (iz < 0) {
+			double t = t1;
+			t1 = t2;
+			t2 = t;
+		}
+		if (t1 > tMin) {
+			tMin = t1;
+		}
+		if (t2 < tMax) {
+			tMax = t2;
+		}
+		return !(tMin > tMax);
+	}
+
+}
@@ -0,0 +1,41 @@
+package hr.fer.zemris.java.raytracer;
+
+/**
+ * Calculates RGB components of the pixels of one frame. Implementations are
+ * used by many threads at once, each calculating its own pixels. <br>
+ * A ray can be cast through any point of the screen, not only through the
+ * centers of the pixels, so several rays can be averaged for a pixel.
+ * 
+ * @author Dan
+ *
+ */
+public interface PixelTracer {
+
+	/**
+	 * Calculates RGB components of given pixel from the observed space.
+	 * 
+	 * @param x
+	 *            x coordinate of the pixel
+	 * @param y
+	 *            y coordinate of the pixel
+	 * @param rgb
+	 *            array for result storage with {@code length} at least 3
+	 */
+	default void calculatePixelRGB(int x, int y, short[] rgb) {
+		calculateRGB(x, y, rgb);
+	}
+
+	/**
+	 * Calculates RGB components of the observed space seen through given
+	 * point of the screen. Components are not limited to 255.
+	 * 
+	 * @param x
+	 *            x coordinate of the point, in pixels from the left edge
+	 * @param y
+	 *            y coordinate of the point, in pixels from the top edge
+	 * @param rgb
+	 *            array for result storage with {@code length} at least 3
+	 */
+	void calculateRGB(double x, double y, short[] rgb);
+
+}
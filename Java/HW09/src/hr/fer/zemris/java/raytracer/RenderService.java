@@ -0,0 +1,711 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import hr.fer.zemris.java.raytracer.model.IRayTracerProducer;
+import hr.fer.zemris.java.raytracer.model.IRayTracerResultObserver;
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Scene;
+
+/**
+ * Parallel implementation of {@link IRayTracerProducer} which lives as long as
+ * the viewer and renders many frames of the same {@link Scene}. <br>
+ * Everything which doesn't depend on the camera is prepared once, when the
+ * service is created: the {@link ForkJoinPool}, the
+ * {@link BoundingVolumeHierarchy} over the scene and, if it is selected and
+ * the scene is made of spheres, the {@link PackedScene}. A frame then only
+ * creates a {@link PixelTracer} for the camera and the arrays for the
+ * result. <br>
+ * Edges can be anti-aliased by supersampling every pixel, or adaptively only
+ * the pixels which differ from their neighbours, and rays can be reflected
+ * from the surfaces they hit. <br>
+ * Image is split into square tiles of {@value #TILE_SIZE}x{@value #TILE_SIZE}
+ * pixels by {@link TileJob}s, so the rays traced one after another by a
+ * thread are close to each other and mostly visit the same part of the
+ * hierarchy, which stays in the cache. Cost of a pixel can differ a lot, for
+ * example between the background and a reflective object, so a tile is
+ * further split into bands of rows by {@link RowsJob}s while other threads
+ * are left without work. <br>
+ * A request is abandoned as soon as the viewer issues a newer one, for
+ * example while the user moves the camera. Its jobs stop at the next row of a
+ * tile and nothing is delivered for it, so the newest request gets the whole
+ * pool. A request which arrives after a newer one is not calculated at all.
+ * <br>
+ * Time of each frame is measured in three parts, see {@link FrameTimes}, and
+ * printed after the frame is delivered.
+ * 
+ * @author Dan
+ *
+ */
+public class RenderService implements IRayTracerProducer {
+
+	/**
+	 * Width and height of a tile in pixels.
+	 */
+	public static final int TILE_SIZE = 32;
+	/**
+	 * Minimal number of rows of a {@link RowsJob} that is split.
+	 */
+	private static final int MIN_ROWS = 4;
+	/**
+	 * Number of queued jobs of the current thread above which a
+	 * {@link RowsJob} is not split, because other threads can steal them.
+	 */
+	private static final int SURPLUS_THRESHOLD = 2;
+
+	/**
+	 * Thread pool shared by all requests.
+	 */
+	private ForkJoinPool pool = new ForkJoinPool();
+	/**
+	 * {@link Scene} which is rendered.
+	 */
+	private Scene scene;
+	/**
+	 * {@link BoundingVolumeHierarchy} over the objects of the {@link #scene}.
+	 */
+	private BoundingVolumeHierarchy hierarchy;
+	/**
+	 * {@link #scene} packed into arrays, or {@code null} if {@link Tracer} is
+	 * used.
+	 */
+	private PackedScene packedScene;
+	/**
+	 * Number of rays per row and per column of a supersampled pixel.
+	 */
+	private int samples;
+	/**
+	 * Largest difference between neighbouring pixels which is not
+	 * supersampled; or a negative number if every pixel is supersampled.
+	 */
+	private int threshold;
+	/**
+	 * Largest number of reflections of a ray; 0 if rays are not reflected.
+	 */
+	private int maxDepth;
+	/**
+	 * Smallest weight of a reflected ray which is still traced.
+	 */
+	private double cutoff;
+	/**
+	 * Number of the newest request.
+	 */
+	private AtomicLong newestRequest = new AtomicLong(Long.MIN_VALUE);
+	/**
+	 * Times of the last delivered frame, or {@code null} if none was
+	 * delivered.
+	 */
+	private volatile FrameTimes lastFrameTimes;
+
+	/**
+	 * Creates a new {@link RenderService} for the given scene which casts a
+	 * single ray per pixel. Scene must not be changed afterwards.
+	 * 
+	 * @param scene
+	 *            {@link Scene} which is rendered
+	 * @param packed
+	 *            {@code true} if {@link PackedTracer} is used for scenes made
+	 *            of spheres
+	 */
+	public RenderService(Scene scene, boolean packed) {
+		this(scene, packed, 1, -1);
+	}
+
+	/**
+	 * Creates a new {@link RenderService} for the given scene. Scene must not
+	 * be changed afterwards. <br>
+	 * Pixels are supersampled with {@code samples*samples} rays. If the
+	 * {@code threshold} is not negative, sampling is adaptive: each pixel is
+	 * first calculated with a single ray, and only pixels in which any
+	 * component differs from a horizontal or vertical neighbour by more than
+	 * the threshold are calculated again with all rays.
+	 * 
+	 * @param scene
+	 *            {@link Scene} which is rendered
+	 * @param packed
+	 *            {@code true} if {@link PackedTracer} is used for scenes made
+	 *            of spheres
+	 * @param samples
+	 *            number of rays per row and per column of a supersampled
+	 *            pixel; 1 for a single ray per pixel
+	 * @param threshold
+	 *            largest difference between neighbouring pixels which is not
+	 *            supersampled; or a negative number to supersample every pixel
+	 * @throws IllegalArgumentException
+	 *             if {@code samples} is not positive
+	 */
+	public RenderService(Scene scene, boolean packed, int samples, int threshold) {
+		this(scene, packed, samples, threshold, 0, 1);
+	}
+
+	/**
+	 * Creates a new {@link RenderService} for the given scene which samples
+	 * pixels as described in
+	 * {@link #RenderService(Scene, boolean, int, int)} and reflects rays from
+	 * the surfaces they hit. Scene must not be changed afterwards. <br>
+	 * A reflected ray is traced only if it is within {@code maxDepth}
+	 * reflections from the eye and its weight, the product of the reflective
+	 * components of the surfaces before it, is at least {@code cutoff} in any
+	 * component.
+	 * 
+	 * @param scene
+	 *            {@link Scene} which is rendered
+	 * @param packed
+	 *            {@code true} if {@link PackedTracer} is used for scenes made
+	 *            of spheres
+	 * @param samples
+	 *            number of rays per row and per column of a supersampled
+	 *            pixel; 1 for a single ray per pixel
+	 * @param threshold
+	 *            largest difference between neighbouring pixels which is not
+	 *            supersampled; or a negative number to supersample every pixel
+	 * @param maxDepth
+	 *            largest number of reflections of a ray; 0 if rays are not
+	 *            reflected
+	 * @param cutoff
+	 *            smallest weight of a reflected ray which is still traced
+	 * @throws IllegalArgumentException
+	 *             if {@code samples} is not positive or {@code maxDepth} is
+	 *             negative
+	 */
+	public RenderService(Scene scene, boolean packed, int samples, int threshold, int maxDepth, double cutoff) {
+		if (samples <= 0) {
+			throw new IllegalArgumentException("Number of samples has to be positive. Given value: " + samples);
+		}
+		if (maxDepth < 0) {
+			throw new IllegalArgumentException("Depth of reflections can't be negative. Given value: " + maxDepth);
+		}
+		this.samples = samples;
+		this.threshold = threshold;
+		this.maxDepth = maxDepth;
+		this.cutoff = cutoff;
+		this.scene = Objects.requireNonNull(scene);
+		hierarchy = new BoundingVolumeHierarchy(scene.getObjects());
+		if (packed && PackedScene.isSupported(scene)) {
+			packedScene = new PackedScene(scene, hierarchy);
+		}
+	}
+
+	@Override
+	public void produce(Point3D eye, Point3D view, Point3D viewUp, double horizontal, double vertical, int width,
+			int height, long requestNo, IRayTracerResultObserver observer) {
+		if (newestRequest.accumulateAndGet(requestNo, Math::max) != requestNo) {
+			return;
+		}
+		BooleanSupplier cancelled = () -> newestRequest.get() != requestNo;
+
+		System.out.println("Započinjem izračune...");
+		long start = System.nanoTime();
+		short[] red = new short[width * height];
+		short[] green = new short[width * height];
+		short[] blue = new short[width * height];
+		PixelTracer tracer;
+		if (packedScene != null) {
+			tracer = new PackedTracer(packedScene, eye, view, viewUp, horizontal, vertical, width, height, maxDepth,
+					cutoff);
+		} else {
+			tracer = new Tracer(scene, hierarchy, eye, view, viewUp, horizontal, vertical, width, height, maxDepth,
+					cutoff);
+		}
+
+		long setup = System.nanoTime();
+		int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		int n = samples;
+		if (n == 1 || threshold < 0) {
+			pool.invoke(new TileJob((x, y, offset, rgb, sample) -> {
+				sample(tracer, x, y, n, rgb, sample);
+				red[offset] = rgb[0];
+				green[offset] = rgb[1];
+				blue[offset] = rgb[2];
+			}, 0, columns - 1, 0, rows - 1, width, height, cancelled));
+		} else {
+			short[] baseRed = new short[width * height];
+			short[] baseGreen = new short[width * height];
+			short[] baseBlue = new short[width * height];
+			pool.invoke(new TileJob((x, y, offset, rgb, sample) -> {
+				sample(tracer, x, y, 1, rgb, sample);
+				baseRed[offset] = rgb[0];
+				baseGreen[offset] = rgb[1];
+				baseBlue[offset] = rgb[2];
+			}, 0, columns - 1, 0, rows - 1, width, height, cancelled));
+
+			pool.invoke(new TileJob((x, y, offset, rgb, sample) -> {
+				if (isEdge(baseRed, baseGreen, baseBlue, x, y, offset, width, height, threshold)) {
+					sample(tracer, x, y, n, rgb, sample);
+					red[offset] = rgb[0];
+					green[offset] = rgb[1];
+					blue[offset] = rgb[2];
+				} else {
+					red[offset] = baseRed[offset];
+					green[offset] = baseGreen[offset];
+					blue[offset] = baseBlue[offset];
+				}
+			}, 0, columns - 1, 0, rows - 1, width, height, cancelled));
+		}
+		if (cancelled.getAsBoolean()) {
+			System.out.println("Izračuni prekinuti, stigao je noviji zahtjev.");
+			return;
+		}
+
+		long render = System.nanoTime();
+		System.out.println("Izračuni gotovi...");
+		observer.acceptResult(red, green, blue, requestNo);
+		System.out.println("Dojava gotova...");
+
+		FrameTimes times = new FrameTimes(setup - start, render - setup, System.nanoTime() - render);
+		lastFrameTimes = times;
+		System.out.println(times);
+	}
+
+	/**
+	 * @return times of the last delivered frame, or {@code null} if none was
+	 *         delivered
+	 */
+	public FrameTimes getLastFrameTimes() {
+		return lastFrameTimes;
+	}
+
+	/**
+	 * Stops the threads of this service once the jobs in progress finish.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Times of the parts of a frame in nanoseconds. <br>
+	 * Rays are traced and shaded pixel by pixel, so measuring the two
+	 * separately would cost two more readings of the clock per pixel, which is
+	 * a considerable part of a pixel in simple scenes. They are measured
+	 * together as rendering.
+	 * 
+	 * @author Dan
+	 *
+	 */
+	public static class FrameTimes {
+
+		/**
+		 * Time of creating the tracer and the arrays for the result.
+		 */
+		private long setup;
+		/**
+		 * Time of tracing and shading all pixels.
+		 */
+		private long render;
+		/**
+		 * Time of delivering the result to the observer.
+		 */
+		private long delivery;
+
+		/**
+		 * Creates a new {@link FrameTimes} with given arguments.
+		 * 
+		 * @param setup
+		 *            Time of creating the tracer and the arrays for the result.
+		 * @param render
+		 *            Time of tracing and shading all pixels.
+		 * @param delivery
+		 *            Time of delivering the result to the observer.
+		 */
+		public FrameTimes(long setup, long render, long delivery) {
+			this.setup = setup;
+			this.render = render;
+			this.delivery = delivery;
+		}
+
+		/**
+		 * @return time of creating the tracer and the arrays for the result
+		 */
+		public long getSetup() {
+			return setup;
+		}
+
+		/**
+		 * @return time of tracing and shading all pixels
+		 */
+		public long getRender() {
+			return render;
+		}
+
+		/**
+		 * @return time of delivering the result to the observer
+		 */
+		public long getDelivery() {
+			return delivery;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Priprema %.2f ms, izračun %.2f ms, dojava %.2f ms", setup / 1e6, render / 1e6,
+					delivery / 1e6);
+		}
+
+	}
+
+	/**
+	 * Calculation of a single pixel, done for every pixel of the image by
+	 * {@link TileJob}s.
+	 * 
+	 * @author Dan
+	 *
+	 */
+	@FunctionalInterface
+	private interface PixelPass {
+
+		/**
+		 * Calculates the given pixel and stores the result.
+		 * 
+		 * @param x
+		 *            x coordinate of the pixel
+		 * @param y
+		 *            y coordinate of the pixel
+		 * @param offset
+		 *            index of the pixel in the arrays of components
+		 * @param rgb
+		 *            array of length 3 which can be used for the result
+		 * @param sample
+		 *            array of length 3 which can be used for a single ray
+		 */
+		void compute(int x, int y, int offset, short[] rgb, short[] sample);
+
+	}
+
+	/**
+	 * Calculates RGB components of a pixel as the average of {@code n*n} rays
+	 * cast through the centers of the cells of a regular grid over the pixel.
+	 * A single ray is cast through the center of the pixel if {@code n} is 1.
+	 * Components of each ray are limited to 255 before averaging.
+	 * 
+	 * @param tracer
+	 *            tracer which casts the rays
+	 * @param x
+	 *            x coordinate of the pixel
+	 * @param y
+	 *            y coordinate of the pixel
+	 * @param n
+	 *            number of rays per row and per column of the pixel
+	 * @param rgb
+	 *            array for the result
+	 * @param sample
+	 *            array for the result of a single ray
+	 */
+	private static void sample(PixelTracer tracer, int x, int y, int n, short[] rgb, short[] sample) {
+		if (n == 1) {
+			tracer.calculatePixelRGB(x, y, rgb);
+			for (int i = 0; i < 3; i++) {
+				rgb[i] = rgb[i] > 255 ? 255 : rgb[i];
+			}
+			return;
+		}
+
+		int red = 0;
+		int green = 0;
+		int blue = 0;
+		for (int i = 0; i < n; i++) {
+			double sy = y + (i + 0.5) / n - 0.5;
+			for (int j = 0; j < n; j++) {
+				tracer.calculateRGB(x + (j + 0.5) / n - 0.5, sy, sample);
+				red += Math.min(sample[0], 255);
+				green += Math.min(sample[1], 255);
+				blue += Math.min(sample[2], 255);
+			}
+		}
+
+		int count = n * n;
+		rgb[0] = (short) ((red + count / 2) / count);
+		rgb[1] = (short) ((green + count / 2) / count);
+		rgb[2] = (short) ((blue + count / 2) / count);
+	}
+
+	/**
+	 * Checks if any component of the given pixel differs from the same
+	 * component of a horizontal or vertical neighbour by more than the
+	 * threshold.
+	 * 
+	 * @param red
+	 *            red components of the image
+	 * @param green
+	 *            green components of the image
+	 * @param blue
+	 *            blue components of the image
+	 * @param x
+	 *            x coordinate of the pixel
+	 * @param y
+	 *            y coordinate of the pixel
+	 * @param offset
+	 *            index of the pixel in the arrays of components
+	 * @param width
+	 *            number of pixels per screen row
+	 * @param height
+	 *            number of pixels per screen column
+	 * @param threshold
+	 *            largest difference which is not an edge
+	 * @return {@code true} if the pixel is on an edge
+	 */
+	private static boolean isEdge(short[] red, short[] green, short[] blue, int x, int y, int offset, int width,
+			int height, int threshold) {
+		return (x > 0 && differs(red, green, blue, offset, offset - 1, threshold))
+				|| (x < width - 1 && differs(red, green, blue, offset, offset + 1, threshold))
+				|| (y > 0 && differs(red, green, blue, offset, offset - width, threshold))
+				|| (y < height - 1 && differs(red, green, blue, offset, offset + width, threshold));
+	}
+
+	/**
+	 * Checks if any component of two pixels differs by more than the
+	 * threshold.
+	 * 
+	 * @param red
+	 *            red components of the image
+	 * @param green
+	 *            green components of the image
+	 * @param blue
+	 *            blue components of the image
+	 * @param first
+	 *            index of the first pixel
+	 * @param second
+	 *            index of the second pixel
+	 * @param threshold
+	 *            largest difference which is allowed
+	 * @return {@code true} if the pixels differ
+	 */
+	private static boolean differs(short[] red, short[] green, short[] blue, int first, int second, int threshold) {
+		return Math.abs(red[first] - red[second]) > threshold || Math.abs(green[first] - green[second]) > threshold
+				|| Math.abs(blue[first] - blue[second]) > threshold;
+	}
+
+	/**
+	 * This class runs a {@link PixelPass} over a rectangle of tiles of the
+	 * image. Rectangle is split in half along its longer side until a single
+	 * tile is left, which is then calculated by a {@link RowsJob}. Job stops
+	 * before splitting if the request it belongs to was cancelled.
+	 * 
+	 * @author Dan
+	 *
+	 */
+	private static class TileJob extends RecursiveAction {
+
+		/** */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * {@link PixelPass} which calculates the pixels.
+		 */
+		private PixelPass pass;
+		/**
+		 * Minimal x-axis tile index that is calculated by this job.
+		 */
+		private int xMin;
+		/**
+		 * Maximal x-axis tile index that is calculated by this job.
+		 */
+		private int xMax;
+		/**
+		 * Minimal y-axis tile index that is calculated by this job.
+		 */
+		private int yMin;
+		/**
+		 * Maximal y-axis tile index that is calculated by this job.
+		 */
+		private int yMax;
+		/**
+		 * Number of pixels per screen row.
+		 */
+		private int width;
+		/**
+		 * Number of pixels per screen column.
+		 */
+		private int height;
+		/**
+		 * Tells whether the request this job belongs to was cancelled.
+		 */
+		private BooleanSupplier cancelled;
+
+		/**
+		 * Creates a new {@link TileJob} with given arguments.
+		 * 
+		 * @param pass
+		 *            {@link PixelPass} which calculates the pixels.
+		 * @param xMin
+		 *            Minimal x-axis tile index that is calculated by this job.
+		 * @param xMax
+		 *            Maximal x-axis tile index that is calculated by this job.
+		 * @param yMin
+		 *            Minimal y-axis tile index that is calculated by this job.
+		 * @param yMax
+		 *            Maximal y-axis tile index that is calculated by this job.
+		 * @param width
+		 *            Number of pixels per screen row.
+		 * @param height
+		 *            Number of pixels per screen column.
+		 * @param cancelled
+		 *            Tells whether the request this job belongs to was
+		 *            cancelled.
+		 */
+		public TileJob(PixelPass pass, int xMin, int xMax, int yMin, int yMax, int width, int height,
+				BooleanSupplier cancelled) {
+			this.pass = pass;
+			this.xMin = xMin;
+			this.xMax = xMax;
+			this.yMin = yMin;
+			this.yMax = yMax;
+			this.width = width;
+			this.height = height;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		protected void compute() {
+			if (cancelled.getAsBoolean()) {
+				return;
+			}
+			if (xMin == xMax && yMin == yMax) {
+				computeDirect();
+			} else if (xMax - xMin >= yMax - yMin) {
+				int half = xMin + (xMax - xMin) / 2;
+				invokeAll(tile(xMin, half, yMin, yMax), tile(half + 1, xMax, yMin, yMax));
+			} else {
+				int half = yMin + (yMax - yMin) / 2;
+				invokeAll(tile(xMin, xMax, yMin, half), tile(xMin, xMax, half + 1, yMax));
+			}
+		}
+
+		/**
+		 * Creates a job for a part of this job's tiles.
+		 * 
+		 * @param xMin
+		 *            Minimal x-axis tile index of the part.
+		 * @param xMax
+		 *            Maximal x-axis tile index of the part.
+		 * @param yMin
+		 *            Minimal y-axis tile index of the part.
+		 * @param yMax
+		 *            Maximal y-axis tile index of the part.
+		 * @return job for the part
+		 */
+		private TileJob tile(int xMin, int xMax, int yMin, int yMax) {
+			return new TileJob(pass, xMin, xMax, yMin, yMax, width, height, cancelled);
+		}
+
+		/**
+		 * Used for this {@code TileJob's} computation. <br>
+		 * Computes pixels of the single tile of this job with a
+		 * {@link RowsJob}.
+		 */
+		private void computeDirect() {
+			int x0 = xMin * TILE_SIZE;
+			int y0 = yMin * TILE_SIZE;
+			new RowsJob(pass, x0, Math.min(x0 + TILE_SIZE, width), y0, Math.min(y0 + TILE_SIZE, height), width,
+					cancelled).invoke();
+		}
+	}
+
+	/**
+	 * This class runs a {@link PixelPass} over a band of rows of a tile. Band
+	 * is split in half while it has at least {@value #MIN_ROWS} rows and the
+	 * current thread has no more than {@value #SURPLUS_THRESHOLD} surplus
+	 * queued jobs for other threads to steal, so an expensive tile near the
+	 * end of a frame is shared with idle threads instead of being calculated
+	 * by one.
+	 * Otherwise the band is calculated row by row. Job stops before splitting
+	 * or before a row if the request it belongs to was cancelled.
+	 * 
+	 * @author Dan
+	 *
+	 */
+	private static class RowsJob extends RecursiveAction {
+
+		/** */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * {@link PixelPass} which calculates the pixels.
+		 */
+		private PixelPass pass;
+		/**
+		 * First x coordinate that is calculated by this job.
+		 */
+		private int xStart;
+		/**
+		 * X coordinate after the last one that is calculated by this job.
+		 */
+		private int xEnd;
+		/**
+		 * First row that is calculated by this job.
+		 */
+		private int yStart;
+		/**
+		 * Row after the last one that is calculated by this job.
+		 */
+		private int yEnd;
+		/**
+		 * Number of pixels per screen row.
+		 */
+		private int width;
+		/**
+		 * Tells whether the request this job belongs to was cancelled.
+		 */
+		private BooleanSupplier cancelled;
+
+		/**
+		 * Creates a new {@link RowsJob} with given arguments.
+		 * 
+		 * @param pass
+		 *            {@link PixelPass} which calculates the pixels.
+		 * @param xStart
+		 *            First x coordinate that is calculated by this job.
+		 * @param xEnd
+		 *            X coordinate after the last one that is calculated by
+		 *            this job.
+		 * @param yStart
+		 *            First row that is calculated by this job.
+		 * @param yEnd
+		 *            Row after the last one that is calculated by this job.
+		 * @param width
+		 *            Number of pixels per screen row.
+		 * @param cancelled
+		 *            Tells whether the request this job belongs to was
+		 *            cancelled.
+		 */
+		public RowsJob(PixelPass pass, int xStart, int xEnd, int yStart, int yEnd, int width,
+				BooleanSupplier cancelled) {
+			this.pass = pass;
+			this.xStart = xStart;
+			this.xEnd = xEnd;
+			this.yStart = yStart;
+			this.yEnd = yEnd;
+			this.width = width;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		protected void compute() {
+			if (cancelled.getAsBoolean()) {
+				return;
+			}
+			if (yEnd - yStart >= MIN_ROWS && getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD) {
+				int half = yStart + (yEnd - yStart) / 2;
+				invokeAll(new RowsJob(pass, xStart, xEnd, yStart, half, width, cancelled),
+						new RowsJob(pass, xStart, xEnd, half, yEnd, width, cancelled));
+				return;
+			}
+
+			short[] rgb = new short[3];
+			short[] sample = new short[3];
+			for (int y = yStart; y < yEnd; y++) {
+				if (cancelled.getAsBoolean()) {
+					return;
+				}
+				int offset = y * width + xStart;
+				for (int x = xStart; x < xEnd; x++) {
+					pass.compute(x, y, offset++, rgb, sample);
+				}
+			}
+		}
+	}
+
+}
@@ -1,11 +1,8 @@
 package hr.fer.zemris.java.raytracer;
 
-import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.function.Consumer;
 
-import hr.fer.zemris.java.raytracer.model.GraphicalObject;
 import hr.fer.zemris.java.raytracer.model.LightSource;
 import hr.fer.zemris.java.raytracer.model.Point3D;
 import hr.fer.zemris.java.raytracer.model.Ray;
@@ -16,24 +13,41 @@ import hr.fer.zemris.java.raytracer.model.Scene;
  * This class is used for calculation of each pixel's RGB components. <br>
  * After initialization with given {@link Scene} and required vectors, method
  * {@link #calculatePixelRGB(int, int, short[])} can be called for any pixel
- * (point) within the screen. <br>
- * Phong reflection model and Ray-casting algorithm are used.
+ * within the screen, or {@link #calculateRGB(double, double, short[])} for any
+ * point. <br>
+ * Phong reflection model and Ray-casting algorithm are used. Intersections
+ * are found with a {@link BoundingVolumeHierarchy} over the scene's objects,
+ * and shadow rays only check whether any object is in the way. <br>
+ * Optionally, rays are reflected from the surfaces they hit, up to the given
+ * depth. Reflections are followed in a loop rather than recursively: the
+ * color seen by a reflected ray is weighted by the reflective components of
+ * all surfaces before it, and the loop stops when the largest weight falls
+ * below the given cutoff.
  * 
  * @author Dan
  *
  */
-public class Tracer {
+public class Tracer implements PixelTracer {
 
 	/**
 	 * Ambient component that is added to each seen pixel's RGB values.
 	 */
 	private static final int AMBIENT_COMPONENT = 15;
+	/**
+	 * Distance from the surface along its normal at which a reflected ray
+	 * starts, so it doesn't hit the same surface again.
+	 */
+	static final double SURFACE_OFFSET = 1E-6;
 
 	/**
 	 * {@link Scene} containing {@code GraphicalObjects} and
 	 * {@code LightSources}.
 	 */
 	private Scene scene;
+	/**
+	 * {@link BoundingVolumeHierarchy} over the objects of the {@link #scene}.
+	 */
+	private BoundingVolumeHierarchy hierarchy;
 	/**
 	 * Point of the observer.
 	 */
@@ -66,9 +80,19 @@ public class Tracer {
 	 * Number of pixels per screen column.
 	 */
 	private int height;
+	/**
+	 * Largest number of reflections of a ray; 0 if rays are not reflected.
+	 */
+	private int maxDepth;
+	/**
+	 * Smallest weight of a reflected ray which is still traced.
+	 */
+	private double cutoff;
 
 	/**
-	 * Creates a new {@link Tracer} with given arguments.
+	 * Creates a new {@link Tracer} with given arguments. <br>
+	 * A new {@link BoundingVolumeHierarchy} is built over the objects of the
+	 * {@code scene}.
 	 * 
 	 * @param scene
 	 *            {@link Scene} containing {@code GraphicalObjects} and
@@ -94,7 +118,92 @@ public class Tracer {
 	 */
 	public Tracer(Scene scene, Point3D eye, Point3D view, Point3D viewUp, double horizontal, double vertical, int width,
 			int height) {
+		this(scene, new BoundingVolumeHierarchy(scene.getObjects()), eye, view, viewUp, horizontal, vertical, width,
+				height);
+	}
+
+	/**
+	 * Creates a new {@link Tracer} with given arguments. Given
+	 * {@code hierarchy} has to be built over the objects of the {@code scene},
+	 * so it can be built once and used for many frames of the same scene.
+	 * 
+	 * @param scene
+	 *            {@link Scene} containing {@code GraphicalObjects} and
+	 *            {@code LightSources}.
+	 * @param hierarchy
+	 *            {@link BoundingVolumeHierarchy} over the objects of the
+	 *            {@code scene}.
+	 * @param eye
+	 *            Point of the observer.
+	 * @param view
+	 *            Position that is observed; center of the screen.
+	 * @param viewUp
+	 *            Specification of view-up vector which is used to determine
+	 *            y-axis for the screen.
+	 * @param horizontal
+	 *            Horizontal width of the observed space.
+	 * @param vertical
+	 *            Vertical height of the observed space.
+	 * @param width
+	 *            Number of pixels per screen row.
+	 * @param height
+	 *            Number of pixels per screen column.
+	 * @throws IllegalArgumentException
+	 *             if the {@code view-up} vector is collinear with the
+	 *             {@code eye-view} vector
+	 */
+	public Tracer(Scene scene, BoundingVolumeHierarchy hierarchy, Point3D eye, Point3D view, Point3D viewUp,
+			double horizontal, double vertical, int width, int height) {
+		this(scene, hierarchy, eye, view, viewUp, horizontal, vertical, width, height, 0, 1);
+	}
+
+	/**
+	 * Creates a new {@link Tracer} with given arguments which reflects rays
+	 * from the surfaces they hit. Given {@code hierarchy} has to be built over
+	 * the objects of the {@code scene}. <br>
+	 * Color seen by a reflected ray is multiplied by the reflective components
+	 * ({@code krr}, {@code krg} and {@code krb}) of all surfaces the ray was
+	 * reflected from.
+	 * 
+	 * @param scene
+	 *            {@link Scene} containing {@code GraphicalObjects} and
+	 *            {@code LightSources}.
+	 * @param hierarchy
+	 *            {@link BoundingVolumeHierarchy} over the objects of the
+	 *            {@code scene}.
+	 * @param eye
+	 *            Point of the observer.
+	 * @param view
+	 *            Position that is observed; center of the screen.
+	 * @param viewUp
+	 *            Specification of view-up vector which is used to determine
+	 *            y-axis for the screen.
+	 * @param horizontal
+	 *            Horizontal width of the observed space.
+	 * @param vertical
+	 *            Vertical height of the observed space.
+	 * @param width
+	 *            Number of pixels per screen row.
+	 * @param height
+	 *            Number of pixels per screen column.
+	 * @param maxDepth
+	 *            Largest number of reflections of a ray; 0 if rays are not
+	 *            reflected.
+	 * @param cutoff
+	 *            Smallest weight of a reflected ray which is still traced.
+	 * @throws IllegalArgumentException
+	 *             if the {@code view-up} vector is collinear with the
+	 *             {@code eye-view} vector, or if {@code maxDepth} is negative
+	 */
+	public Tracer(Scene scene, BoundingVolumeHierarchy hierarchy, Point3D eye, Point3D view, Point3D viewUp,
+			double horizontal, double vertical, int width, int height, int maxDepth, double cutoff) {
+		if (maxDepth < 0) {
+			throw new IllegalArgumentException("Depth of reflections can't be negative. Given value: " + maxDepth);
+		}
+		this.maxDepth = maxDepth;
+		this.cutoff = cutoff;
 		this.scene = Objects.requireNonNull(scene);
+		this.hierarchy = Objects.requireNonNull(hierarchy);
 		this.eye = Objects.requireNonNull(eye);
 		this.horizontal = horizontal;
 		this.vertical = vertical;
@@ -113,17 +222,18 @@ public class Tracer {
 	}
 
 	/**
-	 * Calculates RGB components of given pixel from the observed space, based
-	 * on the {@link #scene}.
+	 * Calculates RGB components of the observed space seen through given
+	 * point of the screen, based on the {@link #scene}.
 	 * 
 	 * @param x
-	 *            x coordinate of the pixel
+	 *            x coordinate of the point, in pixels from the left edge
 	 * @param y
-	 *            y coordinate of the pixel
+	 *            y coordinate of the point, in pixels from the top edge
 	 * @param rgb
 	 *            array for result storage with {@code length} at least 3
 	 */
-	public void calculatePixelRGB(int x, int y, short[] rgb) {
+	@Override
+	public void calculateRGB(double x, double y, short[] rgb) {
 		Point3D screenPoint = screenCorner.add(xAxis.scalarMultiply(x * horizontal / (width - 1)))
 				.sub(yAxis.scalarMultiply(y * vertical / (height - 1)));
 		Ray ray = Ray.fromPoints(eye, screenPoint);
@@ -132,37 +242,68 @@ public class Tracer {
 			rgb[i] = 0;
 		}
 
-		Optional<RayIntersection> optS = getClosestIntersection(scene.getObjects(), ray);
-		if (!optS.isPresent()) {
-			return;
-		}
-		RayIntersection s = optS.get();
+		double weightR = 1;
+		double weightG = 1;
+		double weightB = 1;
+		for (int depth = 0;; depth++) {
+			RayIntersection s = hierarchy.findClosestIntersection(ray);
+			if (s == null) {
+				return;
+			}
+			shade(ray, s, weightR, weightG, weightB, rgb);
 
-		for (int i = 0; i < rgb.length; i++) {
-			rgb[i] = AMBIENT_COMPONENT;
+			weightR *= s.getKrr();
+			weightG *= s.getKrg();
+			weightB *= s.getKrb();
+			if (depth == maxDepth || Math.max(weightR, Math.max(weightG, weightB)) < cutoff) {
+				return;
+			}
+
+			Point3D n = s.getNormal();
+			double dn = ray.direction.scalarProduct(n);
+			Point3D start = s.getPoint().add(n.scalarMultiply(dn < 0 ? SURFACE_OFFSET : -SURFACE_OFFSET));
+			ray = new Ray(start, ray.direction.sub(n.scalarMultiply(2 * dn)).normalize());
 		}
+	}
+
+	/**
+	 * Adds the color of the given intersection, seen from the start of the
+	 * given ray, to the RGB components. Color is the sum of ambient, diffuse
+	 * and specular components, multiplied by the weights.
+	 * 
+	 * @param ray
+	 *            ray which hit the intersection
+	 * @param s
+	 *            closest intersection of the ray
+	 * @param weightR
+	 *            weight of the red component
+	 * @param weightG
+	 *            weight of the green component
+	 * @param weightB
+	 *            weight of the blue component
+	 * @param rgb
+	 *            RGB components to which the color is added
+	 */
+	private void shade(Ray ray, RayIntersection s, double weightR, double weightG, double weightB, short[] rgb) {
+		rgb[0] += (short) (weightR * AMBIENT_COMPONENT);
+		rgb[1] += (short) (weightG * AMBIENT_COMPONENT);
+		rgb[2] += (short) (weightB * AMBIENT_COMPONENT);
 
 		scene.getLights().forEach(new Consumer<LightSource>() {
 			@Override
 			public void accept(LightSource src) {
 				Ray ray2 = new Ray(src.getPoint(), s.getPoint().sub(src.getPoint()).normalize());
-				Optional<RayIntersection> optS2 = getClosestIntersection(scene.getObjects(), ray2);
-				if (!optS2.isPresent()) {
-					return;
-				}
-				RayIntersection s2 = optS2.get();
-
 				double distance = src.getPoint().sub(s.getPoint()).norm();
-				if (s2.getDistance() + 1E-3 < distance) {
+				if (hierarchy.isOccluded(ray2, distance - 1E-3)) {
 					return;
 				}
 
 				Point3D l = ray2.direction.negate();
 				Point3D n = s.getNormal();
 				double product = Double.max(n.scalarProduct(l), 0);
-				rgb[0] += (short) (src.getR() * s.getKdr() * product);
-				rgb[1] += (short) (src.getG() * s.getKdg() * product);
-				rgb[2] += (short) (src.getB() * s.getKdb() * product);
+				rgb[0] += (short) (weightR * src.getR() * s.getKdr() * product);
+				rgb[1] += (short) (weightG * src.getG() * s.getKdg() * product);
+				rgb[2] += (short) (weightB * src.getB() * s.getKdb() * product);
 
 				Point3D v = ray.start.sub(s.getPoint());
 				v.modifyNormalize();
@@ -170,29 +311,13 @@ public class Tracer {
 				r.modifyNormalize();
 				double product2 = Math.pow(Double.max(r.scalarProduct(v), 0), s.getKrn());
 
-				rgb[0] += (short) (src.getR() * s.getKrr() * product2);
-				rgb[1] += (short) (src.getG() * s.getKrg() * product2);
-				rgb[2] += (short) (src.getB() * s.getKrb() * product2);
+				rgb[0] += (short) (weightR * src.getR() * s.getKrr() * product2);
+				rgb[1] += (short) (weightG * src.getG() * s.getKrg() * product2);
+				rgb[2] += (short) (weightB * src.getB() * s.getKrb() * product2);
 
 			}
 		});
 
 	}
 
-	/**
-	 * Calculates the closest intersection of given {@code ray} and any
-	 * {@code GraphicalObject}.
-	 * 
-	 * @param objects
-	 *            {@code List} of {@code GraphicalObjects} to check
-	 * @param ray
-	 *            ray to check
-	 * @return closest {@link RayIntersection} or {@code null} if none is found
-	 *         wrapped in {@link Optional}
-	 */
-	private Optional<RayIntersection> getClosestIntersection(List<GraphicalObject> objects, Ray ray) {
-		return objects.stream().map(o -> o.findClosestRayIntersection(ray)).filter(Objects::nonNull)
-				.min((r1, r2) -> Double.compare(r1.getDistance(), r2.getDistance()));
-	}
-
 }
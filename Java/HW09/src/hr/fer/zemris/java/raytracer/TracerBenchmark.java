@@ -0,0 +1,241 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import hr.fer.zemris.java.raytracer.model.LightSource;
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Scene;
+import hr.fer.zemris.java.raytracer.model.Sphere;
+
+/**
+ * Measures how the time of rendering grows with the number of objects in the
+ * scene, with and without the {@link BoundingVolumeHierarchy}, and compares
+ * {@link Tracer} with {@link PackedTracer}. <br>
+ * For each number of spheres a scene is generated by
+ * {@link #createScene(int, long)} and rendered on a single thread from the
+ * same position as in {@link RayCaster}: by {@link Tracer} with a hierarchy
+ * which has all objects in a single leaf, so every object is checked for
+ * every ray, by {@link Tracer} with the default hierarchy and by
+ * {@link PackedTracer}. Each is rendered {@value #WARMUP} times to warm up
+ * and then once measured. The time of building the hierarchy, the times of
+ * rendering, the bytes allocated per pixel, where the JVM reports them, and
+ * the number of pixels which differ from the linear rendering are
+ * printed. <br>
+ * Arguments are optional: the size of the square image, default 256, followed
+ * by the numbers of spheres, default 10, 100, 1000 and 10000.
+ * 
+ * @author Dan
+ *
+ */
+public class TracerBenchmark {
+
+	/**
+	 * Seed of the generated scenes, so each run renders the same scenes.
+	 */
+	private static final long SEED = 42;
+
+	/**
+	 * Half of the edge of the cube in which spheres are generated.
+	 */
+	private static final double EXTENT = 6;
+
+	/**
+	 * Number of renderings before the measured one.
+	 */
+	private static final int WARMUP = 3;
+
+	/**
+	 * Point of the observer.
+	 */
+	private static final Point3D EYE = new Point3D(10, 0, 0);
+
+	/**
+	 * Position that is observed.
+	 */
+	private static final Point3D VIEW = new Point3D(0, 0, 0);
+
+	/**
+	 * View-up vector.
+	 */
+	private static final Point3D VIEW_UP = new Point3D(0, 0, 10);
+
+	/**
+	 * Program entry point. Runs the benchmark.
+	 * 
+	 * @param args
+	 *            size of the image followed by the numbers of spheres; all
+	 *            optional
+	 */
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		int[] counts;
+		if (args.length > 1) {
+			counts = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				counts[i - 1] = Integer.parseInt(args[i]);
+			}
+		} else {
+			counts = new int[] { 10, 100, 1000, 10000 };
+		}
+
+		System.out.printf("%dx%d image, single thread%n", size, size);
+		System.out.println("spheres  build ms  linear ms     bvh ms  packed ms  bvh B/px  packed B/px  different");
+		for (int count : counts) {
+			Scene scene = createScene(count, SEED);
+
+			long start = System.nanoTime();
+			BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(scene.getObjects());
+			long build = System.nanoTime() - start;
+			BoundingVolumeHierarchy linear = new BoundingVolumeHierarchy(scene.getObjects(), Integer.MAX_VALUE);
+			PackedScene packedScene = new PackedScene(scene, hierarchy);
+
+			short[] linearImage = new short[3 * size * size];
+			short[] image = new short[3 * size * size];
+			short[] packedImage = new short[3 * size * size];
+			long[] linearResult = render(new Tracer(scene, linear, EYE, VIEW, VIEW_UP, 20, 20, size, size), size,
+					linearImage);
+			long[] result = render(new Tracer(scene, hierarchy, EYE, VIEW, VIEW_UP, 20, 20, size, size), size, image);
+			long[] packedResult = render(new PackedTracer(packedScene, EYE, VIEW, VIEW_UP, 20, 20, size, size), size,
+					packedImage);
+
+			int different = 0;
+			for (int i = 0; i < image.length; i += 3) {
+				if (differs(image, linearImage, i) || differs(packedImage, linearImage, i)) {
+					different++;
+				}
+			}
+
+			double pixels = size * size;
+			System.out.printf("%7d %9.2f %10.2f %10.2f %10.2f %9.1f %12.1f %10d%n", count, build / 1e6,
+					linearResult[0] / 1e6, result[0] / 1e6, packedResult[0] / 1e6, result[1] / pixels,
+					packedResult[1] / pixels, different);
+		}
+	}
+
+	/**
+	 * Checks if a pixel differs between two images.
+	 * 
+	 * @param image
+	 *            first image
+	 * @param other
+	 *            second image
+	 * @param offset
+	 *            offset of the red component of the pixel
+	 * @return {@code true} if any component differs
+	 */
+	private static boolean differs(short[] image, short[] other, int offset) {
+		return image[offset] != other[offset] || image[offset + 1] != other[offset + 1]
+				|| image[offset + 2] != other[offset + 2];
+	}
+
+	/**
+	 * Generates a scene with the given number of randomly placed spheres of
+	 * random colors in a cube around the origin, lit by two light sources.
+	 * Radius of the spheres decreases as their number grows, so the part of
+	 * the cube they fill stays about the same.
+	 * 
+	 * @param count
+	 *            number of spheres
+	 * @param seed
+	 *            seed of the random generator
+	 * @return generated scene
+	 * @throws IllegalArgumentException
+	 *             if {@code count} is not positive
+	 */
+	public static Scene createScene(int count, long seed) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("Number of spheres has to be positive. Given value: " + count);
+		}
+
+		Random random = new Random(seed);
+		Scene scene = new Scene();
+		double radius = EXTENT / Math.cbrt(count) / 2;
+
+		for (int i = 0; i < count; i++) {
+			Point3D center = new Point3D(coordinate(random), coordinate(random), coordinate(random));
+			double r = radius * (0.5 + random.nextDouble());
+			scene.add(new Sphere(center, r, random.nextDouble(), random.nextDouble(), random.nextDouble(), 0.5, 0.5,
+					0.5, 10));
+		}
+		scene.add(new LightSource(new Point3D(10, 5, 5), 100, 100, 100));
+		scene.add(new LightSource(new Point3D(10, -5, -2), 80, 80, 60));
+
+		return scene;
+	}
+
+	/**
+	 * @param random
+	 *            random generator
+	 * @return random coordinate within the cube
+	 */
+	private static double coordinate(Random random) {
+		return (2 * random.nextDouble() - 1) * EXTENT;
+	}
+
+	/**
+	 * Renders the image {@value #WARMUP} times to warm up and once more
+	 * measured, on the current thread.
+	 * 
+	 * @param tracer
+	 *            tracer which calculates the pixels
+	 * @param size
+	 *            width and height of the image
+	 * @param image
+	 *            array for red, green and blue components of each pixel
+	 * @return time of the measured rendering in nanoseconds and the number of
+	 *         bytes allocated by it, or -1 if the JVM doesn't report it
+	 */
+	private static long[] render(PixelTracer tracer, int size, short[] image) {
+		for (int i = 0; i < WARMUP; i++) {
+			renderOnce(tracer, size, image);
+		}
+
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		renderOnce(tracer, size, image);
+		long time = System.nanoTime() - start;
+		if (allocated >= 0) {
+			allocated = allocatedBytes() - allocated;
+		}
+
+		return new long[] { time, allocated };
+	}
+
+	/**
+	 * Renders the image on the current thread.
+	 * 
+	 * @param tracer
+	 *            tracer which calculates the pixels
+	 * @param size
+	 *            width and height of the image
+	 * @param image
+	 *            array for red, green and blue components of each pixel
+	 */
+	private static void renderOnce(PixelTracer tracer, int size, short[] image) {
+		short[] rgb = new short[3];
+		int offset = 0;
+
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				tracer.calculatePixelRGB(x, y, rgb);
+				image[offset++] = rgb[0];
+				image[offset++] = rgb[1];
+				image[offset++] = rgb[2];
+			}
+		}
+	}
+
+	/**
+	 * @return number of bytes allocated by the current thread so far, or -1
+	 *         if the JVM doesn't report it
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
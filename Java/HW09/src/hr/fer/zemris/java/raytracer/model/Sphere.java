@@ -97,6 +97,69 @@ public class Sphere extends GraphicalObject {
 		this.krn = krn;
 	}
 
+	/**
+	 * @return center of this sphere
+	 */
+	public Point3D getCenter() {
+		return center;
+	}
+
+	/**
+	 * @return radius of this sphere
+	 */
+	public double getRadius() {
+		return radius;
+	}
+
+	/**
+	 * @return coefficient for diffuse component for red color
+	 */
+	public double getKdr() {
+		return kdr;
+	}
+
+	/**
+	 * @return coefficient for diffuse component for green color
+	 */
+	public double getKdg() {
+		return kdg;
+	}
+
+	/**
+	 * @return coefficient for diffuse component for blue color
+	 */
+	public double getKdb() {
+		return kdb;
+	}
+
+	/**
+	 * @return coefficient for reflective component for red color
+	 */
+	public double getKrr() {
+		return krr;
+	}
+
+	/**
+	 * @return coefficient for reflective component for green color
+	 */
+	public double getKrg() {
+		return krg;
+	}
+
+	/**
+	 * @return coefficient for reflective component for blue color
+	 */
+	public double getKrb() {
+		return krb;
+	}
+
+	/**
+	 * @return coefficient {@code n} for reflective component
+	 */
+	public double getKrn() {
+		return krn;
+	}
+
 	/**
 	 * Checks if {@code arg} is in interval [0.0, 1.0].
 	 * 
@@ -117,13 +180,14 @@ public class Sphere extends GraphicalObject {
 	public RayIntersection findClosestRayIntersection(Ray ray) {
 		Point3D distance = ray.start.sub(center);
 		double scalar = ray.direction.scalarProduct(distance);
-		double value = Math.pow(scalar, 2) - Math.pow(distance.norm(), 2) + radius * radius;
+		double value = scalar * scalar - distance.scalarProduct(distance) + radius * radius;
 		if (value < 0) {
 			return null;
 		}
 
-		double lambda1 = -scalar + Math.sqrt(value);
-		double lambda2 = -scalar - Math.sqrt(value);
+		double root = Math.sqrt(value);
+		double lambda1 = -scalar + root;
+		double lambda2 = -scalar - root;
 		double lambda;
 		if (lambda1 < 0) {
 			lambda = lambda2;
@@ -0,0 +1,195 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+/**
+ * Smart script compiled by {@link SmartScriptCompiler} into a flat array of
+ * instructions, which is executed by {@link CompiledScriptEngine}. <br>
+ * Every instruction is an operation code followed by its operands. Operands
+ * are indexes into the constant pool, variable slots, function codes or
+ * addresses of other instructions. <br>
+ * Instances are immutable and can be executed by any number of threads.
+ *
+ * @author Dan
+ * @see SmartScriptCompiler
+ * @see CompiledScriptEngine
+ */
+public class CompiledScript {
+
+	/** Writes a constant {@code String}. Operand: constant index. */
+	static final int TEXT = 0;
+
+	/** Pushes a constant on the stack. Operand: constant index. */
+	static final int PUSH = 1;
+
+	/** Pushes the value of a variable on the stack. Operand: variable slot. */
+	static final int LOAD = 2;
+
+	/** Replaces two values on the stack with their sum. */
+	static final int ADD = 3;
+
+	/** Replaces two values on the stack with their difference. */
+	static final int SUB = 4;
+
+	/** Replaces two values on the stack with their product. */
+	static final int MUL = 5;
+
+	/** Replaces two values on the stack with their quotient. */
+	static final int DIV = 6;
+
+	/** Calls a function. Operand: function code. */
+	static final int CALL = 7;
+
+	/** Writes all values on the stack, from the bottom, and clears it. */
+	static final int ECHO = 8;
+
+	/**
+	 * Begins a loop with the start, end and step values taken from the
+	 * stack. Operand: variable slot.
+	 */
+	static final int LOOP_BEGIN = 9;
+
+	/**
+	 * Jumps to the given address if the loop variable is greater than the end
+	 * value. Operands: variable slot, address.
+	 */
+	static final int LOOP_TEST = 10;
+
+	/**
+	 * Increments the loop variable by the step value and jumps to the given
+	 * address. Operands: variable slot, address.
+	 */
+	static final int LOOP_END = 11;
+
+	/**
+	 * Ends a loop and restores the previous value of the loop variable.
+	 * Operand: variable slot.
+	 */
+	static final int LOOP_EXIT = 12;
+
+	/** Names of the operation codes, used for printing. */
+	private static final String[] NAMES = { "TEXT", "PUSH", "LOAD", "ADD", "SUB", "MUL", "DIV", "CALL", "ECHO",
+			"LOOP_BEGIN", "LOOP_TEST", "LOOP_END", "LOOP_EXIT" };
+
+	/** Number of operands of each operation code. */
+	private static final int[] OPERANDS = { 1, 1, 1, 0, 0, 0, 0, 1, 0, 1, 2, 2, 1 };
+
+	/** Code of the {@code @sin} function. */
+	static final int SIN = 0;
+
+	/** Code of the {@code @decfmt} function. */
+	static final int DECFMT = 1;
+
+	/** Code of the {@code @dup} function. */
+	static final int DUP = 2;
+
+	/** Code of the {@code @swap} function. */
+	static final int SWAP = 3;
+
+	/** Code of the {@code @setMimeType} function. */
+	static final int SET_MIME_TYPE = 4;
+
+	/** Code of the {@code @paramGet} function. */
+	static final int PARAM_GET = 5;
+
+	/** Code of the {@code @pparamGet} function. */
+	static final int PPARAM_GET = 6;
+
+	/** Code of the {@code @pparamSet} function. */
+	static final int PPARAM_SET = 7;
+
+	/** Code of the {@code @pparamDel} function. */
+	static final int PPARAM_DEL = 8;
+
+	/** Code of the {@code @tparamGet} function. */
+	static final int TPARAM_GET = 9;
+
+	/** Code of the {@code @tparamSet} function. */
+	static final int TPARAM_SET = 10;
+
+	/** Code of the {@code @tparamDel} function. */
+	static final int TPARAM_DEL = 11;
+
+	/** Names of supported functions; function code is the index. */
+	static final String[] FUNCTIONS = { "sin", "decfmt", "dup", "swap", "setMimeType", "paramGet", "pparamGet",
+			"pparamSet", "pparamDel", "tparamGet", "tparamSet", "tparamDel" };
+
+	/** Instructions. */
+	final int[] code;
+
+	/** Constant pool. */
+	final Object[] constants;
+
+	/** Names of the variables; variable slot is the index. */
+	final String[] variables;
+
+	/** Maximum number of values on the stack. */
+	final int maxStack;
+
+	/** Maximum number of nested loops. */
+	final int maxLoopDepth;
+
+	/**
+	 * Creates a new {@code CompiledScript} with given arguments.
+	 *
+	 * @param code
+	 *            instructions
+	 * @param constants
+	 *            constant pool
+	 * @param variables
+	 *            names of the variables
+	 * @param maxStack
+	 *            maximum number of values on the stack
+	 * @param maxLoopDepth
+	 *            maximum number of nested loops
+	 */
+	CompiledScript(int[] code, Object[] constants, String[] variables, int maxStack, int maxLoopDepth) {
+		this.code = code;
+		this.constants = constants;
+		this.variables = variables;
+		this.maxStack = maxStack;
+		this.maxLoopDepth = maxLoopDepth;
+	}
+
+	/**
+	 * @return number of {@code ints} in the instruction array
+	 */
+	public int getCodeLength() {
+		return code.length;
+	}
+
+	/**
+	 * @return listing of all instructions, one per line
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		int pc = 0;
+		while (pc < code.length) {
+			int op = code[pc];
+			sb.append(String.format("%4d  %-10s", pc, NAMES[op]));
+			for (int i = 1; i <= OPERANDS[op]; i++) {
+				sb.append(' ').append(code[pc + i]);
+			}
+			switch (op) {
+			case TEXT:
+			case PUSH:
+				sb.append("  ; ").append(constants[code[pc + 1]].toString().replace("\r", "\\r").replace("\n", "\\n"));
+				break;
+			case LOAD:
+			case LOOP_BEGIN:
+			case LOOP_TEST:
+			case LOOP_END:
+			case LOOP_EXIT:
+				sb.append("  ; ").append(variables[code[pc + 1]]);
+				break;
+			case CALL:
+				sb.append("  ; @").append(FUNCTIONS[code[pc + 1]]);
+				break;
+			default:
+				break;
+			}
+			sb.append(System.lineSeparator());
+			pc += 1 + OPERANDS[op];
+		}
+		return sb.toString();
+	}
+}
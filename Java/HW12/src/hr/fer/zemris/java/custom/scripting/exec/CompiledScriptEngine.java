@@ -0,0 +1,240 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.EmptyStackException;
+import java.util.Objects;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * {@code CompiledScriptEngine} executes a {@link CompiledScript}. It produces
+ * the same output as {@link SmartScriptEngine} executing the original
+ * document, but instead of visiting the tree it runs a single loop over the
+ * instruction array with an array based stack and variable slots.
+ *
+ * @author Dan
+ * @see SmartScriptCompiler
+ * @see RequestContext
+ */
+public class CompiledScriptEngine {
+
+	/** Script to execute. */
+	private CompiledScript script;
+
+	/** Contains context and {@code OutputStream} for this script. */
+	private RequestContext requestContext;
+
+	/**
+	 * Creates a new {@code CompiledScriptEngine} with given arguments.
+	 *
+	 * @param script
+	 *            compiled script to execute
+	 * @param requestContext
+	 *            context for executing the script
+	 */
+	public CompiledScriptEngine(CompiledScript script, RequestContext requestContext) {
+		this.script = Objects.requireNonNull(script, "Script cannot be null!");
+		this.requestContext = Objects.requireNonNull(requestContext, "Context cannot be null!");
+	}
+
+	/**
+	 * Starts the execution of the script given in the constructor.
+	 */
+	public void execute() {
+		int[] code = script.code;
+		Object[] constants = script.constants;
+		Object[] stack = new Object[script.maxStack];
+		ValueWrapper[] variables = new ValueWrapper[script.variables.length];
+		ValueWrapper[] savedVariables = new ValueWrapper[script.maxLoopDepth];
+		ValueWrapper[] endValues = new ValueWrapper[script.maxLoopDepth];
+		ValueWrapper[] stepValues = new ValueWrapper[script.maxLoopDepth];
+		ValueWrapper result = new ValueWrapper(null);
+		int sp = 0;
+		int loop = -1;
+		int pc = 0;
+
+		try {
+			while (pc < code.length) {
+				switch (code[pc++]) {
+				case CompiledScript.TEXT:
+					requestContext.write((String) constants[code[pc++]]);
+					break;
+
+				case CompiledScript.PUSH:
+					stack[sp++] = constants[code[pc++]];
+					break;
+
+				case CompiledScript.LOAD:
+					ValueWrapper variable = variables[code[pc++]];
+					if (variable == null) {
+						throw new EmptyStackException();
+					}
+					stack[sp++] = variable.getValue();
+					break;
+
+				case CompiledScript.ADD:
+					sp--;
+					result.setValue(stack[sp - 1]);
+					result.increment(stack[sp]);
+					stack[sp - 1] = result.getValue();
+					break;
+
+				case CompiledScript.SUB:
+					sp--;
+					result.setValue(stack[sp - 1]);
+					result.decrement(stack[sp]);
+					stack[sp - 1] = result.getValue();
+					break;
+
+				case CompiledScript.MUL:
+					sp--;
+					result.setValue(stack[sp - 1]);
+					result.multiply(stack[sp]);
+					stack[sp - 1] = result.getValue();
+					break;
+
+				case CompiledScript.DIV:
+					sp--;
+					result.setValue(stack[sp - 1]);
+					result.divide(stack[sp]);
+					stack[sp - 1] = result.getValue();
+					break;
+
+				case CompiledScript.CALL:
+					sp = callFunction(code[pc++], stack, sp);
+					break;
+
+				case CompiledScript.ECHO:
+					for (int i = 0; i < sp; i++) {
+						requestContext.write(stack[i].toString());
+						stack[i] = null;
+					}
+					sp = 0;
+					break;
+
+				case CompiledScript.LOOP_BEGIN:
+					int slot = code[pc++];
+					loop++;
+					stepValues[loop] = new ValueWrapper(stack[--sp]);
+					endValues[loop] = new ValueWrapper(stack[--sp]);
+					savedVariables[loop] = variables[slot];
+					variables[slot] = new ValueWrapper(stack[--sp]);
+					break;
+
+				case CompiledScript.LOOP_TEST:
+					slot = code[pc++];
+					int exit = code[pc++];
+					if (variables[slot].numCompare(endValues[loop]) > 0) {
+						pc = exit;
+					}
+					break;
+
+				case CompiledScript.LOOP_END:
+					slot = code[pc++];
+					variables[slot].increment(stepValues[loop]);
+					pc = code[pc];
+					break;
+
+				case CompiledScript.LOOP_EXIT:
+					slot = code[pc++];
+					variables[slot] = savedVariables[loop];
+					savedVariables[loop] = null;
+					loop--;
+					break;
+
+				default:
+					throw new IllegalStateException("Invalid instruction at: " + (pc - 1));
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Executes the function with given code.
+	 *
+	 * @param function
+	 *            code of the function
+	 * @param stack
+	 *            stack for getting parameters and storing results
+	 * @param sp
+	 *            number of values on the stack
+	 * @return number of values on the stack after the call
+	 */
+	private int callFunction(int function, Object[] stack, int sp) {
+		Object value;
+		Object defValue;
+		switch (function) {
+		case CompiledScript.SIN:
+			stack[sp - 1] = Math.sin(getAsDouble(stack[sp - 1]) * Math.PI / 180);
+			return sp;
+		case CompiledScript.DECFMT:
+			DecimalFormat f = new DecimalFormat((String) stack[sp - 1]);
+			stack[sp - 2] = f.format(getAsDouble(stack[sp - 2]));
+			return sp - 1;
+		case CompiledScript.DUP:
+			stack[sp] = stack[sp - 1];
+			return sp + 1;
+		case CompiledScript.SWAP:
+			value = stack[sp - 1];
+			stack[sp - 1] = stack[sp - 2];
+			stack[sp - 2] = value;
+			return sp;
+		case CompiledScript.SET_MIME_TYPE:
+			requestContext.setMimeType((String) stack[sp - 1]);
+			return sp - 1;
+		case CompiledScript.PARAM_GET:
+			defValue = stack[sp - 1];
+			value = requestContext.getParameter((String) stack[sp - 2]);
+			stack[sp - 2] = value == null ? defValue : value;
+			return sp - 1;
+		case CompiledScript.PPARAM_GET:
+			defValue = stack[sp - 1];
+			value = requestContext.getPersistentParameter((String) stack[sp - 2]);
+			stack[sp - 2] = value == null ? defValue : value;
+			return sp - 1;
+		case CompiledScript.PPARAM_SET:
+			requestContext.setPersistentParameter((String) stack[sp - 1], stack[sp - 2].toString());
+			return sp - 2;
+		case CompiledScript.PPARAM_DEL:
+			requestContext.removePersistentParameter((String) stack[sp - 1]);
+			return sp - 1;
+		case CompiledScript.TPARAM_GET:
+			defValue = stack[sp - 1];
+			value = requestContext.getTemporaryParameter((String) stack[sp - 2]);
+			stack[sp - 2] = value == null ? defValue : value;
+			return sp - 1;
+		case CompiledScript.TPARAM_SET:
+			requestContext.setTemporaryParameter((String) stack[sp - 1], stack[sp - 2].toString());
+			return sp - 2;
+		case CompiledScript.TPARAM_DEL:
+			requestContext.removeTemporaryParameter((String) stack[sp - 1]);
+			return sp - 1;
+		default:
+			throw new UnsupportedOperationException("Unsupported function: " + CompiledScript.FUNCTIONS[function]);
+		}
+	}
+
+	/**
+	 * Converts the given {@code Object} to a {@code double} if possible.
+	 *
+	 * @param value
+	 *            value to convert
+	 * @return {@code double} value of the {@code value}
+	 * @throws IllegalArgumentException
+	 *             if {@code value} is not convertible to a {@code double}
+	 */
+	private static double getAsDouble(Object value) {
+		if (value instanceof Double) {
+			return (Double) value;
+		} else if (value instanceof Integer) {
+			return ((Integer) value).doubleValue();
+		} else if (value instanceof String) {
+			return Double.parseDouble((String) value);
+		} else {
+			throw new IllegalArgumentException("Given object cannot be converted to Double!");
+		}
+	}
+}
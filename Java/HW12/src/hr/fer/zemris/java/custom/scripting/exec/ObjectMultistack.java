@@ -1,5 +1,6 @@
 package hr.fer.zemris.java.custom.scripting.exec;
 
+import java.util.Arrays;
 import java.util.EmptyStackException;
 import java.util.HashMap;
 import java.util.Map;
@@ -8,6 +9,12 @@ import java.util.Map;
  * This class represents a map, with {@code Strings} as keys that can be mapped
  * to multiple values, of type {@link ValueWrapper}, organized in a stack-like
  * (LIFO) structure.
+ * <p>
+ * Every key is given a slot, an index into an array of stacks, the first time
+ * it is used. Besides the methods taking a key, all operations are offered
+ * with the slot obtained by {@link #getSlot(String)}, so the stack of a
+ * frequently used key (e.g. a loop variable) is reached without any map
+ * lookup.
  * 
  * @author Dan
  *
@@ -47,15 +54,46 @@ public class ObjectMultistack {
 	}
 
 	/**
-	 * Map for storage of all entries.
+	 * Initial number of slots.
 	 */
-	private Map<String, MultistackEntry> map;
+	private static final int INITIAL_CAPACITY = 8;
+
+	/**
+	 * Slots of all keys that were ever used.
+	 */
+	private Map<String, Integer> slots;
+
+	/**
+	 * Top entries of all stacks; slot is the index.
+	 */
+	private MultistackEntry[] stacks;
 
 	/**
 	 * Creates a new empty {@code ObjectMultistack}.
 	 */
 	public ObjectMultistack() {
-		map = new HashMap<>();
+		slots = new HashMap<>();
+		stacks = new MultistackEntry[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns the slot of given key (name), assigning a new one if the key
+	 * hasn't been used before. Slot of a key never changes.
+	 * 
+	 * @param name
+	 *            key of the stack
+	 * @return slot of the stack bounded with given key
+	 */
+	public int getSlot(String name) {
+		Integer slot = slots.get(name);
+		if (slot == null) {
+			slot = slots.size();
+			slots.put(name, slot);
+			if (slot == stacks.length) {
+				stacks = Arrays.copyOf(stacks, 2 * stacks.length);
+			}
+		}
+		return slot;
 	}
 
 	/**
@@ -67,7 +105,19 @@ public class ObjectMultistack {
 	 *         otherwise
 	 */
 	public boolean isEmpty(String name) {
-		return map.get(name) == null;
+		Integer slot = slots.get(name);
+		return slot == null || stacks[slot] == null;
+	}
+
+	/**
+	 * Checks if the stack in given slot is empty.
+	 * 
+	 * @param slot
+	 *            slot to check
+	 * @return {@code true} if the stack is empty; {@code false} otherwise
+	 */
+	public boolean isEmpty(int slot) {
+		return stacks[slot] == null;
 	}
 
 	/**
@@ -79,8 +129,19 @@ public class ObjectMultistack {
 	 *            value to be added
 	 */
 	public void push(String name, ValueWrapper valueWrapper) {
-		MultistackEntry entry = new MultistackEntry(valueWrapper, null);
-		entry.next = map.put(name, entry);
+		push(getSlot(name), valueWrapper);
+	}
+
+	/**
+	 * Adds a given value to the stack in given slot.
+	 * 
+	 * @param slot
+	 *            slot of the stack
+	 * @param valueWrapper
+	 *            value to be added
+	 */
+	public void push(int slot, ValueWrapper valueWrapper) {
+		stacks[slot] = new MultistackEntry(valueWrapper, stacks[slot]);
 	}
 
 	/**
@@ -93,7 +154,26 @@ public class ObjectMultistack {
 	 *             if given key is not bounded to any stack
 	 */
 	public ValueWrapper peek(String name) {
-		MultistackEntry entry = map.get(name);
+		Integer slot = slots.get(name);
+
+		if (slot == null) {
+			throw new EmptyStackException();
+		} else {
+			return peek(slot);
+		}
+	}
+
+	/**
+	 * Returns the last value added to the stack in given slot.
+	 * 
+	 * @param slot
+	 *            slot of the stack
+	 * @return last value added to the stack in given slot
+	 * @throws EmptyStackException
+	 *             if the stack is empty
+	 */
+	public ValueWrapper peek(int slot) {
+		MultistackEntry entry = stacks[slot];
 
 		if (entry == null) {
 			throw new EmptyStackException();
@@ -113,17 +193,31 @@ public class ObjectMultistack {
 	 *             if given key is not bounded to any stack
 	 */
 	public ValueWrapper pop(String name) {
-		MultistackEntry entry = map.get(name);
+		Integer slot = slots.get(name);
 
-		if (entry == null) {
+		if (slot == null) {
 			throw new EmptyStackException();
 		} else {
-			if (entry.next == null) {
-				map.remove(name);
-			} else {
-				map.put(name, entry.next);
-			}
+			return pop(slot);
+		}
+	}
+
+	/**
+	 * Returns and removes the last value added to the stack in given slot.
+	 * 
+	 * @param slot
+	 *            slot of the stack
+	 * @return last value added to the stack in given slot
+	 * @throws EmptyStackException
+	 *             if the stack is empty
+	 */
+	public ValueWrapper pop(int slot) {
+		MultistackEntry entry = stacks[slot];
 
+		if (entry == null) {
+			throw new EmptyStackException();
+		} else {
+			stacks[slot] = entry.next;
 			return entry.value;
 		}
 	}
@@ -0,0 +1,254 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+/**
+ * {@code SmartScriptCompiler} translates the document produced by
+ * {@code SmartScriptParser} into a {@link CompiledScript}. <br>
+ * Element types, operators and function names are resolved during the
+ * compilation, and variables are mapped to numbered slots, so the
+ * {@link CompiledScriptEngine} doesn't have to inspect the tree at all.
+ * Unsupported operators and functions are reported while compiling.
+ *
+ * @author Dan
+ */
+public class SmartScriptCompiler {
+
+	/** Produced instructions. */
+	private int[] code;
+
+	/** Number of used {@code ints} in the {@link #code}. */
+	private int length;
+
+	/** Constant pool. */
+	private List<Object> constants;
+
+	/** Indexes of the constants in the constant pool. */
+	private Map<Object, Integer> constantIndexes;
+
+	/** Slots of the variables. */
+	private Map<String, Integer> variables;
+
+	/** Maximum number of values on the stack. */
+	private int maxStack;
+
+	/** Current number of nested loops. */
+	private int loopDepth;
+
+	/** Maximum number of nested loops. */
+	private int maxLoopDepth;
+
+	/** Compiled script. */
+	private CompiledScript compiledScript;
+
+	/**
+	 * Implementation of {@code INodeVisitor} which emits instructions for
+	 * every {@code Node}.
+	 */
+	private INodeVisitor visitor = new INodeVisitor() {
+
+		@Override
+		public void visitTextNode(TextNode node) {
+			emit(CompiledScript.TEXT, constant(node.getText()));
+		}
+
+		@Override
+		public void visitForLoopNode(ForLoopNode node) {
+			int slot = variable(node.getVariable().getName());
+			compileElement(node.getStartExpression());
+			compileElement(node.getEndExpression());
+			if (node.getStepExpression() == null) {
+				emit(CompiledScript.PUSH, constant(1));
+			} else {
+				compileElement(node.getStepExpression());
+			}
+			maxStack = Math.max(maxStack, 3);
+
+			emit(CompiledScript.LOOP_BEGIN, slot);
+			loopDepth++;
+			maxLoopDepth = Math.max(maxLoopDepth, loopDepth);
+
+			int test = length;
+			emit(CompiledScript.LOOP_TEST, slot, -1);
+			visitChildren(node);
+			emit(CompiledScript.LOOP_END, slot, test);
+			code[test + 2] = length;
+			emit(CompiledScript.LOOP_EXIT, slot);
+			loopDepth--;
+		}
+
+		@Override
+		public void visitEchoNode(EchoNode node) {
+			Element[] elements = node.getElements();
+			for (Element element : elements) {
+				compileElement(element);
+			}
+			maxStack = Math.max(maxStack, elements.length);
+			emit(CompiledScript.ECHO);
+		}
+
+		@Override
+		public void visitDocumentNode(DocumentNode node) {
+			visitChildren(node);
+		}
+
+		/**
+		 * Visits all children of given {@code Node}.
+		 *
+		 * @param node
+		 *            parent node
+		 */
+		private void visitChildren(Node node) {
+			int n = node.numberOfChildren();
+			for (int i = 0; i < n; i++) {
+				node.getChild(i).accept(this);
+			}
+		}
+	};
+
+	/**
+	 * Creates a new {@code SmartScriptCompiler} and compiles the given
+	 * document.
+	 *
+	 * @param documentNode
+	 *            parsed document to compile
+	 * @throws UnsupportedOperationException
+	 *             if the document uses an unsupported operator or function
+	 */
+	public SmartScriptCompiler(DocumentNode documentNode) {
+		Objects.requireNonNull(documentNode, "Document cannot be null!");
+
+		code = new int[64];
+		constants = new ArrayList<>();
+		constantIndexes = new HashMap<>();
+		variables = new HashMap<>();
+
+		documentNode.accept(visitor);
+
+		String[] names = new String[variables.size()];
+		variables.forEach((name, slot) -> names[slot] = name);
+		compiledScript = new CompiledScript(Arrays.copyOf(code, length), constants.toArray(), names, maxStack,
+				maxLoopDepth);
+	}
+
+	/**
+	 * @return the compiled script
+	 */
+	public CompiledScript getCompiledScript() {
+		return compiledScript;
+	}
+
+	/**
+	 * Emits instructions which push the value of given {@code Element} or
+	 * apply the operator or function it represents.
+	 *
+	 * @param element
+	 *            element to compile
+	 * @throws UnsupportedOperationException
+	 *             if the element is not supported
+	 */
+	private void compileElement(Element element) {
+		if (element instanceof ElementConstantInteger) {
+			emit(CompiledScript.PUSH, constant(((ElementConstantInteger) element).getValue()));
+
+		} else if (element instanceof ElementConstantDouble) {
+			emit(CompiledScript.PUSH, constant(((ElementConstantDouble) element).getValue()));
+
+		} else if (element instanceof ElementString) {
+			emit(CompiledScript.PUSH, constant(((ElementString) element).getValue()));
+
+		} else if (element instanceof ElementVariable) {
+			emit(CompiledScript.LOAD, variable(((ElementVariable) element).getName()));
+
+		} else if (element instanceof ElementOperator) {
+			String operator = ((ElementOperator) element).getSymbol();
+			switch (operator) {
+			case "+":
+				emit(CompiledScript.ADD);
+				break;
+			case "-":
+				emit(CompiledScript.SUB);
+				break;
+			case "*":
+				emit(CompiledScript.MUL);
+				break;
+			case "/":
+				emit(CompiledScript.DIV);
+				break;
+			default:
+				throw new UnsupportedOperationException("Unsupported operator: " + operator);
+			}
+
+		} else if (element instanceof ElementFunction) {
+			String function = ((ElementFunction) element).getName();
+			int index = Arrays.asList(CompiledScript.FUNCTIONS).indexOf(function);
+			if (index < 0) {
+				throw new UnsupportedOperationException("Unsupported function: " + function);
+			}
+			emit(CompiledScript.CALL, index);
+
+		} else {
+			throw new UnsupportedOperationException("Invalid element type.");
+		}
+	}
+
+	/**
+	 * Appends given values to the {@link #code}.
+	 *
+	 * @param values
+	 *            operation code and its operands
+	 */
+	private void emit(int... values) {
+		if (length + values.length > code.length) {
+			code = Arrays.copyOf(code, Math.max(code.length * 2, length + values.length));
+		}
+		System.arraycopy(values, 0, code, length, values.length);
+		length += values.length;
+	}
+
+	/**
+	 * Returns the index of given constant in the constant pool, adding it if
+	 * needed.
+	 *
+	 * @param value
+	 *            constant value
+	 * @return index of the constant
+	 */
+	private int constant(Object value) {
+		return constantIndexes.computeIfAbsent(value, v -> {
+			constants.add(v);
+			return constants.size() - 1;
+		});
+	}
+
+	/**
+	 * Returns the slot of the variable with given name, assigning a new one if
+	 * needed.
+	 *
+	 * @param name
+	 *            name of the variable
+	 * @return slot of the variable
+	 */
+	private int variable(String name) {
+		return variables.computeIfAbsent(name, n -> variables.size());
+	}
+}
@@ -44,6 +44,16 @@ public class SmartScriptEngine {
 	 * {@code Node}.
 	 */
 	private INodeVisitor visitor = new INodeVisitor() {
+
+		/**
+		 * Stack for evaluating echo nodes; reused since they are never
+		 * nested.
+		 */
+		private Stack<Object> stack = new Stack<>();
+
+		/** Reused holder for results of the operators. */
+		private ValueWrapper result = new ValueWrapper(null);
+
 		@Override
 		public void visitTextNode(TextNode node) {
 			try {
@@ -55,35 +65,28 @@ public class SmartScriptEngine {
 
 		@Override
 		public void visitForLoopNode(ForLoopNode node) {
-			String variable = node.getVariable().getName();
-			Object startValue = getElementValue(node.getStartExpression());
-			Object stepValue = node.getStepExpression() == null ? 1 : getElementValue(node.getStepExpression());
-			Object endValue = getElementValue(node.getEndExpression());
-			multistack.push(variable, new ValueWrapper(startValue));
+			int slot = multistack.getSlot(node.getVariable().getName());
+			ValueWrapper startValue = new ValueWrapper(getElementValue(node.getStartExpression()));
+			ValueWrapper stepValue = new ValueWrapper(
+					node.getStepExpression() == null ? 1 : getElementValue(node.getStepExpression()));
+			ValueWrapper endValue = new ValueWrapper(getElementValue(node.getEndExpression()));
+			multistack.push(slot, startValue);
 
-			while (multistack.peek(variable).numCompare(endValue) <= 0) {
+			while (multistack.peek(slot).numCompare(endValue) <= 0) {
 				int n = node.numberOfChildren();
 				for (int i = 0; i < n; i++) {
 					node.getChild(i).accept(this);
 				}
 
-				multistack.peek(variable).increment(stepValue);
+				multistack.peek(slot).increment(stepValue);
 			}
 
-			multistack.pop(variable);
+			multistack.pop(slot);
 		}
 
 		@Override
 		public void visitEchoNode(EchoNode node) {
-			Stack<Object> stack = new Stack<>();
-
 			for (Element element : node.getElements()) {
-				try {
-					stack.push(getElementValue(element));
-					continue;
-				} catch (UnsupportedOperationException e) {
-				}
-
 				if (element instanceof ElementVariable) {
 					String var = ((ElementVariable) element).getName();
 					ValueWrapper value = multistack.peek(var);
@@ -101,18 +104,18 @@ public class SmartScriptEngine {
 					executeFunction(((ElementFunction) element).getName(), stack);
 
 				} else {
-					throw new UnsupportedOperationException("Invalid element type.");
+					stack.push(getElementValue(element));
 				}
 			}
 
-			if (!stack.isEmpty()) {
-				stack.forEach(o -> {
-					try {
-						requestContext.write(o.toString());
-					} catch (IOException e) {
-						throw new RuntimeException(e);
-					}
-				});
+			try {
+				for (int i = 0, n = stack.size(); i < n; i++) {
+					requestContext.write(stack.get(i).toString());
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			} finally {
+				stack.clear();
 			}
 		}
 
@@ -161,7 +164,7 @@ public class SmartScriptEngine {
 		 *             if the {@code operator} is not supported
 		 */
 		private Object calculateOperation(Object value1, Object value2, String operator) {
-			ValueWrapper result = new ValueWrapper(value1);
+			result.setValue(value1);
 			switch (operator) {
 			case "+":
 				result.increment(value2);
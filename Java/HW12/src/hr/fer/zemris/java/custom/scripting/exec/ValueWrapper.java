@@ -7,14 +7,57 @@ package hr.fer.zemris.java.custom.scripting.exec;
  * Basic arithmetic operations are offered over that value. Numbers can also be
  * given as {@code Strings} and {@code null} reference is treated as
  * {@code Integer} with value 0. Other types will cause an exception.
+ * <p>
+ * Numbers are kept as primitive {@code int} or {@code double} together with a
+ * type tag, so arithmetic doesn't create new objects. The value is boxed only
+ * when {@link #getValue()} is called, and the boxed object is kept until the
+ * value changes. Operations taking another {@code ValueWrapper} as the operand
+ * don't box at all, which makes them suitable for loop counters.
  * 
  * @author Dan
- *
+ * 
  */
 public class ValueWrapper {
 
+	/** Type tag of an {@code int} value. */
+	private static final int INTEGER = 0;
+
+	/** Type tag of a {@code double} value. */
+	private static final int DOUBLE = 1;
+
+	/** Type tag of any other value, kept only as an {@code Object}. */
+	private static final int OBJECT = 2;
+
+	/** Code of the addition. */
+	private static final int ADD = 0;
+
+	/** Code of the subtraction. */
+	private static final int SUB = 1;
+
+	/** Code of the multiplication. */
+	private static final int MUL = 2;
+
+	/** Code of the division. */
+	private static final int DIV = 3;
+
 	/**
-	 * Current value.
+	 * Type of the current value.
+	 */
+	private int type;
+
+	/**
+	 * Current value if it is an {@code int}.
+	 */
+	private int intValue;
+
+	/**
+	 * Current value if it is a {@code double}.
+	 */
+	private double doubleValue;
+
+	/**
+	 * Current value if its type is not numeric; otherwise boxed numeric value
+	 * or {@code null} if it hasn't been boxed yet.
 	 */
 	private Object value;
 
@@ -23,18 +66,22 @@ public class ValueWrapper {
 	 * 
 	 * @param value
 	 *            value
-	 * @throws IllegalArgumentException
-	 *             if given value is not {@code Integer}, {@code Double} or a
-	 *             {@code String}
 	 */
 	public ValueWrapper(Object value) {
-		this.value = value;
+		setValue(value);
 	}
 
 	/**
 	 * @return current value of this {@code ValueWrapper}
 	 */
 	public Object getValue() {
+		if (value == null) {
+			if (type == INTEGER) {
+				value = Integer.valueOf(intValue);
+			} else if (type == DOUBLE) {
+				value = Double.valueOf(doubleValue);
+			}
+		}
 		return value;
 	}
 
@@ -43,14 +90,44 @@ public class ValueWrapper {
 	 * 
 	 * @param value
 	 *            new value
-	 * @throws IllegalArgumentException
-	 *             if given value is not {@code Integer}, {@code Double} or a
-	 *             {@code String}
 	 */
 	public void setValue(Object value) {
+		if (value instanceof Integer) {
+			type = INTEGER;
+			intValue = (Integer) value;
+		} else if (value instanceof Double) {
+			type = DOUBLE;
+			doubleValue = (Double) value;
+		} else {
+			type = OBJECT;
+		}
 		this.value = value;
 	}
 
+	/**
+	 * Sets the value of this {@code ValueWrapper} to given {@code int}.
+	 * 
+	 * @param value
+	 *            new value
+	 */
+	public void setValue(int value) {
+		type = INTEGER;
+		intValue = value;
+		this.value = null;
+	}
+
+	/**
+	 * Sets the value of this {@code ValueWrapper} to given {@code double}.
+	 * 
+	 * @param value
+	 *            new value
+	 */
+	public void setValue(double value) {
+		type = DOUBLE;
+		doubleValue = value;
+		this.value = null;
+	}
+
 	/**
 	 * Increments value of this {@code ValueWrapper} with given value.
 	 * 
@@ -61,8 +138,21 @@ public class ValueWrapper {
 	 *             {@code String} containing a number
 	 */
 	public void increment(Object incValue) {
-		checkType(value);
-		value = NumberOperations.sum(convertToNumber(value), convertToNumber(incValue));
+		calculate(ADD, incValue);
+	}
+
+	/**
+	 * Increments value of this {@code ValueWrapper} with the value of given
+	 * {@code ValueWrapper}. {@code null} is treated as 0.
+	 * 
+	 * @param incValue
+	 *            increment value
+	 * @throws IllegalArgumentException
+	 *             if given value is not {@code Integer}, {@code Double} or
+	 *             {@code String} containing a number
+	 */
+	public void increment(ValueWrapper incValue) {
+		calculate(ADD, incValue);
 	}
 
 	/**
@@ -75,8 +165,21 @@ public class ValueWrapper {
 	 *             {@code String} containing a number
 	 */
 	public void decrement(Object decValue) {
-		checkType(value);
-		value = NumberOperations.difference(convertToNumber(value), convertToNumber(decValue));
+		calculate(SUB, decValue);
+	}
+
+	/**
+	 * Decrements value of this {@code ValueWrapper} with the value of given
+	 * {@code ValueWrapper}. {@code null} is treated as 0.
+	 * 
+	 * @param decValue
+	 *            decrement value
+	 * @throws IllegalArgumentException
+	 *             if given value is not {@code Integer}, {@code Double} or
+	 *             {@code String} containing a number
+	 */
+	public void decrement(ValueWrapper decValue) {
+		calculate(SUB, decValue);
 	}
 
 	/**
@@ -89,8 +192,21 @@ public class ValueWrapper {
 	 *             {@code String} containing a number
 	 */
 	public void multiply(Object mulValue) {
-		checkType(value);
-		value = NumberOperations.product(convertToNumber(value), convertToNumber(mulValue));
+		calculate(MUL, mulValue);
+	}
+
+	/**
+	 * Multiplies value of this {@code ValueWrapper} with the value of given
+	 * {@code ValueWrapper}. {@code null} is treated as 0.
+	 * 
+	 * @param mulValue
+	 *            multiplication value
+	 * @throws IllegalArgumentException
+	 *             if given value is not {@code Integer}, {@code Double} or
+	 *             {@code String} containing a number
+	 */
+	public void multiply(ValueWrapper mulValue) {
+		calculate(MUL, mulValue);
 	}
 
 	/**
@@ -103,8 +219,21 @@ public class ValueWrapper {
 	 *             {@code String} containing a number
 	 */
 	public void divide(Object divValue) {
-		checkType(value);
-		value = NumberOperations.quotient(convertToNumber(value), convertToNumber(divValue));
+		calculate(DIV, divValue);
+	}
+
+	/**
+	 * Divides value of this {@code ValueWrapper} with the value of given
+	 * {@code ValueWrapper}. {@code null} is treated as 0.
+	 * 
+	 * @param divValue
+	 *            division value
+	 * @throws IllegalArgumentException
+	 *             if given value is not {@code Integer}, {@code Double} or
+	 *             {@code String} containing a number
+	 */
+	public void divide(ValueWrapper divValue) {
+		calculate(DIV, divValue);
 	}
 
 	/**
@@ -117,14 +246,179 @@ public class ValueWrapper {
 	 *         positive value if this value is bigger than the argument
 	 */
 	public int numCompare(Object withValue) {
-		Number first = convertToNumber(value);
-		Number second = convertToNumber(withValue);
+		if (withValue instanceof Integer) {
+			return compare(INTEGER, (Integer) withValue, 0);
+		} else if (withValue instanceof Double) {
+			return compare(DOUBLE, 0, (Double) withValue);
+		}
 
-		if (first instanceof Double || second instanceof Double) {
-			return Double.compare(first.doubleValue(), second.doubleValue());
+		Number number = convertToNumber(withValue);
+		if (number instanceof Integer) {
+			return compare(INTEGER, number.intValue(), 0);
 		} else {
-			return Integer.compare(first.intValue(), second.intValue());
+			return compare(DOUBLE, 0, number.doubleValue());
+		}
+	}
+
+	/**
+	 * Compares value of this {@code ValueWrapper} with the value of given
+	 * {@code ValueWrapper}. {@code null} is treated as 0.
+	 * 
+	 * @param withValue
+	 *            comparing value
+	 * @return {@code Integer} with value 0 if they are equal, with negative
+	 *         value if this value is smaller than the argument and with
+	 *         positive value if this value is bigger than the argument
+	 */
+	public int numCompare(ValueWrapper withValue) {
+		if (withValue == null || withValue.type == OBJECT) {
+			return numCompare(withValue == null ? null : withValue.value);
+		}
+		return compare(withValue.type, withValue.intValue, withValue.doubleValue);
+	}
+
+	/**
+	 * Compares value of this {@code ValueWrapper} with given number.
+	 * 
+	 * @param otherType
+	 *            type of the number
+	 * @param otherInt
+	 *            value of the number if it is an {@code int}
+	 * @param otherDouble
+	 *            value of the number if it is a {@code double}
+	 * @return result of the comparison as in {@link #numCompare(Object)}
+	 */
+	private int compare(int otherType, int otherInt, double otherDouble) {
+		int thisType = type;
+		int thisInt = intValue;
+		double thisDouble = doubleValue;
+		if (thisType == OBJECT) {
+			Number number = convertToNumber(value);
+			thisType = number instanceof Integer ? INTEGER : DOUBLE;
+			thisInt = number.intValue();
+			thisDouble = number.doubleValue();
+		}
+
+		if (thisType == INTEGER && otherType == INTEGER) {
+			return Integer.compare(thisInt, otherInt);
+		}
+		return Double.compare(thisType == INTEGER ? thisInt : thisDouble,
+				otherType == INTEGER ? otherInt : otherDouble);
+	}
+
+	/**
+	 * Applies the given operation with given operand to the value of this
+	 * {@code ValueWrapper}.
+	 * 
+	 * @param operation
+	 *            code of the operation
+	 * @param operand
+	 *            second operand
+	 * @throws IllegalArgumentException
+	 *             if any of the operands is not a number
+	 */
+	private void calculate(int operation, Object operand) {
+		if (operand instanceof Integer) {
+			calculate(operation, INTEGER, (Integer) operand, 0);
+			return;
+		} else if (operand instanceof Double) {
+			calculate(operation, DOUBLE, 0, (Double) operand);
+			return;
+		}
+
+		Number number = convertToNumber(operand);
+		if (number instanceof Integer) {
+			calculate(operation, INTEGER, number.intValue(), 0);
+		} else {
+			calculate(operation, DOUBLE, 0, number.doubleValue());
+		}
+	}
+
+	/**
+	 * Applies the given operation with the value of given
+	 * {@code ValueWrapper} to the value of this {@code ValueWrapper}.
+	 * 
+	 * @param operation
+	 *            code of the operation
+	 * @param operand
+	 *            second operand
+	 * @throws IllegalArgumentException
+	 *             if any of the operands is not a number
+	 */
+	private void calculate(int operation, ValueWrapper operand) {
+		if (operand == null || operand.type == OBJECT) {
+			calculate(operation, operand == null ? null : operand.value);
+		} else {
+			calculate(operation, operand.type, operand.intValue, operand.doubleValue);
+		}
+	}
+
+	/**
+	 * Applies the given operation with given number to the value of this
+	 * {@code ValueWrapper}. If both operands are {@code ints}, so is the
+	 * result; otherwise it is a {@code double}.
+	 * 
+	 * @param operation
+	 *            code of the operation
+	 * @param otherType
+	 *            type of the second operand
+	 * @param otherInt
+	 *            second operand if it is an {@code int}
+	 * @param otherDouble
+	 *            second operand if it is a {@code double}
+	 * @throws IllegalArgumentException
+	 *             if the value of this {@code ValueWrapper} is not a number
+	 * @throws ArithmeticException
+	 *             if an {@code int} is divided by zero
+	 */
+	private void calculate(int operation, int otherType, int otherInt, double otherDouble) {
+		if (type == OBJECT) {
+			checkType(value);
+			Number number = convertToNumber(value);
+			if (number instanceof Integer) {
+				type = INTEGER;
+				intValue = number.intValue();
+			} else {
+				type = DOUBLE;
+				doubleValue = number.doubleValue();
+			}
+		}
+
+		if (type == INTEGER && otherType == INTEGER) {
+			switch (operation) {
+			case ADD:
+				intValue += otherInt;
+				break;
+			case SUB:
+				intValue -= otherInt;
+				break;
+			case MUL:
+				intValue *= otherInt;
+				break;
+			default:
+				intValue /= otherInt;
+				break;
+			}
+		} else {
+			double first = type == INTEGER ? intValue : doubleValue;
+			double second = otherType == INTEGER ? otherInt : otherDouble;
+			switch (operation) {
+			case ADD:
+				doubleValue = first + second;
+				break;
+			case SUB:
+				doubleValue = first - second;
+				break;
+			case MUL:
+				doubleValue = first * second;
+				break;
+			default:
+				doubleValue = first / second;
+				break;
+			}
+			type = DOUBLE;
 		}
+		value = null;
 	}
 
 	/**
@@ -0,0 +1,155 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code ByteRange} is a part of a representation requested with the
+ * {@code Range} header, from the first to the last byte inclusive. <br>
+ * Ranges are parsed with {@link #parse(String, long)}, which resolves suffix
+ * ranges ({@code bytes=-500}) and open ranges ({@code bytes=9500-}) against
+ * the length of the representation and drops the ranges which can't be
+ * satisfied.
+ *
+ * @author Dan
+ */
+public class ByteRange {
+
+	/** Maximum number of ranges in a single request. */
+	public static final int MAX_RANGES = 16;
+
+	/** Position of the first byte. */
+	private final long first;
+
+	/** Position of the last byte. */
+	private final long last;
+
+	/**
+	 * Creates a new {@code ByteRange} with given arguments.
+	 *
+	 * @param first
+	 *            position of the first byte
+	 * @param last
+	 *            position of the last byte
+	 * @throws IllegalArgumentException
+	 *             if the first position is negative or after the last one
+	 */
+	public ByteRange(long first, long last) {
+		if (first < 0 || first > last) {
+			throw new IllegalArgumentException("Invalid byte range: " + first + "-" + last);
+		}
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * @return position of the first byte
+	 */
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * @return position of the last byte
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * @return number of bytes in this range
+	 */
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * Returns the value of the {@code Content-Range} header for this range.
+	 *
+	 * @param completeLength
+	 *            length of the whole representation
+	 * @return value of the {@code Content-Range} header
+	 */
+	public String toContentRange(long completeLength) {
+		return "bytes " + first + "-" + last + "/" + completeLength;
+	}
+
+	/**
+	 * Parses the value of the {@code Range} header. Only the {@code bytes}
+	 * unit is supported. The header is ignored, as the standard allows, if it
+	 * is invalid, uses another unit or asks for more than
+	 * {@value #MAX_RANGES} ranges.
+	 *
+	 * @param header
+	 *            value of the {@code Range} header
+	 * @param length
+	 *            length of the representation
+	 * @return satisfiable ranges in the requested order, which is empty if
+	 *         none of them can be satisfied; or {@code null} if the header is
+	 *         ignored
+	 */
+	public static List<ByteRange> parse(String header, long length) {
+		if (header == null) {
+			return null;
+		}
+		header = header.trim();
+		int index = header.indexOf('=');
+		if (index == -1 || !header.substring(0, index).trim().equalsIgnoreCase("bytes")) {
+			return null;
+		}
+
+		String[] specs = header.substring(index + 1).split(",");
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+		List<ByteRange> ranges = new ArrayList<>();
+		for (String spec : specs) {
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			if (dash == -1) {
+				return null;
+			}
+			String from = spec.substring(0, dash).trim();
+			String to = spec.substring(dash + 1).trim();
+			try {
+				if (from.isEmpty()) {
+					// the last bytes of the representation
+					long suffix = parsePosition(to);
+					if (suffix > 0 && length > 0) {
+						ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+					}
+					continue;
+				}
+				long first = parsePosition(from);
+				long last = to.isEmpty() ? Long.MAX_VALUE : parsePosition(to);
+				if (last < first) {
+					return null;
+				}
+				if (first < length) {
+					ranges.add(new ByteRange(first, Math.min(last, length - 1)));
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		return ranges;
+	}
+
+	/**
+	 * Parses a byte position.
+	 *
+	 * @param text
+	 *            text of the position
+	 * @return byte position
+	 * @throws NumberFormatException
+	 *             if the text is not a non-negative decimal number
+	 */
+	private static long parsePosition(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+				throw new NumberFormatException("Invalid byte position: " + text);
+			}
+		}
+		return Long.parseLong(text);
+	}
+}
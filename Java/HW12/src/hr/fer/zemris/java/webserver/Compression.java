@@ -0,0 +1,151 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@code Compression} offers methods for compressing response content with
+ * the {@code gzip} and {@code deflate} content codings. <br>
+ * The coding is chosen from the client's {@code Accept-Encoding} header by
+ * {@link #negotiate(String)}. Dynamic content is compressed while it is
+ * written using a stream from {@link #newStream(OutputStream, String, int)},
+ * while static content is compressed once with
+ * {@link #compress(byte[], String)} and then cached.
+ *
+ * @author Dan
+ */
+public class Compression {
+
+	/** Name of the {@code gzip} content coding. */
+	public static final String GZIP = "gzip";
+
+	/** Name of the {@code deflate} content coding. */
+	public static final String DEFLATE = "deflate";
+
+	/**
+	 * Private constructor, since this class shouldn't be instantiated.
+	 */
+	private Compression() {
+	}
+
+	/**
+	 * Chooses the content coding from the value of the {@code Accept-Encoding}
+	 * header. {@code gzip} is preferred if both codings are accepted with the
+	 * same quality.
+	 *
+	 * @param acceptEncoding
+	 *            value of the {@code Accept-Encoding} header; can be
+	 *            {@code null}
+	 * @return {@link #GZIP}, {@link #DEFLATE} or {@code null} if the client
+	 *         doesn't accept any of them
+	 */
+	public static String negotiate(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+
+		double gzip = -1;
+		double deflate = -1;
+		double any = -1;
+		for (String part : acceptEncoding.split(",")) {
+			String[] params = part.split(";");
+			double quality = 1;
+			for (int i = 1; i < params.length; i++) {
+				String param = params[i].trim().toLowerCase();
+				if (param.startsWith("q=")) {
+					try {
+						quality = Double.parseDouble(param.substring(2).trim());
+					} catch (NumberFormatException e) {
+						quality = 0;
+					}
+				}
+			}
+
+			switch (params[0].trim().toLowerCase()) {
+			case GZIP:
+			case "x-gzip":
+				gzip = quality;
+				break;
+			case DEFLATE:
+				deflate = quality;
+				break;
+			case "*":
+				any = quality;
+				break;
+			default:
+				break;
+			}
+		}
+
+		if (gzip < 0) {
+			gzip = any;
+		}
+		if (deflate < 0) {
+			deflate = any;
+		}
+		if (gzip <= 0 && deflate <= 0) {
+			return null;
+		}
+		return gzip >= deflate ? GZIP : DEFLATE;
+	}
+
+	/**
+	 * Creates a stream which compresses the data written to it with given
+	 * content coding. The stream has to be closed to write the end of the
+	 * compressed data and release the compressor.
+	 *
+	 * @param out
+	 *            stream for the compressed data
+	 * @param encoding
+	 *            {@link #GZIP} or {@link #DEFLATE}
+	 * @param level
+	 *            compression level, from 0 to 9
+	 * @return compressing stream
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws IllegalArgumentException
+	 *             if the content coding is not supported
+	 */
+	public static DeflaterOutputStream newStream(OutputStream out, String encoding, int level) throws IOException {
+		if (GZIP.equals(encoding)) {
+			return new GZIPOutputStream(out) {
+				{
+					def.setLevel(level);
+				}
+			};
+		} else if (DEFLATE.equals(encoding)) {
+			return new DeflaterOutputStream(out) {
+				{
+					def.setLevel(level);
+				}
+			};
+		} else {
+			throw new IllegalArgumentException("Unsupported content coding: " + encoding);
+		}
+	}
+
+	/**
+	 * Compresses the given data with the best compression level.
+	 *
+	 * @param data
+	 *            data to compress
+	 * @param encoding
+	 *            {@link #GZIP} or {@link #DEFLATE}
+	 * @return compressed data
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws IllegalArgumentException
+	 *             if the content coding is not supported
+	 */
+	public static byte[] compress(byte[] data, String encoding) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 64);
+		try (DeflaterOutputStream out = newStream(bos, encoding, Deflater.BEST_COMPRESSION)) {
+			out.write(data);
+		}
+		return bos.toByteArray();
+	}
+}
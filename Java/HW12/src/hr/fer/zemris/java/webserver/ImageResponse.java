@@ -0,0 +1,235 @@
+package hr.fer.zemris.java.webserver;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * {@code ImageResponse} helps {@link IWebWorker IWebWorkers} which send
+ * generated images of a fixed size. <br>
+ * Images, encoders and output buffers are kept in a {@link ResourcePool}
+ * shared by all threads and reused for all images, so a request allocates
+ * only the encoded bytes, even if every request gets a new virtual thread.
+ * Images are encoded in memory, without the temporary files
+ * {@link ImageIO#write(java.awt.image.RenderedImage, String, java.io.OutputStream)}
+ * uses by default. <br>
+ * If the image depends only on the request's parameters, the worker can give
+ * a cache key describing them. Encoded bytes are then cached under that key
+ * and the image is rendered only on the first request. The images are kept
+ * in an {@link LruCache}, so their total size is bounded and the least
+ * recently used images are evicted first. <br>
+ * This class is thread safe; a worker can keep a single instance.
+ *
+ * @author Dan
+ */
+public class ImageResponse {
+
+	/**
+	 * Draws the image of a response.
+	 *
+	 * @author Dan
+	 */
+	public interface Renderer {
+
+		/**
+		 * Draws the image. The image contains the previous drawing, so the
+		 * whole image should be painted.
+		 *
+		 * @param g2d
+		 *            graphics of the image; disposed after the call
+		 * @param width
+		 *            width of the image
+		 * @param height
+		 *            height of the image
+		 */
+		void render(Graphics2D g2d, int width, int height);
+	}
+
+	/**
+	 * Objects used for rendering a single image at a time.
+	 *
+	 * @author Dan
+	 */
+	private static class Canvas {
+
+		/** Image to draw on. */
+		private final BufferedImage image;
+
+		/** Encoder of the image. */
+		private final ImageWriter writer;
+
+		/** Buffer for the encoded image. */
+		private final ByteArrayOutputStream bos;
+
+		/**
+		 * Creates a new {@code Canvas} with given arguments.
+		 *
+		 * @param image
+		 *            image to draw on
+		 * @param writer
+		 *            encoder of the image
+		 */
+		private Canvas(BufferedImage image, ImageWriter writer) {
+			this.image = image;
+			this.writer = writer;
+			bos = new ByteArrayOutputStream(16 * 1024);
+		}
+	}
+
+	/** Maximum number of idle canvases kept in the pool. */
+	private static final int MAX_IDLE_CANVASES = 16;
+
+	/** Width of the images. */
+	private final int width;
+
+	/** Height of the images. */
+	private final int height;
+
+	/** MIME type of the encoded images. */
+	private final String mimeType;
+
+	/** Canvases which are not in use. */
+	private final ResourcePool<Canvas> canvases;
+
+	/** Encoded images mapped to their keys. */
+	private final LruCache<String, byte[]> cache;
+
+	/** Number of images taken from the cache. */
+	private final LongAdder hits;
+
+	/**
+	 * Creates a new {@code ImageResponse} with given arguments.
+	 *
+	 * @param width
+	 *            width of the images
+	 * @param height
+	 *            height of the images
+	 * @param imageType
+	 *            type of the images, one of the {@code BufferedImage}
+	 *            constants
+	 * @param format
+	 *            informal name of the image format, for example {@code png}
+	 * @param maxCacheSize
+	 *            maximum total size of the cached images in bytes
+	 * @throws IllegalArgumentException
+	 *             if the size is not positive or the format is not supported
+	 */
+	public ImageResponse(int width, int height, int imageType, String format, long maxCacheSize) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Image size must be positive.");
+		}
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+		if (!writers.hasNext()) {
+			throw new IllegalArgumentException("Unsupported image format: " + format);
+		}
+		String[] mimeTypes = writers.next().getOriginatingProvider().getMIMETypes();
+
+		this.width = width;
+		this.height = height;
+		mimeType = mimeTypes != null && mimeTypes.length > 0 ? mimeTypes[0] : "image/" + format;
+		canvases = ResourcePool.shared(() -> new Canvas(new BufferedImage(width, height, imageType),
+				ImageIO.getImageWritersByFormatName(format).next()), MAX_IDLE_CANVASES);
+		cache = new LruCache<>(maxCacheSize);
+		hits = new LongAdder();
+	}
+
+	/**
+	 * Sends the image to the client. If the cache key is given and the image
+	 * is cached, the cached image is sent; otherwise the image is rendered,
+	 * encoded and, if the key is given, cached.
+	 *
+	 * @param context
+	 *            context for sending the response
+	 * @param cacheKey
+	 *            key which fully determines the image; or {@code null} if the
+	 *            image shouldn't be cached
+	 * @param renderer
+	 *            draws the image
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void send(RequestContext context, String cacheKey, Renderer renderer) throws IOException {
+		context.setMimeType(mimeType);
+		context.write(encode(cacheKey, renderer));
+	}
+
+	/**
+	 * Returns the encoded image. If the cache key is given and the image is
+	 * cached, the cached image is returned; otherwise the image is rendered,
+	 * encoded and, if the key is given, cached.
+	 *
+	 * @param cacheKey
+	 *            key which fully determines the image; or {@code null} if the
+	 *            image shouldn't be cached
+	 * @param renderer
+	 *            draws the image
+	 * @return encoded image; must not be modified
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public byte[] encode(String cacheKey, Renderer renderer) throws IOException {
+		if (cacheKey != null) {
+			byte[] data = cache.get(cacheKey);
+			if (data != null) {
+				hits.increment();
+				return data;
+			}
+		}
+
+		byte[] data;
+		Canvas canvas = canvases.acquire();
+		try {
+			Graphics2D g2d = canvas.image.createGraphics();
+			try {
+				renderer.render(g2d, width, height);
+			} finally {
+				g2d.dispose();
+			}
+
+			canvas.bos.reset();
+			try (ImageOutputStream ios = new MemoryCacheImageOutputStream(canvas.bos)) {
+				canvas.writer.setOutput(ios);
+				canvas.writer.write(canvas.image);
+			} finally {
+				canvas.writer.setOutput(null);
+			}
+			data = canvas.bos.toByteArray();
+		} finally {
+			canvases.release(canvas);
+		}
+
+		if (cacheKey != null) {
+			cache.put(cacheKey, data, data.length);
+		}
+		return data;
+	}
+
+	/**
+	 * @return MIME type of the encoded images
+	 */
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	/**
+	 * @return number of images taken from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return current total size of the cached images
+	 */
+	public long getCacheSize() {
+		return cache.getSize();
+	}
+}
@@ -0,0 +1,166 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code LruCache} maps keys to values whose total size is bounded. Every
+ * value is put with its size, for example its length in bytes, and once the
+ * total size exceeds the maximum, the least recently used values are evicted.
+ * A value larger than the maximum size is never cached. <br>
+ * Lookups don't block each other or the insertions; only the eviction is
+ * done by a single thread at a time. Recency is tracked with a logical
+ * clock, so the order of uses is exact even for uses close in time.
+ *
+ * @author Dan
+ * @param <K>
+ *            type of the keys
+ * @param <V>
+ *            type of the values
+ */
+public class LruCache<K, V> {
+
+	/**
+	 * Single cached value.
+	 *
+	 * @author Dan
+	 * @param <V>
+	 *            type of the value
+	 */
+	private static class CacheEntry<V> {
+
+		/** Cached value. */
+		private final V value;
+
+		/** Size of the value. */
+		private final long size;
+
+		/** Tick of the logical clock at the last use of this entry. */
+		private volatile long lastUsed;
+
+		/**
+		 * Creates a new {@code CacheEntry} with given arguments.
+		 *
+		 * @param value
+		 *            cached value
+		 * @param size
+		 *            size of the value
+		 * @param lastUsed
+		 *            current tick of the logical clock
+		 */
+		private CacheEntry(V value, long size, long lastUsed) {
+			this.value = value;
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	/** Maximum total size of the cached values. */
+	private final long maxSize;
+
+	/** Current total size of the cached values. */
+	private final AtomicLong size;
+
+	/** Logical clock, advanced on every use of an entry. */
+	private final AtomicLong clock;
+
+	/** Cached values mapped to their keys. */
+	private final Map<K, CacheEntry<V>> entries;
+
+	/**
+	 * Creates a new empty {@code LruCache} with given maximum size.
+	 *
+	 * @param maxSize
+	 *            maximum total size of the cached values
+	 */
+	public LruCache(long maxSize) {
+		this.maxSize = maxSize;
+		size = new AtomicLong();
+		clock = new AtomicLong();
+		entries = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns the value mapped to given key and marks it as the most recently
+	 * used.
+	 *
+	 * @param key
+	 *            key of the value
+	 * @return cached value; or {@code null} if there is none
+	 */
+	public V get(K key) {
+		CacheEntry<V> entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		entry.lastUsed = clock.incrementAndGet();
+		return entry.value;
+	}
+
+	/**
+	 * Maps the value to given key, replacing the previous value, and evicts
+	 * the least recently used values if the cache is too large. If the value
+	 * is larger than the maximum size, it is not cached and the previous
+	 * value is left as it is.
+	 *
+	 * @param key
+	 *            key of the value
+	 * @param value
+	 *            value to cache
+	 * @param valueSize
+	 *            size of the value
+	 * @return {@code true} if the value is cached
+	 * @throws IllegalArgumentException
+	 *             if the size is negative
+	 */
+	public boolean put(K key, V value, long valueSize) {
+		if (valueSize < 0) {
+			throw new IllegalArgumentException("Size can't be negative.");
+		}
+		if (valueSize > maxSize) {
+			return false;
+		}
+		CacheEntry<V> old = entries.put(key, new CacheEntry<>(value, valueSize, clock.incrementAndGet()));
+		size.addAndGet(valueSize - (old == null ? 0 : old.size));
+		if (size.get() > maxSize) {
+			evict();
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the least recently used values until the total size is within
+	 * the limit.
+	 */
+	private synchronized void evict() {
+		while (size.get() > maxSize) {
+			Map.Entry<K, CacheEntry<V>> oldest = null;
+			for (Map.Entry<K, CacheEntry<V>> e : entries.entrySet()) {
+				if (oldest == null || e.getValue().lastUsed < oldest.getValue().lastUsed) {
+					oldest = e;
+				}
+			}
+			if (oldest == null) {
+				return;
+			}
+			if (entries.remove(oldest.getKey(), oldest.getValue())) {
+				size.addAndGet(-oldest.getValue().size);
+			}
+		}
+	}
+
+	/**
+	 * @return current total size of the cached values
+	 */
+	public long getSize() {
+		return size.get();
+	}
+
+	/**
+	 * @return maximum total size of the cached values
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+}
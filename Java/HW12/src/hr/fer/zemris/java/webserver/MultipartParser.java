@@ -0,0 +1,458 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code MultipartParser} parses a {@code multipart/form-data} request body,
+ * which is used to upload files from HTML forms. <br>
+ * The body is read from an {@code InputStream} through a fixed buffer, in
+ * which the boundary delimiters are searched for. Content of every part is
+ * written to its own {@link SpooledData} as it is read, so parts larger than
+ * the memory threshold are kept in temporary files and the size of the body
+ * doesn't affect the memory use. The parts have to be deleted with
+ * {@link Part#delete()} once they are no longer needed.
+ *
+ * @author Dan
+ */
+public class MultipartParser {
+
+	/** Maximum number of parts. */
+	public static final int MAX_PARTS = 256;
+
+	/** Maximum size of the header of a single part. */
+	public static final int MAX_HEADER_SIZE = 8192;
+
+	/** Size of the read buffer. */
+	private static final int BUFFER_SIZE = 16384;
+
+	/**
+	 * Single part of a multipart body.
+	 *
+	 * @author Dan
+	 */
+	public static class Part {
+
+		/** Name of the form field. */
+		private final String name;
+
+		/** Name of the uploaded file; {@code null} if the part is no file. */
+		private final String fileName;
+
+		/** MIME type of the part. */
+		private final String contentType;
+
+		/** Content of the part. */
+		private final SpooledData content;
+
+		/**
+		 * Creates a new {@code Part} with given arguments.
+		 *
+		 * @param name
+		 *            name of the form field
+		 * @param fileName
+		 *            name of the uploaded file; {@code null} if the part is no
+		 *            file
+		 * @param contentType
+		 *            MIME type of the part
+		 * @param content
+		 *            content of the part
+		 */
+		public Part(String name, String fileName, String contentType, SpooledData content) {
+			this.name = name;
+			this.fileName = fileName;
+			this.contentType = contentType;
+			this.content = content;
+		}
+
+		/**
+		 * @return name of the form field
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return name of the uploaded file, without a directory; or
+		 *         {@code null} if the part is no file
+		 */
+		public String getFileName() {
+			return fileName;
+		}
+
+		/**
+		 * @return MIME type of the part, {@code text/plain} if not given
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+
+		/**
+		 * @return length of the content in bytes
+		 */
+		public long getSize() {
+			return content.getLength();
+		}
+
+		/**
+		 * @return {@code true} if the content is kept in memory
+		 */
+		public boolean isInMemory() {
+			return content.isInMemory();
+		}
+
+		/**
+		 * Returns a new {@code InputStream} with the content of the part.
+		 *
+		 * @return {@code InputStream} with the content
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		public InputStream getInputStream() throws IOException {
+			return content.getInputStream();
+		}
+
+		/**
+		 * Returns the content decoded as UTF-8 text. It should be used only for
+		 * small parts, like ordinary form fields.
+		 *
+		 * @return content of the part
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		public String getText() throws IOException {
+			return new String(content.toByteArray(), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Deletes the content of the part.
+		 */
+		public void delete() {
+			content.delete();
+		}
+	}
+
+	/** Stream with the body. */
+	private final InputStream is;
+
+	/** Delimiter which precedes every boundary, {@code CRLF--boundary}. */
+	private final byte[] delimiter;
+
+	/** Maximum length of a part's content kept in memory. */
+	private final int memoryThreshold;
+
+	/** Buffer with the data read from the stream. */
+	private final byte[] buffer;
+
+	/** Offset of the first unprocessed byte in the {@link #buffer}. */
+	private int start;
+
+	/** Offset after the last byte read into the {@link #buffer}. */
+	private int end;
+
+	/**
+	 * Creates a new {@code MultipartParser} with given arguments.
+	 *
+	 * @param is
+	 *            stream with the body
+	 * @param boundary
+	 *            boundary which separates the parts
+	 * @param memoryThreshold
+	 *            maximum length of a part's content kept in memory
+	 * @throws IllegalArgumentException
+	 *             if the boundary is empty or longer than 70 characters
+	 */
+	public MultipartParser(InputStream is, String boundary, int memoryThreshold) {
+		if (boundary.isEmpty() || boundary.length() > 70) {
+			throw new IllegalArgumentException("Invalid boundary: " + boundary);
+		}
+		this.is = is;
+		this.memoryThreshold = memoryThreshold;
+		delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		buffer = new byte[BUFFER_SIZE];
+		// the first boundary can be at the very start of the body
+		buffer[0] = '\r';
+		buffer[1] = '\n';
+		end = 2;
+	}
+
+	/**
+	 * Returns the boundary from the value of the {@code Content-Type} header.
+	 *
+	 * @param contentType
+	 *            value of the {@code Content-Type} header
+	 * @return boundary of the parts; or {@code null} if the content type is
+	 *         not {@code multipart/form-data} with a boundary
+	 */
+	public static String getBoundary(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		int index = contentType.indexOf(';');
+		if (index == -1 || !contentType.substring(0, index).trim().equalsIgnoreCase("multipart/form-data")) {
+			return null;
+		}
+		return parseParameters(contentType.substring(index + 1)).get("boundary");
+	}
+
+	/**
+	 * Parses the whole body. If the body is invalid, the parts read so far
+	 * are deleted.
+	 *
+	 * @return all parts in the order in which they were received
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws IllegalArgumentException
+	 *             if the body is invalid
+	 */
+	public List<Part> parse() throws IOException {
+		List<Part> parts = new ArrayList<>();
+		try {
+			// the preamble is discarded
+			readPart(null);
+			while (!readBoundaryEnd()) {
+				if (parts.size() == MAX_PARTS) {
+					throw new IllegalArgumentException("Too many parts.");
+				}
+				Part part = readHeader();
+				parts.add(part);
+				readPart(part.content);
+				part.content.close();
+			}
+		} catch (IOException | RuntimeException e) {
+			for (Part part : parts) {
+				part.delete();
+			}
+			throw e;
+		}
+		return parts;
+	}
+
+	/**
+	 * Reads the header of the next part.
+	 *
+	 * @return part with an empty content
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws IllegalArgumentException
+	 *             if the header is invalid
+	 */
+	private Part readHeader() throws IOException {
+		Map<String, String> headers = new HashMap<>();
+		int size = 0;
+		String line;
+		while (!(line = readLine()).isEmpty()) {
+			size += line.length() + 2;
+			if (size > MAX_HEADER_SIZE) {
+				throw new IllegalArgumentException("Part header is too large.");
+			}
+			int colon = line.indexOf(':');
+			if (colon == -1) {
+				throw new IllegalArgumentException("Invalid part header: " + line);
+			}
+			headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+		}
+
+		String disposition = headers.get("content-disposition");
+		int index = disposition == null ? -1 : disposition.indexOf(';');
+		if (index == -1 || !disposition.substring(0, index).trim().equalsIgnoreCase("form-data")) {
+			throw new IllegalArgumentException("Part is not form data: " + disposition);
+		}
+		Map<String, String> params = parseParameters(disposition.substring(index + 1));
+		String name = params.get("name");
+		if (name == null) {
+			throw new IllegalArgumentException("Part has no name.");
+		}
+		String fileName = params.get("filename");
+		if (fileName != null) {
+			// some browsers send the whole path
+			fileName = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+		}
+		String contentType = headers.getOrDefault("content-type", "text/plain");
+		return new Part(name, fileName, contentType, new SpooledData(memoryThreshold));
+	}
+
+	/**
+	 * Reads the content up to the next delimiter and writes it to given
+	 * stream. The delimiter is consumed.
+	 *
+	 * @param content
+	 *            stream for the content; {@code null} if it is discarded
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws IllegalArgumentException
+	 *             if the body ends before the delimiter
+	 */
+	private void readPart(SpooledData content) throws IOException {
+		while (true) {
+			int index = indexOfDelimiter();
+			if (index >= 0) {
+				if (content != null) {
+					content.write(buffer, start, index - start);
+				}
+				start = index + delimiter.length;
+				return;
+			}
+
+			// the end of the buffer can be the start of the delimiter
+			int safe = Math.max(start, end - delimiter.length + 1);
+			if (content != null) {
+				content.write(buffer, start, safe - start);
+			}
+			start = safe;
+			if (!fill()) {
+				throw new IllegalArgumentException("Unexpected end of the multipart body.");
+			}
+		}
+	}
+
+	/**
+	 * Reads what follows a delimiter: two hyphens after the last part or a
+	 * line terminator, with optional whitespace, before the next one.
+	 *
+	 * @return {@code true} if the last part was read
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws IllegalArgumentException
+	 *             if the boundary is followed by something else
+	 */
+	private boolean readBoundaryEnd() throws IOException {
+		while (end - start < 2) {
+			if (!fill()) {
+				throw new IllegalArgumentException("Unexpected end of the multipart body.");
+			}
+		}
+		if (buffer[start] == '-' && buffer[start + 1] == '-') {
+			// the epilogue is discarded
+			return true;
+		}
+		if (!readLine().trim().isEmpty()) {
+			throw new IllegalArgumentException("Invalid boundary line.");
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a line terminated by {@code CRLF}. The line is decoded as UTF-8,
+	 * which browsers use for the names of the uploaded files.
+	 *
+	 * @return line without the terminator
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws IllegalArgumentException
+	 *             if the line is too long or the body ends before it
+	 */
+	private String readLine() throws IOException {
+		int scanned = 0;
+		while (true) {
+			for (int i = start + scanned; i + 1 < end; i++) {
+				if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+					String line = new String(buffer, start, i - start, StandardCharsets.UTF_8);
+					start = i + 2;
+					return line;
+				}
+			}
+			scanned = Math.max(0, end - start - 1);
+			if (scanned >= MAX_HEADER_SIZE) {
+				throw new IllegalArgumentException("Part header line is too long.");
+			}
+			if (!fill()) {
+				throw new IllegalArgumentException("Unexpected end of the multipart body.");
+			}
+		}
+	}
+
+	/**
+	 * Finds the delimiter in the unprocessed data.
+	 *
+	 * @return offset of the delimiter; or -1 if it isn't there
+	 */
+	private int indexOfDelimiter() {
+		byte first = delimiter[0];
+		outer: for (int i = start, last = end - delimiter.length; i <= last; i++) {
+			if (buffer[i] != first) {
+				continue;
+			}
+			for (int j = 1; j < delimiter.length; j++) {
+				if (buffer[i + j] != delimiter[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Moves the unprocessed data to the start of the buffer and reads more.
+	 *
+	 * @return {@code false} if the end of the stream is reached
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private boolean fill() throws IOException {
+		if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			end -= start;
+			start = 0;
+		}
+		int n = is.read(buffer, end, buffer.length - end);
+		if (n < 0) {
+			return false;
+		}
+		end += n;
+		return true;
+	}
+
+	/**
+	 * Parses the parameters of a header field, like {@code name="file"} in
+	 * the {@code Content-Disposition} header. Values can be quoted strings,
+	 * which can contain semicolons and escaped characters.
+	 *
+	 * @param text
+	 *            parameters separated by semicolons
+	 * @return values of the parameters mapped to their lower case names
+	 */
+	private static Map<String, String> parseParameters(String text) {
+		Map<String, String> params = new HashMap<>();
+		int i = 0;
+		int n = text.length();
+		while (i < n) {
+			int eq = text.indexOf('=', i);
+			int semicolon = text.indexOf(';', i);
+			if (eq == -1 || (semicolon != -1 && semicolon < eq)) {
+				i = semicolon == -1 ? n : semicolon + 1;
+				continue;
+			}
+			String name = text.substring(i, eq).trim().toLowerCase();
+			i = eq + 1;
+			while (i < n && text.charAt(i) == ' ') {
+				i++;
+			}
+
+			StringBuilder value = new StringBuilder();
+			if (i < n && text.charAt(i) == '"') {
+				for (i++; i < n && text.charAt(i) != '"'; i++) {
+					if (text.charAt(i) == '\\' && i + 1 < n) {
+						i++;
+					}
+					value.append(text.charAt(i));
+				}
+				i = text.indexOf(';', i);
+				i = i == -1 ? n : i + 1;
+			} else {
+				int to = text.indexOf(';', i);
+				to = to == -1 ? n : to;
+				value.append(text.substring(i, to).trim());
+				i = to + 1;
+			}
+			params.putIfAbsent(name, value.toString());
+		}
+		return params;
+	}
+}
@@ -0,0 +1,23 @@
+package hr.fer.zemris.java.webserver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an {@link IWebWorker} which keeps state between the calls of
+ * {@link IWebWorker#processRequest(RequestContext)}, so a new instance has to
+ * be created for every request. <br>
+ * Workers without this annotation are created once by the
+ * {@link WebWorkerRegistry} and the same instance processes all requests,
+ * possibly from more threads at the same time.
+ *
+ * @author Dan
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Prototype {
+}
@@ -0,0 +1,291 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+
+/**
+ * {@code RequestBody} receives the body of a HTTP request. The body is framed
+ * either by the {@code Content-Length} header or by the {@code chunked}
+ * transfer coding, which is decoded. <br>
+ * Received data is pushed to the body with {@link #decode(byte[], int, int)}
+ * as it arrives, so the same body can be filled by a blocking worker thread
+ * or by a selector thread from a non-blocking channel. Decoded content is
+ * written to a {@link SpooledData}, which moves it to a temporary file once it
+ * is larger than the memory threshold. <br>
+ * Size of the content is limited. A larger {@code Content-Length} is rejected
+ * as soon as the body is created, and a chunked body as soon as a chunk
+ * exceeds the limit.
+ *
+ * @author Dan
+ */
+public class RequestBody {
+
+	/** State in which the chunk size is read. */
+	private static final int SIZE = 0;
+
+	/** State in which the chunk extensions are skipped. */
+	private static final int EXTENSION = 1;
+
+	/** State in which the line feed after the chunk size is expected. */
+	private static final int SIZE_LF = 2;
+
+	/** State in which the content is read. */
+	private static final int DATA = 3;
+
+	/** State in which the carriage return after the chunk is expected. */
+	private static final int DATA_CR = 4;
+
+	/** State in which the line feed after the chunk is expected. */
+	private static final int DATA_LF = 5;
+
+	/** State in which the trailer fields are skipped. */
+	private static final int TRAILER = 6;
+
+	/** State in which the line feed after a trailer field is expected. */
+	private static final int TRAILER_LF = 7;
+
+	/** State after the whole body is received. */
+	private static final int DONE = 8;
+
+	/** Maximum number of hexadecimal digits of the chunk size. */
+	private static final int MAX_SIZE_DIGITS = 15;
+
+	/** Carriage return. */
+	private static final byte CR = 13;
+
+	/** Line feed. */
+	private static final byte LF = 10;
+
+	/** Decoded content. */
+	private final SpooledData content;
+
+	/** Maximum length of the content. */
+	private final long maxLength;
+
+	/** {@code true} if the body uses the chunked transfer coding. */
+	private final boolean chunked;
+
+	/** Current state of the decoder. */
+	private int state;
+
+	/** Remaining length of the current chunk or of the whole body. */
+	private long remaining;
+
+	/** Number of digits of the chunk size read so far. */
+	private int sizeDigits;
+
+	/** {@code true} if the current trailer line is empty so far. */
+	private boolean emptyLine;
+
+	/** Number of received bytes, including the framing. */
+	private long received;
+
+	/**
+	 * Creates a new {@code RequestBody} with given arguments.
+	 *
+	 * @param contentLength
+	 *            length of the content; or -1 if the body is chunked
+	 * @param maxLength
+	 *            maximum length of the content
+	 * @param memoryThreshold
+	 *            maximum length of the content kept in memory
+	 * @throws IllegalStateException
+	 *             if the content length is larger than the maximum
+	 */
+	public RequestBody(long contentLength, long maxLength, int memoryThreshold) {
+		if (contentLength > maxLength) {
+			throw new IllegalStateException("Request body is too large.");
+		}
+		this.maxLength = maxLength;
+		content = new SpooledData(memoryThreshold);
+		chunked = contentLength < 0;
+		if (chunked) {
+			state = SIZE;
+		} else {
+			state = contentLength == 0 ? DONE : DATA;
+			remaining = contentLength;
+		}
+	}
+
+	/**
+	 * Creates the body of the request whose header was read by given
+	 * {@code RequestParser}. No transfer coding other than {@code chunked}
+	 * is supported. A request with both the {@code Transfer-Encoding} and
+	 * the {@code Content-Length} header is rejected, because a proxy in front
+	 * of the server could have taken the other header to find the end of the
+	 * body and sent the rest as another request.
+	 *
+	 * @param parser
+	 *            parser with a complete request header
+	 * @param maxLength
+	 *            maximum length of the content
+	 * @param memoryThreshold
+	 *            maximum length of the content kept in memory
+	 * @return body of the request; or {@code null} if the request has no body
+	 * @throws IllegalArgumentException
+	 *             if the framing headers are invalid or conflicting
+	 * @throws IllegalStateException
+	 *             if the content length is larger than the maximum
+	 */
+	public static RequestBody create(RequestParser parser, long maxLength, int memoryThreshold) {
+		String transferEncoding = parser.getHeader("Transfer-Encoding");
+		if (transferEncoding != null) {
+			if (!transferEncoding.trim().equalsIgnoreCase("chunked")) {
+				throw new IllegalArgumentException("Unsupported transfer coding: " + transferEncoding);
+			}
+			if (parser.getHeader("Content-Length") != null) {
+				throw new IllegalArgumentException("Request has both Transfer-Encoding and Content-Length.");
+			}
+			return new RequestBody(-1, maxLength, memoryThreshold);
+		}
+
+		String contentLength = parser.getHeader("Content-Length");
+		if (contentLength == null) {
+			return null;
+		}
+		contentLength = contentLength.trim();
+		if (contentLength.isEmpty() || contentLength.length() > 18 || !contentLength.chars().allMatch(Character::isDigit)) {
+			throw new IllegalArgumentException("Invalid content length: " + contentLength);
+		}
+		long length = Long.parseLong(contentLength);
+		return length == 0 ? null : new RequestBody(length, maxLength, memoryThreshold);
+	}
+
+	/**
+	 * Decodes the received data and writes the content it carries. Data is
+	 * consumed until the body is complete, so anything after that, like a
+	 * pipelined request, is left unconsumed.
+	 *
+	 * @param data
+	 *            received data
+	 * @param offset
+	 *            offset of the first received byte
+	 * @param length
+	 *            number of received bytes
+	 * @return number of consumed bytes
+	 * @throws IOException
+	 *             if the content cannot be written
+	 * @throws IllegalArgumentException
+	 *             if the chunked framing is invalid
+	 * @throws IllegalStateException
+	 *             if the content is larger than the maximum
+	 */
+	public int decode(byte[] data, int offset, int length) throws IOException {
+		int i = offset;
+		int end = offset + length;
+		while (i < end && state != DONE) {
+			if (state == DATA) {
+				int n = (int) Math.min(remaining, end - i);
+				content.write(data, i, n);
+				i += n;
+				remaining -= n;
+				if (remaining == 0) {
+					state = chunked ? DATA_CR : DONE;
+				}
+				continue;
+			}
+
+			byte b = data[i++];
+			switch (state) {
+			case SIZE:
+				int digit = Character.digit((char) b, 16);
+				if (digit >= 0 && sizeDigits < MAX_SIZE_DIGITS) {
+					remaining = remaining * 16 + digit;
+					sizeDigits++;
+				} else if (digit >= 0 || sizeDigits == 0) {
+					throw new IllegalArgumentException("Invalid chunk size.");
+				} else if (b == ';' || b == ' ' || b == '\t') {
+					state = EXTENSION;
+				} else {
+					expect(CR, b);
+					state = SIZE_LF;
+				}
+				break;
+			case EXTENSION:
+				if (b == CR) {
+					state = SIZE_LF;
+				}
+				break;
+			case SIZE_LF:
+				expect(LF, b);
+				sizeDigits = 0;
+				if (remaining == 0) {
+					state = TRAILER;
+					emptyLine = true;
+				} else if (remaining > maxLength - content.getLength()) {
+					throw new IllegalStateException("Request body is too large.");
+				} else {
+					state = DATA;
+				}
+				break;
+			case DATA_CR:
+				expect(CR, b);
+				state = DATA_LF;
+				break;
+			case DATA_LF:
+				expect(LF, b);
+				state = SIZE;
+				break;
+			case TRAILER:
+				if (b == CR) {
+					state = TRAILER_LF;
+				} else {
+					emptyLine = false;
+				}
+				break;
+			case TRAILER_LF:
+				expect(LF, b);
+				state = emptyLine ? DONE : TRAILER;
+				emptyLine = true;
+				break;
+			default:
+				throw new IllegalStateException("Invalid state: " + state);
+			}
+		}
+		received += i - offset;
+		return i - offset;
+	}
+
+	/**
+	 * Checks if the received byte is the expected one.
+	 *
+	 * @param expected
+	 *            expected byte
+	 * @param actual
+	 *            received byte
+	 * @throws IllegalArgumentException
+	 *             if the bytes differ
+	 */
+	private static void expect(byte expected, byte actual) {
+		if (expected != actual) {
+			throw new IllegalArgumentException("Invalid chunked framing.");
+		}
+	}
+
+	/**
+	 * @return {@code true} if the whole body is received
+	 */
+	public boolean isComplete() {
+		return state == DONE;
+	}
+
+	/**
+	 * @return decoded content of the body
+	 */
+	public SpooledData getContent() {
+		return content;
+	}
+
+	/**
+	 * @return number of received bytes, including the chunked framing
+	 */
+	public long getReceived() {
+		return received;
+	}
+
+	/**
+	 * Deletes the content of the body.
+	 */
+	public void delete() {
+		content.delete();
+	}
+}
@@ -1,16 +1,31 @@
 package hr.fer.zemris.java.webserver;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * {@code RequestContext} holds context for executing smart scripts. It also
@@ -22,7 +37,29 @@ import java.util.Set;
  * setter methods. <br>
  * Two methods for writing data are available: {@link #write(byte[])} and
  * {@link #write(String)}, and before anything is written header is generated
- * and written.
+ * and written. <br>
+ * If the connection is marked as persistent with {@link #setKeepAlive(Boolean)}
+ * and the content length is not known, data is sent using chunked transfer
+ * encoding. In that case {@link #finish()} has to be called after the last
+ * write so that the response is properly terminated. An HTTP/1.0 client,
+ * set with {@link #setRequestVersion(String)}, can't decode chunks, so its
+ * connection is closed after such a response instead, which ends the data.
+ * <br>
+ * File content can be sent with {@link #write(FileChannel, long, long)}, which
+ * transfers the data directly to the output channel, if one is set. If the
+ * {@code OutputStream} is a {@link SegmentedResponse}, the part of the file
+ * is only recorded and transferred when the response is written. <br>
+ * By default everything is written to the {@code OutputStream} as soon as it
+ * is given. If a buffer is set with {@link #setOutputBuffer(ByteBuffer)},
+ * data is collected in it (text is encoded directly into the buffer) and sent
+ * only when the buffer is full or the response is finished. If the whole
+ * response fits in the buffer and its length was not set, the content length
+ * is set automatically, so chunked encoding is used only for responses larger
+ * than the buffer. <br>
+ * Data can be compressed with a content coding set by
+ * {@link #setCompression(String, Predicate, int)}. Whether it is compressed
+ * is decided when the header is generated, based on the MIME type and the
+ * length of the data.
  *
  * @author Dan
  */
@@ -121,6 +158,22 @@ public class RequestContext {
 		}
 	}
 
+	/**
+	 * {@code ByteArrayOutputStream} which gives access to its content without
+	 * copying it.
+	 *
+	 * @author Dan
+	 */
+	private static class CompressedData extends ByteArrayOutputStream {
+
+		/**
+		 * @return buffer wrapping the current content
+		 */
+		private ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
 	/** Default encoding used for the data, not for the header. */
 	private static final String DEFAULT_ENCODING = "UTF-8";
 
@@ -136,15 +189,48 @@ public class RequestContext {
 	/** Default MIME type. */
 	private static final String DEFAULT_MIME_TYPE = "text/html";
 
+	/** Line terminator. */
+	private static final byte[] CRLF = { 13, 10 };
+
+	/** Chunk which terminates chunked data. */
+	private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(HEADER_CHARSET);
+
+	/** End of the last data chunk followed by the chunk which terminates data. */
+	private static final byte[] FINAL_CRLF = "\r\n0\r\n\r\n".getBytes(HEADER_CHARSET);
+
+	/** Minimum capacity of the output buffer. */
+	private static final int MIN_BUFFER_CAPACITY = 16;
+
+	/** Capacity of the output buffer created for compressing data. */
+	private static final int DEFAULT_BUFFER_CAPACITY = 8192;
+
 	/** {@code OutputStream} for writing header and data. */
 	private OutputStream outputStream;
 
+	/**
+	 * Channel writing to the same destination as the {@link #outputStream};
+	 * {@code null} if not available.
+	 */
+	private WritableByteChannel outputChannel;
+
 	/** {@code Charset} used for encoding data. */
 	private Charset charset;
 
 	/** {@code String} representation of the charset. */
 	private String encoding;
 
+	/**
+	 * Buffer for the data which is not yet written; {@code null} if data is
+	 * written immediately.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Encoder of the {@link #charset} writing text into the {@link #buffer};
+	 * created on first use.
+	 */
+	private CharsetEncoder encoder;
+
 	/** Current status code. */
 	private int statusCode;
 
@@ -169,9 +255,64 @@ public class RequestContext {
 	/** {@code List} of cookies. */
 	private List<RCCookie> outputCookies;
 
-	/** {@code true} if the header is already generated and written. */
+	/** Content of the request body; {@code null} if there is none. */
+	private SpooledData body;
+
+	/**
+	 * Parts of a multipart request body mapped to their names; {@code null}
+	 * if there are none.
+	 */
+	private Map<String, MultipartParser.Part> parts;
+
+	/** Additional header fields; {@code null} if there are none. */
+	private Map<String, String> headers;
+
+	/**
+	 * {@code true} if the connection stays open after the response;
+	 * {@code false} if it will be closed; {@code null} if the
+	 * {@code Connection} header is not sent.
+	 */
+	private Boolean keepAlive;
+
+	/** {@code true} if data is sent using chunked transfer encoding. */
+	private boolean chunked;
+
+	/** HTTP version of the request; {@code null} if unknown. */
+	private String requestVersion;
+
+	/** Requested content coding; {@code null} if data is not compressed. */
+	private String compression;
+
+	/** Decides by the MIME type whether the data is compressed. */
+	private Predicate<String> compressible;
+
+	/** Data shorter than this is sent uncompressed. */
+	private int compressionMinLength;
+
+	/**
+	 * Stream compressing the data into {@link #compressed}; {@code null} if
+	 * data is not compressed.
+	 */
+	private DeflaterOutputStream compressor;
+
+	/** Compressed data which is not yet written. */
+	private CompressedData compressed;
+
+	/**
+	 * {@code true} if the header is already generated and can no longer be
+	 * changed.
+	 */
 	private boolean headerGenerated;
 
+	/** {@code true} if the header is already written. */
+	private boolean headerWritten;
+
+	/** {@code true} if the response is finished. */
+	private boolean finished;
+
+	/** Number of bytes of the response sent so far, including the header. */
+	private long bytesSent;
+
 	/**
 	 * Creates a new {@code RequestContext} with given parameters and default
 	 * header values.
@@ -211,6 +352,7 @@ public class RequestContext {
 		checkHeader();
 		this.encoding = encoding;
 		charset = Charset.forName(encoding);
+		encoder = null;
 	}
 
 	/**
@@ -265,6 +407,146 @@ public class RequestContext {
 		this.contentLength = contentLength;
 	}
 
+	/**
+	 * Sets whether the connection stays open after this response. If set to
+	 * {@code true} and the content length is unknown, chunked transfer
+	 * encoding is used.
+	 * 
+	 * @param keepAlive
+	 *            {@code true} if the connection is persistent; {@code false}
+	 *            if it will be closed; {@code null} if the {@code Connection}
+	 *            header shouldn't be sent
+	 * @throws RuntimeException
+	 *             if the header is already written
+	 */
+	public void setKeepAlive(Boolean keepAlive) {
+		checkHeader();
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * Returns whether the connection stays open after this response. Once
+	 * the header is generated, this is {@code false} if the connection has to
+	 * be closed to end the data, even if it was set to {@code true}.
+	 * 
+	 * @return {@code true} if the connection is persistent; {@code false} if
+	 *         it will be closed; {@code null} if the {@code Connection}
+	 *         header isn't sent
+	 */
+	public Boolean getKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Sets the HTTP version of the request. Chunked transfer encoding is
+	 * never used for {@code HTTP/1.0} requests.
+	 * 
+	 * @param requestVersion
+	 *            HTTP version of the request, for example {@code HTTP/1.1};
+	 *            {@code null} if unknown
+	 * @throws RuntimeException
+	 *             if the header is already written
+	 */
+	public void setRequestVersion(String requestVersion) {
+		checkHeader();
+		this.requestVersion = requestVersion;
+	}
+
+	/**
+	 * Adds a header field which will be sent with the response. Existing
+	 * field with the same name is replaced.
+	 * 
+	 * @param name
+	 *            name of the header field; cannot be {@code null}
+	 * @param value
+	 *            value of the header field; cannot be {@code null}
+	 * @throws RuntimeException
+	 *             if the header is already written
+	 */
+	public void addHeader(String name, String value) {
+		checkHeader();
+		if (headers == null) {
+			headers = new LinkedHashMap<>();
+		}
+		headers.put(Objects.requireNonNull(name), Objects.requireNonNull(value));
+	}
+
+	/**
+	 * Sets the channel which writes to the same destination as the
+	 * {@code OutputStream} given in the constructor. It is used by
+	 * {@link #write(FileChannel, long, long)} so that file data doesn't have
+	 * to be copied through memory.
+	 * 
+	 * @param outputChannel
+	 *            channel for writing data; can be {@code null}
+	 */
+	public void setOutputChannel(WritableByteChannel outputChannel) {
+		this.outputChannel = outputChannel;
+	}
+
+	/**
+	 * Sets the buffer in which the header and data are collected before they
+	 * are written. The buffer is cleared and can be reused for another
+	 * response after {@link #finish()} is called. If the output channel is a
+	 * {@code GatheringByteChannel}, the header, chunk framing and buffered
+	 * data are sent in a single write.
+	 * 
+	 * @param buffer
+	 *            buffer for the data; {@code null} to write data immediately
+	 * @throws IllegalArgumentException
+	 *             if the buffer's capacity is smaller than 16 bytes
+	 * @throws RuntimeException
+	 *             if the header is already written
+	 */
+	public void setOutputBuffer(ByteBuffer buffer) {
+		checkHeader();
+		if (buffer != null) {
+			if (buffer.capacity() < MIN_BUFFER_CAPACITY) {
+				throw new IllegalArgumentException("Buffer capacity must be at least " + MIN_BUFFER_CAPACITY + ".");
+			}
+			buffer.clear();
+		}
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Sets the content coding used for compressing the data. Data is
+	 * compressed only if the MIME type set when the header is generated is
+	 * accepted by the given predicate and the response is not known to be
+	 * shorter than the given length. In that case the
+	 * {@code Content-Encoding} header is sent and content length, if it was
+	 * set, is replaced with the compressed length or left out. <br>
+	 * Data is compressed in blocks of the output buffer size, so if no buffer
+	 * is set, a new one is created.
+	 * 
+	 * @param encoding
+	 *            {@code gzip} or {@code deflate}; {@code null} to disable
+	 *            compression
+	 * @param compressible
+	 *            accepts MIME types of the data which should be compressed;
+	 *            cannot be {@code null} if the coding is given
+	 * @param minLength
+	 *            minimum length of the data which is compressed
+	 * @throws IllegalArgumentException
+	 *             if the content coding is not supported
+	 * @throws RuntimeException
+	 *             if the header is already written
+	 */
+	public void setCompression(String encoding, Predicate<String> compressible, int minLength) {
+		checkHeader();
+		if (encoding != null) {
+			if (!encoding.equals(Compression.GZIP) && !encoding.equals(Compression.DEFLATE)) {
+				throw new IllegalArgumentException("Unsupported content coding: " + encoding);
+			}
+			this.compressible = Objects.requireNonNull(compressible);
+			if (buffer == null) {
+				buffer = ByteBuffer.allocate(DEFAULT_BUFFER_CAPACITY);
+			}
+		}
+		compression = encoding;
+		compressionMinLength = minLength;
+	}
+
 	/**
 	 * Returns the parameter with given name.
 	 * 
@@ -407,6 +689,71 @@ public class RequestContext {
 		temporaryParameters.remove(name);
 	}
 
+	/**
+	 * Sets the content of the request body.
+	 * 
+	 * @param body
+	 *            content of the request body; {@code null} if there is none
+	 */
+	public void setBody(SpooledData body) {
+		this.body = body;
+	}
+
+	/**
+	 * Returns the content of the request body, for example an uploaded
+	 * document. Form parameters from the body are also available as
+	 * parameters and uploaded files as parts.
+	 * 
+	 * @return new {@code InputStream} with the content of the request body;
+	 *         or {@code null} if there is none
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public InputStream getBody() throws IOException {
+		if (body == null) {
+			return null;
+		}
+		return body.getInputStream();
+	}
+
+	/**
+	 * Sets the parts of a multipart request body.
+	 * 
+	 * @param parts
+	 *            read-only {@code Map} with parts mapped to their names
+	 */
+	public void setParts(Map<String, MultipartParser.Part> parts) {
+		this.parts = parts;
+	}
+
+	/**
+	 * Returns the part of a multipart request body with given name, for
+	 * example an uploaded file.
+	 * 
+	 * @param name
+	 *            name of the part
+	 * @return part with given name or {@code null} if no such part exists
+	 */
+	public MultipartParser.Part getPart(String name) {
+		if (parts == null) {
+			return null;
+		}
+		return parts.get(name);
+	}
+
+	/**
+	 * Returns the read-only {@code Set} with names of all parts of a multipart
+	 * request body.
+	 * 
+	 * @return names of all parts or {@code null} if no parts exist
+	 */
+	public Set<String> getPartNames() {
+		if (parts == null) {
+			return null;
+		}
+		return Collections.unmodifiableSet(parts.keySet());
+	}
+
 	/**
 	 * Adds a new {@code RCCookie}.
 	 * 
@@ -423,6 +770,16 @@ public class RequestContext {
 		outputCookies.add(Objects.requireNonNull(rcCookie));
 	}
 
+	/**
+	 * Returns the number of bytes of the response sent so far, including the
+	 * header and the chunk framing. Buffered data is counted once it is sent.
+	 *
+	 * @return number of sent bytes
+	 */
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
 	/**
 	 * Writes the given data to the {@code OutputStream} given in the
 	 * constructor. If the header wasn't already generated, than the header is
@@ -438,13 +795,178 @@ public class RequestContext {
 		if (data == null) {
 			throw new IllegalArgumentException("Data cannot be null.");
 		}
+		if (buffer != null) {
+			headerGenerated = true;
+			if (data.length > buffer.remaining()) {
+				flushBuffer(false);
+				if (data.length > buffer.remaining()) {
+					if (compression == null) {
+						sendChunk(ByteBuffer.wrap(data));
+						return this;
+					}
+					for (int offset = 0; offset < data.length; offset += buffer.capacity()) {
+						if (offset > 0) {
+							flushBuffer(false);
+						}
+						buffer.put(data, offset, Math.min(buffer.capacity(), data.length - offset));
+					}
+					return this;
+				}
+			}
+			buffer.put(data);
+			return this;
+		}
 		if (!headerGenerated) {
 			writeHeader();
 		}
-		outputStream.write(data);
+		if (chunked) {
+			if (data.length == 0) {
+				return this;
+			}
+			byte[] size = (Integer.toHexString(data.length) + "\r\n").getBytes(HEADER_CHARSET);
+			outputStream.write(size);
+			outputStream.write(data);
+			outputStream.write(CRLF);
+			bytesSent += size.length + CRLF.length;
+		} else {
+			outputStream.write(data);
+		}
+		bytesSent += data.length;
 		return this;
 	}
 
+	/**
+	 * Writes the given part of a file. If the output channel is set, data is
+	 * transferred directly from the file to that channel. If the
+	 * {@code OutputStream} is a {@link SegmentedResponse}, the part is
+	 * recorded in it and the response takes over the file channel, which
+	 * then must not be closed by the caller. If the header wasn't already
+	 * generated, than the header is written first.
+	 * 
+	 * @param file
+	 *            file to send
+	 * @param position
+	 *            position in the file of the first byte to send
+	 * @param count
+	 *            number of bytes to send
+	 * @return this {@code RequestContext} object
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public RequestContext write(FileChannel file, long position, long count) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("File cannot be null.");
+		}
+		if (buffer != null) {
+			headerGenerated = true;
+			if (count <= 0) {
+				return this;
+			}
+			if (compression != null) {
+				readThroughBuffer(file, position, count);
+				return this;
+			}
+			flushBuffer(false);
+		} else if (!headerGenerated) {
+			writeHeader();
+		}
+		if (count <= 0) {
+			return this;
+		}
+		if (chunked) {
+			byte[] size = (Long.toHexString(count) + "\r\n").getBytes(HEADER_CHARSET);
+			outputStream.write(size);
+			bytesSent += size.length;
+		}
+		outputStream.flush();
+
+		if (outputStream instanceof SegmentedResponse) {
+			((SegmentedResponse) outputStream).write(file, position, count);
+			bytesSent += count;
+		} else {
+			WritableByteChannel target = outputChannel != null ? outputChannel : Channels.newChannel(outputStream);
+			long end = position + count;
+			while (position < end) {
+				long n = file.transferTo(position, end - position, target);
+				if (n <= 0 && position >= file.size()) {
+					throw new IOException("Unexpected end of file.");
+				}
+				position += n;
+				bytesSent += n;
+			}
+		}
+
+		if (chunked) {
+			outputStream.write(CRLF);
+			bytesSent += CRLF.length;
+		}
+		return this;
+	}
+
+	/**
+	 * Reads the given part of a file into the {@link #buffer}, so that it is
+	 * compressed together with other data.
+	 * 
+	 * @param file
+	 *            file to send
+	 * @param position
+	 *            position in the file of the first byte to send
+	 * @param count
+	 *            number of bytes to send
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void readThroughBuffer(FileChannel file, long position, long count) throws IOException {
+		while (count > 0) {
+			if (!buffer.hasRemaining()) {
+				flushBuffer(false);
+			}
+			int limit = buffer.limit();
+			buffer.limit(buffer.position() + (int) Math.min(count, buffer.remaining()));
+			int n = file.read(buffer, position);
+			buffer.limit(limit);
+			if (n < 0) {
+				throw new IOException("Unexpected end of file.");
+			}
+			position += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Finishes the response. If nothing was written, the header is written
+	 * with content length set to zero. If chunked transfer encoding is used,
+	 * the last chunk is written. Buffered data is written and the buffer is
+	 * cleared. Calling this method more than once has no effect.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		if (buffer != null) {
+			headerGenerated = true;
+			flushBuffer(true);
+			outputStream.flush();
+			finished = true;
+			return;
+		}
+		if (!headerGenerated) {
+			if (contentLength == null && hasBody()) {
+				contentLength = 0L;
+			}
+			writeHeader();
+		}
+		if (chunked) {
+			outputStream.write(LAST_CHUNK);
+			bytesSent += LAST_CHUNK.length;
+		}
+		outputStream.flush();
+		finished = true;
+	}
+
 	/**
 	 * Writes the given data, using the last set encoding (or the default one),
 	 * to the {@code OutputStream} given in the constructor. If the header
@@ -460,7 +982,150 @@ public class RequestContext {
 		if (text == null) {
 			throw new IllegalArgumentException("Text cannot be null.");
 		}
-		return write(text.getBytes(charset));
+		if (buffer == null) {
+			return write(text.getBytes(charset));
+		}
+
+		headerGenerated = true;
+		if (encoder == null) {
+			encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+		encoder.reset();
+		CharBuffer in = CharBuffer.wrap(text);
+		CoderResult result;
+		while ((result = encoder.encode(in, buffer, true)).isOverflow()) {
+			flushBuffer(false);
+		}
+		if (result.isError()) {
+			result.throwException();
+		}
+		while (encoder.flush(buffer).isOverflow()) {
+			flushBuffer(false);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the header if it wasn't already written, followed by the data
+	 * from the {@link #buffer}, and clears the buffer. If this is the last
+	 * write of the response and the content length is unknown, it is set to
+	 * the number of buffered bytes.
+	 * 
+	 * @param last
+	 *            {@code true} if no more data will be written
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void flushBuffer(boolean last) throws IOException {
+		buffer.flip();
+		if (!headerWritten && compression != null && hasBody() && compressible.test(mimeType)) {
+			if (headers == null) {
+				headers = new LinkedHashMap<>();
+			}
+			headers.put("Vary", "Accept-Encoding");
+			if (!last || buffer.remaining() >= compressionMinLength) {
+				compressed = new CompressedData();
+				compressor = Compression.newStream(compressed, compression, Deflater.BEST_SPEED);
+			}
+		}
+
+		ByteBuffer data = buffer;
+		if (compressor != null) {
+			compressor.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			if (last) {
+				compressor.close();
+			}
+			data = compressed.toByteBuffer();
+		}
+
+		ByteBuffer header = null;
+		if (!headerWritten) {
+			if (last && (contentLength == null || compressor != null) && hasBody()) {
+				contentLength = (long) data.remaining();
+			} else if (compressor != null) {
+				contentLength = null;
+			}
+			header = ByteBuffer.wrap(generateHeader());
+			headerWritten = true;
+		}
+
+		if (!chunked) {
+			send(header, data);
+		} else if (data.hasRemaining()) {
+			send(header, chunkSize(data.remaining()), data, ByteBuffer.wrap(last ? FINAL_CRLF : CRLF));
+		} else {
+			send(header, last ? ByteBuffer.wrap(LAST_CHUNK) : null);
+		}
+		buffer.clear();
+		if (compressed != null) {
+			compressed.reset();
+		}
+	}
+
+	/**
+	 * Writes the given data immediately, as a single chunk if chunked
+	 * transfer encoding is used. The header must already be written.
+	 * 
+	 * @param data
+	 *            data to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void sendChunk(ByteBuffer data) throws IOException {
+		if (chunked) {
+			send(chunkSize(data.remaining()), data, ByteBuffer.wrap(CRLF));
+		} else {
+			send(data);
+		}
+	}
+
+	/**
+	 * Creates the line which starts a chunk of the given size.
+	 * 
+	 * @param size
+	 *            size of the chunk
+	 * @return buffer with the chunk size line
+	 */
+	private static ByteBuffer chunkSize(long size) {
+		return ByteBuffer.wrap((Long.toHexString(size) + "\r\n").getBytes(HEADER_CHARSET));
+	}
+
+	/**
+	 * Writes the given buffers in order. If the output channel supports it,
+	 * all of them are written with a single gathering write; otherwise they
+	 * are written to the {@code OutputStream} one by one.
+	 * 
+	 * @param parts
+	 *            buffers to write; {@code null} elements are skipped
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void send(ByteBuffer... parts) throws IOException {
+		if (outputChannel instanceof GatheringByteChannel) {
+			int n = 0;
+			long remaining = 0;
+			for (ByteBuffer part : parts) {
+				if (part != null) {
+					parts[n++] = part;
+					remaining += part.remaining();
+				}
+			}
+			GatheringByteChannel channel = (GatheringByteChannel) outputChannel;
+			bytesSent += remaining;
+			while (remaining > 0) {
+				remaining -= channel.write(parts, 0, n);
+			}
+			return;
+		}
+
+		for (ByteBuffer part : parts) {
+			if (part != null && part.hasRemaining()) {
+				outputStream.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+				bytesSent += part.remaining();
+				part.position(part.limit());
+			}
+		}
 	}
 
 	/**
@@ -475,6 +1140,16 @@ public class RequestContext {
 		}
 	}
 
+	/**
+	 * Checks if a response with the current status code can have a body.
+	 * 
+	 * @return {@code false} for informational, {@code 204} and {@code 304}
+	 *         responses; {@code true} otherwise
+	 */
+	private boolean hasBody() {
+		return statusCode >= 200 && statusCode != 204 && statusCode != 304;
+	}
+
 	/**
 	 * Generates and writes the header to the {@link #outputStream}.
 	 * 
@@ -482,6 +1157,21 @@ public class RequestContext {
 	 *             if an I/O error occurs
 	 */
 	private void writeHeader() throws IOException {
+		byte[] header = generateHeader();
+		outputStream.write(header);
+		bytesSent += header.length;
+		headerGenerated = true;
+		headerWritten = true;
+	}
+
+	/**
+	 * Generates the header from the current properties. Decides whether
+	 * chunked transfer encoding is used or, for an {@code HTTP/1.0} request,
+	 * whether the connection has to be closed to end the data.
+	 * 
+	 * @return header encoded for sending
+	 */
+	private byte[] generateHeader() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("HTTP/1.1 ").append(statusCode).append(' ').append(statusText).append("\r\n");
 		sb.append("Server: DPS\r\n");
@@ -490,8 +1180,26 @@ public class RequestContext {
 			sb.append(";charset=").append(encoding);
 		}
 		sb.append("\r\n");
+		if (compressor != null) {
+			sb.append("Content-Encoding: ").append(compression).append("\r\n");
+		}
 		if (contentLength != null) {
 			sb.append("Content-Length: ").append(contentLength).append("\r\n");
+		} else if (Boolean.TRUE.equals(keepAlive) && hasBody()) {
+			if ("HTTP/1.0".equalsIgnoreCase(requestVersion)) {
+				keepAlive = false;
+			} else {
+				sb.append("Transfer-Encoding: chunked\r\n");
+				chunked = true;
+			}
+		}
+		if (keepAlive != null) {
+			sb.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+		}
+		if (headers != null) {
+			headers.forEach((name, value) -> {
+				sb.append(name).append(": ").append(value).append("\r\n");
+			});
 		}
 		if (outputCookies != null) {
 			outputCookies.forEach(c -> {
@@ -513,8 +1221,7 @@ public class RequestContext {
 		}
 		sb.append("\r\n");
 
-		outputStream.write(sb.toString().getBytes(HEADER_CHARSET));
-		headerGenerated = true;
+		return sb.toString().getBytes(HEADER_CHARSET);
 	}
 
 }
@@ -0,0 +1,492 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@code RequestParser} reads HTTP request headers from a reusable
+ * {@link ByteBuffer}. <br>
+ * Data can be read into the buffer directly from an {@code InputStream} with
+ * {@link #readRequest(InputStream)} or from a channel using the buffer
+ * returned by {@link #getBuffer()} followed by {@link #parse()}. End of the
+ * header is found with a simple state machine which looks at every byte only
+ * once, while positions of the header lines are remembered so no copying is
+ * needed. <br>
+ * Request line is decoded as soon as the header is complete, but header
+ * fields are decoded only when requested. Request body received together
+ * with the header is passed to a {@link RequestBody} with
+ * {@link #readBody(RequestBody)}, which also makes room in the buffer for the
+ * rest of the body. Any data received after the request (pipelined requests)
+ * is kept in the buffer and will be used after calling {@link #next()}.
+ *
+ * @author Dan
+ */
+public class RequestParser {
+
+	/** Default initial size of the buffer. */
+	public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+	/** Default maximum size of the request header. */
+	public static final int DEFAULT_MAX_HEADER_SIZE = 16 * 1024;
+
+	/** Carriage return. */
+	private static final byte CR = 13;
+
+	/** Line feed. */
+	private static final byte LF = 10;
+
+	/** Buffer with received data, filled from zero to its position. */
+	private ByteBuffer buffer;
+
+	/** Maximum size of the request header. */
+	private int maxHeaderSize;
+
+	/** Number of matched bytes of the {@code CRLFCRLF} sequence. */
+	private int state;
+
+	/** Number of bytes in the buffer already processed. */
+	private int scanned;
+
+	/** Length of the header including the empty line; -1 if incomplete. */
+	private int headerEnd;
+
+	/** Offset of the first byte not consumed by the request body. */
+	private int bodyEnd;
+
+	/** Offsets in the buffer at which the header lines start. */
+	private int[] lineStarts;
+
+	/** Number of header lines, including the request line. */
+	private int lineCount;
+
+	/** Requested method. */
+	private String method;
+
+	/** Requested path, including the query string. */
+	private String path;
+
+	/** HTTP version. */
+	private String version;
+
+	/** Decoded header fields; {@code null} until they are requested. */
+	private Map<String, String> headers;
+
+	/**
+	 * Creates a new {@code RequestParser} with default buffer and header
+	 * sizes.
+	 */
+	public RequestParser() {
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_HEADER_SIZE);
+	}
+
+	/**
+	 * Creates a new {@code RequestParser} with given arguments.
+	 *
+	 * @param bufferSize
+	 *            initial size of the buffer
+	 * @param maxHeaderSize
+	 *            maximum size of the request header
+	 * @throws IllegalArgumentException
+	 *             if any size is not positive
+	 */
+	public RequestParser(int bufferSize, int maxHeaderSize) {
+		if (bufferSize < 1 || maxHeaderSize < 1) {
+			throw new IllegalArgumentException("Sizes must be positive.");
+		}
+		this.maxHeaderSize = maxHeaderSize;
+		buffer = ByteBuffer.allocate(Math.min(bufferSize, maxHeaderSize));
+		lineStarts = new int[16];
+		headerEnd = -1;
+	}
+
+	/**
+	 * Returns the buffer into which new data should be read. Data has to be
+	 * written at the buffer's position, for example with
+	 * {@code channel.read(buffer)}. Buffer is enlarged if it is full and the
+	 * header is not complete.
+	 *
+	 * @return buffer for reading new data
+	 */
+	public ByteBuffer getBuffer() {
+		if (!buffer.hasRemaining()) {
+			ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			bigger.put(buffer);
+			buffer = bigger;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Processes the data read into the buffer since the last call.
+	 *
+	 * @return {@code true} if the whole header is received
+	 * @throws IllegalStateException
+	 *             if the header is larger than allowed
+	 */
+	public boolean parse() {
+		if (headerEnd >= 0) {
+			return true;
+		}
+
+		byte[] data = buffer.array();
+		int limit = buffer.position();
+		int i = scanned;
+		for (; i < limit; i++) {
+			byte b = data[i];
+			if (b == LF && (state == 1 || state == 3)) {
+				state++;
+				if (state == 4) {
+					i++;
+					break;
+				}
+				addLineStart(i + 1);
+			} else if (b == CR && (state == 0 || state == 2)) {
+				state++;
+			} else {
+				state = b == CR ? 1 : 0;
+			}
+		}
+		scanned = i;
+
+		if (state == 4) {
+			headerEnd = i;
+			bodyEnd = i;
+			lineCount--;
+			decodeRequestLine();
+			return true;
+		}
+		if (scanned >= maxHeaderSize) {
+			throw new IllegalStateException("Request header is too large.");
+		}
+		return false;
+	}
+
+	/**
+	 * Reads from given {@code InputStream} until the whole header is
+	 * received. Data is read in bulk so the stream doesn't need to be
+	 * buffered.
+	 *
+	 * @param is
+	 *            stream with the request
+	 * @return {@code true} if the header is received; {@code false} if the
+	 *         end of the stream is reached before the header is complete
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws IllegalStateException
+	 *             if the header is larger than allowed
+	 */
+	public boolean readRequest(InputStream is) throws IOException {
+		while (!parse()) {
+			if (fill(is) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads available data from given {@code InputStream} into the buffer,
+	 * blocking if no data is available.
+	 *
+	 * @param is
+	 *            stream to read from
+	 * @return number of bytes read; or -1 if the end of the stream is reached
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public int fill(InputStream is) throws IOException {
+		ByteBuffer buf = getBuffer();
+		int n = is.read(buf.array(), buf.position(), buf.remaining());
+		if (n > 0) {
+			buf.position(buf.position() + n);
+		}
+		return n;
+	}
+
+	/**
+	 * Passes the data received after the header to given request body. If the
+	 * body is not complete, all the data is consumed and the buffer is
+	 * emptied up to the header, so the rest of the body can be read into it
+	 * without enlarging it.
+	 *
+	 * @param body
+	 *            body of the current request
+	 * @return {@code true} if the whole body is received
+	 * @throws IOException
+	 *             if the content of the body cannot be written
+	 * @throws IllegalArgumentException
+	 *             if the body has an invalid framing
+	 * @throws IllegalStateException
+	 *             if the header is not complete or the body is too large
+	 */
+	public boolean readBody(RequestBody body) throws IOException {
+		if (headerEnd < 0) {
+			throw new IllegalStateException("Request header is not complete.");
+		}
+		bodyEnd += body.decode(buffer.array(), bodyEnd, buffer.position() - bodyEnd);
+		if (body.isComplete()) {
+			return true;
+		}
+		buffer.position(headerEnd);
+		bodyEnd = headerEnd;
+		return false;
+	}
+
+	/**
+	 * @return number of bytes received after the header which weren't passed
+	 *         to the body yet; 0 if the header is not complete
+	 */
+	public int getBufferedBodyLength() {
+		return headerEnd >= 0 ? buffer.position() - bodyEnd : 0;
+	}
+
+	/**
+	 * @return {@code true} if the buffer contains data that isn't processed
+	 *         yet, for example a pipelined request
+	 */
+	public boolean hasBufferedData() {
+		return buffer.position() > (headerEnd >= 0 ? bodyEnd : 0);
+	}
+
+	/**
+	 * Discards the current request header and the consumed part of its body
+	 * so the next request can be parsed. Data received after them is
+	 * preserved.
+	 */
+	public void next() {
+		int start = headerEnd >= 0 ? bodyEnd : buffer.position();
+		byte[] data = buffer.array();
+		int remaining = buffer.position() - start;
+		System.arraycopy(data, start, data, 0, remaining);
+		buffer.position(remaining);
+
+		state = 0;
+		scanned = 0;
+		headerEnd = -1;
+		lineCount = 0;
+		method = null;
+		path = null;
+		version = null;
+		headers = null;
+	}
+
+	/**
+	 * @return length of the received header including the empty line; or -1
+	 *         if the header is not complete
+	 */
+	public int getHeaderLength() {
+		return headerEnd;
+	}
+
+	/**
+	 * @return requested method, as received; or {@code null} if the request
+	 *         line is invalid
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return requested path including the query string; or {@code null} if
+	 *         the request line is invalid
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return HTTP version, as received; or {@code null} if the request line
+	 *         is invalid
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the value of the header field with given name. Only the
+	 * matching line is decoded if the header fields weren't already decoded.
+	 *
+	 * @param name
+	 *            case insensitive name of the header field
+	 * @return value of the first header field with given name; or
+	 *         {@code null} if no such field exists
+	 */
+	public String getHeader(String name) {
+		if (headers != null) {
+			return headers.get(name);
+		}
+
+		byte[] data = buffer.array();
+		int n = name.length();
+		for (int l = 1; l < lineCount; l++) {
+			int start = lineStarts[l];
+			int end = lineEnd(l);
+			if (end - start <= n || data[start + n] != ':') {
+				continue;
+			}
+			if (matches(data, start, name)) {
+				return decode(data, start + n + 1, end).trim();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns all header fields mapped to their case insensitive names. Fields
+	 * are decoded on the first call of this method. Continuation lines are
+	 * appended to the previous field and values of repeated fields are joined
+	 * with a comma, or with a semicolon for the {@code Cookie} field.
+	 *
+	 * @return read-only {@code Map} with all header fields
+	 */
+	public Map<String, String> getHeaders() {
+		if (headers != null) {
+			return headers;
+		}
+
+		Map<String, String> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		byte[] data = buffer.array();
+		String name = null;
+		for (int l = 1; l < lineCount; l++) {
+			int start = lineStarts[l];
+			int end = lineEnd(l);
+			if (start == end) {
+				continue;
+			}
+			if ((data[start] == ' ' || data[start] == '\t') && name != null) {
+				map.put(name, map.get(name) + " " + decode(data, start, end).trim());
+				continue;
+			}
+
+			int colon = start;
+			while (colon < end && data[colon] != ':') {
+				colon++;
+			}
+			if (colon == end) {
+				continue;
+			}
+			name = decode(data, start, colon).trim();
+			String value = decode(data, colon + 1, end).trim();
+			String old = map.get(name);
+			if (old != null) {
+				value = old + (name.equalsIgnoreCase("Cookie") ? "; " : ", ") + value;
+			}
+			map.put(name, value);
+		}
+
+		headers = Collections.unmodifiableMap(map);
+		return headers;
+	}
+
+	/**
+	 * Decodes the request line into the method, path and version.
+	 */
+	private void decodeRequestLine() {
+		byte[] data = buffer.array();
+		int end = lineEnd(0);
+		int first = indexOf(data, ' ', 0, end);
+		int second = first < 0 ? -1 : indexOf(data, ' ', first + 1, end);
+		if (first <= 0 || second <= first + 1 || second == end - 1 || indexOf(data, ' ', second + 1, end) >= 0) {
+			return;
+		}
+		method = decode(data, 0, first);
+		path = decode(data, first + 1, second);
+		version = decode(data, second + 1, end);
+	}
+
+	/**
+	 * Remembers the start of a new header line.
+	 *
+	 * @param offset
+	 *            offset of the line in the buffer
+	 */
+	private void addLineStart(int offset) {
+		if (lineCount == 0) {
+			lineStarts[0] = 0;
+			lineCount = 1;
+		}
+		if (lineCount == lineStarts.length) {
+			lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+		}
+		lineStarts[lineCount++] = offset;
+	}
+
+	/**
+	 * Returns the offset at which the line with given index ends, without the
+	 * line terminator.
+	 *
+	 * @param line
+	 *            index of the line
+	 * @return offset of the line end
+	 */
+	private int lineEnd(int line) {
+		int next = line + 1 < lineCount ? lineStarts[line + 1] : headerEnd - 2;
+		return next - 2;
+	}
+
+	/**
+	 * Checks if the bytes at given offset match given name, ignoring case.
+	 *
+	 * @param data
+	 *            data to check
+	 * @param offset
+	 *            offset of the first byte
+	 * @param name
+	 *            expected name
+	 * @return {@code true} if the name matches
+	 */
+	private static boolean matches(byte[] data, int offset, String name) {
+		for (int i = 0, n = name.length(); i < n; i++) {
+			char c = (char) (data[offset + i] & 0xFF);
+			char e = name.charAt(i);
+			if (c != e && Character.toLowerCase(c) != Character.toLowerCase(e)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the first occurrence of given byte.
+	 *
+	 * @param data
+	 *            data to search
+	 * @param b
+	 *            byte to find
+	 * @param from
+	 *            offset to start from
+	 * @param to
+	 *            offset at which the search stops
+	 * @return offset of the byte; or -1 if not found
+	 */
+	private static int indexOf(byte[] data, char b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (data[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Decodes given range as an ISO-8859-1 {@code String}.
+	 *
+	 * @param data
+	 *            data to decode
+	 * @param from
+	 *            start offset
+	 * @param to
+	 *            end offset
+	 * @return decoded {@code String}
+	 */
+	private static String decode(byte[] data, int from, int to) {
+		return new String(data, from, to - from, StandardCharsets.ISO_8859_1);
+	}
+}
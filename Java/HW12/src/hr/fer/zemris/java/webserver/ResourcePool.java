@@ -0,0 +1,166 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * {@code ResourcePool} reuses objects which are expensive to create, such as
+ * buffers. An object is taken with {@link #acquire()} and given back with
+ * {@link #release(Object)} once it is no longer used. <br>
+ * A {@link #perThread(Supplier) per thread} pool keeps one object for every
+ * thread, which is the cheapest as long as there are few long living
+ * threads. When every task gets a new thread, as with virtual threads, such
+ * a pool would create an object for every task and keep it as long as the
+ * thread lives, so a {@link #shared(Supplier, int) shared} pool should be
+ * used instead. It keeps released objects in a common stack, so only as many
+ * objects are created as are used at the same time. <br>
+ * All pools are thread safe.
+ *
+ * @author Dan
+ * @param <T>
+ *            type of the pooled objects
+ */
+public abstract class ResourcePool<T> {
+
+	/**
+	 * Pool which keeps one object for every thread.
+	 *
+	 * @author Dan
+	 * @param <T>
+	 *            type of the pooled objects
+	 */
+	private static class PerThreadPool<T> extends ResourcePool<T> {
+
+		/** Object of every thread. */
+		private final ThreadLocal<T> resources;
+
+		/**
+		 * Creates a new {@code PerThreadPool} with given factory.
+		 *
+		 * @param factory
+		 *            creates new objects
+		 */
+		private PerThreadPool(Supplier<T> factory) {
+			resources = ThreadLocal.withInitial(factory);
+		}
+
+		@Override
+		public T acquire() {
+			return resources.get();
+		}
+
+		@Override
+		public void release(T resource) {
+		}
+	}
+
+	/**
+	 * Pool which keeps released objects in a stack shared by all threads.
+	 *
+	 * @author Dan
+	 * @param <T>
+	 *            type of the pooled objects
+	 */
+	private static class SharedPool<T> extends ResourcePool<T> {
+
+		/** Creates new objects. */
+		private final Supplier<T> factory;
+
+		/** Released objects, the most recently released first. */
+		private final Deque<T> idle;
+
+		/** Number of objects in {@link #idle}. */
+		private final AtomicInteger idleCount;
+
+		/** Maximum number of kept objects. */
+		private final int maxIdle;
+
+		/**
+		 * Creates a new {@code SharedPool} with given arguments.
+		 *
+		 * @param factory
+		 *            creates new objects
+		 * @param maxIdle
+		 *            maximum number of kept objects
+		 */
+		private SharedPool(Supplier<T> factory, int maxIdle) {
+			this.factory = factory;
+			this.maxIdle = maxIdle;
+			idle = new ConcurrentLinkedDeque<>();
+			idleCount = new AtomicInteger();
+		}
+
+		@Override
+		public T acquire() {
+			T resource = idle.pollFirst();
+			if (resource == null) {
+				return factory.get();
+			}
+			idleCount.decrementAndGet();
+			return resource;
+		}
+
+		@Override
+		public void release(T resource) {
+			if (idleCount.incrementAndGet() <= maxIdle) {
+				idle.offerFirst(resource);
+			} else {
+				idleCount.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Returns an object from the pool, or a new one if there is none.
+	 *
+	 * @return object for the exclusive use of the caller until it is
+	 *         released
+	 */
+	public abstract T acquire();
+
+	/**
+	 * Gives the object back to the pool. The object must not be used
+	 * afterwards.
+	 *
+	 * @param resource
+	 *            object taken with {@link #acquire()}
+	 */
+	public abstract void release(T resource);
+
+	/**
+	 * Creates a pool which keeps one object for every thread. A thread must
+	 * release an object before it acquires it again.
+	 *
+	 * @param factory
+	 *            creates new objects
+	 * @param <T>
+	 *            type of the pooled objects
+	 * @return new pool
+	 */
+	public static <T> ResourcePool<T> perThread(Supplier<T> factory) {
+		return new PerThreadPool<>(factory);
+	}
+
+	/**
+	 * Creates a pool which keeps released objects for all threads.
+	 *
+	 * @param factory
+	 *            creates new objects
+	 * @param maxIdle
+	 *            maximum number of released objects kept in the pool; others
+	 *            are left to the garbage collector
+	 * @param <T>
+	 *            type of the pooled objects
+	 * @return new pool
+	 * @throws IllegalArgumentException
+	 *             if the maximum number of kept objects is negative
+	 */
+	public static <T> ResourcePool<T> shared(Supplier<T> factory, int maxIdle) {
+		if (maxIdle < 0) {
+			throw new IllegalArgumentException("Maximum number of idle objects can't be negative.");
+		}
+		return new SharedPool<>(factory, maxIdle);
+	}
+}
@@ -0,0 +1,172 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptCompiler;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+/**
+ * {@code ScriptCache} keeps parsed smart scripts, so a script is read and
+ * parsed only on the first request and after it is modified. <br>
+ * Scripts are cached by their path and last modification time in an
+ * {@link LruCache}. Total length of the cached scripts' source is bounded and
+ * the least recently used scripts are evicted first. Number of cache hits and
+ * misses is counted. <br>
+ * Scripts can also be obtained compiled; a script is compiled on the first
+ * such request and kept together with the parsed document. <br>
+ * Lookups don't block each other, so this class can be used by any number of
+ * threads. Cached {@code DocumentNodes} are shared and must not be modified.
+ *
+ * @author Dan
+ */
+public class ScriptCache {
+
+	/**
+	 * Single parsed script.
+	 *
+	 * @author Dan
+	 */
+	private static class CacheEntry {
+
+		/** Last modification time of the script when it was parsed. */
+		private final long lastModified;
+
+		/** Parsed script. */
+		private final DocumentNode document;
+
+		/** Compiled script; {@code null} until it is requested. */
+		private volatile CompiledScript compiled;
+
+		/**
+		 * Creates a new {@code CacheEntry} with given arguments.
+		 *
+		 * @param lastModified
+		 *            last modification time of the script
+		 * @param document
+		 *            parsed script
+		 */
+		private CacheEntry(long lastModified, DocumentNode document) {
+			this.lastModified = lastModified;
+			this.document = document;
+		}
+	}
+
+	/** Cached scripts mapped to their paths, sized by their source length. */
+	private final LruCache<Path, CacheEntry> entries;
+
+	/** Number of requests served from the cache. */
+	private final LongAdder hits;
+
+	/** Number of requests for which the script had to be parsed. */
+	private final LongAdder misses;
+
+	/**
+	 * Creates a new empty {@code ScriptCache} with given maximum size.
+	 *
+	 * @param maxSize
+	 *            maximum total length of the cached scripts' source
+	 */
+	public ScriptCache(long maxSize) {
+		entries = new LruCache<>(maxSize);
+		hits = new LongAdder();
+		misses = new LongAdder();
+	}
+
+	/**
+	 * Returns the parsed script from given file. If the script isn't cached or
+	 * it was modified in the meantime, it is read, parsed and put in the
+	 * cache.
+	 *
+	 * @param path
+	 *            path of the script
+	 * @return parsed script
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SmartScriptParserException
+	 *             if the script is invalid
+	 */
+	public DocumentNode get(Path path) throws IOException {
+		return getEntry(path).document;
+	}
+
+	/**
+	 * Returns the compiled script from given file. The script is read, parsed
+	 * and compiled only if the cache doesn't already contain its current
+	 * version.
+	 *
+	 * @param path
+	 *            path of the script
+	 * @return compiled script
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SmartScriptParserException
+	 *             if the script is invalid
+	 * @throws UnsupportedOperationException
+	 *             if the script uses an unsupported operator or function
+	 */
+	public CompiledScript getCompiled(Path path) throws IOException {
+		CacheEntry entry = getEntry(path);
+		CompiledScript compiled = entry.compiled;
+		if (compiled == null) {
+			compiled = new SmartScriptCompiler(entry.document).getCompiledScript();
+			entry.compiled = compiled;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Returns the current cache entry for given script, parsing the script if
+	 * needed.
+	 *
+	 * @param path
+	 *            path of the script
+	 * @return cache entry for the script
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SmartScriptParserException
+	 *             if the script is invalid
+	 */
+	private CacheEntry getEntry(Path path) throws IOException {
+		long lastModified = Files.getLastModifiedTime(path).toMillis();
+		CacheEntry entry = entries.get(path);
+		if (entry != null && entry.lastModified == lastModified) {
+			hits.increment();
+			return entry;
+		}
+
+		misses.increment();
+		String docBody = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+		DocumentNode document = new SmartScriptParser(docBody).getDocumentNode();
+		entry = new CacheEntry(lastModified, document);
+		entries.put(path, entry, docBody.length());
+		return entry;
+	}
+
+	/**
+	 * @return number of requests served from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of requests for which the script had to be parsed
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return current total length of the cached scripts' source
+	 */
+	public long getSize() {
+		return entries.getSize();
+	}
+}
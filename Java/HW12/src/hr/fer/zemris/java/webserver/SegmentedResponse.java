@@ -0,0 +1,233 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code SegmentedResponse} collects a response which is written to a
+ * non-blocking channel later, possibly by another thread. <br>
+ * Bytes written to this stream are kept in memory, but parts of files are
+ * only recorded with {@link #write(FileChannel, long, long)} and transferred
+ * directly from the file when the response is written, so large files are
+ * never copied to the heap. The response is written with
+ * {@link #writeTo(WritableByteChannel)}, which can be called again whenever
+ * the channel accepts more data. <br>
+ * The recorded file channels are owned by this response: each is closed
+ * once its last part is written, and all of them are closed by
+ * {@link #close()}. Several parts of the same file can be recorded with the
+ * same channel.
+ * <br>
+ * This class is not thread safe; the response must be handed over to the
+ * writing thread only after it is complete.
+ *
+ * @author Dan
+ */
+public class SegmentedResponse extends OutputStream {
+
+	/**
+	 * Part of a file which is a segment of the response.
+	 *
+	 * @author Dan
+	 */
+	private static class FileRegion {
+
+		/** File with the data. */
+		private final FileChannel file;
+
+		/** Position of the next byte to write. */
+		private long position;
+
+		/** Position after the last byte to write. */
+		private final long end;
+
+		/**
+		 * Creates a new {@code FileRegion} with given arguments.
+		 *
+		 * @param file
+		 *            file with the data
+		 * @param position
+		 *            position of the first byte
+		 * @param count
+		 *            number of bytes
+		 */
+		private FileRegion(FileChannel file, long position, long count) {
+			this.file = file;
+			this.position = position;
+			end = position + count;
+		}
+	}
+
+	/** Initial capacity of a block of bytes. */
+	private static final int INITIAL_CAPACITY = 512;
+
+	/** Segments of the response: {@code ByteBuffers} and {@code FileRegions}. */
+	private final List<Object> segments;
+
+	/** Block which receives the written bytes; {@code null} if there is none. */
+	private byte[] block;
+
+	/** Number of bytes in the {@link #block}. */
+	private int count;
+
+	/** Index of the first segment which is not completely written. */
+	private int next;
+
+	/** Total length of the response. */
+	private long length;
+
+	/**
+	 * Creates a new empty {@code SegmentedResponse}.
+	 */
+	public SegmentedResponse() {
+		segments = new ArrayList<>();
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(1);
+		block[count++] = (byte) b;
+		length++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		if (len == 0) {
+			return;
+		}
+		ensureCapacity(len);
+		System.arraycopy(b, off, block, count, len);
+		count += len;
+		length += len;
+	}
+
+	/**
+	 * Appends the given part of a file to the response. The data isn't read
+	 * until the response is written. This response takes over the file
+	 * channel and closes it.
+	 *
+	 * @param file
+	 *            file with the data
+	 * @param position
+	 *            position in the file of the first byte to send
+	 * @param count
+	 *            number of bytes to send
+	 */
+	public void write(FileChannel file, long position, long count) {
+		sealBlock();
+		segments.add(new FileRegion(file, position, count));
+		length += count;
+	}
+
+	/**
+	 * Makes sure the {@link #block} has room for given number of bytes.
+	 *
+	 * @param size
+	 *            number of bytes which will be written
+	 */
+	private void ensureCapacity(int size) {
+		if (block == null) {
+			block = new byte[Math.max(INITIAL_CAPACITY, size)];
+			count = 0;
+		} else if (block.length - count < size) {
+			block = Arrays.copyOf(block, Math.max(block.length * 2, count + size));
+		}
+	}
+
+	/**
+	 * Adds the current block of bytes to the segments.
+	 */
+	private void sealBlock() {
+		if (block != null && count > 0) {
+			segments.add(ByteBuffer.wrap(block, 0, count));
+		}
+		block = null;
+		count = 0;
+	}
+
+	/**
+	 * @return total length of the response in bytes
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Writes as much of the response as the channel accepts.
+	 *
+	 * @param channel
+	 *            channel to write to
+	 * @return {@code true} if the whole response is written
+	 * @throws IOException
+	 *             if an I/O error occurs or a file is shorter than expected
+	 */
+	public boolean writeTo(WritableByteChannel channel) throws IOException {
+		sealBlock();
+		while (next < segments.size()) {
+			Object segment = segments.get(next);
+			if (segment instanceof ByteBuffer) {
+				ByteBuffer data = (ByteBuffer) segment;
+				channel.write(data);
+				if (data.hasRemaining()) {
+					return false;
+				}
+			} else {
+				FileRegion region = (FileRegion) segment;
+				while (region.position < region.end) {
+					long n = region.file.transferTo(region.position, region.end - region.position, channel);
+					if (n <= 0) {
+						if (region.position >= region.file.size()) {
+							throw new IOException("Unexpected end of file.");
+						}
+						return false;
+					}
+					region.position += n;
+				}
+				if (!isUsedAfter(region.file, next)) {
+					region.file.close();
+				}
+			}
+			segments.set(next++, null);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if a segment after the given one is a part of the given file.
+	 *
+	 * @param file
+	 *            file to check
+	 * @param index
+	 *            index of the segment
+	 * @return {@code true} if a later segment is a part of the file
+	 */
+	private boolean isUsedAfter(FileChannel file, int index) {
+		for (int i = index + 1; i < segments.size(); i++) {
+			Object segment = segments.get(i);
+			if (segment instanceof FileRegion && ((FileRegion) segment).file == file) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Closes all file channels of the response.
+	 */
+	@Override
+	public void close() {
+		for (Object segment : segments) {
+			if (segment instanceof FileRegion) {
+				try {
+					((FileRegion) segment).file.close();
+				} catch (IOException ignorable) {
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,478 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * {@code ServerMetrics} collects statistics of the {@link SmartHttpServer}:
+ * number of requests and their latencies for every {@link Route}, number of
+ * received and sent bytes and number of open connections. Other values, like
+ * the number of sessions or queued tasks, are registered as functions which
+ * are evaluated only when the metrics are requested. <br>
+ * All counters are {@link LongAdder LongAdders}, so recording a request
+ * doesn't make the worker threads contend with each other. Latencies are
+ * recorded in a {@link Histogram} with logarithmic buckets. <br>
+ * As an {@link IWebWorker}, it sends all metrics in the Prometheus text
+ * format.
+ *
+ * @author Dan
+ */
+public class ServerMetrics implements IWebWorker {
+
+	/**
+	 * Kinds of requests, by the way they are processed.
+	 *
+	 * @author Dan
+	 */
+	public enum Route {
+		/** Static files. */
+		STATIC("static"),
+		/** Smart scripts. */
+		SCRIPT("script"),
+		/** Workers from the workers configuration file. */
+		WORKER("worker"),
+		/** Workers requested by the {@code "/ext/name"} convention. */
+		EXT("ext"),
+		/** Requests rejected before they were routed. */
+		INVALID("invalid");
+
+		/** Value of the {@code route} label. */
+		private final String label;
+
+		/**
+		 * Creates a new {@code Route} with given label.
+		 *
+		 * @param label
+		 *            value of the {@code route} label
+		 */
+		private Route(String label) {
+			this.label = label;
+		}
+	}
+
+	/**
+	 * Histogram of non-negative values with logarithmic buckets. Values below
+	 * 16 have a bucket each; larger values are split into powers of two and
+	 * every power of two into 8 buckets, so the relative error of a value
+	 * taken from the histogram is at most 12.5%. Buckets are counted with
+	 * {@code LongAdders}, so any number of threads can record values.
+	 *
+	 * @author Dan
+	 */
+	static class Histogram {
+
+		/** Number of bits of a value which select its bucket in a group. */
+		private static final int SUB_BITS = 3;
+
+		/** Number of buckets per power of two. */
+		private static final int SUB_COUNT = 1 << SUB_BITS;
+
+		/** Values below this have a bucket each. */
+		private static final int LINEAR = 2 * SUB_COUNT;
+
+		/** Exponent of the largest power of two with its own buckets. */
+		private static final int MAX_EXPONENT = 40;
+
+		/** Number of buckets. */
+		static final int BUCKETS = LINEAR + (MAX_EXPONENT - SUB_BITS) * SUB_COUNT;
+
+		/** Counts of the values in each bucket. */
+		private final LongAdder[] counts;
+
+		/** Sum of the recorded values. */
+		private final LongAdder sum;
+
+		/**
+		 * Creates a new empty {@code Histogram}.
+		 */
+		Histogram() {
+			counts = new LongAdder[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = new LongAdder();
+			}
+			sum = new LongAdder();
+		}
+
+		/**
+		 * Records given value. Negative values are recorded as zero.
+		 *
+		 * @param value
+		 *            value to record
+		 */
+		void record(long value) {
+			value = Math.max(value, 0);
+			counts[index(value)].increment();
+			sum.add(value);
+		}
+
+		/**
+		 * Returns the index of the bucket of given value.
+		 *
+		 * @param value
+		 *            non-negative value
+		 * @return index of the bucket
+		 */
+		static int index(long value) {
+			if (value < LINEAR) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			if (exponent > MAX_EXPONENT) {
+				return BUCKETS - 1;
+			}
+			int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+			return LINEAR + (exponent - SUB_BITS - 1) * SUB_COUNT + sub;
+		}
+
+		/**
+		 * Returns the upper bound of the bucket with given index.
+		 *
+		 * @param index
+		 *            index of the bucket
+		 * @return smallest value larger than all values in the bucket
+		 */
+		static long upperBound(int index) {
+			if (index < LINEAR) {
+				return index + 1;
+			}
+			int group = (index - LINEAR) / SUB_COUNT;
+			int sub = (index - LINEAR) % SUB_COUNT;
+			return (long) (SUB_COUNT + sub + 1) << (group + 1);
+		}
+
+		/**
+		 * @return number of recorded values
+		 */
+		long getCount() {
+			long count = 0;
+			for (LongAdder adder : counts) {
+				count += adder.sum();
+			}
+			return count;
+		}
+
+		/**
+		 * @return sum of the recorded values
+		 */
+		long getSum() {
+			return sum.sum();
+		}
+
+		/**
+		 * Returns the number of recorded values smaller than given bound.
+		 * The result is exact if the bound is a power of two.
+		 *
+		 * @param bound
+		 *            upper bound of the values
+		 * @return number of values in the buckets below the bound
+		 */
+		long countBelow(long bound) {
+			long count = 0;
+			for (int i = 0; i < BUCKETS && upperBound(i) <= bound; i++) {
+				count += counts[i].sum();
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the value below which given percentage of the recorded
+		 * values lies.
+		 *
+		 * @param percentile
+		 *            percentage, from 0 to 100
+		 * @return upper bound of the bucket with the percentile; or 0 if no
+		 *         value was recorded
+		 */
+		long getPercentile(double percentile) {
+			long[] snapshot = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				snapshot[i] = counts[i].sum();
+				total += snapshot[i];
+			}
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				count += snapshot[i];
+				if (count >= rank) {
+					return upperBound(i);
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Value which is read only when the metrics are requested.
+	 *
+	 * @author Dan
+	 */
+	private static class Sample {
+
+		/** Name of the metric, without the prefix. */
+		private final String name;
+
+		/** Description of the metric. */
+		private final String help;
+
+		/** Prometheus type of the metric. */
+		private final String type;
+
+		/** Function which returns the current value. */
+		private final LongSupplier value;
+
+		/**
+		 * Creates a new {@code Sample} with given arguments.
+		 *
+		 * @param name
+		 *            name of the metric, without the prefix
+		 * @param help
+		 *            description of the metric
+		 * @param type
+		 *            Prometheus type of the metric
+		 * @param value
+		 *            function which returns the current value
+		 */
+		private Sample(String name, String help, String type, LongSupplier value) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+			this.value = value;
+		}
+	}
+
+	/** Prefix of all metric names. */
+	private static final String PREFIX = "smarthttp_";
+
+	/** Exponent of the smallest bucket bound, a power of two microseconds. */
+	private static final int MIN_BOUND_EXPONENT = 4;
+
+	/** Exponent of the largest bucket bound, a power of two microseconds. */
+	private static final int MAX_BOUND_EXPONENT = 26;
+
+	/** MIME type of the Prometheus text format. */
+	private static final String MIME_TYPE = "text/plain; version=0.0.4";
+
+	/** Number of requests for each route. */
+	private final LongAdder[] requests;
+
+	/** Latencies of the requests in microseconds for each route. */
+	private final Histogram[] latencies;
+
+	/** Number of received bytes. */
+	private final LongAdder bytesReceived;
+
+	/** Number of sent bytes. */
+	private final LongAdder bytesSent;
+
+	/** Number of open connections. */
+	private final LongAdder connections;
+
+	/** Values read when the metrics are requested. */
+	private final List<Sample> samples;
+
+	/**
+	 * Creates new {@code ServerMetrics} with all counters set to zero.
+	 */
+	public ServerMetrics() {
+		Route[] routes = Route.values();
+		requests = new LongAdder[routes.length];
+		latencies = new Histogram[routes.length];
+		for (int i = 0; i < routes.length; i++) {
+			requests[i] = new LongAdder();
+			latencies[i] = new Histogram();
+		}
+		bytesReceived = new LongAdder();
+		bytesSent = new LongAdder();
+		connections = new LongAdder();
+		samples = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Records a processed request.
+	 *
+	 * @param route
+	 *            way the request was processed
+	 * @param nanos
+	 *            time spent processing the request in nanoseconds
+	 * @param received
+	 *            number of bytes of the request
+	 * @param sent
+	 *            number of bytes of the response
+	 */
+	public void record(Route route, long nanos, long received, long sent) {
+		requests[route.ordinal()].increment();
+		latencies[route.ordinal()].record(nanos / 1000);
+		bytesReceived.add(received);
+		bytesSent.add(sent);
+	}
+
+	/**
+	 * Records that a connection was opened.
+	 */
+	public void connectionOpened() {
+		connections.increment();
+	}
+
+	/**
+	 * Records that a connection was closed.
+	 */
+	public void connectionClosed() {
+		connections.decrement();
+	}
+
+	/**
+	 * Registers a gauge whose value is read when the metrics are requested.
+	 *
+	 * @param name
+	 *            name of the metric, without the prefix
+	 * @param help
+	 *            description of the metric
+	 * @param value
+	 *            function which returns the current value
+	 */
+	public void addGauge(String name, String help, LongSupplier value) {
+		samples.add(new Sample(name, help, "gauge", value));
+	}
+
+	/**
+	 * Registers a counter whose value is read when the metrics are
+	 * requested.
+	 *
+	 * @param name
+	 *            name of the metric, without the prefix and ending with
+	 *            {@code _total}
+	 * @param help
+	 *            description of the metric
+	 * @param value
+	 *            function which returns the current value
+	 */
+	public void addCounter(String name, String help, LongSupplier value) {
+		samples.add(new Sample(name, help, "counter", value));
+	}
+
+	/**
+	 * @param route
+	 *            way the requests were processed
+	 * @return number of requests processed along given route
+	 */
+	public long getRequests(Route route) {
+		return requests[route.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the latency below which given percentage of the requests
+	 * processed along given route was processed.
+	 *
+	 * @param route
+	 *            way the requests were processed
+	 * @param percentile
+	 *            percentage, from 0 to 100
+	 * @return latency in microseconds, with the relative error of at most
+	 *         12.5%
+	 */
+	public long getLatency(Route route, double percentile) {
+		return latencies[route.ordinal()].getPercentile(percentile);
+	}
+
+	/**
+	 * Formats all metrics in the Prometheus text format.
+	 *
+	 * @return current values of all metrics
+	 */
+	public String format() {
+		StringBuilder sb = new StringBuilder(16 * 1024);
+
+		header(sb, "requests_total", "Number of processed requests.", "counter");
+		for (Route route : Route.values()) {
+			sb.append(PREFIX).append("requests_total{route=\"").append(route.label).append("\"} ")
+					.append(requests[route.ordinal()].sum()).append('\n');
+		}
+
+		header(sb, "request_duration_seconds", "Time spent processing the requests.", "histogram");
+		for (Route route : Route.values()) {
+			Histogram histogram = latencies[route.ordinal()];
+			String name = PREFIX + "request_duration_seconds";
+			String label = "{route=\"" + route.label + "\"";
+			for (int e = MIN_BOUND_EXPONENT; e <= MAX_BOUND_EXPONENT; e++) {
+				sb.append(name).append("_bucket").append(label).append(",le=\"")
+						.append(seconds(1L << e)).append("\"} ").append(histogram.countBelow(1L << e)).append('\n');
+			}
+			long count = histogram.getCount();
+			sb.append(name).append("_bucket").append(label).append(",le=\"+Inf\"} ").append(count).append('\n');
+			sb.append(name).append("_sum").append(label).append("} ").append(seconds(histogram.getSum()))
+					.append('\n');
+			sb.append(name).append("_count").append(label).append("} ").append(count).append('\n');
+		}
+
+		metric(sb, "received_bytes_total", "Number of received bytes of the requests.", "counter",
+				bytesReceived.sum());
+		metric(sb, "sent_bytes_total", "Number of sent bytes of the responses.", "counter", bytesSent.sum());
+		metric(sb, "open_connections", "Number of open client connections.", "gauge", connections.sum());
+		for (Sample sample : samples) {
+			metric(sb, sample.name, sample.help, sample.type, sample.value.getAsLong());
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void processRequest(RequestContext context) {
+		context.setMimeType(MIME_TYPE);
+		try {
+			context.write(format());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Appends the help and type lines of a metric.
+	 *
+	 * @param sb
+	 *            {@code StringBuilder} to append to
+	 * @param name
+	 *            name of the metric, without the prefix
+	 * @param help
+	 *            description of the metric
+	 * @param type
+	 *            Prometheus type of the metric
+	 */
+	private static void header(StringBuilder sb, String name, String help, String type) {
+		sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+	}
+
+	/**
+	 * Appends a metric with a single value.
+	 *
+	 * @param sb
+	 *            {@code StringBuilder} to append to
+	 * @param name
+	 *            name of the metric, without the prefix
+	 * @param help
+	 *            description of the metric
+	 * @param type
+	 *            Prometheus type of the metric
+	 * @param value
+	 *            value of the metric
+	 */
+	private static void metric(StringBuilder sb, String name, String help, String type, long value) {
+		header(sb, name, help, type);
+		sb.append(PREFIX).append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Converts microseconds to seconds without the exponent notation.
+	 *
+	 * @param micros
+	 *            microseconds
+	 * @return seconds
+	 */
+	private static String seconds(long micros) {
+		return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+	}
+}
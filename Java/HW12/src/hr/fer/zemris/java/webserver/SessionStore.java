@@ -0,0 +1,333 @@
+package hr.fer.zemris.java.webserver;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code SessionStore} keeps user sessions of the {@link SmartHttpServer}. <br>
+ * Sessions are kept in a {@code ConcurrentHashMap}, so looking up and creating
+ * sessions never takes a global lock. Validity of each session is extended
+ * atomically on every use and a session which has once expired can't be
+ * extended any more. <br>
+ * Expired sessions are removed by {@link #expire()}, which should be called
+ * periodically, at least once per {@link #getTickMillis()}. Instead of
+ * sweeping all sessions, it uses a timing wheel: every session is queued in
+ * the bucket of the tick in which it should expire and only the buckets of
+ * the elapsed ticks are examined. Sessions which were used in the meantime
+ * are queued again, so a session is queued at most once per timeout, not on
+ * every request. <br>
+ * Session IDs are generated by a {@code SecureRandom} kept per thread. Each
+ * generator is seeded once from a shared {@code SecureRandom} and then
+ * produces IDs on its own, so generating an ID neither blocks on the system
+ * entropy source nor contends with other threads. A faster, non
+ * cryptographic generator like {@code ThreadLocalRandom} is deliberately not
+ * used: its state can be recovered from a few observed IDs, which would let
+ * anyone predict the IDs of other users' sessions. <br>
+ * This class is thread safe.
+ *
+ * @author Dan
+ */
+public class SessionStore {
+
+	/**
+	 * Single user session.
+	 *
+	 * @author Dan
+	 */
+	public static class Session {
+
+		/** Session ID. */
+		private final String id;
+
+		/** Time until this session is valid. */
+		private final AtomicLong validUntil;
+
+		/** {@code Map} with session dependent parameters. */
+		private final Map<String, String> parameters;
+
+		/**
+		 * Creates a new {@code Session} with given arguments.
+		 *
+		 * @param id
+		 *            session ID
+		 * @param validUntil
+		 *            time until the session is valid
+		 */
+		private Session(String id, long validUntil) {
+			this.id = id;
+			this.validUntil = new AtomicLong(validUntil);
+			parameters = new ConcurrentHashMap<>();
+		}
+
+		/**
+		 * @return the ID of this {@code Session}
+		 */
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * @return the {@code Map} with session dependent parameters
+		 */
+		public Map<String, String> getParameters() {
+			return parameters;
+		}
+
+		/**
+		 * @return time until this {@code Session} is valid
+		 */
+		public long getValidUntil() {
+			return validUntil.get();
+		}
+
+		/**
+		 * Extends the validity of this session, unless it has already
+		 * expired.
+		 *
+		 * @param now
+		 *            current time
+		 * @param timeout
+		 *            duration of the session
+		 * @return {@code true} if the session is valid; {@code false} if it
+		 *         has expired
+		 */
+		private boolean touch(long now, long timeout) {
+			long next = now + timeout;
+			while (true) {
+				long current = validUntil.get();
+				if (current < now) {
+					return false;
+				}
+				if (current >= next || validUntil.compareAndSet(current, next)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	/** Number of buckets in the timing wheel; a power of two. */
+	private static final int WHEEL_SIZE = 64;
+
+	/** Minimum duration of one tick of the timing wheel in milliseconds. */
+	private static final long MIN_TICK = 1000;
+
+	/** Length of the session ID. */
+	private static final int SID_LENGTH = 20;
+
+	/** {@code Characters} that can be used to generate session ID. */
+	private static final char[] SID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+	/** Source of the seeds of per thread session ID generators. */
+	private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+	/** Session ID generator of each thread. */
+	private static final ThreadLocal<SecureRandom> SID_RANDOM = ThreadLocal.withInitial(SessionStore::newSIDRandom);
+
+	/** Duration of a session in milliseconds. */
+	private final long timeout;
+
+	/** Duration of one tick of the timing wheel in milliseconds. */
+	private final long tick;
+
+	/** Sessions mapped to their IDs. */
+	private final Map<String, Session> sessions;
+
+	/** Buckets of the timing wheel with the sessions expiring in them. */
+	private final Queue<Session>[] wheel;
+
+	/** Last tick whose bucket was examined; -1 before the first run. */
+	private long lastTick;
+
+	/**
+	 * Creates a new empty {@code SessionStore} with given session timeout.
+	 *
+	 * @param timeout
+	 *            duration of a session in seconds
+	 * @throws IllegalArgumentException
+	 *             if the timeout is not positive
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public SessionStore(int timeout) {
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("Session timeout must be positive.");
+		}
+		this.timeout = timeout * 1000L;
+		// one rotation of the wheel covers at least two timeouts
+		tick = Math.max(MIN_TICK, (this.timeout + WHEEL_SIZE / 2 - 1) / (WHEEL_SIZE / 2));
+		sessions = new ConcurrentHashMap<>();
+		wheel = new Queue[WHEEL_SIZE];
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			wheel[i] = new ConcurrentLinkedQueue<>();
+		}
+		lastTick = -1;
+	}
+
+	/**
+	 * Returns the valid session with given ID and extends its validity.
+	 *
+	 * @param sid
+	 *            session ID
+	 * @return session with given ID; or {@code null} if it doesn't exist or
+	 *         it has expired
+	 */
+	public Session get(String sid) {
+		return get(sid, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the valid session with given ID and extends its validity.
+	 *
+	 * @param sid
+	 *            session ID
+	 * @param now
+	 *            current time
+	 * @return session with given ID; or {@code null} if it doesn't exist or
+	 *         it has expired
+	 */
+	Session get(String sid, long now) {
+		Session session = sessions.get(sid);
+		if (session == null) {
+			return null;
+		}
+		if (!session.touch(now, timeout)) {
+			sessions.remove(sid, session);
+			return null;
+		}
+		return session;
+	}
+
+	/**
+	 * Creates a new session with a unique ID.
+	 *
+	 * @return new session
+	 */
+	public Session create() {
+		return create(System.currentTimeMillis());
+	}
+
+	/**
+	 * Creates a new session with a unique ID.
+	 *
+	 * @param now
+	 *            current time
+	 * @return new session
+	 */
+	Session create(long now) {
+		Session session;
+		do {
+			session = new Session(generateSID(), now + timeout);
+		} while (sessions.putIfAbsent(session.id, session) != null);
+		schedule(session, session.getValidUntil());
+		return session;
+	}
+
+	/**
+	 * Removes the sessions which have expired since the last call.
+	 */
+	public void expire() {
+		expire(System.currentTimeMillis());
+	}
+
+	/**
+	 * Removes the sessions which have expired since the last call. Only the
+	 * buckets of the ticks elapsed since the last call are examined, so a
+	 * session is removed at most one tick after it has expired.
+	 *
+	 * @param now
+	 *            current time
+	 */
+	synchronized void expire(long now) {
+		// the current tick isn't over, so its sessions may still be valid
+		long currentTick = now / tick - 1;
+		long firstTick = lastTick < 0 ? currentTick - WHEEL_SIZE + 1 : lastTick + 1;
+		firstTick = Math.max(firstTick, currentTick - WHEEL_SIZE + 1);
+
+		List<Session> due = new ArrayList<>();
+		for (long t = firstTick; t <= currentTick; t++) {
+			Queue<Session> bucket = wheel[(int) (t & (WHEEL_SIZE - 1))];
+			Session session;
+			while ((session = bucket.poll()) != null) {
+				due.add(session);
+			}
+		}
+		lastTick = currentTick;
+
+		for (Session session : due) {
+			long validUntil = session.getValidUntil();
+			if (validUntil < now) {
+				sessions.remove(session.id, session);
+			} else if (sessions.get(session.id) == session) {
+				schedule(session, validUntil);
+			}
+		}
+	}
+
+	/**
+	 * Queues the session in the bucket of the tick in which it expires.
+	 *
+	 * @param session
+	 *            session to queue
+	 * @param validUntil
+	 *            time until the session is valid
+	 */
+	private void schedule(Session session, long validUntil) {
+		wheel[(int) ((validUntil / tick) & (WHEEL_SIZE - 1))].add(session);
+	}
+
+	/**
+	 * Creates a session ID generator for the current thread. A
+	 * {@code SHA1PRNG} generator is used where available, because once seeded
+	 * it never reads the system entropy source again; the seed is taken from
+	 * the shared {@link #SEED_SOURCE}.
+	 *
+	 * @return seeded session ID generator
+	 */
+	private static SecureRandom newSIDRandom() {
+		SecureRandom random;
+		try {
+			random = SecureRandom.getInstance("SHA1PRNG");
+		} catch (NoSuchAlgorithmException e) {
+			random = new SecureRandom();
+		}
+		byte[] seed = new byte[32];
+		SEED_SOURCE.nextBytes(seed);
+		random.setSeed(seed);
+		return random;
+	}
+
+	/**
+	 * Generates a random session ID.
+	 *
+	 * @return random session ID
+	 */
+	private static String generateSID() {
+		SecureRandom random = SID_RANDOM.get();
+		char[] sid = new char[SID_LENGTH];
+		for (int i = 0; i < SID_LENGTH; i++) {
+			sid[i] = SID_CHARS[random.nextInt(SID_CHARS.length)];
+		}
+		return new String(sid);
+	}
+
+	/**
+	 * @return duration of one tick of the timing wheel in milliseconds
+	 */
+	public long getTickMillis() {
+		return tick;
+	}
+
+	/**
+	 * @return number of stored sessions, including the expired sessions
+	 *         which are not yet removed
+	 */
+	public int size() {
+		return sessions.size();
+	}
+}
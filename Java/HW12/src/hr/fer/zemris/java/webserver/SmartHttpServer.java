@@ -1,39 +1,61 @@
 package hr.fer.zemris.java.webserver;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Properties;
-import java.util.Random;
+import java.util.Queue;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScriptEngine;
 import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
-import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
 import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import hr.fer.zemris.java.webserver.ServerMetrics.Route;
 
 /**
  * {@code SmartHttpServer} is a simple web server. Program expects a single
@@ -46,7 +68,63 @@ import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
  * {@code "/ext/worker"}, server will assume that the {@code worker} is an
  * existing {@link IWebWorker} in workers package that can process the request.
  * If the requested {@code IWebWorker} is in the workers configuration file,
- * than the {@code "/ext"} part is not needed. <br>
+ * than the {@code "/ext"} part is not needed. Workers are created by a
+ * {@link WebWorkerRegistry}, once per class unless annotated with
+ * {@link Prototype}. <br>
+ * Connections are accepted either by a blocking server socket or, if
+ * {@code server.ioMode} is set to {@code selector}, by a single thread using
+ * a {@link Selector} which reads requests from non-blocking channels and
+ * dispatches only fully read requests to the thread pool. Responses are then
+ * collected in a {@link SegmentedResponse} and written by the selector
+ * thread, which transfers large files directly from the disk. <br>
+ * HTTP/1.1 persistent connections are supported, including pipelined
+ * requests. Connection is closed after {@code server.keepAliveTimeout}
+ * seconds of inactivity or after {@code server.maxKeepAliveRequests}
+ * requests. In {@code blocking} mode with a {@code fixed} or
+ * {@code workStealing} pool, an idle persistent connection holds a worker
+ * thread, so it is closed as soon as another connection waits for a thread.
+ * <br>
+ * Small static files are kept in a {@link StaticFileCache}, while larger ones
+ * are transferred directly from the file to the socket. Responses carry
+ * {@code ETag} and {@code Last-Modified} headers and conditional requests are
+ * answered with {@code 304 Not Modified}. Parts of static files requested
+ * with the {@code Range} header are sent with {@code 206 Partial Content},
+ * several ranges as a {@code multipart/byteranges} body. <br>
+ * Requests can have a body, framed by {@code Content-Length} or sent with the
+ * {@code chunked} transfer coding. The body is received before the request is
+ * processed; contents larger than {@code server.request.memoryThreshold}
+ * bytes are moved to temporary files and those larger than
+ * {@code server.request.maxBodySize} are rejected. In {@code selector} mode
+ * such a body is received by a worker thread, so the selector thread never
+ * waits for the disk. Parameters from
+ * {@code application/x-www-form-urlencoded} bodies of {@code POST} requests
+ * are added to the query parameters, while the parts of
+ * {@code multipart/form-data} bodies are available from the
+ * {@link RequestContext}, with small text fields also added as parameters.
+ * <br>
+ * Parsed smart scripts are kept in a {@link ScriptCache}. They are executed
+ * by {@link SmartScriptEngine}, or compiled and executed by
+ * {@link CompiledScriptEngine} if {@code server.scriptEngine} is set to
+ * {@code compiled}. <br>
+ * Every worker thread has its own output buffer of
+ * {@code server.outputBufferSize} bytes, reused for all responses it sends,
+ * so dynamic content is written in large blocks and, if it fits in the
+ * buffer, with a known content length. Virtual threads take a buffer from a
+ * shared pool for every request instead. <br>
+ * Responses whose MIME type matches {@code server.compression.mimeTypes} are
+ * compressed with {@code gzip} or {@code deflate}, as accepted by the client.
+ * Static files are compressed once and the result is kept in the
+ * {@link StaticFileCache}; dynamic content is compressed while it is written.
+ * <br>
+ * Requests are processed by the thread pool chosen by
+ * {@code server.executor}: a {@code fixed} pool of
+ * {@code server.workerThreads} threads, a {@code workStealing} pool with the
+ * same parallelism, a {@code cached} pool which starts a new thread whenever
+ * all threads are busy, or a {@code virtual} thread per task, which requires
+ * Java 21 or newer. <br>
+ * Statistics of the processed requests are collected in
+ * {@link ServerMetrics} and sent in the Prometheus text format on the path
+ * given by {@code server.metricsPath}. <br>
  * Once started server can be terminated by typing 'stop'.
  *
  * @author Dan
@@ -88,45 +166,14 @@ public class SmartHttpServer {
 		}
 	}
 
-	/**
-	 * Entry in a server's session {@code Map}.
-	 *
-	 * @author Dan
-	 */
-	private static class SessionMapEntry {
-
-		/** Session ID. */
-		private String sid;
+	/** Maximum number of idle output buffers kept for virtual threads. */
+	private static final int MAX_IDLE_BUFFERS = 256;
 
-		/** Time until this {@code SessionMapEntry} is valid. */
-		private long validUntil;
-
-		/** {@code Map} with session dependent parameters. */
-		private Map<String, String> map;
-
-		/**
-		 * Creates a new {@code SessionMapEntry} with given arguments.
-		 * 
-		 * @param sid
-		 *            session id; cannot be {@code null}
-		 * @param validUntil
-		 *            time until the {@code SessionMapEntry} is valid
-		 * @param map
-		 *            {@code Map} with session dependent parameters; cannot be
-		 *            {@code null}
-		 */
-		public SessionMapEntry(String sid, long validUntil, Map<String, String> map) {
-			this.sid = Objects.requireNonNull(sid);
-			this.validUntil = validUntil;
-			this.map = Objects.requireNonNull(map);
-		}
-	}
+	/** Interim response which asks the client to send the request body. */
+	private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
 
-	/** Length of the session ID. */
-	private static final int SID_LENGTH = 20;
-
-	/** {@code Characters} that can be used to generate session ID. */
-	private static final char[] SID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+	/** Format of the dates in HTTP headers. */
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
 
 	/** Address on which address server listens. */
 	private String address;
@@ -137,14 +184,73 @@ public class SmartHttpServer {
 	/** Number of threads used for thread pool. */
 	private int workerThreads;
 
+	/** {@code true} if connections are handled by a {@code Selector}. */
+	private boolean selectorMode;
+
+	/** Time in seconds an idle persistent connection is kept open. */
+	private int keepAliveTimeout;
+
+	/** Maximum number of requests served over a single connection. */
+	private int maxKeepAliveRequests;
+
+	/**
+	 * {@code true} if the thread pool has a fixed number of threads, so idle
+	 * persistent connections in {@code blocking} mode must give up their
+	 * threads to waiting connections.
+	 */
+	private boolean boundedPool;
+
+	/** Cache with the content of small static files. */
+	private StaticFileCache fileCache;
+
+	/** Cache with parsed smart scripts. */
+	private ScriptCache scriptCache;
+
+	/** {@code true} if smart scripts are compiled before execution. */
+	private boolean compileScripts;
+
+	/**
+	 * Output buffers, reused for all responses. Every worker thread keeps its
+	 * own buffer, except with virtual threads, which share a pool of
+	 * buffers, so the buffer isn't kept by an idle persistent connection.
+	 */
+	private ResourcePool<ByteBuffer> outputBuffers;
+
+	/** {@code true} if responses are compressed when the client accepts it. */
+	private boolean compressionEnabled;
+
+	/**
+	 * MIME types of the compressed responses; a type ending with {@code "/*"}
+	 * matches all its subtypes.
+	 */
+	private List<String> compressionMimeTypes;
+
+	/** Responses shorter than this are not compressed. */
+	private int compressionMinSize;
+
+	/** Static files larger than this are not compressed. */
+	private long compressionMaxFileSize;
+
+	/** Maximum length of a request body's content. */
+	private long maxBodySize;
+
+	/**
+	 * Maximum length of a request body or a part of a multipart body kept in
+	 * memory; larger ones are moved to temporary files.
+	 */
+	private int bodyMemoryThreshold;
+
 	/** Duration of user session in seconds. */
 	private int sessionTimeout;
 
 	/** {@code Map} with MIME types mapped to a file extension. */
 	private Map<String, String> mimeTypes;
 
-	/** {@code Map} with {@code IWebWorkers} mapped to their class names. */
-	private Map<String, IWebWorker> workersMap;
+	/** {@code Map} with factories of {@code IWebWorkers} mapped to their paths. */
+	private Map<String, Supplier<IWebWorker>> workersMap;
+
+	/** Registry which creates the {@code IWebWorkers}. */
+	private WebWorkerRegistry workerRegistry;
 
 	/** {@code Thread} for main server work. */
 	private ServerThread serverThread;
@@ -152,16 +258,17 @@ public class SmartHttpServer {
 	/** Thread pool with worker threads. */
 	private ExecutorService threadPool;
 
+	/** Creates the thread pool each time the server is started. */
+	private Supplier<ExecutorService> threadPoolFactory;
+
 	/** {@code Path} of the root directory from which the files are served. */
 	private Path documentRoot;
 
-	/**
-	 * {@code Map} with {@code SessionMapEntries} mapped to their session IDs.
-	 */
-	private Map<String, SessionMapEntry> sessions;
+	/** Store with the user sessions. */
+	private SessionStore sessions;
 
-	/** {@code Random} for generating session IDs. */
-	private Random sessionRandom;
+	/** Statistics of the processed requests. */
+	private ServerMetrics metrics;
 
 	/** {@code true} if the {@link #serverThread} is running. */
 	private boolean running;
@@ -177,27 +284,29 @@ public class SmartHttpServer {
 	public SmartHttpServer(String configFileName) {
 		mimeTypes = new HashMap<>();
 		workersMap = new HashMap<>();
-		sessions = new HashMap<>();
-		sessionRandom = new Random();
+		workerRegistry = new WebWorkerRegistry("hr.fer.zemris.java.webserver.workers");
+		metrics = new ServerMetrics();
 
 		try {
 			loadServerProperties(configFileName);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+		registerMetrics();
 
 		Timer cleanUp = new Timer(true);
-		cleanUp.schedule(new CleanSessionMap(), CleanSessionMap.INTERVAL, CleanSessionMap.INTERVAL);
+		long interval = sessions.getTickMillis();
+		cleanUp.schedule(new CleanSessionMap(), interval, interval);
 	}
 
 	/**
 	 * Starts the server {@code Thread} and initializes the thread pool.
 	 */
-	protected synchronized void start() {
+	public synchronized void start() {
 		if (!running) {
-			serverThread = new ServerThread();
+			threadPool = threadPoolFactory.get();
+			serverThread = selectorMode ? new SelectorServerThread() : new ServerThread();
 			serverThread.start();
-			threadPool = Executors.newFixedThreadPool(workerThreads);
 			running = true;
 		}
 	}
@@ -205,7 +314,7 @@ public class SmartHttpServer {
 	/**
 	 * Stops the server {@code Thread} and the thread pool.
 	 */
-	protected synchronized void stop() {
+	public synchronized void stop() {
 		if (running) {
 			serverThread.termiate();
 			threadPool.shutdown();
@@ -229,10 +338,158 @@ public class SmartHttpServer {
 		address = p.getProperty("server.address");
 		port = Integer.parseInt(p.getProperty("server.port"));
 		workerThreads = Integer.parseInt(p.getProperty("server.workerThreads"));
+		selectorMode = p.getProperty("server.ioMode", "blocking").trim().equalsIgnoreCase("selector");
+		String executor = p.getProperty("server.executor", "fixed").trim();
+		threadPoolFactory = threadPoolFactory(executor);
+		boundedPool = executor.equalsIgnoreCase("fixed") || executor.equalsIgnoreCase("workStealing");
+		keepAliveTimeout = Integer.parseInt(p.getProperty("server.keepAliveTimeout", "5").trim());
+		maxKeepAliveRequests = Integer.parseInt(p.getProperty("server.maxKeepAliveRequests", "100").trim());
+		long cacheSize = Long.parseLong(p.getProperty("server.fileCache.maxSize", "16777216").trim());
+		long cacheFileSize = Long.parseLong(p.getProperty("server.fileCache.maxFileSize", "65536").trim());
+		scriptCache = new ScriptCache(Long.parseLong(p.getProperty("server.scriptCache.maxSize", "1048576").trim()));
+		compileScripts = p.getProperty("server.scriptEngine", "visitor").trim().equalsIgnoreCase("compiled");
+		int outputBufferSize = Integer.parseInt(p.getProperty("server.outputBufferSize", "16384").trim());
+		Supplier<ByteBuffer> bufferFactory = () -> ByteBuffer.allocate(outputBufferSize);
+		outputBuffers = executor.equalsIgnoreCase("virtual") ? ResourcePool.shared(bufferFactory, MAX_IDLE_BUFFERS)
+				: ResourcePool.perThread(bufferFactory);
+		compressionEnabled = Boolean.parseBoolean(p.getProperty("server.compression.enabled", "true").trim());
+		compressionMimeTypes = new ArrayList<>();
+		for (String type : p.getProperty("server.compression.mimeTypes", "text/*").split(",")) {
+			if (!type.trim().isEmpty()) {
+				compressionMimeTypes.add(type.trim().toLowerCase());
+			}
+		}
+		compressionMinSize = Integer.parseInt(p.getProperty("server.compression.minSize", "256").trim());
+		compressionMaxFileSize = Long.parseLong(p.getProperty("server.compression.maxFileSize", "1048576").trim());
+		maxBodySize = Long.parseLong(p.getProperty("server.request.maxBodySize", "10485760").trim());
+		bodyMemoryThreshold = Integer.parseInt(p.getProperty("server.request.memoryThreshold", "65536").trim());
+		// every file which is compressed can have its variants cached
+		fileCache = new StaticFileCache(cacheSize, cacheFileSize, compressionMaxFileSize);
 		documentRoot = Paths.get(p.getProperty("server.documentRoot"));
 		sessionTimeout = Integer.parseInt(p.getProperty("session.timeout"));
+		sessions = new SessionStore(sessionTimeout);
 		loadMimeTypes(p.getProperty("server.mimeConfig"));
 		loadWorkers(p.getProperty("server.workers"));
+
+		String metricsPath = p.getProperty("server.metricsPath", "/metrics").trim();
+		if (!metricsPath.isEmpty()) {
+			if (workersMap.containsKey(metricsPath)) {
+				throw new IllegalArgumentException("Workers map already contains path: " + metricsPath);
+			}
+			workersMap.put(metricsPath, () -> metrics);
+		}
+	}
+
+	/**
+	 * Registers the metrics which are read from other components of the
+	 * server when the metrics are requested.
+	 */
+	private void registerMetrics() {
+		metrics.addGauge("sessions", "Number of stored user sessions.", sessions::size);
+		metrics.addGauge("queued_tasks", "Number of tasks waiting for a worker thread.", this::getQueuedTasks);
+		metrics.addCounter("script_cache_hits_total", "Number of scripts taken from the cache.",
+				scriptCache::getHits);
+		metrics.addCounter("script_cache_misses_total", "Number of scripts which had to be parsed.",
+				scriptCache::getMisses);
+		metrics.addGauge("script_cache_size", "Total length of the cached scripts' source.", scriptCache::getSize);
+		metrics.addGauge("file_cache_bytes", "Total size of the cached static files.", fileCache::getSize);
+	}
+
+	/**
+	 * Returns the number of tasks waiting in the queue of the thread pool.
+	 * 
+	 * @return number of queued tasks; or 0 if the server is not running or
+	 *         the thread pool doesn't report it
+	 */
+	private long getQueuedTasks() {
+		ExecutorService pool = threadPool;
+		if (pool instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) pool).getQueue().size();
+		} else if (pool instanceof ForkJoinPool) {
+			ForkJoinPool forkJoinPool = (ForkJoinPool) pool;
+			return forkJoinPool.getQueuedSubmissionCount() + forkJoinPool.getQueuedTaskCount();
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the factory of the thread pool of given type.
+	 * 
+	 * @param type
+	 *            {@code fixed}, {@code workStealing}, {@code cached} or
+	 *            {@code virtual}
+	 * @return factory of the thread pool
+	 * @throws IllegalArgumentException
+	 *             if the type is unknown or virtual threads are not supported
+	 *             by this Java version
+	 */
+	private Supplier<ExecutorService> threadPoolFactory(String type) {
+		switch (type.toLowerCase()) {
+		case "fixed":
+			return () -> Executors.newFixedThreadPool(workerThreads);
+		case "workstealing":
+			return () -> Executors.newWorkStealingPool(workerThreads);
+		case "cached":
+			return Executors::newCachedThreadPool;
+		case "virtual":
+			// looked up at runtime, so the server still runs on older versions
+			MethodHandle factory;
+			try {
+				factory = MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+						MethodType.methodType(ExecutorService.class));
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new IllegalArgumentException("Virtual threads require Java 21 or newer.");
+			}
+			return () -> {
+				try {
+					return (ExecutorService) factory.invokeExact();
+				} catch (Throwable e) {
+					throw new RuntimeException(e);
+				}
+			};
+		default:
+			throw new IllegalArgumentException("Unknown executor type: " + type);
+		}
+	}
+
+	/**
+	 * Checks if responses with given MIME type should be compressed.
+	 * 
+	 * @param mimeType
+	 *            MIME type of the response
+	 * @return {@code true} if compression is enabled and the MIME type
+	 *         matches one of the {@link #compressionMimeTypes}
+	 */
+	private boolean isCompressible(String mimeType) {
+		if (!compressionEnabled || mimeType == null) {
+			return false;
+		}
+		String type = mimeType.toLowerCase();
+		int index = type.indexOf(';');
+		if (index != -1) {
+			type = type.substring(0, index).trim();
+		}
+		for (String pattern : compressionMimeTypes) {
+			if (pattern.endsWith("/*") ? type.startsWith(pattern.substring(0, pattern.length() - 1))
+					: type.equals(pattern)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the client waits for the {@code 100 Continue} interim
+	 * response before it sends the request body. It is sent only if nothing
+	 * of the body was received yet.
+	 * 
+	 * @param parser
+	 *            parser with a complete request header
+	 * @return {@code true} if the interim response should be sent
+	 */
+	private static boolean isContinueExpected(RequestParser parser) {
+		return "HTTP/1.1".equalsIgnoreCase(parser.getVersion())
+				&& "100-continue".equalsIgnoreCase(parser.getHeader("Expect")) && !parser.hasBufferedData();
 	}
 
 	/**
@@ -279,26 +536,7 @@ public class SmartHttpServer {
 				throw new IllegalArgumentException("Workers map already contains path: " + path);
 			}
 			String fqcn = p.getProperty(path);
-			workersMap.put(path, getWebWorker(fqcn));
-		}
-	}
-
-	/**
-	 * Gets an {@code IWebWorker} from given FQCN.
-	 * 
-	 * @param fqcn
-	 *            fully qualified class name
-	 * @return {@code IWebWorker} represented by given FQCN
-	 * @throws IllegalArgumentException
-	 *             if given FQCN is invalid
-	 */
-	private IWebWorker getWebWorker(String fqcn) {
-		try {
-			Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(fqcn);
-			Object newObject = referenceToClass.newInstance();
-			return (IWebWorker) newObject;
-		} catch (Exception e) {
-			throw new IllegalArgumentException("Given FQCN is invalid: " + fqcn);
+			workersMap.put(path, workerRegistry.getFactory(fqcn.trim()));
 		}
 	}
 
@@ -312,11 +550,12 @@ public class SmartHttpServer {
 	private class ServerThread extends Thread {
 
 		/** {@code true} if server needs to be stopped. */
-		private boolean stop;
+		protected volatile boolean stop;
 
 		@Override
 		public void run() {
-			try (ServerSocket serverSocket = new ServerSocket()) {
+			try (ServerSocketChannel serverChannel = ServerSocketChannel.open();
+					ServerSocket serverSocket = serverChannel.socket()) {
 				serverSocket.bind(new InetSocketAddress(InetAddress.getByName(address), port));
 				serverSocket.setSoTimeout(1000);
 
@@ -327,6 +566,13 @@ public class SmartHttpServer {
 					} catch (SocketTimeoutException e) {
 						continue;
 					}
+					// a response can take several writes; don't wait for the ACKs in between
+					try {
+						client.setTcpNoDelay(true);
+					} catch (SocketException ignorable) {
+						// the worker will find out the connection is broken
+					}
+					metrics.connectionOpened();
 					ClientWorker cw = new ClientWorker(client);
 					threadPool.submit(cw);
 				}
@@ -343,6 +589,402 @@ public class SmartHttpServer {
 		}
 	}
 
+	/**
+	 * {@code ServerThread} that uses a single {@link Selector} for accepting
+	 * connections and reading requests from non-blocking channels. Only when
+	 * the whole request header is read, a {@code ClientWorker} is submitted to
+	 * the thread pool, so idle or slow connections don't occupy any worker
+	 * thread. Responses are written back by this thread as well. <br>
+	 * Request bodies are received by this thread only while they fit in
+	 * memory. A body which would be moved to a temporary file is received by
+	 * a worker thread, which then also processes the request.
+	 *
+	 * @author Dan
+	 */
+	private class SelectorServerThread extends ServerThread {
+
+		/** {@code Selector} for all channels. */
+		private Selector selector;
+
+		/** Actions that have to be executed on this thread. */
+		private Queue<Runnable> pendingActions = new ConcurrentLinkedQueue<>();
+
+		@Override
+		public void run() {
+			try (Selector selector = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+				this.selector = selector;
+				serverChannel.bind(new InetSocketAddress(InetAddress.getByName(address), port));
+				serverChannel.configureBlocking(false);
+				serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+				long lastSweep = System.currentTimeMillis();
+
+				while (!stop) {
+					selector.select(1000);
+
+					long now = System.currentTimeMillis();
+					if (now - lastSweep >= 1000) {
+						closeIdleConnections(now);
+						lastSweep = now;
+					}
+
+					Runnable action;
+					while ((action = pendingActions.poll()) != null) {
+						action.run();
+					}
+
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						if (!key.isValid()) {
+							continue;
+						}
+						try {
+							if (key.isAcceptable()) {
+								accept(serverChannel);
+							} else if (key.isReadable()) {
+								((ChannelConnection) key.attachment()).read();
+							} else if (key.isWritable()) {
+								((ChannelConnection) key.attachment()).write();
+							}
+						} catch (IOException e) {
+							if (key.attachment() != null) {
+								((ChannelConnection) key.attachment()).close();
+							}
+						}
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * Closes all connections that are waiting for a request longer than
+		 * the keep alive timeout.
+		 * 
+		 * @param now
+		 *            current time in milliseconds
+		 */
+		private void closeIdleConnections(long now) {
+			long timeout = keepAliveTimeout * 1000L;
+			for (SelectionKey key : selector.keys()) {
+				if (!key.isValid() || !(key.attachment() instanceof ChannelConnection)) {
+					continue;
+				}
+				ChannelConnection c = (ChannelConnection) key.attachment();
+				if (key.interestOps() == SelectionKey.OP_READ && now - c.lastActive > timeout) {
+					c.close();
+				}
+			}
+		}
+
+		/**
+		 * Accepts all pending connections and registers them for reading.
+		 * 
+		 * @param serverChannel
+		 *            channel which accepts connections
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		private void accept(ServerSocketChannel serverChannel) throws IOException {
+			SocketChannel channel;
+			while ((channel = serverChannel.accept()) != null) {
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+				key.attach(new ChannelConnection(channel, key));
+				metrics.connectionOpened();
+			}
+		}
+
+		/**
+		 * State of a single connection handled by the
+		 * {@code SelectorServerThread}.
+		 *
+		 * @author Dan
+		 */
+		private class ChannelConnection {
+
+			/** Channel for communicating with the client. */
+			private SocketChannel channel;
+
+			/** Key of the {@link #channel} in the {@link #selector}. */
+			private SelectionKey key;
+
+			/** Parser of the requests received over this connection. */
+			private RequestParser parser;
+
+			/** Body of the current request; {@code null} if it has none. */
+			private RequestBody body;
+
+			/** {@code true} if the body of the current request was created. */
+			private boolean bodyStarted;
+
+			/**
+			 * Error in the framing or the size of the current request's body;
+			 * {@code null} if there is none.
+			 */
+			private RuntimeException bodyError;
+
+			/** Response that has to be written. */
+			private SegmentedResponse output;
+
+			/** {@code true} if the connection stays open after the response. */
+			private boolean keepAlive;
+
+			/** Number of requests received over this connection. */
+			private int requests;
+
+			/** Time of the last activity on this connection. */
+			private long lastActive;
+
+			/** {@code true} if the connection is closed. */
+			private boolean closed;
+
+			/**
+			 * Creates a new {@code ChannelConnection} with given arguments.
+			 * 
+			 * @param channel
+			 *            channel for communicating with the client
+			 * @param key
+			 *            key of the channel in the selector
+			 */
+			private ChannelConnection(SocketChannel channel, SelectionKey key) {
+				this.channel = channel;
+				this.key = key;
+				parser = new RequestParser();
+				lastActive = System.currentTimeMillis();
+			}
+
+			/**
+			 * Reads available data from the {@link #channel}. If the whole
+			 * request header and body are read, the request is dispatched to
+			 * the thread pool. If the client stops sending in the middle of a
+			 * header, the request is dispatched as well, so it is answered
+			 * with {@code 400 Bad request} like in {@code blocking} mode.
+			 * 
+			 * @throws IOException
+			 *             if an I/O error occurs
+			 */
+			private void read() throws IOException {
+				if (channel.read(parser.getBuffer()) < 0) {
+					if (parser.getHeaderLength() < 0 && parser.hasBufferedData()) {
+						submit();
+					} else {
+						close();
+					}
+					return;
+				}
+				lastActive = System.currentTimeMillis();
+				dispatch();
+			}
+
+			/**
+			 * Submits a {@code ClientWorker} to the thread pool if the whole
+			 * request header and body are received. No more data is read from
+			 * the channel until the response is written. If the body has to be
+			 * moved to a temporary file, the rest of it is received by
+			 * {@link #spool()} on a worker thread instead. A header which is
+			 * too large is dispatched as it is, so the worker answers it with
+			 * {@code 400 Bad request} and the connection is closed.
+			 * 
+			 * @throws IOException
+			 *             if the body cannot be stored
+			 */
+			private void dispatch() throws IOException {
+				boolean complete;
+				try {
+					complete = parser.parse();
+				} catch (IllegalStateException e) {
+					submit();
+					return;
+				}
+				if (!complete) {
+					key.interestOps(SelectionKey.OP_READ);
+					return;
+				}
+				startBody();
+				if (body != null && bodyError == null
+						&& body.getContent().getLength() + parser.getBufferedBodyLength() > bodyMemoryThreshold) {
+					key.interestOps(0);
+					threadPool.submit(this::spool);
+					return;
+				}
+				if (!readBody()) {
+					key.interestOps(SelectionKey.OP_READ);
+					return;
+				}
+				submit();
+			}
+
+			/**
+			 * Submits a {@code ClientWorker} for the current request to the
+			 * thread pool. No more data is read from the channel until the
+			 * response is written.
+			 */
+			private void submit() {
+				requests++;
+				key.interestOps(0);
+				threadPool.submit(new ClientWorker(this));
+			}
+
+			/**
+			 * Creates the body of the current request, unless it was already
+			 * created. If the body is invalid or too large, the error is kept
+			 * for the worker, which sends the error response.
+			 * 
+			 * @throws IOException
+			 *             if the interim response cannot be sent
+			 */
+			private void startBody() throws IOException {
+				if (bodyStarted) {
+					return;
+				}
+				bodyStarted = true;
+				try {
+					body = RequestBody.create(parser, maxBodySize, bodyMemoryThreshold);
+				} catch (RuntimeException e) {
+					bodyError = e;
+					return;
+				}
+				if (body != null && isContinueExpected(parser)) {
+					// the interim response always fits in the empty socket buffer
+					channel.write(ByteBuffer.wrap(CONTINUE));
+				}
+			}
+
+			/**
+			 * Passes the data received after the request header to the request
+			 * body. If the body is invalid or too large, the error is kept for
+			 * the worker, which sends the error response.
+			 * 
+			 * @return {@code true} if the whole body is received, the request
+			 *         has no body or the body is invalid
+			 * @throws IOException
+			 *             if the body cannot be stored
+			 */
+			private boolean readBody() throws IOException {
+				if (body == null || bodyError != null) {
+					return true;
+				}
+				try {
+					return parser.readBody(body);
+				} catch (RuntimeException e) {
+					bodyError = e;
+					return true;
+				}
+			}
+
+			/**
+			 * Receives the body of the current request on a worker thread, while
+			 * the {@link #key} has no interest, so the selector thread doesn't
+			 * touch the connection. Data is read from the non-blocking
+			 * {@link #channel} as long as some is available. Once the whole
+			 * body is received, the request is processed on the same thread;
+			 * otherwise the selector thread waits for more data.
+			 */
+			private void spool() {
+				try {
+					while (!readBody()) {
+						int n = channel.read(parser.getBuffer());
+						if (n < 0) {
+							close();
+							return;
+						}
+						if (n == 0) {
+							pendingActions.add(() -> {
+								if (key.isValid()) {
+									key.interestOps(SelectionKey.OP_READ);
+								}
+							});
+							selector.wakeup();
+							return;
+						}
+						lastActive = System.currentTimeMillis();
+					}
+				} catch (IOException e) {
+					close();
+					return;
+				}
+				requests++;
+				new ClientWorker(this).run();
+			}
+
+			/**
+			 * Schedules writing of the given response. Can be called from any
+			 * thread. If the connection was closed in the meantime, the
+			 * response is closed instead, which releases the files it holds.
+			 * 
+			 * @param response
+			 *            complete response to write
+			 * @param keepAlive
+			 *            {@code true} if the connection stays open after the
+			 *            response
+			 */
+			private void respond(SegmentedResponse response, boolean keepAlive) {
+				pendingActions.add(() -> {
+					synchronized (this) {
+						if (!closed && key.isValid()) {
+							output = response;
+							this.keepAlive = keepAlive;
+							key.interestOps(SelectionKey.OP_WRITE);
+							return;
+						}
+					}
+					response.close();
+				});
+				selector.wakeup();
+			}
+
+			/**
+			 * Writes as much of the response as the {@link #channel} accepts.
+			 * Once everything is written, the connection is either closed or
+			 * prepared for the next request, which may already be in the
+			 * {@link #parser} if requests were pipelined.
+			 * 
+			 * @throws IOException
+			 *             if an I/O error occurs
+			 */
+			private void write() throws IOException {
+				if (!output.writeTo(channel)) {
+					return;
+				}
+				output = null;
+				if (!keepAlive) {
+					close();
+					return;
+				}
+
+				parser.next();
+				lastActive = System.currentTimeMillis();
+				dispatch();
+			}
+
+			/**
+			 * Closes the connection. Can be called from any thread.
+			 */
+			private synchronized void close() {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				metrics.connectionClosed();
+				if (output != null) {
+					output.close();
+				}
+				if (body != null) {
+					body.delete();
+				}
+				key.cancel();
+				try {
+					channel.close();
+				} catch (IOException ignorable) {
+				}
+			}
+		}
+	}
+
 	/**
 	 * {@code ClientWorker} processes one HTTP request.
 	 *
@@ -353,11 +995,26 @@ public class SmartHttpServer {
 		/** Default MIME type. */
 		private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
 
+		/**
+		 * Interval in milliseconds in which an idle persistent connection
+		 * checks for connections waiting for a worker thread.
+		 */
+		private static final int IDLE_CHECK_INTERVAL = 100;
+
 		/** {@code Socket} for communicating with the client. */
 		private Socket csocket;
 
+		/**
+		 * Connection for communicating with the client if the request was
+		 * already read by the {@link SelectorServerThread}.
+		 */
+		private SelectorServerThread.ChannelConnection connection;
+
 		/** {@code InputStream} with the client's request. */
-		private PushbackInputStream istream;
+		private InputStream istream;
+
+		/** Parser of the client's requests. */
+		private RequestParser parser;
 
 		/** {@code OutputStream} to write the response. */
 		private OutputStream ostream;
@@ -371,6 +1028,18 @@ public class SmartHttpServer {
 		/** {@code Map} with parameters from the request. */
 		private Map<String, String> params;
 
+		/** Body of the current request; {@code null} if it has none. */
+		private RequestBody body;
+
+		/**
+		 * Error in the framing or the size of the body found by the
+		 * {@code SelectorServerThread}; {@code null} if there is none.
+		 */
+		private RuntimeException bodyError;
+
+		/** Parts of a multipart request body; {@code null} if there are none. */
+		private List<MultipartParser.Part> parts;
+
 		/** {@code Map} with session persistent parameters. */
 		private Map<String, String> permParams;
 
@@ -380,6 +1049,21 @@ public class SmartHttpServer {
 		/** Session ID. */
 		private String sid;
 
+		/** Number of requests served before the current one. */
+		private int served;
+
+		/** {@code true} if the connection stays open after the response. */
+		private boolean keepAlive;
+
+		/** Way the current request is processed. */
+		private Route route;
+
+		/** Context of the current response; {@code null} until it is created. */
+		private RequestContext context;
+
+		/** Output buffer of the current response; {@code null} if there is none. */
+		private ByteBuffer buffer;
+
 		/**
 		 * Creates a new {@code ClientWorker} with given argument.
 		 * 
@@ -388,6 +1072,29 @@ public class SmartHttpServer {
 		 */
 		private ClientWorker(Socket csocket) {
 			this.csocket = csocket;
+			parser = new RequestParser();
+			params = new HashMap<>();
+			outputCookies = new ArrayList<>();
+		}
+
+		/**
+		 * Creates a new {@code ClientWorker} for a request whose header was
+		 * already read from a non-blocking channel. The response is collected
+		 * in a {@link SegmentedResponse} and written back by the
+		 * {@code SelectorServerThread}.
+		 * 
+		 * @param connection
+		 *            connection on which the request was received
+		 */
+		private ClientWorker(SelectorServerThread.ChannelConnection connection) {
+			this.connection = connection;
+			parser = connection.parser;
+			served = connection.requests - 1;
+			body = connection.body;
+			bodyError = connection.bodyError;
+			connection.body = null;
+			connection.bodyError = null;
+			connection.bodyStarted = false;
 			params = new HashMap<>();
 			outputCookies = new ArrayList<>();
 		}
@@ -395,11 +1102,123 @@ public class SmartHttpServer {
 		@Override
 		public void run() {
 			try {
-				serve();
+				if (connection != null) {
+					process();
+					connection.respond((SegmentedResponse) ostream, keepAlive);
+					return;
+				}
+
+				csocket.setSoTimeout(keepAliveTimeout * 1000);
+				istream = csocket.getInputStream();
+				ostream = csocket.getOutputStream();
+				while (awaitRequest()) {
+					process();
+					ostream.flush();
+					if (!keepAlive) {
+						break;
+					}
+					parser.next();
+					served++;
+					params = new HashMap<>();
+					outputCookies = new ArrayList<>();
+					permParams = null;
+					sid = null;
+					body = null;
+					parts = null;
+				}
 				csocket.close();
 			} catch (Exception e) {
+				if (connection != null) {
+					if (ostream != null) {
+						((SegmentedResponse) ostream).close();
+					}
+					connection.close();
+				} else {
+					try {
+						csocket.close();
+					} catch (IOException ignorable) {
+					}
+				}
 				System.err.println("Discarding request due to error: " + e.getMessage());
 				throw new RuntimeException(e);
+			} finally {
+				if (connection == null) {
+					metrics.connectionClosed();
+				}
+			}
+		}
+
+		/**
+		 * Processes the client's request and records it in the
+		 * {@link #metrics}.
+		 * 
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		private void process() throws IOException {
+			long start = System.nanoTime();
+			route = Route.INVALID;
+			context = null;
+			try {
+				serve();
+				// a response of unknown length to an HTTP/1.0 client ends with the connection
+				if (context != null && Boolean.FALSE.equals(context.getKeepAlive())) {
+					keepAlive = false;
+				}
+			} finally {
+				if (buffer != null) {
+					outputBuffers.release(buffer);
+					buffer = null;
+				}
+				if (body != null) {
+					body.delete();
+				}
+				if (parts != null) {
+					parts.forEach(MultipartParser.Part::delete);
+				}
+			}
+			long received = Math.max(parser.getHeaderLength(), 0) + (body == null ? 0 : body.getReceived());
+			metrics.record(route, System.nanoTime() - start, received, context == null ? 0 : context.getBytesSent());
+		}
+
+		/**
+		 * Waits until the client starts sending the next request. If the
+		 * thread pool is bounded, an idle persistent connection is given up
+		 * as soon as another connection waits for a worker thread, so idle
+		 * clients can't starve the others.
+		 * 
+		 * @return {@code true} if the request is available; {@code false} if
+		 *         the client closed the connection, the keep alive timeout
+		 *         has expired or the thread is needed for another connection
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		private boolean awaitRequest() throws IOException {
+			if (parser.hasBufferedData()) {
+				return true;
+			}
+			if (served == 0 || !boundedPool) {
+				try {
+					return parser.fill(istream) > 0;
+				} catch (SocketTimeoutException e) {
+					return false;
+				}
+			}
+
+			long deadline = System.nanoTime() + keepAliveTimeout * 1_000_000_000L;
+			csocket.setSoTimeout(IDLE_CHECK_INTERVAL);
+			try {
+				while (true) {
+					try {
+						return parser.fill(istream) > 0;
+					} catch (SocketTimeoutException e) {
+						if (getQueuedTasks() > 0 || System.nanoTime() - deadline >= 0) {
+							return false;
+						}
+					}
+				}
+			} finally {
+				csocket.setSoTimeout(keepAliveTimeout * 1000);
 			}
 		}
 
@@ -410,36 +1229,35 @@ public class SmartHttpServer {
 		 *             if an I/O error occurs
 		 */
 		private void serve() throws IOException {
-			istream = new PushbackInputStream(csocket.getInputStream(), 4);
-			ostream = csocket.getOutputStream();
-
-			List<String> headers = readRequest();
-			if (headers == null) {
-				sendError(400, "Bad request");
-				return;
+			if (connection != null) {
+				ostream = new SegmentedResponse();
 			}
+			keepAlive = false;
 
-			String[] firstLine = headers.isEmpty() ? null : headers.get(0).split(" ");
-			if (firstLine == null || firstLine.length != 3) {
+			if (!readRequest() || parser.getMethod() == null) {
 				sendError(400, "Bad request");
 				return;
 			}
 
-			method = firstLine[0].toUpperCase();
-			if (!method.equals("GET")) {
+			method = parser.getMethod().toUpperCase();
+			if (!method.equals("GET") && !method.equals("POST")) {
 				sendError(405, "Method Not Allowed");
 				return;
 			}
 
-			version = firstLine[2].toUpperCase();
+			version = parser.getVersion().toUpperCase();
 			if (!version.equals("HTTP/1.0") && !version.equals("HTTP/1.1")) {
 				sendError(505, "HTTP Version Not Supported");
 				return;
 			}
+			keepAlive = served + 1 < maxKeepAliveRequests && isKeepAliveRequested();
+			if (!readBody()) {
+				return;
+			}
 
-			checkSession(headers);
+			checkSession();
 
-			String requestedPath = firstLine[1];
+			String requestedPath = parser.getPath();
 			String[] pathElems = requestedPath.split("\\?", 2);
 			if (pathElems.length == 2) {
 				try {
@@ -449,24 +1267,56 @@ public class SmartHttpServer {
 					return;
 				}
 			}
+			if (body != null && method.equals("POST") && !parseBody()) {
+				return;
+			}
 
 			RequestContext rc = new RequestContext(ostream, params, permParams, outputCookies);
+			context = rc;
+			if (body != null) {
+				rc.setBody(body.getContent());
+			}
+			if (parts != null) {
+				Map<String, MultipartParser.Part> partMap = new LinkedHashMap<>();
+				for (MultipartParser.Part part : parts) {
+					partMap.putIfAbsent(part.getName(), part);
+				}
+				rc.setParts(Collections.unmodifiableMap(partMap));
+			}
 			rc.setStatusCode(200);
 			rc.setStatusText("OK");
+			rc.setKeepAlive(keepAlive);
+			rc.setRequestVersion(version);
+			buffer = outputBuffers.acquire();
+			rc.setOutputBuffer(buffer);
+			if (connection == null) {
+				rc.setOutputChannel(csocket.getChannel());
+			}
 
 			String pathStr = pathElems[0];
-			if (pathStr.startsWith("/ext")) {
-				String workerName = pathStr.substring(5);
-				IWebWorker worker = getWebWorker("hr.fer.zemris.java.webserver.workers." + workerName);
+			if (pathStr.startsWith("/ext/")) {
+				route = Route.EXT;
+				IWebWorker worker = workerRegistry.getWorker(pathStr.substring(5));
+				if (worker == null) {
+					sendError(404, "Not Found");
+					return;
+				}
+				enableCompression(rc);
 				worker.processRequest(rc);
+				rc.finish();
 				return;
 			}
 
-			if (workersMap.containsKey(pathStr)) {
-				workersMap.get(pathStr).processRequest(rc);
+			Supplier<IWebWorker> factory = workersMap.get(pathStr);
+			if (factory != null) {
+				route = Route.WORKER;
+				enableCompression(rc);
+				factory.get().processRequest(rc);
+				rc.finish();
 				return;
 			}
 
+			route = Route.STATIC;
 			if (pathStr.startsWith("/")) {
 				pathStr = pathStr.substring(1);
 			}
@@ -481,44 +1331,298 @@ public class SmartHttpServer {
 				return;
 			}
 
+			String mimeType = null;
 			int index = file.getName().lastIndexOf('.');
 			if (index != -1) {
 				String ext = file.getName().substring(index + 1);
 				if (ext.equals("smscr")) {
+					route = Route.SCRIPT;
+					enableCompression(rc);
 					executeScript(path, rc);
+					rc.finish();
 					return;
 				}
 
-				if (mimeTypes.containsKey(ext)) {
-					rc.setMimeType(mimeTypes.get(ext));
+				mimeType = mimeTypes.getOrDefault(ext, DEFAULT_MIME_TYPE);
+				rc.setMimeType(mimeType);
+			}
+			if (!method.equals("GET")) {
+				sendError(405, "Method Not Allowed");
+				return;
+			}
+
+			sendFile(path, mimeType, rc);
+		}
+
+		/**
+		 * Enables compression of the dynamic content with the content coding
+		 * accepted by the client. Content is compressed only if its MIME
+		 * type, which can still be changed, is compressible.
+		 * 
+		 * @param rc
+		 *            context for sending the response
+		 */
+		private void enableCompression(RequestContext rc) {
+			String encoding = compressionEnabled ? Compression.negotiate(parser.getHeader("Accept-Encoding")) : null;
+			if (encoding != null) {
+				rc.setCompression(encoding, SmartHttpServer.this::isCompressible, compressionMinSize);
+			}
+		}
+
+		/**
+		 * Sends the content of a static file. Small files are served from the
+		 * {@link #fileCache}, larger ones are transferred directly from the
+		 * file. If the client already has the current version of the file,
+		 * only the {@code 304 Not Modified} status is sent. <br>
+		 * Files with a compressible MIME type are sent compressed if the
+		 * client accepts it. The compressed variant has its own entity tag.
+		 * <br>
+		 * If the client asks for a part of the file with the {@code Range}
+		 * header, and the {@code If-Range} validator, if given, still matches,
+		 * only the requested ranges are sent uncompressed with the
+		 * {@code 206 Partial Content} status, see
+		 * {@link #sendRanges(Path, String, long, List, RequestContext)}.
+		 * 
+		 * @param path
+		 *            path of the file
+		 * @param mimeType
+		 *            MIME type of the file; {@code null} if unknown
+		 * @param rc
+		 *            context for sending the response
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		private void sendFile(Path path, String mimeType, RequestContext rc) throws IOException {
+			long lastModified = Files.getLastModifiedTime(path).toMillis();
+			long length = Files.size(path);
+			boolean compressible = isCompressible(mimeType);
+			String range = parser.getHeader("Range");
+			String encoding = null;
+			// ranges are always taken from the uncompressed file
+			if (compressible && range == null && length >= compressionMinSize && length <= compressionMaxFileSize) {
+				encoding = Compression.negotiate(parser.getHeader("Accept-Encoding"));
+			}
+
+			String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified)
+					+ (encoding == null ? "" : "-" + encoding) + "\"";
+			String date = HTTP_DATE.format(Instant.ofEpochMilli(lastModified));
+			rc.addHeader("ETag", etag);
+			rc.addHeader("Last-Modified", date);
+			rc.addHeader("Accept-Ranges", "bytes");
+			if (compressible) {
+				rc.addHeader("Vary", "Accept-Encoding");
+			}
+
+			if (isNotModified(etag, lastModified)) {
+				rc.setStatusCode(304);
+				rc.setStatusText("Not Modified");
+				rc.finish();
+				return;
+			}
+
+			List<ByteRange> ranges = isRangeValid(etag, date) ? ByteRange.parse(range, length) : null;
+			if (ranges != null) {
+				sendRanges(path, mimeType, length, ranges, rc);
+				return;
+			}
+
+			if (encoding != null) {
+				byte[] data = fileCache.getCompressed(path, lastModified, encoding);
+				rc.addHeader("Content-Encoding", encoding);
+				rc.setContentLength((long) data.length);
+				rc.write(data);
+				rc.finish();
+				return;
+			}
+
+			byte[] data = fileCache.isCacheable(length) ? fileCache.get(path, lastModified) : null;
+			if (data != null) {
+				rc.setContentLength((long) data.length);
+				rc.write(data);
+			} else {
+				FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+				boolean handedOver = false;
+				try {
+					length = fc.size();
+					rc.setContentLength(length);
+					rc.write(fc, 0, length);
+					handedOver = ostream instanceof SegmentedResponse;
+				} finally {
+					// a segmented response closes the file once it is sent
+					if (!handedOver) {
+						fc.close();
+					}
+				}
+			}
+			rc.finish();
+		}
+
+		/**
+		 * Sends the given ranges of a file with the {@code 206 Partial Content}
+		 * status. A single range is sent as the body with the
+		 * {@code Content-Range} header, several ranges as a
+		 * {@code multipart/byteranges} body with a part for each range. The
+		 * ranges are transferred directly from the file, so even parts of
+		 * large files are never read into memory. If none of the ranges can be
+		 * satisfied, {@code 416 Range Not Satisfiable} is sent.
+		 * 
+		 * @param path
+		 *            path of the file
+		 * @param mimeType
+		 *            MIME type of the file; {@code null} if unknown
+		 * @param length
+		 *            length of the file
+		 * @param ranges
+		 *            satisfiable ranges of the file
+		 * @param rc
+		 *            context for sending the response
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		private void sendRanges(Path path, String mimeType, long length, List<ByteRange> ranges, RequestContext rc)
+				throws IOException {
+			if (ranges.isEmpty()) {
+				rc.setStatusCode(416);
+				rc.setStatusText("Range Not Satisfiable");
+				rc.addHeader("Content-Range", "bytes */" + length);
+				rc.setContentLength(0L);
+				rc.finish();
+				return;
+			}
+
+			rc.setStatusCode(206);
+			rc.setStatusText("Partial Content");
+			FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+			boolean handedOver = false;
+			try {
+				if (ranges.size() == 1) {
+					ByteRange range = ranges.get(0);
+					rc.addHeader("Content-Range", range.toContentRange(length));
+					rc.setContentLength(range.getLength());
+					rc.write(fc, range.getFirst(), range.getLength());
 				} else {
-					rc.setMimeType(DEFAULT_MIME_TYPE);
+					String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+					String type = mimeType == null ? DEFAULT_MIME_TYPE : mimeType;
+					byte[][] partHeaders = new byte[ranges.size()][];
+					byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+					long total = end.length;
+					for (int i = 0; i < partHeaders.length; i++) {
+						ByteRange range = ranges.get(i);
+						partHeaders[i] = ("\r\n--" + boundary + "\r\nContent-Type: " + type + "\r\nContent-Range: "
+								+ range.toContentRange(length) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+						total += partHeaders[i].length + range.getLength();
+					}
+
+					rc.setMimeType("multipart/byteranges; boundary=" + boundary);
+					rc.setContentLength(total);
+					for (int i = 0; i < partHeaders.length; i++) {
+						rc.write(partHeaders[i]);
+						rc.write(fc, ranges.get(i).getFirst(), ranges.get(i).getLength());
+					}
+					rc.write(end);
+				}
+				handedOver = ostream instanceof SegmentedResponse;
+			} finally {
+				// a segmented response closes the file once it is sent
+				if (!handedOver) {
+					fc.close();
+				}
+			}
+			rc.finish();
+		}
+
+		/**
+		 * Checks if the {@code Range} header of the request can be used. It
+		 * can't if the {@code If-Range} header gives a validator which doesn't
+		 * match the current file, because the client already has a part of
+		 * another version. An entity tag must match exactly and a date must be
+		 * the exact last modification time.
+		 * 
+		 * @param etag
+		 *            current entity tag of the file
+		 * @param lastModified
+		 *            last modification time of the file, as sent in the
+		 *            {@code Last-Modified} header
+		 * @return {@code true} if the requested ranges can be sent
+		 */
+		private boolean isRangeValid(String etag, String lastModified) {
+			String ifRange = parser.getHeader("If-Range");
+			if (ifRange == null) {
+				return true;
+			}
+			ifRange = ifRange.trim();
+			if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+				return ifRange.equals(etag);
+			}
+			return ifRange.equals(lastModified);
+		}
+
+		/**
+		 * Checks the conditional request headers. {@code If-None-Match} takes
+		 * precedence over {@code If-Modified-Since}.
+		 * 
+		 * @param etag
+		 *            current entity tag of the file
+		 * @param lastModified
+		 *            current last modification time of the file
+		 * @return {@code true} if the client's copy of the file is current
+		 */
+		private boolean isNotModified(String etag, long lastModified) {
+			String ifNoneMatch = parser.getHeader("If-None-Match");
+			if (ifNoneMatch != null) {
+				for (String tag : ifNoneMatch.split(",")) {
+					tag = tag.trim();
+					if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			String ifModifiedSince = parser.getHeader("If-Modified-Since");
+			if (ifModifiedSince != null) {
+				try {
+					long since = Instant.from(HTTP_DATE.parse(ifModifiedSince)).toEpochMilli();
+					return lastModified / 1000 <= since / 1000;
+				} catch (DateTimeException e) {
+					return false;
 				}
 			}
+			return false;
+		}
 
-			rc.setContentLength(file.length());
-			rc.write(Files.readAllBytes(path));
+		/**
+		 * Checks if the client wants to keep the connection open after the
+		 * response. HTTP/1.1 connections are persistent unless the client
+		 * sends {@code Connection: close}, while HTTP/1.0 connections are
+		 * persistent only with {@code Connection: keep-alive}.
+		 * 
+		 * @return {@code true} if the connection should stay open
+		 */
+		private boolean isKeepAliveRequested() {
+			String value = parser.getHeader("Connection");
+			if (value == null) {
+				return version.equals("HTTP/1.1");
+			}
+			value = value.toLowerCase();
+			return value.equals("keep-alive") || (!value.equals("close") && version.equals("HTTP/1.1"));
 		}
 
 		/**
 		 * Initializes the {@link #sid} and {@link #permParams} depending on
 		 * received cookies. <br>
 		 * If no session cookie is received or the session is to old, new
-		 * {@code SessionMapEntry} is created.
+		 * session is created.
 		 * 
-		 * @param headers
-		 *            request split into lines
 		 * @throws IllegalArgumentException
 		 *             if line with cookies has an invalid format
 		 */
-		private void checkSession(List<String> headers) {
+		private void checkSession() {
 			String sidCandidate = null;
-			for (String line : headers) {
-				if (!line.startsWith("Cookie:")) {
-					continue;
-				}
-				for (String cookie : line.substring(7).trim().split(";")) {
-					String[] cookieElems = cookie.split("=", 2);
+			String cookies = parser.getHeaders().get("Cookie");
+			if (cookies != null) {
+				for (String cookie : cookies.split(";")) {
+					String[] cookieElems = cookie.trim().split("=", 2);
 					if (cookieElems.length != 2) {
 						throw new IllegalArgumentException("Invalid cookie format!");
 					}
@@ -530,42 +1634,14 @@ public class SmartHttpServer {
 				}
 			}
 
-			synchronized (SmartHttpServer.this) {
-				if (sidCandidate != null && sessions.containsKey(sidCandidate)) {
-					if (sessions.get(sidCandidate).validUntil < System.currentTimeMillis()) {
-						sessions.remove(sidCandidate);
-					} else {
-						sid = sidCandidate;
-					}
-				}
-				if (sid == null) {
-					do {
-						sid = generateSID();
-					} while (sessions.containsKey(sid));
-					SessionMapEntry entry = new SessionMapEntry(sid, 0, new ConcurrentHashMap<>());
-					sessions.put(sid, entry);
-					RCCookie cookie = new RCCookie("sid", sid, null, address, "/", "HttpOnly");
-					outputCookies.add(cookie);
-				}
-			}
-
-			SessionMapEntry entry = sessions.get(sid);
-			entry.validUntil = System.currentTimeMillis() + sessionTimeout * 1000;
-			permParams = entry.map;
-		}
-
-		/**
-		 * Generates a random session ID.
-		 * 
-		 * @return random session ID
-		 */
-		private String generateSID() {
-			StringBuilder sb = new StringBuilder();
-			for (int i = 0; i < SID_LENGTH; i++) {
-				char c = SID_CHARS[sessionRandom.nextInt(SID_CHARS.length)];
-				sb.append(c);
+			SessionStore.Session session = sidCandidate == null ? null : sessions.get(sidCandidate);
+			if (session == null) {
+				session = sessions.create();
+				RCCookie cookie = new RCCookie("sid", session.getId(), null, address, "/", "HttpOnly");
+				outputCookies.add(cookie);
 			}
-			return sb.toString();
+			sid = session.getId();
+			permParams = session.getParameters();
 		}
 
 		/**
@@ -584,7 +1660,9 @@ public class SmartHttpServer {
 		}
 
 		/**
-		 * Executes a smart script file using {@link SmartScriptEngine}.
+		 * Executes a smart script file using {@link SmartScriptEngine} or,
+		 * if scripts are compiled, {@link CompiledScriptEngine}. The script is
+		 * parsed only if it isn't in the {@link #scriptCache}.
 		 * 
 		 * @param path
 		 *            path of the smart script file
@@ -594,10 +1672,11 @@ public class SmartHttpServer {
 		 *             if an I/O error occurs
 		 */
 		private void executeScript(Path path, RequestContext rc) throws IOException {
-			String docBody = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
-			SmartScriptParser parser = new SmartScriptParser(docBody);
-			SmartScriptEngine engine = new SmartScriptEngine(parser.getDocumentNode(), rc);
-			engine.execute();
+			if (compileScripts) {
+				new CompiledScriptEngine(scriptCache.getCompiled(path), rc).execute();
+			} else {
+				new SmartScriptEngine(scriptCache.get(path), rc).execute();
+			}
 		}
 
 		/**
@@ -618,69 +1697,121 @@ public class SmartHttpServer {
 		}
 
 		/**
-		 * Splits the request into lines.
+		 * Receives the request body, if the request has one. In selector
+		 * mode the body is already received. If the body is invalid or too
+		 * large, an error response is sent and the connection is closed,
+		 * because the end of the body is unknown.
 		 * 
-		 * @return the request as a {@code List} of lines; or {@code null} if
-		 *         request has an invalid format
+		 * @return {@code true} if the body is received or the request has none;
+		 *         {@code false} if an error response was sent
 		 * @throws IOException
-		 *             if an I/O error occurs
+		 *             if an I/O error occurs or the client closes the
+		 *             connection before the whole body is sent
 		 */
-		private List<String> readRequest() throws IOException {
-			byte[] request = getRequest();
-			if (request == null) {
-				return null;
-			}
-			String requestStr = new String(request, StandardCharsets.ISO_8859_1);
-			List<String> headers = new ArrayList<>();
-			String currentLine = null;
-
-			for (String s : requestStr.split("\r\n")) {
-				if (s.isEmpty()) {
-					break;
-				}
-				char c = s.charAt(0);
-				if (c == 9 || c == 32) {
-					currentLine += s;
-				} else {
-					if (currentLine != null) {
-						headers.add(currentLine);
+		private boolean readBody() throws IOException {
+			try {
+				if (bodyError != null) {
+					throw bodyError;
+				}
+				if (connection != null) {
+					return true;
+				}
+				body = RequestBody.create(parser, maxBodySize, bodyMemoryThreshold);
+				if (body == null) {
+					return true;
+				}
+				if (isContinueExpected(parser)) {
+					ostream.write(CONTINUE);
+					ostream.flush();
+				}
+				while (!parser.readBody(body)) {
+					if (parser.fill(istream) < 0) {
+						throw new IOException("Connection closed before the request body was received.");
 					}
-					currentLine = s;
 				}
+				return true;
+			} catch (IllegalStateException e) {
+				keepAlive = false;
+				sendError(413, "Payload Too Large");
+				return false;
+			} catch (IllegalArgumentException e) {
+				keepAlive = false;
+				sendError(400, "Bad request");
+				return false;
 			}
-
-			if (!currentLine.isEmpty()) {
-				headers.add(currentLine);
-			}
-			return headers;
 		}
 
 		/**
-		 * Reads the whole request until specified termination sequence is
-		 * reached.
+		 * Parses the body of a {@code POST} request. Parameters of an
+		 * {@code application/x-www-form-urlencoded} body are put in
+		 * {@link #params}, overriding the query parameters with the same
+		 * names. Such a body has to fit in memory. Parts of a
+		 * {@code multipart/form-data} body are put in {@link #parts}, and the
+		 * contents of the small parts without a file name are also put in
+		 * {@link #params}. Other bodies are left to the workers.
 		 * 
-		 * @return the request as a {@code byte} array; or {@code null} if
-		 *         request has an invalid format
+		 * @return {@code true} if the body is parsed; {@code false} if an error
+		 *         response was sent
 		 * @throws IOException
 		 *             if an I/O error occurs
 		 */
-		private byte[] getRequest() throws IOException {
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
-			byte[] buf = new byte[4];
-
-			while (true) {
-				if (istream.read(buf) < 4) {
-					return null;
+		private boolean parseBody() throws IOException {
+			String contentType = parser.getHeader("Content-Type");
+			SpooledData content = body.getContent();
+			try {
+				if (contentType != null && contentType.toLowerCase().startsWith("application/x-www-form-urlencoded")) {
+					if (!content.isInMemory()) {
+						sendError(413, "Payload Too Large");
+						return false;
+					}
+					String form = new String(content.toByteArray(), StandardCharsets.ISO_8859_1);
+					for (String param : form.split("&")) {
+						if (param.isEmpty()) {
+							continue;
+						}
+						String[] paramElems = param.split("=", 2);
+						String value = paramElems.length == 2 ? paramElems[1] : "";
+						params.put(URLDecoder.decode(paramElems[0], "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+					}
+					return true;
 				}
-				if (buf[0] == 13 && buf[1] == 10 && buf[2] == 13 && buf[3] == 10) {
-					break;
-				} else {
-					bos.write(buf[0]);
-					istream.unread(buf, 1, 3);
+
+				String boundary = MultipartParser.getBoundary(contentType);
+				if (boundary != null) {
+					try (InputStream is = content.getInputStream()) {
+						parts = new MultipartParser(is, boundary, bodyMemoryThreshold).parse();
+					}
+					for (MultipartParser.Part part : parts) {
+						if (part.getFileName() == null && part.isInMemory()) {
+							params.put(part.getName(), part.getText());
+						}
+					}
 				}
+				return true;
+			} catch (IllegalArgumentException e) {
+				sendError(400, "Bad request");
+				return false;
 			}
+		}
 
-			return bos.toByteArray();
+		/**
+		 * Reads the request header using the {@link #parser}. In selector mode
+		 * the header is already read.
+		 * 
+		 * @return {@code true} if the header is read; {@code false} if the
+		 *         request has an invalid format
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		private boolean readRequest() throws IOException {
+			if (connection != null) {
+				return true;
+			}
+			try {
+				return parser.readRequest(istream);
+			} catch (IllegalStateException e) {
+				return false;
+			}
 		}
 
 		/**
@@ -695,11 +1826,13 @@ public class SmartHttpServer {
 		 */
 		private void sendError(int statusCode, String statusText) throws IOException {
 			RequestContext rc = new RequestContext(ostream, null, null, null);
+			context = rc;
 			rc.setStatusCode(statusCode);
 			rc.setStatusText(statusText);
 			rc.setMimeType("text/plain");
 			rc.setContentLength(0L);
-			rc.write(new byte[0]);
+			rc.setKeepAlive(keepAlive);
+			rc.finish();
 		}
 	}
 
@@ -710,16 +1843,9 @@ public class SmartHttpServer {
 	 */
 	private class CleanSessionMap extends TimerTask {
 
-		/** Delay between each run. */
-		private static final int INTERVAL = 5 * 60 * 1000;
-
 		@Override
 		public void run() {
-			synchronized (SmartHttpServer.this) {
-				sessions.entrySet().removeIf(e -> {
-					return e.getValue().validUntil < System.currentTimeMillis();
-				});
-			}
+			sessions.expire();
 		}
 	}
 
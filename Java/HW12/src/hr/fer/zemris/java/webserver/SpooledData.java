@@ -0,0 +1,170 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * {@code SpooledData} is an {@code OutputStream} which keeps the written data
+ * in memory until it grows larger than a threshold, and then moves it to a
+ * temporary file. This way a request body or an uploaded file of any size can
+ * be received, while only small ones take space on the heap. <br>
+ * Written data is read back with {@link #getInputStream()}. The temporary
+ * file exists until {@link #delete()} is called, so it has to be called once
+ * the data is no longer needed.
+ *
+ * @author Dan
+ */
+public class SpooledData extends OutputStream {
+
+	/** Initial size of the memory buffer. */
+	private static final int INITIAL_SIZE = 256;
+
+	/** Maximum number of bytes kept in memory. */
+	private final int threshold;
+
+	/** Data kept in memory; {@code null} once it is moved to the file. */
+	private byte[] data;
+
+	/** Number of bytes written. */
+	private long length;
+
+	/** Temporary file with the data; {@code null} while it is in memory. */
+	private Path file;
+
+	/** Stream writing to the {@link #file}; {@code null} if it is closed. */
+	private OutputStream fileStream;
+
+	/**
+	 * Creates a new empty {@code SpooledData} with given threshold.
+	 *
+	 * @param threshold
+	 *            maximum number of bytes kept in memory; 0 to write everything
+	 *            to the file
+	 * @throws IllegalArgumentException
+	 *             if the threshold is negative
+	 */
+	public SpooledData(int threshold) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Threshold can't be negative.");
+		}
+		this.threshold = threshold;
+		data = new byte[0];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return;
+		}
+		if (file == null && length + len > threshold) {
+			file = Files.createTempFile("upload", ".tmp");
+			fileStream = new BufferedOutputStream(Files.newOutputStream(file));
+			fileStream.write(data, 0, (int) length);
+			data = null;
+		} else if (file != null && fileStream == null) {
+			throw new IOException("Data is already closed.");
+		}
+
+		if (file != null) {
+			fileStream.write(b, off, len);
+		} else {
+			if (length + len > data.length) {
+				int size = Math.max(data.length * 2, INITIAL_SIZE);
+				data = Arrays.copyOf(data, (int) Math.min(threshold, Math.max(size, length + len)));
+			}
+			System.arraycopy(b, off, data, (int) length, len);
+		}
+		length += len;
+	}
+
+	/**
+	 * Finishes writing. Data in the file is flushed, but the file is kept
+	 * until {@link #delete()} is called.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (fileStream != null) {
+			OutputStream os = fileStream;
+			fileStream = null;
+			os.close();
+		}
+	}
+
+	/**
+	 * @return number of bytes written
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return {@code true} if the data is kept in memory
+	 */
+	public boolean isInMemory() {
+		return file == null;
+	}
+
+	/**
+	 * Returns a new {@code InputStream} with all written data. Writing is
+	 * finished first.
+	 *
+	 * @return {@code InputStream} with the data
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public InputStream getInputStream() throws IOException {
+		close();
+		if (file == null) {
+			return new ByteArrayInputStream(data, 0, (int) length);
+		}
+		return Files.newInputStream(file);
+	}
+
+	/**
+	 * Returns all written data as an array. It should be used only for data
+	 * which is known to be small, for example if it is kept in memory.
+	 *
+	 * @return array with the data
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public byte[] toByteArray() throws IOException {
+		close();
+		if (file == null) {
+			return Arrays.copyOf(data, (int) length);
+		}
+		return Files.readAllBytes(file);
+	}
+
+	/**
+	 * Releases the data and deletes the temporary file, if there is one.
+	 */
+	public void delete() {
+		try {
+			close();
+		} catch (IOException ignorable) {
+		}
+		if (file != null) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException ignorable) {
+			}
+		}
+		data = new byte[0];
+		length = 0;
+	}
+}
@@ -0,0 +1,231 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code StaticFileCache} keeps the content of small, frequently requested
+ * files in memory. <br>
+ * Files are cached by their path and last modification time, so a changed
+ * file is read again on the next request. The files are kept in an
+ * {@link LruCache}, so total size of the cached content is bounded and the
+ * least recently used files are evicted first. Files larger than the maximum
+ * file size are never cached. <br>
+ * Besides the content itself, compressed variants of a file can be cached, so
+ * a file is compressed only once for each content coding. Variants are
+ * dropped together with the content when the file is modified or evicted.
+ * Variants have their own size limit, which is checked against the size of
+ * the original file, so files too large to be cached themselves are still
+ * compressed only once. <br>
+ * Lookups don't block each other, so this class can be used by any number of
+ * threads.
+ *
+ * @author Dan
+ */
+public class StaticFileCache {
+
+	/**
+	 * Content of a single cached file. Entries are never modified; a new
+	 * entry replaces the old one when content or a variant is added.
+	 *
+	 * @author Dan
+	 */
+	private static class CacheEntry {
+
+		/** Last modification time of the file when it was read. */
+		private final long lastModified;
+
+		/** Content of the file; {@code null} if it is not cached. */
+		private final byte[] data;
+
+		/** Compressed content mapped to the content codings. */
+		private final Map<String, byte[]> variants;
+
+		/** Total size of the content and all variants. */
+		private final long size;
+
+		/**
+		 * Creates a new {@code CacheEntry} with given arguments.
+		 *
+		 * @param lastModified
+		 *            last modification time of the file
+		 * @param data
+		 *            content of the file; {@code null} if it is not cached
+		 * @param variants
+		 *            compressed content mapped to the content codings
+		 */
+		private CacheEntry(long lastModified, byte[] data, Map<String, byte[]> variants) {
+			this.lastModified = lastModified;
+			this.data = data;
+			this.variants = variants;
+			long size = data == null ? 0 : data.length;
+			for (byte[] variant : variants.values()) {
+				size += variant.length;
+			}
+			this.size = size;
+		}
+	}
+
+	/** Maximum size of a single cached file. */
+	private final long maxFileSize;
+
+	/** Maximum size of a single file whose compressed variants are cached. */
+	private final long maxVariantSize;
+
+	/** Cached files mapped to their paths. */
+	private final LruCache<Path, CacheEntry> entries;
+
+	/**
+	 * Creates a new empty {@code StaticFileCache} with given arguments.
+	 * Compressed variants are cached only for files which are cached too.
+	 *
+	 * @param maxSize
+	 *            maximum total size of the cached content in bytes
+	 * @param maxFileSize
+	 *            maximum size of a single cached file in bytes
+	 */
+	public StaticFileCache(long maxSize, long maxFileSize) {
+		this(maxSize, maxFileSize, maxFileSize);
+	}
+
+	/**
+	 * Creates a new empty {@code StaticFileCache} with given arguments.
+	 *
+	 * @param maxSize
+	 *            maximum total size of the cached content in bytes
+	 * @param maxFileSize
+	 *            maximum size of a single cached file in bytes
+	 * @param maxVariantSize
+	 *            maximum size in bytes of a single file whose compressed
+	 *            variants are cached
+	 */
+	public StaticFileCache(long maxSize, long maxFileSize, long maxVariantSize) {
+		this.maxFileSize = Math.min(maxFileSize, maxSize);
+		this.maxVariantSize = Math.min(maxVariantSize, maxSize);
+		entries = new LruCache<>(maxSize);
+	}
+
+	/**
+	 * Checks if a file with given size can be cached.
+	 *
+	 * @param fileSize
+	 *            size of the file in bytes
+	 * @return {@code true} if the file isn't larger than the maximum file size
+	 */
+	public boolean isCacheable(long fileSize) {
+		return fileSize <= maxFileSize;
+	}
+
+	/**
+	 * Returns the content of the given file. If the file isn't cached or it
+	 * was modified in the meantime, it is read and put in the cache.
+	 *
+	 * @param path
+	 *            path of the file
+	 * @param lastModified
+	 *            current last modification time of the file
+	 * @return content of the file; or {@code null} if the file is too large to
+	 *         be cached
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public byte[] get(Path path, long lastModified) throws IOException {
+		CacheEntry entry = entries.get(path);
+		if (entry != null && entry.lastModified == lastModified && entry.data != null) {
+			return entry.data;
+		}
+
+		if (!isCacheable(Files.size(path))) {
+			return null;
+		}
+		byte[] data = Files.readAllBytes(path);
+		if (!isCacheable(data.length)) {
+			return null;
+		}
+
+		store(path, lastModified, null, data);
+		return data;
+	}
+
+	/**
+	 * Returns the content of the given file compressed with given content
+	 * coding. If the compressed content isn't cached or the file was modified
+	 * in the meantime, the file is compressed and, if the file isn't larger
+	 * than the maximum variant size, the result is put in the cache.
+	 *
+	 * @param path
+	 *            path of the file
+	 * @param lastModified
+	 *            current last modification time of the file
+	 * @param encoding
+	 *            content coding, as accepted by
+	 *            {@link Compression#compress(byte[], String)}
+	 * @return compressed content of the file
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public byte[] getCompressed(Path path, long lastModified, String encoding) throws IOException {
+		byte[] data = null;
+		CacheEntry entry = entries.get(path);
+		if (entry != null && entry.lastModified == lastModified) {
+			byte[] variant = entry.variants.get(encoding);
+			if (variant != null) {
+				return variant;
+			}
+			data = entry.data;
+		}
+
+		if (data == null) {
+			data = Files.readAllBytes(path);
+		}
+		byte[] compressed = Compression.compress(data, encoding);
+		if (data.length <= maxVariantSize) {
+			store(path, lastModified, encoding, compressed);
+		}
+		return compressed;
+	}
+
+	/**
+	 * Puts the content or a compressed variant of a file in the cache and
+	 * evicts the least recently used files if the cache is too large. Content
+	 * and variants of an older version of the file are dropped. If two
+	 * threads store data of the same file at once, one of them may be lost,
+	 * which only means the data is read or compressed again later.
+	 *
+	 * @param path
+	 *            path of the file
+	 * @param lastModified
+	 *            last modification time of the file
+	 * @param encoding
+	 *            content coding of the data; {@code null} if it is the
+	 *            original content
+	 * @param data
+	 *            data to cache
+	 */
+	private void store(Path path, long lastModified, String encoding, byte[] data) {
+		CacheEntry entry = entries.get(path);
+		byte[] content = null;
+		Map<String, byte[]> variants = new HashMap<>();
+		if (entry != null && entry.lastModified == lastModified) {
+			content = entry.data;
+			variants.putAll(entry.variants);
+		}
+		if (encoding == null) {
+			content = data;
+		} else {
+			variants.put(encoding, data);
+		}
+		entry = new CacheEntry(lastModified, content, variants);
+		entries.put(path, entry, entry.size);
+	}
+
+	/**
+	 * @return current total size of the cached content in bytes
+	 */
+	public long getSize() {
+		return entries.getSize();
+	}
+}
@@ -0,0 +1,148 @@
+package hr.fer.zemris.java.webserver;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * {@code WebWorkerRegistry} creates {@link IWebWorker IWebWorkers} from their
+ * class names and keeps a factory for every loaded worker class, so the class
+ * is loaded and checked only for the first request. <br>
+ * Workers are singletons: one instance is created and returned for all
+ * requests. Workers annotated with {@link Prototype} get a new instance for
+ * every request, created through a constructor reference generated with
+ * {@link LambdaMetafactory}, which costs as much as a plain {@code new}.
+ * <br>
+ * Workers requested by the {@code "/ext/name"} convention are looked up in
+ * a single package and factories of both configured and convention-based
+ * workers are kept in the same map, so a worker reachable both ways shares
+ * its singleton instance. <br>
+ * This class is thread safe.
+ *
+ * @author Dan
+ */
+public class WebWorkerRegistry {
+
+	/** Package of the workers requested by name, ending with a dot. */
+	private final String packagePrefix;
+
+	/** Worker factories mapped to the class names of the workers. */
+	private final Map<String, Supplier<IWebWorker>> factories;
+
+	/** Factories of the workers requested by name mapped to their names. */
+	private final Map<String, Supplier<IWebWorker>> namedFactories;
+
+	/**
+	 * Creates a new empty {@code WebWorkerRegistry} which looks up the
+	 * workers requested by name in given package.
+	 *
+	 * @param packageName
+	 *            package of the workers requested by name
+	 */
+	public WebWorkerRegistry(String packageName) {
+		packagePrefix = packageName + ".";
+		factories = new ConcurrentHashMap<>();
+		namedFactories = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns the factory of the worker with given FQCN.
+	 *
+	 * @param fqcn
+	 *            fully qualified class name of the worker
+	 * @return factory of the worker
+	 * @throws IllegalArgumentException
+	 *             if given FQCN is not a valid {@code IWebWorker}
+	 */
+	public Supplier<IWebWorker> getFactory(String fqcn) {
+		Supplier<IWebWorker> factory = factories.get(fqcn);
+		if (factory == null) {
+			factory = factories.computeIfAbsent(fqcn, WebWorkerRegistry::createFactory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Returns the worker with given simple class name from the package of
+	 * this registry.
+	 *
+	 * @param name
+	 *            simple class name of the worker
+	 * @return worker for processing a request; or {@code null} if the package
+	 *         doesn't contain such worker
+	 */
+	public IWebWorker getWorker(String name) {
+		Supplier<IWebWorker> factory = namedFactories.get(name);
+		if (factory == null) {
+			if (name.isEmpty() || name.indexOf('.') != -1 || name.indexOf('/') != -1) {
+				return null;
+			}
+			try {
+				factory = getFactory(packagePrefix + name);
+			} catch (IllegalArgumentException e) {
+				// unknown names are not cached, so they can't fill the map
+				return null;
+			}
+			namedFactories.put(name, factory);
+		}
+		return factory.get();
+	}
+
+	/**
+	 * Loads the worker class and creates its factory.
+	 *
+	 * @param fqcn
+	 *            fully qualified class name of the worker
+	 * @return factory of the worker
+	 * @throws IllegalArgumentException
+	 *             if given FQCN is not a valid {@code IWebWorker}
+	 */
+	private static Supplier<IWebWorker> createFactory(String fqcn) {
+		Class<?> workerClass;
+		try {
+			workerClass = Class.forName(fqcn, false, WebWorkerRegistry.class.getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			throw new IllegalArgumentException("Given FQCN is invalid: " + fqcn);
+		}
+		if (!IWebWorker.class.isAssignableFrom(workerClass) || Modifier.isAbstract(workerClass.getModifiers())) {
+			throw new IllegalArgumentException("Given class is not an IWebWorker: " + fqcn);
+		}
+
+		Supplier<IWebWorker> constructor = constructor(workerClass);
+		if (workerClass.isAnnotationPresent(Prototype.class)) {
+			return constructor;
+		}
+		IWebWorker worker = constructor.get();
+		return () -> worker;
+	}
+
+	/**
+	 * Creates a {@code Supplier} which calls the public constructor without
+	 * arguments of given class.
+	 *
+	 * @param workerClass
+	 *            class of the worker
+	 * @return reference to the constructor
+	 * @throws IllegalArgumentException
+	 *             if the class doesn't have a public constructor without
+	 *             arguments
+	 */
+	@SuppressWarnings("unchecked")
+	private static Supplier<IWebWorker> constructor(Class<?> workerClass) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle handle = lookup.findConstructor(workerClass, MethodType.methodType(void.class));
+			CallSite site = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+					MethodType.methodType(Object.class), handle, MethodType.methodType(workerClass));
+			return (Supplier<IWebWorker>) site.getTarget().invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalArgumentException("Worker cannot be instantiated: " + workerClass.getName());
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package hr.fer.zemris.java.webserver.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.ImageResponse;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.workers.CircleWorker;
+
+/**
+ * Measures the throughput of the circle image worker: the previous
+ * implementation, which created a new image and encoded it through
+ * {@link ImageIO#write(java.awt.image.RenderedImage, String, java.io.OutputStream)}
+ * for every request, the {@link CircleWorker} drawing a random circle with a
+ * reused {@link ImageResponse} and the {@link CircleWorker} with a given
+ * color, which is served from the cache. Requests are processed by the given
+ * number of threads and results are printed as requests per second.
+ *
+ * @author Dan
+ */
+public class CircleWorkerBenchmark {
+
+	/**
+	 * The previous implementation of {@link CircleWorker}.
+	 *
+	 * @author Dan
+	 */
+	private static class OldCircleWorker implements IWebWorker {
+
+		@Override
+		public void processRequest(RequestContext context) {
+			BufferedImage bim = new BufferedImage(200, 200, BufferedImage.TYPE_3BYTE_BGR);
+			Graphics2D g2d = bim.createGraphics();
+			g2d.setColor(Color.WHITE);
+			g2d.fillRect(0, 0, bim.getWidth(), bim.getHeight());
+
+			Random rnd = new Random();
+			g2d.setColor(new Color(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256)));
+			g2d.fillOval(0, 0, bim.getWidth(), bim.getHeight());
+			g2d.dispose();
+
+			context.setMimeType("image/png");
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			try {
+				ImageIO.write(bim, "png", bos);
+				context.write(bos.toByteArray());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/** Duration of the warm up in milliseconds. */
+	private static final long WARMUP_MILLIS = 3000;
+
+	/** Duration of a measurement in milliseconds. */
+	private static final long MEASURE_MILLIS = 5000;
+
+	/**
+	 * Program entry point. Runs the benchmark.
+	 *
+	 * @param args
+	 *            optional number of threads; defaults to the number of
+	 *            processors
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		CircleWorker worker = new CircleWorker();
+
+		String[] names = { "new image per request", "reused encoder", "cached color" };
+		IWebWorker[] workers = { new OldCircleWorker(), worker, worker };
+		String[] colors = { null, null, "3366cc" };
+		for (int i = 0; i < names.length; i++) {
+			run(workers[i], colors[i], threads, WARMUP_MILLIS);
+			long requests = run(workers[i], colors[i], threads, MEASURE_MILLIS);
+			System.out.printf("%-22s %10.0f req/s%n", names[i], requests * 1000.0 / MEASURE_MILLIS);
+		}
+	}
+
+	/**
+	 * Processes requests with the worker for the given time.
+	 *
+	 * @param worker
+	 *            worker which processes the requests
+	 * @param color
+	 *            value of the {@code color} parameter; may be {@code null}
+	 * @param threads
+	 *            number of threads
+	 * @param millis
+	 *            duration in milliseconds
+	 * @return number of processed requests
+	 * @throws Exception
+	 *             if a request fails
+	 */
+	private static long run(IWebWorker worker, String color, int threads, long millis) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		List<Future<Long>> results = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			results.add(pool.submit(() -> {
+				HashMap<String, String> parameters = new HashMap<>();
+				if (color != null) {
+					parameters.put("color", color);
+				}
+				NullOutputStream out = new NullOutputStream();
+				long requests = 0;
+				while (System.nanoTime() < end) {
+					RequestContext context = new RequestContext(out, parameters, new HashMap<>(), new ArrayList<>());
+					worker.processRequest(context);
+					requests++;
+				}
+				return requests;
+			}));
+		}
+		long requests = 0;
+		for (Future<Long> result : results) {
+			requests += result.get();
+		}
+		pool.shutdown();
+		return requests;
+	}
+
+	/**
+	 * Output stream which discards all written bytes.
+	 *
+	 * @author Dan
+	 */
+	private static class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
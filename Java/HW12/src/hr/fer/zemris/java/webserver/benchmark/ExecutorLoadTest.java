@@ -0,0 +1,100 @@
+package hr.fer.zemris.java.webserver.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+
+/**
+ * Compares the thread pools which can be chosen with the
+ * {@code server.executor} property. <br>
+ * For every pool, the server is started with the given configuration, in
+ * which only the executor and the port are changed, and a {@link LoadClient}
+ * sends requests over the given number of concurrent persistent connections.
+ * Throughput and latency percentiles are printed for each pool, together
+ * with the number of requests still waiting when the measurement ended and
+ * the number of connections which got no response at all. Pools which
+ * are not supported by the running Java version are skipped. <br>
+ * Arguments are: path of the server configuration file, requested path
+ * (default {@code /index.html}), number of connections (default 10000) and
+ * duration of the measurement in seconds (default 10). Enough file
+ * descriptors are needed for both ends of every connection.
+ *
+ * @author Dan
+ */
+public class ExecutorLoadTest {
+
+	/** Compared executors. */
+	private static final String[] EXECUTORS = { "fixed", "workStealing", "cached", "virtual" };
+
+	/** Duration of the warm up in milliseconds. */
+	private static final long WARMUP = 3000;
+
+	/**
+	 * Program entry point. Runs the load test.
+	 *
+	 * @param args
+	 *            configuration file, path, connections and seconds
+	 * @throws IOException
+	 *             if the configuration cannot be read
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the server
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.out.println("Expected: config [path] [connections] [seconds]");
+			return;
+		}
+		String path = args.length > 1 ? args[1] : "/index.html";
+		int connections = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+		Properties config = new Properties();
+		try (InputStream is = Files.newInputStream(Paths.get(args[0]))) {
+			config.load(is);
+		}
+		String host = config.getProperty("server.address");
+		int port = Integer.parseInt(config.getProperty("server.port").trim());
+
+		System.out.printf("%s %s, %d connections, %s mode%n", "GET", path, connections,
+				config.getProperty("server.ioMode", "blocking").trim());
+		System.out.println("executor         req/s     p50 ms     p99 ms     max ms   errors  waiting  starved");
+		for (int i = 0; i < EXECUTORS.length; i++) {
+			// every pool gets its own port, so the previous one needn't be released
+			config.setProperty("server.executor", EXECUTORS[i]);
+			config.setProperty("server.port", Integer.toString(port + i));
+			Path file = Files.createTempFile("server", ".properties");
+			try (OutputStream os = Files.newOutputStream(file)) {
+				config.store(os, null);
+			}
+
+			SmartHttpServer server;
+			try {
+				server = new SmartHttpServer(file.toString());
+			} catch (IllegalArgumentException e) {
+				System.out.printf("%-12s %s%n", EXECUTORS[i], e.getMessage());
+				continue;
+			} finally {
+				Files.delete(file);
+			}
+
+			server.start();
+			Thread.sleep(500);
+			try {
+				LoadClient.Result result = new LoadClient(host, port + i, path, connections).run(WARMUP,
+						seconds * 1000L);
+				System.out.printf("%-12s %9.0f %10.2f %10.2f %10.2f %8d %8d %8d%n", EXECUTORS[i],
+						result.getThroughput(), result.getLatency(50), result.getLatency(99), result.getLatency(100),
+						result.getErrors(), result.getIncomplete(), result.getStarved());
+			} finally {
+				server.stop();
+			}
+		}
+		System.exit(0);
+	}
+}
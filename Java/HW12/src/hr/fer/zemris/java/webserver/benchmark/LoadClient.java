@@ -0,0 +1,756 @@
+package hr.fer.zemris.java.webserver.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * {@code LoadClient} keeps many HTTP connections to a server open and sends
+ * requests over all of them. If several paths are given, they are requested
+ * in turn, so the load is a mix of all of them. <br>
+ * In the closed loop mode, every connection sends a new request as soon as
+ * the response to the previous one is read. In the open loop mode, requests
+ * are started at a fixed rate, regardless of how fast the server responds,
+ * and each is sent over the first free connection. A request which waits for
+ * a free connection is late, and its latency is measured from the time it
+ * should have been sent, so a slow server can't hide its delays by slowing
+ * the client down. <br>
+ * Connections are either persistent, and opened again whenever the server
+ * closes them, or closed after every response, in which case connecting is
+ * a part of every request's latency. All connections are handled by a single
+ * thread with a {@link Selector}, so even thousands of them don't need
+ * thousands of client threads. <br>
+ * Responses with a {@code Content-Length}, chunked responses and responses
+ * delimited by closing the connection are supported. <br>
+ * Requests which are still waiting for a response when the measurement ends
+ * are included in the latency percentiles with the time they have waited so
+ * far, and connections which got no response during the measurement are
+ * reported as starved, so a server which leaves some clients waiting can't
+ * look good by serving only the others.
+ *
+ * @author Dan
+ */
+public class LoadClient {
+
+	/**
+	 * Result of a single {@link LoadClient#run(long, long)}.
+	 *
+	 * @author Dan
+	 */
+	public static class Result {
+
+		/**
+		 * Sorted latencies of the measured responses and waiting times of the
+		 * incomplete requests in nanoseconds.
+		 */
+		private final long[] latencies;
+
+		/** Number of successful responses. */
+		private final long requests;
+
+		/** Number of failed requests and connections. */
+		private final long errors;
+
+		/** Number of connections without a successful response. */
+		private final int starved;
+
+		/** Duration of the measurement in seconds. */
+		private final double seconds;
+
+		/**
+		 * Creates a new {@code Result} with given arguments.
+		 *
+		 * @param latencies
+		 *            latencies of the measured responses, followed by the
+		 *            waiting times of the incomplete requests, in nanoseconds
+		 * @param requests
+		 *            number of successful responses
+		 * @param errors
+		 *            number of failed requests and connections
+		 * @param starved
+		 *            number of connections without a successful response
+		 * @param seconds
+		 *            duration of the measurement in seconds
+		 */
+		private Result(long[] latencies, long requests, long errors, int starved, double seconds) {
+			this.latencies = latencies;
+			this.requests = requests;
+			this.errors = errors;
+			this.starved = starved;
+			this.seconds = seconds;
+			Arrays.sort(latencies);
+		}
+
+		/**
+		 * @return number of successful responses
+		 */
+		public long getRequests() {
+			return requests;
+		}
+
+		/**
+		 * @return number of requests still waiting for the response when the
+		 *         measurement ended
+		 */
+		public long getIncomplete() {
+			return latencies.length - requests;
+		}
+
+		/**
+		 * @return number of connections which got no successful response
+		 *         during the measurement
+		 */
+		public int getStarved() {
+			return starved;
+		}
+
+		/**
+		 * @return number of failed requests and connections
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @return successful responses per second
+		 */
+		public double getThroughput() {
+			return requests / seconds;
+		}
+
+		/**
+		 * Returns the latency below which given percentage of the responses
+		 * was received. Incomplete requests count with the time they waited
+		 * until the end of the measurement, which is a lower bound of their
+		 * latency.
+		 *
+		 * @param percentile
+		 *            percentage, from 0 to 100
+		 * @return latency in milliseconds; or {@code NaN} if there were no
+		 *         responses
+		 */
+		public double getLatency(double percentile) {
+			if (latencies.length == 0) {
+				return Double.NaN;
+			}
+			int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+		}
+	}
+
+	/**
+	 * States of reading a response.
+	 *
+	 * @author Dan
+	 */
+	private enum State {
+		/** Reading the header. */
+		HEADER,
+		/** Reading a body with known length. */
+		BODY,
+		/** Reading the size line of a chunk. */
+		CHUNK_SIZE,
+		/** Reading the data of a chunk and the line end after it. */
+		CHUNK_DATA,
+		/** Reading the trailer after the last chunk. */
+		TRAILER,
+		/** Reading a body which ends when the connection is closed. */
+		UNTIL_EOF
+	}
+
+	/**
+	 * Single connection to the server.
+	 *
+	 * @author Dan
+	 */
+	private static class Connection {
+
+		/** Channel of the connection. */
+		private SocketChannel channel;
+
+		/** Key of the channel. */
+		private SelectionKey key;
+
+		/** Rest of the request to write. */
+		private ByteBuffer out;
+
+		/**
+		 * Time the request was started, from {@code System.nanoTime()}. In the
+		 * open loop mode it is the time it was scheduled for.
+		 */
+		private long sentAt;
+
+		/** Request which is sent. */
+		private byte[] request;
+
+		/** State of reading the response. */
+		private State state;
+
+		/** Current header or chunk line. */
+		private StringBuilder line = new StringBuilder();
+
+		/** Number of response bytes read for the current request. */
+		private long received;
+
+		/** Remaining bytes of the body or the current chunk. */
+		private long remaining;
+
+		/** {@code true} if the server closes the connection after response. */
+		private boolean close;
+
+		/** {@code true} if the response has a success status. */
+		private boolean success;
+
+		/** {@code true} if the request is sent and its response isn't read. */
+		private boolean waiting;
+
+		/** Number of successful responses during the measurement. */
+		private long responses;
+
+		/** Start time of the last request the connection was given. */
+		private long lastIssued = Long.MIN_VALUE;
+
+		/**
+		 * Reads given bytes of the response.
+		 *
+		 * @param in
+		 *            received bytes
+		 * @return {@code true} if the whole response is read
+		 */
+		private boolean consume(ByteBuffer in) {
+			received += in.remaining();
+			while (in.hasRemaining()) {
+				switch (state) {
+				case HEADER:
+					char c = (char) (in.get() & 0xFF);
+					line.append(c);
+					if (c == '\n' && endsWith(line, "\r\n\r\n") && parseHeader()) {
+						return true;
+					}
+					break;
+				case BODY:
+				case CHUNK_DATA:
+				case UNTIL_EOF:
+					int n = (int) Math.min(remaining, in.remaining());
+					in.position(in.position() + n);
+					remaining -= n;
+					if (remaining == 0) {
+						if (state == State.BODY) {
+							return true;
+						}
+						state = State.CHUNK_SIZE;
+					}
+					break;
+				case CHUNK_SIZE:
+				case TRAILER:
+					c = (char) (in.get() & 0xFF);
+					line.append(c);
+					if (c != '\n') {
+						break;
+					}
+					if (state == State.TRAILER) {
+						if (line.length() == 2) {
+							return true;
+						}
+					} else {
+						String size = line.toString().split(";")[0].trim();
+						long length = Long.parseLong(size, 16);
+						if (length == 0) {
+							state = State.TRAILER;
+						} else {
+							remaining = length + 2;
+							state = State.CHUNK_DATA;
+						}
+					}
+					line.setLength(0);
+					break;
+				default:
+					throw new IllegalStateException();
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Parses the header in the {@link #line} and decides how the body is
+		 * read.
+		 *
+		 * @return {@code true} if the response has no body
+		 */
+		private boolean parseHeader() {
+			String[] lines = line.toString().split("\r\n");
+			line.setLength(0);
+			int status = Integer.parseInt(lines[0].split(" ")[1]);
+			success = status >= 200 && status < 400;
+			close = lines[0].startsWith("HTTP/1.0");
+
+			long length = -1;
+			boolean chunked = false;
+			for (int i = 1; i < lines.length; i++) {
+				String header = lines[i].toLowerCase();
+				int index = header.indexOf(':');
+				if (index == -1) {
+					continue;
+				}
+				String name = header.substring(0, index).trim();
+				String value = header.substring(index + 1).trim();
+				if (name.equals("content-length")) {
+					length = Long.parseLong(value);
+				} else if (name.equals("transfer-encoding")) {
+					chunked = value.contains("chunked");
+				} else if (name.equals("connection")) {
+					close = value.equals("close");
+				}
+			}
+
+			if (status / 100 == 1 || status == 204 || status == 304) {
+				return true;
+			} else if (chunked) {
+				state = State.CHUNK_SIZE;
+			} else if (length >= 0) {
+				state = State.BODY;
+				remaining = length;
+				return length == 0;
+			} else {
+				state = State.UNTIL_EOF;
+				remaining = Long.MAX_VALUE;
+				close = true;
+			}
+			return false;
+		}
+	}
+
+	/** Size of the buffer for reading responses. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** Longest time the selector waits, in milliseconds. */
+	private static final long SELECT_TIMEOUT = 100;
+
+	/** Address of the server. */
+	private final InetSocketAddress address;
+
+	/** Requests which are sent in turn. */
+	private final byte[][] requests;
+
+	/** Number of connections. */
+	private final int connections;
+
+	/**
+	 * Time between two requests in nanoseconds in the open loop mode; 0 in
+	 * the closed loop mode.
+	 */
+	private final long interval;
+
+	/** Index of the next request to send. */
+	private int nextRequest;
+
+	/** Selector of the current run. */
+	private Selector selector;
+
+	/** Connections which don't wait for a response. */
+	private Deque<Connection> idle;
+
+	/** Start times of the requests waiting for a free connection. */
+	private Deque<Long> pending;
+
+	/** Latencies of the measured responses in nanoseconds. */
+	private long[] latencies;
+
+	/** Number of measured responses. */
+	private int count;
+
+	/** Number of successful measured responses. */
+	private long successes;
+
+	/** Number of failed requests and connections. */
+	private long errors;
+
+	/** Time from which the responses are measured. */
+	private long measureFrom;
+
+	/**
+	 * Creates a new closed loop {@code LoadClient} with persistent
+	 * connections which requests a single path.
+	 *
+	 * @param host
+	 *            host of the server
+	 * @param port
+	 *            port of the server
+	 * @param path
+	 *            requested path, including the query
+	 * @param connections
+	 *            number of concurrent connections
+	 * @throws IllegalArgumentException
+	 *             if the number of connections is not positive
+	 */
+	public LoadClient(String host, int port, String path, int connections) {
+		this(host, port, Collections.singletonList(path), connections, true, 0);
+	}
+
+	/**
+	 * Creates a new {@code LoadClient} with given arguments.
+	 *
+	 * @param host
+	 *            host of the server
+	 * @param port
+	 *            port of the server
+	 * @param paths
+	 *            requested paths, including the queries, which are requested
+	 *            in turn
+	 * @param connections
+	 *            number of concurrent connections
+	 * @param keepAlive
+	 *            {@code true} if connections are persistent, {@code false} if
+	 *            a new connection is opened for every request
+	 * @param rate
+	 *            number of requests started per second in the open loop
+	 *            mode; 0 for the closed loop mode
+	 * @throws IllegalArgumentException
+	 *             if there are no paths, the number of connections is not
+	 *             positive or the rate is negative
+	 */
+	public LoadClient(String host, int port, List<String> paths, int connections, boolean keepAlive, double rate) {
+		if (paths.isEmpty()) {
+			throw new IllegalArgumentException("At least one path is needed.");
+		}
+		if (connections <= 0) {
+			throw new IllegalArgumentException("Number of connections must be positive.");
+		}
+		if (!(rate >= 0)) {
+			throw new IllegalArgumentException("Rate can't be negative.");
+		}
+		address = new InetSocketAddress(host, port);
+		requests = new byte[paths.size()][];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = ("GET " + paths.get(i) + " HTTP/1.1\r\n" + "Host: " + host + ":" + port + "\r\n"
+					+ "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n")
+							.getBytes(StandardCharsets.ISO_8859_1);
+		}
+		this.connections = connections;
+		interval = rate == 0 ? 0 : Math.max(1, Math.round(1e9 / rate));
+	}
+
+	/**
+	 * Opens the connections and sends requests until the time runs out. Only
+	 * responses received after the warm up are measured.
+	 *
+	 * @param warmupMillis
+	 *            duration of the warm up in milliseconds
+	 * @param durationMillis
+	 *            duration of the measurement in milliseconds
+	 * @return result of the measurement
+	 * @throws IOException
+	 *             if the selector cannot be opened
+	 */
+	public Result run(long warmupMillis, long durationMillis) throws IOException {
+		latencies = new long[1024];
+		count = 0;
+		successes = 0;
+		errors = 0;
+		idle = new ArrayDeque<>();
+		pending = new ArrayDeque<>();
+		List<Connection> all = new ArrayList<>(connections);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		long end;
+		try (Selector selector = Selector.open()) {
+			this.selector = selector;
+			long start = System.nanoTime();
+			measureFrom = start + warmupMillis * 1_000_000;
+			end = measureFrom + durationMillis * 1_000_000;
+			long nextStart = start;
+			for (int i = 0; i < connections; i++) {
+				Connection connection = new Connection();
+				all.add(connection);
+				idle.add(connection);
+			}
+
+			long now;
+			while ((now = System.nanoTime()) < end) {
+				long timeout = SELECT_TIMEOUT;
+				if (interval == 0) {
+					while (!idle.isEmpty()) {
+						issue(idle.poll(), now);
+					}
+				} else {
+					for (; nextStart <= now; nextStart += interval) {
+						pending.add(nextStart);
+					}
+					while (!pending.isEmpty() && !idle.isEmpty()) {
+						issue(idle.poll(), pending.poll());
+					}
+					timeout = Math.max(1, Math.min(timeout, (nextStart - now) / 1_000_000));
+				}
+
+				selector.select(timeout);
+				for (SelectionKey key : selector.selectedKeys()) {
+					Connection connection = (Connection) key.attachment();
+					if (!key.isValid() || connection.key != key) {
+						continue;
+					}
+					try {
+						if (key.isConnectable()) {
+							connection.channel.finishConnect();
+							send(connection);
+						} else if (key.isWritable()) {
+							write(connection);
+						} else if (key.isReadable()) {
+							read(connection, buffer);
+						}
+					} catch (IOException | RuntimeException e) {
+						close(connection);
+						if (connection.waiting) {
+							fail(connection);
+						}
+					}
+				}
+				selector.selectedKeys().clear();
+			}
+		} finally {
+			for (Connection connection : all) {
+				close(connection);
+			}
+			selector = null;
+		}
+
+		int starved = 0;
+		for (Connection connection : all) {
+			if (connection.waiting) {
+				add(end - Math.max(connection.sentAt, measureFrom));
+			}
+			if (connection.responses == 0 && (connection.waiting || connection.lastIssued >= measureFrom)) {
+				starved++;
+			}
+		}
+		for (long startedAt : pending) {
+			add(end - Math.max(startedAt, measureFrom));
+		}
+		return new Result(Arrays.copyOf(latencies, count), successes, errors, starved, durationMillis / 1000.0);
+	}
+
+	/**
+	 * Starts the next request over the connection, opening the connection
+	 * first if it is closed.
+	 *
+	 * @param connection
+	 *            idle connection
+	 * @param startedAt
+	 *            start time of the request
+	 */
+	private void issue(Connection connection, long startedAt) {
+		connection.sentAt = startedAt;
+		connection.lastIssued = startedAt;
+		connection.waiting = true;
+		connection.request = requests[nextRequest];
+		nextRequest = (nextRequest + 1) % requests.length;
+		try {
+			if (connection.channel == null) {
+				connect(connection);
+			} else {
+				send(connection);
+			}
+		} catch (IOException e) {
+			close(connection);
+			fail(connection);
+		}
+	}
+
+	/**
+	 * Opens the connection and sends the request once it is connected.
+	 *
+	 * @param connection
+	 *            connection to open
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void connect(Connection connection) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		connection.channel = channel;
+		channel.configureBlocking(false);
+		if (channel.connect(address)) {
+			connection.key = channel.register(selector, 0, connection);
+			send(connection);
+		} else {
+			connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+		}
+	}
+
+	/**
+	 * Sends the request of the connection.
+	 *
+	 * @param connection
+	 *            connection of the request
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void send(Connection connection) throws IOException {
+		connection.out = ByteBuffer.wrap(connection.request);
+		connection.state = State.HEADER;
+		connection.line.setLength(0);
+		connection.received = 0;
+		write(connection);
+	}
+
+	/**
+	 * Writes the rest of the request and waits for the response once it is
+	 * written.
+	 *
+	 * @param connection
+	 *            connection of the request
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void write(Connection connection) throws IOException {
+		connection.channel.write(connection.out);
+		connection.key.interestOps(connection.out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+	/**
+	 * Reads the available part of the response and starts the next request
+	 * once the response is read.
+	 *
+	 * @param connection
+	 *            connection of the request
+	 * @param buffer
+	 *            buffer for reading
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void read(Connection connection, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		int n = connection.channel.read(buffer);
+		if (!connection.waiting) {
+			// an idle persistent connection can only be closed by the server
+			close(connection);
+			return;
+		}
+		if (n == -1) {
+			if (connection.state == State.UNTIL_EOF) {
+				close(connection);
+				complete(connection);
+				return;
+			}
+			if (connection.received != 0) {
+				throw new IOException("Connection closed during the response.");
+			}
+			// persistent connection closed before the request; send it again
+			close(connection);
+			connect(connection);
+			return;
+		}
+
+		buffer.flip();
+		if (connection.consume(buffer)) {
+			if (connection.close) {
+				close(connection);
+			}
+			complete(connection);
+		}
+	}
+
+	/**
+	 * Records the response of the connection and gives the connection the
+	 * next request.
+	 *
+	 * @param connection
+	 *            connection with a read response
+	 */
+	private void complete(Connection connection) {
+		connection.waiting = false;
+		long now = System.nanoTime();
+		if (now >= measureFrom) {
+			if (connection.success) {
+				connection.responses++;
+				successes++;
+				add(now - connection.sentAt);
+			} else {
+				errors++;
+			}
+		}
+
+		if (interval == 0) {
+			issue(connection, now);
+		} else if (!pending.isEmpty()) {
+			issue(connection, pending.poll());
+		} else {
+			idle.add(connection);
+		}
+	}
+
+	/**
+	 * Records the failed request of the connection. The connection gets the
+	 * next request after the selector is checked again.
+	 *
+	 * @param connection
+	 *            closed connection whose request failed
+	 */
+	private void fail(Connection connection) {
+		connection.waiting = false;
+		if (System.nanoTime() >= measureFrom) {
+			errors++;
+		}
+		idle.add(connection);
+	}
+
+	/**
+	 * Adds the latency to the measured latencies.
+	 *
+	 * @param latency
+	 *            latency in nanoseconds
+	 */
+	private void add(long latency) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, count * 2);
+		}
+		latencies[count++] = latency;
+	}
+
+	/**
+	 * Closes the channel of the connection, if it is open.
+	 *
+	 * @param connection
+	 *            connection to close
+	 */
+	private static void close(Connection connection) {
+		if (connection.channel != null) {
+			try {
+				connection.channel.close();
+			} catch (IOException ignorable) {
+			}
+			connection.channel = null;
+			connection.key = null;
+		}
+	}
+
+	/**
+	 * Checks if the {@code StringBuilder} ends with given suffix.
+	 *
+	 * @param sb
+	 *            {@code StringBuilder} to check
+	 * @param suffix
+	 *            suffix
+	 * @return {@code true} if the {@code StringBuilder} ends with the suffix
+	 */
+	private static boolean endsWith(StringBuilder sb, String suffix) {
+		int offset = sb.length() - suffix.length();
+		if (offset < 0) {
+			return false;
+		}
+		for (int i = 0; i < suffix.length(); i++) {
+			if (sb.charAt(offset + i) != suffix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
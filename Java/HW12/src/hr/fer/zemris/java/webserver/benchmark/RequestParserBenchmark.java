@@ -0,0 +1,186 @@
+package hr.fer.zemris.java.webserver.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import hr.fer.zemris.java.webserver.RequestParser;
+
+/**
+ * Compares the {@link RequestParser} with the previous way of reading request
+ * headers, which read the stream 4 bytes at a time through a
+ * {@code PushbackInputStream} and split the header with
+ * {@code String.split}. <br>
+ * Both are given the same realistic browser request and are asked for the
+ * values the server needs: request line, {@code Connection} and
+ * {@code Cookie}. Results are printed as average time per request.
+ *
+ * @author Dan
+ */
+public class RequestParserBenchmark {
+
+	/** Request as sent by a desktop browser. */
+	//@formatter:off
+	private static final byte[] REQUEST = (
+			"GET /scripts/zbrajanje.smscr?a=4&b=2 HTTP/1.1\r\n" +
+			"Host: 127.0.0.1:5721\r\n" +
+			"Connection: keep-alive\r\n" +
+			"Cache-Control: max-age=0\r\n" +
+			"Upgrade-Insecure-Requests: 1\r\n" +
+			"User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
+				"(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36\r\n" +
+			"Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif," +
+				"image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.7\r\n" +
+			"Sec-Fetch-Site: none\r\n" +
+			"Sec-Fetch-Mode: navigate\r\n" +
+			"Sec-Fetch-User: ?1\r\n" +
+			"Sec-Fetch-Dest: document\r\n" +
+			"Accept-Encoding: gzip, deflate, br\r\n" +
+			"Accept-Language: hr-HR,hr;q=0.9,en-US;q=0.8,en;q=0.7\r\n" +
+			"Cookie: sid=\"QWERTYUIOPASDFGHJKLZ\"; theme=dark\r\n" +
+			"\r\n").getBytes(StandardCharsets.ISO_8859_1);
+	//@formatter:on
+
+	/** Number of requests in one measured round. */
+	private static final int REQUESTS = 20_000;
+
+	/** Number of warm up rounds. */
+	private static final int WARMUP_ROUNDS = 10;
+
+	/** Number of measured rounds. */
+	private static final int ROUNDS = 10;
+
+	/** Prevents the JIT compiler from removing the measured code. */
+	private static int sink;
+
+	/**
+	 * Program entry point. Runs the benchmark.
+	 *
+	 * @param args
+	 *            command line arguments, not used
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static void main(String[] args) throws IOException {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			pushbackRound();
+			parserRound();
+		}
+
+		long pushback = 0;
+		long parser = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			pushback += pushbackRound();
+			parser += parserRound();
+		}
+
+		double total = (double) ROUNDS * REQUESTS;
+		System.out.printf("Pushback and split: %8.1f ns/request%n", pushback / total);
+		System.out.printf("RequestParser:      %8.1f ns/request%n", parser / total);
+		System.out.println("(" + sink + ")");
+	}
+
+	/**
+	 * Measures one round of the previous implementation.
+	 *
+	 * @return elapsed time in nanoseconds
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static long pushbackRound() throws IOException {
+		long start = System.nanoTime();
+		for (int i = 0; i < REQUESTS; i++) {
+			PushbackInputStream is = new PushbackInputStream(new ByteArrayInputStream(REQUEST), 4);
+			List<String> headers = splitHeaders(readHeader(is));
+			String[] firstLine = headers.get(0).split(" ");
+			sink += firstLine[1].length();
+			for (String line : headers) {
+				if (line.startsWith("Connection:") || line.startsWith("Cookie:")) {
+					sink += line.length();
+				}
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Measures one round of the {@code RequestParser}. A single parser is
+	 * reused as it would be on a persistent connection.
+	 *
+	 * @return elapsed time in nanoseconds
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static long parserRound() throws IOException {
+		RequestParser parser = new RequestParser();
+		long start = System.nanoTime();
+		for (int i = 0; i < REQUESTS; i++) {
+			InputStream is = new ByteArrayInputStream(REQUEST);
+			parser.readRequest(is);
+			sink += parser.getPath().length();
+			sink += parser.getHeader("Connection").length();
+			sink += parser.getHeaders().get("Cookie").length();
+			parser.next();
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Reads the header the way the server used to.
+	 *
+	 * @param is
+	 *            stream with the request
+	 * @return header without the terminating empty line
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static byte[] readHeader(PushbackInputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buf = new byte[4];
+		while (true) {
+			if (is.read(buf) < 4) {
+				return null;
+			}
+			if (buf[0] == 13 && buf[1] == 10 && buf[2] == 13 && buf[3] == 10) {
+				break;
+			}
+			bos.write(buf[0]);
+			is.unread(buf, 1, 3);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Splits the header into lines the way the server used to.
+	 *
+	 * @param request
+	 *            request header
+	 * @return header lines
+	 */
+	private static List<String> splitHeaders(byte[] request) {
+		String requestStr = new String(request, StandardCharsets.ISO_8859_1);
+		List<String> headers = new ArrayList<>();
+		String currentLine = null;
+		for (String s : requestStr.split("\r\n")) {
+			if (s.isEmpty()) {
+				break;
+			}
+			char c = s.charAt(0);
+			if (c == 9 || c == 32) {
+				currentLine += s;
+			} else {
+				if (currentLine != null) {
+					headers.add(currentLine);
+				}
+				currentLine = s;
+			}
+		}
+		headers.add(currentLine);
+		return headers;
+	}
+}
@@ -0,0 +1,169 @@
+package hr.fer.zemris.java.webserver.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptCompiler;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Compares {@link SmartScriptEngine} with {@link CompiledScriptEngine} on the
+ * scripts from {@code webroot/scripts}. <br>
+ * Scripts are parsed and compiled once, as they would be when taken from the
+ * server's cache, so only the execution is measured. Before measuring, the
+ * output of both engines is compared. Besides time, memory allocated per
+ * execution is reported if the JVM supports measuring it. Paths of the
+ * scripts can be given as command line arguments; by default
+ * {@code fibonacci.smscr} and {@code zbrajanje.smscr} are used.
+ *
+ * @author Dan
+ */
+public class ScriptEngineBenchmark {
+
+	/** Number of executions in one measured round. */
+	private static final int EXECUTIONS = 20_000;
+
+	/** Number of warm up rounds. */
+	private static final int WARMUP_ROUNDS = 10;
+
+	/** Number of measured rounds. */
+	private static final int ROUNDS = 10;
+
+	/**
+	 * Program entry point. Runs the benchmark.
+	 *
+	 * @param args
+	 *            paths of the scripts to execute
+	 * @throws IOException
+	 *             if a script cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			args = new String[] { "webroot/scripts/fibonacci.smscr", "webroot/scripts/zbrajanje.smscr" };
+		}
+
+		for (String file : args) {
+			String docBody = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+			DocumentNode document = new SmartScriptParser(docBody).getDocumentNode();
+			CompiledScript compiled = new SmartScriptCompiler(document).getCompiledScript();
+
+			byte[] visitorOutput = run(document, null);
+			byte[] compiledOutput = run(null, compiled);
+			if (!Arrays.equals(visitorOutput, compiledOutput)) {
+				System.out.println(file + ": engines produced different output!");
+				continue;
+			}
+
+			for (int i = 0; i < WARMUP_ROUNDS; i++) {
+				round(document, null);
+				round(null, compiled);
+			}
+			long visitor = 0;
+			long compiledTime = 0;
+			for (int i = 0; i < ROUNDS; i++) {
+				visitor += round(document, null);
+				compiledTime += round(null, compiled);
+			}
+
+			double total = (double) ROUNDS * EXECUTIONS;
+			System.out.println(file + " (" + compiled.getCodeLength() + " ints of code)");
+			System.out.printf("  SmartScriptEngine:    %10.1f ns/execution %10.0f B/execution%n", visitor / total,
+					allocatedPerExecution(document, null));
+			System.out.printf("  CompiledScriptEngine: %10.1f ns/execution %10.0f B/execution%n", compiledTime / total,
+					allocatedPerExecution(null, compiled));
+		}
+	}
+
+	/**
+	 * Measures one round of executions with one of the engines.
+	 *
+	 * @param document
+	 *            document for the {@code SmartScriptEngine}; or {@code null}
+	 * @param compiled
+	 *            script for the {@code CompiledScriptEngine}; or {@code null}
+	 * @return elapsed time in nanoseconds
+	 */
+	private static long round(DocumentNode document, CompiledScript compiled) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		long start = System.nanoTime();
+		for (int i = 0; i < EXECUTIONS; i++) {
+			bos.reset();
+			execute(document, compiled, bos);
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Measures the memory allocated by the current thread during one round
+	 * of executions.
+	 *
+	 * @param document
+	 *            document for the {@code SmartScriptEngine}; or {@code null}
+	 * @param compiled
+	 *            script for the {@code CompiledScriptEngine}; or {@code null}
+	 * @return average number of bytes allocated per execution; or
+	 *         {@code NaN} if the JVM doesn't support the measurement
+	 */
+	private static double allocatedPerExecution(DocumentNode document, CompiledScript compiled) {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return Double.NaN;
+		}
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		long id = Thread.currentThread().getId();
+		long before = sunBean.getThreadAllocatedBytes(id);
+		round(document, compiled);
+		return (sunBean.getThreadAllocatedBytes(id) - before) / (double) EXECUTIONS;
+	}
+
+	/**
+	 * Executes the script once and returns the output.
+	 *
+	 * @param document
+	 *            document for the {@code SmartScriptEngine}; or {@code null}
+	 * @param compiled
+	 *            script for the {@code CompiledScriptEngine}; or {@code null}
+	 * @return produced output including the header
+	 */
+	private static byte[] run(DocumentNode document, CompiledScript compiled) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		execute(document, compiled, bos);
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Executes the script once with a fresh context, as a request would.
+	 *
+	 * @param document
+	 *            document for the {@code SmartScriptEngine}; or {@code null}
+	 * @param compiled
+	 *            script for the {@code CompiledScriptEngine}; or {@code null}
+	 * @param bos
+	 *            stream for the output
+	 */
+	private static void execute(DocumentNode document, CompiledScript compiled, ByteArrayOutputStream bos) {
+		Map<String, String> parameters = new HashMap<>();
+		parameters.put("a", "4");
+		parameters.put("b", "2");
+		RequestContext rc = new RequestContext(bos, parameters, new HashMap<>(), new ArrayList<>());
+		if (document != null) {
+			new SmartScriptEngine(document, rc).execute();
+		} else {
+			new CompiledScriptEngine(compiled, rc).execute();
+		}
+	}
+}
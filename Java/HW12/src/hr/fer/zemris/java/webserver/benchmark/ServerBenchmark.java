@@ -0,0 +1,168 @@
+package hr.fer.zemris.java.webserver.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+
+/**
+ * Measures {@link SmartHttpServer} serving the bundled web root, so every
+ * change of the server can be compared with the same reproducible load. <br>
+ * The server is started on the loopback interface with the bundled
+ * {@code config/server.properties}, in which only the paths, the address and
+ * the port are replaced. A {@link LoadClient} then runs one scenario after
+ * another: a static page, a static image, each of the bundled smart scripts,
+ * the {@code /hello} and {@code /cw} workers, and finally a mix of all of
+ * them. Throughput, latency percentiles, errors and starved connections are
+ * printed for every scenario. <br>
+ * Arguments are {@code name=value} options:
+ * <ul>
+ * <li>{@code root}: project directory with {@code webroot} and
+ * {@code config}, default {@code .}</li>
+ * <li>{@code connections}: number of concurrent connections, default
+ * 50</li>
+ * <li>{@code rate}: requests per second in the open loop mode; 0, the
+ * default, for the closed loop mode</li>
+ * <li>{@code keepAlive}: {@code false} to open a new connection for every
+ * request, default {@code true}</li>
+ * <li>{@code seconds}: duration of the measurement of each scenario,
+ * default 10</li>
+ * <li>{@code warmup}: duration of the warm up before each scenario in
+ * seconds, default 3</li>
+ * <li>{@code scenarios}: comma separated names of the scenarios to run,
+ * default all</li>
+ * </ul>
+ * Options starting with {@code server.} or {@code session.} override the
+ * server configuration, for example {@code server.ioMode=selector}.
+ *
+ * @author Dan
+ */
+public class ServerBenchmark {
+
+	/** Paths requested by the scenarios, mapped to the scenario names. */
+	private static final Map<String, List<String>> SCENARIOS = new LinkedHashMap<>();
+
+	static {
+		SCENARIOS.put("html", Collections.singletonList("/index.html"));
+		SCENARIOS.put("png", Collections.singletonList("/fruits.png"));
+		SCENARIOS.put("osnovni", Collections.singletonList("/scripts/osnovni.smscr"));
+		SCENARIOS.put("fibonacci", Collections.singletonList("/scripts/fibonacci.smscr"));
+		SCENARIOS.put("zbrajanje", Collections.singletonList("/scripts/zbrajanje.smscr?a=4&b=2"));
+		SCENARIOS.put("brojPoziva", Collections.singletonList("/scripts/brojPoziva.smscr"));
+		SCENARIOS.put("hello", Collections.singletonList("/hello?name=benchmark"));
+		SCENARIOS.put("cw", Collections.singletonList("/cw"));
+		List<String> mixed = new ArrayList<>();
+		for (List<String> paths : SCENARIOS.values()) {
+			mixed.addAll(paths);
+		}
+		SCENARIOS.put("mixed", mixed);
+	}
+
+	/**
+	 * Program entry point. Runs the benchmark.
+	 *
+	 * @param args
+	 *            options in the {@code name=value} form
+	 * @throws IOException
+	 *             if the configuration cannot be read or written
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the server
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Map<String, String> options = new LinkedHashMap<>();
+		Properties overrides = new Properties();
+		for (String arg : args) {
+			int index = arg.indexOf('=');
+			if (index == -1) {
+				System.out.println("Expected options in the name=value form, got: " + arg);
+				return;
+			}
+			String name = arg.substring(0, index).trim();
+			String value = arg.substring(index + 1).trim();
+			if (name.startsWith("server.") || name.startsWith("session.")) {
+				overrides.setProperty(name, value);
+			} else {
+				options.put(name, value);
+			}
+		}
+
+		Path root = Paths.get(options.getOrDefault("root", ".")).toAbsolutePath().normalize();
+		int connections = Integer.parseInt(options.getOrDefault("connections", "50"));
+		double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+		boolean keepAlive = Boolean.parseBoolean(options.getOrDefault("keepAlive", "true"));
+		long seconds = Long.parseLong(options.getOrDefault("seconds", "10"));
+		long warmup = Long.parseLong(options.getOrDefault("warmup", "3"));
+		List<String> scenarios = new ArrayList<>(SCENARIOS.keySet());
+		if (options.containsKey("scenarios")) {
+			scenarios = Arrays.asList(options.get("scenarios").split("\\s*,\\s*"));
+			for (String scenario : scenarios) {
+				if (!SCENARIOS.containsKey(scenario)) {
+					System.out.println("Unknown scenario: " + scenario + ", expected one of " + SCENARIOS.keySet());
+					return;
+				}
+			}
+		}
+
+		Properties config = new Properties();
+		try (InputStream is = Files.newInputStream(root.resolve("config/server.properties"))) {
+			config.load(is);
+		}
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		config.setProperty("server.address", "127.0.0.1");
+		config.setProperty("server.port", Integer.toString(port));
+		config.setProperty("server.documentRoot", root.resolve("webroot").toString());
+		config.setProperty("server.mimeConfig", root.resolve("config/mime.properties").toString());
+		config.setProperty("server.workers", root.resolve("config/workers.properties").toString());
+		config.putAll(overrides);
+		Path file = Files.createTempFile("server", ".properties");
+		try (OutputStream os = Files.newOutputStream(file)) {
+			config.store(os, null);
+		}
+
+		SmartHttpServer server;
+		try {
+			server = new SmartHttpServer(file.toString());
+		} finally {
+			Files.delete(file);
+		}
+		server.start();
+		Thread.sleep(500);
+
+		System.out.printf("SmartHttpServer on port %d, %s mode, %s executor, %s worker threads%n", port,
+				config.getProperty("server.ioMode", "blocking").trim(),
+				config.getProperty("server.executor", "fixed").trim(),
+				config.getProperty("server.workerThreads").trim());
+		System.out.printf("%s, %d connections, %s, %d s after %d s warm up%n",
+				rate > 0 ? String.format("open loop at %.0f req/s", rate) : "closed loop", connections,
+				keepAlive ? "keep-alive" : "connection per request", seconds, warmup);
+		System.out.println("scenario       req/s     p50 ms     p90 ms     p99 ms     max ms   errors  starved");
+		try {
+			for (String scenario : scenarios) {
+				LoadClient client = new LoadClient("127.0.0.1", port, SCENARIOS.get(scenario), connections,
+						keepAlive, rate);
+				LoadClient.Result result = client.run(warmup * 1000, seconds * 1000);
+				System.out.printf("%-10s %9.0f %10.2f %10.2f %10.2f %10.2f %8d %8d%n", scenario,
+						result.getThroughput(), result.getLatency(50), result.getLatency(90), result.getLatency(99),
+						result.getLatency(100), result.getErrors(), result.getStarved());
+			}
+		} finally {
+			server.stop();
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,254 @@
+package hr.fer.zemris.java.webserver.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.java.webserver.SessionStore;
+
+/**
+ * Compares the {@link SessionStore} with the previous session handling of the
+ * server, which kept the sessions in a {@code HashMap} guarded by the
+ * server's lock, generated IDs with a shared {@code Random} and periodically
+ * swept the whole map under the same lock. <br>
+ * Several threads repeatedly look up sessions by ID, as every request with a
+ * session cookie does, and every twentieth operation creates a new session.
+ * Meanwhile, another thread runs the expiry every 10 milliseconds. Results
+ * are printed as the total throughput for each number of threads.
+ *
+ * @author Dan
+ */
+public class SessionStoreBenchmark {
+
+	/**
+	 * Operations on sessions needed by the benchmark.
+	 *
+	 * @author Dan
+	 */
+	private interface Sessions {
+
+		/**
+		 * Looks up the session with given ID and extends its validity.
+		 *
+		 * @param sid
+		 *            session ID
+		 * @return parameters of the session; or {@code null}
+		 */
+		Map<String, String> get(String sid);
+
+		/**
+		 * Creates a new session.
+		 *
+		 * @return ID of the new session
+		 */
+		String create();
+
+		/**
+		 * Removes the expired sessions.
+		 */
+		void expire();
+	}
+
+	/**
+	 * Previous session handling of the server.
+	 *
+	 * @author Dan
+	 */
+	private static class SynchronizedSessions implements Sessions {
+
+		/** Sessions mapped to their IDs. */
+		private final Map<String, Entry> sessions = new HashMap<>();
+
+		/** {@code Random} for generating session IDs. */
+		private final Random random = new Random();
+
+		/**
+		 * Entry in the session map.
+		 *
+		 * @author Dan
+		 */
+		private static class Entry {
+
+			/** Time until the entry is valid. */
+			private long validUntil;
+
+			/** Parameters of the session. */
+			private final Map<String, String> map = new ConcurrentHashMap<>();
+		}
+
+		@Override
+		public Map<String, String> get(String sid) {
+			Entry entry;
+			synchronized (this) {
+				entry = sessions.get(sid);
+				if (entry == null) {
+					return null;
+				}
+				if (entry.validUntil < System.currentTimeMillis()) {
+					sessions.remove(sid);
+					return null;
+				}
+			}
+			entry.validUntil = System.currentTimeMillis() + TIMEOUT * 1000;
+			return entry.map;
+		}
+
+		@Override
+		public String create() {
+			synchronized (this) {
+				String sid;
+				do {
+					StringBuilder sb = new StringBuilder();
+					for (int i = 0; i < 20; i++) {
+						sb.append((char) ('A' + random.nextInt(26)));
+					}
+					sid = sb.toString();
+				} while (sessions.containsKey(sid));
+				Entry entry = new Entry();
+				entry.validUntil = System.currentTimeMillis() + TIMEOUT * 1000;
+				sessions.put(sid, entry);
+				return sid;
+			}
+		}
+
+		@Override
+		public synchronized void expire() {
+			sessions.entrySet().removeIf(e -> e.getValue().validUntil < System.currentTimeMillis());
+		}
+	}
+
+	/** Session timeout in seconds. */
+	private static final int TIMEOUT = 600;
+
+	/** Number of sessions created before measuring. */
+	private static final int SESSIONS = 20_000;
+
+	/** Duration of one measurement in milliseconds. */
+	private static final long DURATION = 2000;
+
+	/** Numbers of threads to measure with. */
+	private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+	/** Prevents the JIT compiler from removing the measured code. */
+	private static volatile int sink;
+
+	/**
+	 * Program entry point. Runs the benchmark.
+	 *
+	 * @param args
+	 *            not used
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the threads
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		System.out.println("threads   synchronized HashMap     SessionStore");
+		for (int threads : THREADS) {
+			// the first run of each warms up
+			measure(newSynchronized(), threads);
+			double before = measure(newSynchronized(), threads);
+			measure(newStore(), threads);
+			double after = measure(newStore(), threads);
+			System.out.printf("%7d %16.2f Mops/s %12.2f Mops/s%n", threads, before, after);
+		}
+	}
+
+	/**
+	 * @return previous session handling
+	 */
+	private static Sessions newSynchronized() {
+		return new SynchronizedSessions();
+	}
+
+	/**
+	 * @return session handling with the {@code SessionStore}
+	 */
+	private static Sessions newStore() {
+		SessionStore store = new SessionStore(TIMEOUT);
+		return new Sessions() {
+
+			@Override
+			public Map<String, String> get(String sid) {
+				SessionStore.Session session = store.get(sid);
+				return session == null ? null : session.getParameters();
+			}
+
+			@Override
+			public String create() {
+				return store.create().getId();
+			}
+
+			@Override
+			public void expire() {
+				store.expire();
+			}
+		};
+	}
+
+	/**
+	 * Measures the throughput of given sessions with given number of
+	 * threads.
+	 *
+	 * @param sessions
+	 *            sessions to measure
+	 * @param threads
+	 *            number of threads
+	 * @return millions of operations per second
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the threads
+	 */
+	private static double measure(Sessions sessions, int threads) throws InterruptedException {
+		String[] ids = new String[SESSIONS];
+		for (int i = 0; i < SESSIONS; i++) {
+			ids[i] = sessions.create();
+		}
+
+		LongAdder operations = new LongAdder();
+		long end = System.currentTimeMillis() + DURATION;
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			workers.add(new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long count = 0;
+				int found = 0;
+				while ((count & 1023) != 0 || System.currentTimeMillis() < end) {
+					if (count % 20 == 0) {
+						found += sessions.create().length();
+					} else if (sessions.get(ids[random.nextInt(SESSIONS)]) != null) {
+						found++;
+					}
+					count++;
+				}
+				operations.add(count);
+				sink += found;
+			}));
+		}
+
+		Thread sweeper = new Thread(() -> {
+			while (System.currentTimeMillis() < end) {
+				sessions.expire();
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+
+		long start = System.nanoTime();
+		sweeper.start();
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		sweeper.join();
+		return operations.sum() / elapsed / 1e6;
+	}
+}
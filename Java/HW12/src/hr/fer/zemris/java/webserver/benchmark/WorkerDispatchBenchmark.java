@@ -0,0 +1,121 @@
+package hr.fer.zemris.java.webserver.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.Prototype;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.WebWorkerRegistry;
+
+/**
+ * Compares the ways of getting an {@link IWebWorker} for a request: the
+ * previous lookup of {@code "/ext"} workers, which loaded the class and
+ * called {@code newInstance()} for every request, the
+ * {@link WebWorkerRegistry} with a singleton and with a {@link Prototype}
+ * worker, and the lookup of a configured worker in the workers map. Results
+ * are printed as average time per lookup.
+ *
+ * @author Dan
+ */
+public class WorkerDispatchBenchmark {
+
+	/**
+	 * Worker which gets a new instance for every request.
+	 *
+	 * @author Dan
+	 */
+	@Prototype
+	public static class PrototypeWorker implements IWebWorker {
+
+		@Override
+		public void processRequest(RequestContext context) {
+		}
+	}
+
+	/** Name of the singleton worker. */
+	private static final String WORKER = "HelloWorker";
+
+	/** Package of the workers. */
+	private static final String PACKAGE = "hr.fer.zemris.java.webserver.workers";
+
+	/** Number of lookups in one measured round. */
+	private static final int LOOKUPS = 1_000_000;
+
+	/** Number of warm up rounds. */
+	private static final int WARMUP_ROUNDS = 10;
+
+	/** Number of measured rounds. */
+	private static final int ROUNDS = 10;
+
+	/** Prevents the JIT compiler from removing the measured code. */
+	private static int sink;
+
+	/**
+	 * Program entry point. Runs the benchmark.
+	 *
+	 * @param args
+	 *            not used
+	 */
+	public static void main(String[] args) {
+		WebWorkerRegistry registry = new WebWorkerRegistry(PACKAGE);
+		WebWorkerRegistry benchmarkRegistry = new WebWorkerRegistry("hr.fer.zemris.java.webserver.benchmark");
+		Map<String, Supplier<IWebWorker>> workersMap = new HashMap<>();
+		workersMap.put("/hello", registry.getFactory(PACKAGE + "." + WORKER));
+
+		String[] names = { "newInstance per request", "registry, singleton", "registry, prototype",
+				"configured workers map" };
+		long[] times = new long[names.length];
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			for (int i = 0; i < names.length; i++) {
+				long start = System.nanoTime();
+				for (int j = 0; j < LOOKUPS; j++) {
+					IWebWorker worker;
+					switch (i) {
+					case 0:
+						worker = reflective(PACKAGE + "." + WORKER);
+						break;
+					case 1:
+						worker = registry.getWorker(WORKER);
+						break;
+					case 2:
+						worker = benchmarkRegistry.getWorker("WorkerDispatchBenchmark$PrototypeWorker");
+						break;
+					default:
+						worker = workersMap.get("/hello").get();
+						break;
+					}
+					sink += worker.hashCode();
+				}
+				if (round >= WARMUP_ROUNDS) {
+					times[i] += System.nanoTime() - start;
+				}
+			}
+		}
+
+		for (int i = 0; i < names.length; i++) {
+			System.out.printf("%-25s %8.1f ns/lookup%n", names[i], times[i] / (double) ROUNDS / LOOKUPS);
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Gets a worker as the server did before the registry.
+	 *
+	 * @param fqcn
+	 *            fully qualified class name
+	 * @return new worker
+	 */
+	@SuppressWarnings("deprecation")
+	private static IWebWorker reflective(String fqcn) {
+		try {
+			Class<?> referenceToClass = WorkerDispatchBenchmark.class.getClassLoader().loadClass(fqcn);
+			return (IWebWorker) referenceToClass.newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Given FQCN is invalid: " + fqcn);
+		}
+	}
+}
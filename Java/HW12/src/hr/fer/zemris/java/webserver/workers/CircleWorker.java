@@ -1,45 +1,75 @@
 package hr.fer.zemris.java.webserver.workers;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Random;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.ThreadLocalRandom;
 
 import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.ImageResponse;
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
- * This worker creates an image (200x200) with a filled circle inside.
+ * This worker creates an image (200x200) with a filled circle inside. <br>
+ * The circle has a random color, unless parameter {@code color} gives it as
+ * six hexadecimal digits ({@code RRGGBB}). Images with a given color are
+ * cached.
  *
  * @author Dan
  */
 public class CircleWorker implements IWebWorker {
 
+	/** Size of the image. */
+	private static final int SIZE = 200;
+
+	/** Maximum total size of the cached images. */
+	private static final long MAX_CACHE_SIZE = 1024 * 1024;
+
+	/** Renders and sends the images. */
+	private final ImageResponse images = new ImageResponse(SIZE, SIZE, BufferedImage.TYPE_3BYTE_BGR, "png",
+			MAX_CACHE_SIZE);
+
 	@Override
 	public void processRequest(RequestContext context) {
-		BufferedImage bim = new BufferedImage(200, 200, BufferedImage.TYPE_3BYTE_BGR);
-		Graphics2D g2d = bim.createGraphics();
-		g2d.setColor(Color.WHITE);
-		g2d.fillRect(0, 0, bim.getWidth(), bim.getHeight());
-
-		Random rnd = new Random();
-		g2d.setColor(new Color(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256)));
-		g2d.fillOval(0, 0, bim.getWidth(), bim.getHeight());
-		g2d.dispose();
-
-		context.setMimeType("image/png");
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Color color = parseColor(context.getParameter("color"));
+		String cacheKey = null;
+		if (color == null) {
+			ThreadLocalRandom rnd = ThreadLocalRandom.current();
+			color = new Color(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256));
+		} else {
+			cacheKey = Integer.toHexString(color.getRGB());
+		}
+
+		Color circleColor = color;
 		try {
-			ImageIO.write(bim, "png", bos);
-			context.write(bos.toByteArray());
+			images.send(context, cacheKey, (g2d, width, height) -> {
+				g2d.setColor(Color.WHITE);
+				g2d.fillRect(0, 0, width, height);
+				g2d.setColor(circleColor);
+				g2d.fillOval(0, 0, width, height);
+			});
 		} catch (IOException e) {
 			System.err.println("Discarding request due to error: " + e.getMessage());
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Parses the color given as six hexadecimal digits.
+	 *
+	 * @param value
+	 *            value of the parameter; may be {@code null}
+	 * @return parsed color; or {@code null} if the value is not a valid color
+	 */
+	private static Color parseColor(String value) {
+		if (value == null || value.length() != 6) {
+			return null;
+		}
+		try {
+			return new Color(Integer.parseInt(value, 16));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
 }
@@ -0,0 +1,69 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+@SuppressWarnings("javadoc")
+public class CompiledScriptEngineTest {
+
+	private static String execute(String script, boolean compiled) {
+		DocumentNode document = new SmartScriptParser(script).getDocumentNode();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Map<String, String> parameters = new HashMap<>();
+		parameters.put("a", "4");
+		parameters.put("b", "2.5");
+		RequestContext rc = new RequestContext(bos, parameters, new HashMap<>(), new ArrayList<>());
+		if (compiled) {
+			new CompiledScriptEngine(new SmartScriptCompiler(document).getCompiledScript(), rc).execute();
+		} else {
+			new SmartScriptEngine(document, rc).execute();
+		}
+		return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void assertSameOutput(String script) {
+		assertEquals(execute(script, false), execute(script, true));
+	}
+
+	@Test
+	public void testText() {
+		assertSameOutput("Just text.");
+	}
+
+	@Test
+	public void testArithmetic() {
+		assertSameOutput("{$= 1 2 + 3.5 * \"7\" - 2 / $}|{$= \"a\" 0 @paramGet \"b\" 0 @paramGet + $}");
+	}
+
+	@Test
+	public void testNestedLoops() {
+		assertSameOutput("{$FOR i 1 3 $}[{$FOR j 0 1.5 0.5 $}{$= i j * \" \" $}{$END$}]{$END$}");
+	}
+
+	@Test
+	public void testShadowedLoopVariable() {
+		assertSameOutput("{$FOR i 1 2 $}{$= i $}{$FOR i 5 6 $}{$= i $}{$END$}{$= i $}{$END$}");
+	}
+
+	@Test
+	public void testFunctions() {
+		assertSameOutput("{$= \"text/plain\" @setMimeType 30 @sin \"0.000\" @decfmt 1 2 @swap @dup $}"
+				+ "{$= \"x\" \"k\" @tparamSet \"k\" \"-\" @tparamGet \"k\" @tparamDel \"k\" \"-\" @tparamGet $}");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnsupportedFunction() {
+		new SmartScriptCompiler(new SmartScriptParser("{$= 1 @nope $}").getDocumentNode());
+	}
+}
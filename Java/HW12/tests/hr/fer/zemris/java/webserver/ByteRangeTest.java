@@ -0,0 +1,69 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class ByteRangeTest {
+
+	private static String toString(List<ByteRange> ranges) {
+		StringBuilder sb = new StringBuilder();
+		for (ByteRange range : ranges) {
+			sb.append(range.getFirst()).append('-').append(range.getLast()).append(' ');
+		}
+		return sb.toString().trim();
+	}
+
+	@Test
+	public void testSingleRanges() {
+		assertEquals("0-499", toString(ByteRange.parse("bytes=0-499", 10000)));
+		assertEquals("9500-9999", toString(ByteRange.parse("bytes=-500", 10000)));
+		assertEquals("9500-9999", toString(ByteRange.parse("bytes=9500-", 10000)));
+		assertEquals("9500-9999", toString(ByteRange.parse("bytes=9500-20000", 10000)));
+		assertEquals("0-9999", toString(ByteRange.parse("bytes=-20000", 10000)));
+		assertEquals(500, ByteRange.parse("Bytes = 0-499", 10000).get(0).getLength());
+	}
+
+	@Test
+	public void testSeveralRanges() {
+		assertEquals("0-0 9999-9999 100-199", toString(ByteRange.parse("bytes=0-0, -1, 100-199", 10000)));
+	}
+
+	@Test
+	public void testUnsatisfiableRanges() {
+		assertTrue(ByteRange.parse("bytes=10000-", 10000).isEmpty());
+		assertTrue(ByteRange.parse("bytes=-0", 10000).isEmpty());
+		assertTrue(ByteRange.parse("bytes=-10", 0).isEmpty());
+		assertEquals("0-9", toString(ByteRange.parse("bytes=20000-, 0-9", 10000)));
+	}
+
+	@Test
+	public void testIgnoredHeaders() {
+		assertNull(ByteRange.parse(null, 10000));
+		assertNull(ByteRange.parse("lines=0-5", 10000));
+		assertNull(ByteRange.parse("bytes=5", 10000));
+		assertNull(ByteRange.parse("bytes=10-5", 10000));
+		assertNull(ByteRange.parse("bytes=a-5", 10000));
+		assertNull(ByteRange.parse("bytes=+1-5", 10000));
+		StringBuilder sb = new StringBuilder("bytes=0-0");
+		for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+			sb.append(',').append(i).append('-').append(i);
+		}
+		assertNull(ByteRange.parse(sb.toString(), 10000));
+	}
+
+	@Test
+	public void testContentRange() {
+		assertEquals("bytes 0-499/10000", new ByteRange(0, 499).toContentRange(10000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRange() {
+		new ByteRange(5, 4);
+	}
+}
@@ -0,0 +1,67 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class CompressionTest {
+
+	static byte[] decompress(byte[] data, String encoding) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (InputStream is = encoding.equals(Compression.GZIP) ? new GZIPInputStream(new ByteArrayInputStream(data))
+				: new InflaterInputStream(new ByteArrayInputStream(data))) {
+			byte[] buf = new byte[1024];
+			int n;
+			while ((n = is.read(buf)) > 0) {
+				bos.write(buf, 0, n);
+			}
+		}
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testNegotiate() {
+		assertNull(Compression.negotiate(null));
+		assertNull(Compression.negotiate(""));
+		assertNull(Compression.negotiate("identity, br"));
+		assertEquals("gzip", Compression.negotiate("gzip, deflate, br"));
+		assertEquals("gzip", Compression.negotiate("deflate, GZIP"));
+		assertEquals("deflate", Compression.negotiate("deflate"));
+		assertEquals("deflate", Compression.negotiate("gzip;q=0.5, deflate;q=0.8"));
+		assertEquals("deflate", Compression.negotiate("gzip;q=0, *"));
+		assertEquals("gzip", Compression.negotiate("*;q=0.1"));
+		assertNull(Compression.negotiate("gzip;q=0, deflate; Q=0"));
+		assertNull(Compression.negotiate("*;q=0"));
+	}
+
+	@Test
+	public void testCompress() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("<p>Line ").append(i).append("</p>\n");
+		}
+		byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+		for (String encoding : new String[] { Compression.GZIP, Compression.DEFLATE }) {
+			byte[] compressed = Compression.compress(data, encoding);
+			assertArrayEquals(data, decompress(compressed, encoding));
+			assertEquals(true, compressed.length < data.length / 4);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedEncoding() throws IOException {
+		Compression.compress(new byte[1], "br");
+	}
+}
@@ -0,0 +1,84 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class ImageResponseTest {
+
+	private static ImageResponse.Renderer fill(Color color, AtomicInteger renders) {
+		return (g2d, width, height) -> {
+			renders.incrementAndGet();
+			g2d.setColor(color);
+			g2d.fillRect(0, 0, width, height);
+		};
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedFormat() {
+		new ImageResponse(10, 10, BufferedImage.TYPE_INT_RGB, "nope", 1024);
+	}
+
+	@Test
+	public void testEncode() throws IOException {
+		ImageResponse images = new ImageResponse(20, 10, BufferedImage.TYPE_INT_RGB, "png", 1024 * 1024);
+		assertEquals("image/png", images.getMimeType());
+
+		AtomicInteger renders = new AtomicInteger();
+		BufferedImage red = ImageIO.read(new ByteArrayInputStream(images.encode(null, fill(Color.RED, renders))));
+		BufferedImage blue = ImageIO.read(new ByteArrayInputStream(images.encode(null, fill(Color.BLUE, renders))));
+		assertEquals(2, renders.get());
+		assertEquals(20, red.getWidth());
+		assertEquals(10, red.getHeight());
+		assertEquals(Color.RED.getRGB(), red.getRGB(5, 5));
+		assertEquals(Color.BLUE.getRGB(), blue.getRGB(5, 5));
+		assertEquals(0, images.getCacheSize());
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		ImageResponse images = new ImageResponse(20, 20, BufferedImage.TYPE_INT_RGB, "png", 1024 * 1024);
+		AtomicInteger renders = new AtomicInteger();
+		byte[] first = images.encode("red", fill(Color.RED, renders));
+		byte[] second = images.encode("red", fill(Color.RED, renders));
+		assertSame(first, second);
+		assertEquals(1, renders.get());
+		assertEquals(1, images.getHits());
+		assertEquals(first.length, images.getCacheSize());
+
+		byte[] blue = images.encode("blue", fill(Color.BLUE, renders));
+		assertEquals(2, renders.get());
+		assertEquals(first.length + blue.length, images.getCacheSize());
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		AtomicInteger renders = new AtomicInteger();
+		int size = new ImageResponse(20, 20, BufferedImage.TYPE_INT_RGB, "png", 0).encode(null,
+				fill(Color.RED, renders)).length;
+		ImageResponse images = new ImageResponse(20, 20, BufferedImage.TYPE_INT_RGB, "png", size * 3 / 2);
+
+		byte[] red = images.encode("red", fill(Color.RED, renders));
+		byte[] green = images.encode("green", fill(Color.GREEN, renders));
+		assertTrue(images.getCacheSize() <= size * 3 / 2);
+
+		byte[] greenAgain = images.encode("green", fill(Color.GREEN, renders));
+		assertSame(green, greenAgain);
+		byte[] redAgain = images.encode("red", fill(Color.RED, renders));
+		assertNotSame(red, redAgain);
+		assertArrayEquals(red, redAgain);
+	}
+}
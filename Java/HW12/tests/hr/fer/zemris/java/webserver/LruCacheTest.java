@@ -0,0 +1,66 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class LruCacheTest {
+
+	@Test
+	public void testPutAndGet() {
+		LruCache<String, String> cache = new LruCache<>(100);
+		assertNull(cache.get("a"));
+		assertTrue(cache.put("a", "1", 10));
+		assertTrue(cache.put("b", "2", 20));
+		assertEquals("1", cache.get("a"));
+		assertEquals("2", cache.get("b"));
+		assertEquals(30, cache.getSize());
+		assertEquals(100, cache.getMaxSize());
+	}
+
+	@Test
+	public void testReplaceUpdatesSize() {
+		LruCache<String, String> cache = new LruCache<>(100);
+		cache.put("a", "1", 10);
+		cache.put("a", "2", 40);
+		assertEquals("2", cache.get("a"));
+		assertEquals(40, cache.getSize());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		LruCache<String, String> cache = new LruCache<>(100);
+		cache.put("a", "1", 40);
+		cache.put("b", "2", 40);
+		cache.get("a");
+		cache.put("c", "3", 40);
+		assertNull(cache.get("b"));
+		assertEquals("1", cache.get("a"));
+		assertEquals("3", cache.get("c"));
+		assertEquals(80, cache.getSize());
+
+		// several values are evicted to make room for a large one
+		cache.put("d", "4", 90);
+		assertNull(cache.get("a"));
+		assertNull(cache.get("c"));
+		assertEquals(90, cache.getSize());
+	}
+
+	@Test
+	public void testLargeValueIsNotCached() {
+		LruCache<String, String> cache = new LruCache<>(100);
+		cache.put("a", "1", 10);
+		assertFalse(cache.put("a", "2", 101));
+		assertEquals("1", cache.get("a"));
+		assertEquals(10, cache.getSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeSize() {
+		new LruCache<String, String>(100).put("a", "1", -1);
+	}
+}
@@ -0,0 +1,123 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class MultipartParserTest {
+
+	private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+	/** Returns at most a few bytes per read, like a slow network. */
+	private static InputStream slow(byte[] data) {
+		return new FilterInputStream(new ByteArrayInputStream(data)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 7));
+			}
+		};
+	}
+
+	static byte[] body(byte[] file) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		bos.write(("--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+				+ "Holiday \u0161;\r\n"
+				+ "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"photo\"; filename=\"C:\\\\Photos\\\\a;b.png\"\r\n"
+				+ "Content-Type: image/png\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+		bos.write(file);
+		bos.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+		return bos.toByteArray();
+	}
+
+	static byte[] file(int length) {
+		byte[] file = new byte[length];
+		byte[] boundary = ("\r\n--" + BOUNDARY.substring(0, 20)).getBytes(StandardCharsets.ISO_8859_1);
+		for (int i = 0; i < length; i++) {
+			// parts of the delimiter appear in the file
+			file[i] = i % 5000 < boundary.length ? boundary[i % 5000] : (byte) (i * 31);
+		}
+		return file;
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		int b;
+		while ((b = is.read()) != -1) {
+			bos.write(b);
+		}
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testParts() throws IOException {
+		byte[] file = file(100_000);
+		List<MultipartParser.Part> parts = new MultipartParser(slow(body(file)), BOUNDARY, 1024).parse();
+		assertEquals(2, parts.size());
+
+		MultipartParser.Part title = parts.get(0);
+		assertEquals("title", title.getName());
+		assertNull(title.getFileName());
+		assertEquals("text/plain", title.getContentType());
+		assertTrue(title.isInMemory());
+		assertEquals("Holiday \u0161;", title.getText());
+
+		MultipartParser.Part photo = parts.get(1);
+		assertEquals("photo", photo.getName());
+		assertEquals("a;b.png", photo.getFileName());
+		assertEquals("image/png", photo.getContentType());
+		assertFalse(photo.isInMemory());
+		assertEquals(file.length, photo.getSize());
+		try (InputStream is = photo.getInputStream()) {
+			assertArrayEquals(file, readAll(is));
+		}
+		photo.delete();
+	}
+
+	@Test
+	public void testPreambleAndEpilogue() throws IOException {
+		String body = "preamble\r\n--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=a\r\n\r\n"
+				+ "\r\n--" + BOUNDARY + "--";
+		List<MultipartParser.Part> parts = new MultipartParser(
+				new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)), BOUNDARY, 1024).parse();
+		assertEquals(1, parts.size());
+		assertEquals("a", parts.get(0).getName());
+		assertEquals(0, parts.get(0).getSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncatedBody() throws IOException {
+		byte[] body = body(file(10_000));
+		new MultipartParser(new ByteArrayInputStream(body, 0, body.length - 10), BOUNDARY, 1024).parse();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPartWithoutName() throws IOException {
+		String body = "--" + BOUNDARY + "\r\nContent-Disposition: form-data\r\n\r\nx\r\n--" + BOUNDARY + "--\r\n";
+		new MultipartParser(new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)), BOUNDARY, 1024)
+				.parse();
+	}
+
+	@Test
+	public void testBoundary() {
+		assertEquals(BOUNDARY, MultipartParser.getBoundary("multipart/form-data; boundary=" + BOUNDARY));
+		assertEquals("a b", MultipartParser.getBoundary("Multipart/Form-Data; charset=utf-8; boundary=\"a b\""));
+		assertNull(MultipartParser.getBoundary("multipart/form-data"));
+		assertNull(MultipartParser.getBoundary("multipart/mixed; boundary=x"));
+		assertNull(MultipartParser.getBoundary(null));
+	}
+}
@@ -0,0 +1,118 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class RequestBodyTest {
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static RequestParser parse(String header) throws IOException {
+		RequestParser parser = new RequestParser();
+		parser.readRequest(new ByteArrayInputStream(bytes(header)));
+		return parser;
+	}
+
+	@Test
+	public void testContentLength() throws IOException {
+		RequestBody body = new RequestBody(5, 100, 100);
+		byte[] data = bytes("hel" + "loGET /");
+		assertEquals(3, body.decode(data, 0, 3));
+		assertFalse(body.isComplete());
+		assertEquals(2, body.decode(data, 3, data.length - 3));
+		assertTrue(body.isComplete());
+		assertEquals(5, body.getReceived());
+		assertArrayEquals(bytes("hello"), body.getContent().toByteArray());
+	}
+
+	@Test
+	public void testChunked() throws IOException {
+		String framed = "5;name=value\r\nhello\r\n6\r\n world\r\n0\r\nTrailer: x\r\n\r\nGET /";
+		byte[] data = bytes(framed);
+		RequestBody body = new RequestBody(-1, 100, 100);
+		// the data arrives one byte at a time
+		int consumed = 0;
+		while (!body.isComplete()) {
+			consumed += body.decode(data, consumed, 1);
+		}
+		assertEquals(framed.length() - 5, consumed);
+		assertEquals(0, body.decode(data, consumed, data.length - consumed));
+		assertEquals(consumed, body.getReceived());
+		assertArrayEquals(bytes("hello world"), body.getContent().toByteArray());
+	}
+
+	@Test
+	public void testChunkedWithoutTrailer() throws IOException {
+		byte[] data = bytes("A\r\n0123456789\r\n0\r\n\r\n");
+		RequestBody body = new RequestBody(-1, 100, 100);
+		assertEquals(data.length, body.decode(data, 0, data.length));
+		assertTrue(body.isComplete());
+		assertEquals(10, body.getContent().getLength());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidChunkSize() throws IOException {
+		byte[] data = bytes("x\r\n");
+		new RequestBody(-1, 100, 100).decode(data, 0, data.length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingChunkTerminator() throws IOException {
+		byte[] data = bytes("2\r\nabc\r\n");
+		new RequestBody(-1, 100, 100).decode(data, 0, data.length);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testChunkedTooLarge() throws IOException {
+		byte[] data = bytes("40\r\n");
+		RequestBody body = new RequestBody(-1, 100, 100);
+		body.decode(data, 0, data.length);
+		body.decode(new byte[64], 0, 64);
+		body.decode(bytes("\r\n40\r\n"), 0, 6);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testContentLengthTooLarge() {
+		new RequestBody(101, 100, 100);
+	}
+
+	@Test
+	public void testCreate() throws IOException {
+		assertNull(RequestBody.create(parse("GET / HTTP/1.1\r\n\r\n"), 100, 100));
+		assertNull(RequestBody.create(parse("POST / HTTP/1.1\r\nContent-Length: 0\r\n\r\n"), 100, 100));
+		assertFalse(RequestBody.create(parse("POST / HTTP/1.1\r\nContent-Length: 10\r\n\r\n"), 100, 100).isComplete());
+		RequestBody chunked = RequestBody.create(
+				parse("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"), 100, 100);
+		byte[] data = bytes("0\r\n\r\n");
+		chunked.decode(data, 0, data.length);
+		assertTrue(chunked.isComplete());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateWithInvalidLength() throws IOException {
+		RequestBody.create(parse("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n"), 100, 100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateWithTransferEncodingAndLength() throws IOException {
+		RequestBody.create(parse("POST / HTTP/1.1\r\nContent-Length: 1000\r\nTransfer-Encoding: chunked\r\n\r\n"), 100,
+				100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateWithUnsupportedCoding() throws IOException {
+		RequestBody.create(parse("POST / HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n\r\n"), 100, 100);
+	}
+}
@@ -3,9 +3,11 @@ package hr.fer.zemris.java.webserver;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -66,6 +68,232 @@ public class RequestContextTest {
 		assertArrayEquals(result, bos.toByteArray());
 	}
 	
+	@Test
+	public void testWriteChunked() throws IOException {
+		rc.setKeepAlive(true);
+		rc.write("abc");
+		rc.write("");
+		rc.write("0123456789abcdef");
+		rc.finish();
+		
+		byte[] result = ("HTTP/1.1 200 OK\r\n" + 
+				"Server: DPS\r\n" + 
+				"Content-Type: text/html;charset=UTF-8\r\n" +
+				"Transfer-Encoding: chunked\r\n" +
+				"Connection: keep-alive\r\n" +
+				"\r\n" + 
+				"3\r\nabc\r\n" +
+				"10\r\n0123456789abcdef\r\n" +
+				"0\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		assertArrayEquals(result, bos.toByteArray());
+	}
+	
+	@Test
+	public void testHttp10IsNotChunked() throws IOException {
+		rc.setKeepAlive(true);
+		rc.setRequestVersion("HTTP/1.0");
+		rc.write("abc");
+		rc.finish();
+		
+		byte[] result = ("HTTP/1.1 200 OK\r\n" + 
+				"Server: DPS\r\n" + 
+				"Content-Type: text/html;charset=UTF-8\r\n" +
+				"Connection: close\r\n" +
+				"\r\n" + 
+				"abc").getBytes(StandardCharsets.ISO_8859_1);
+		assertArrayEquals(result, bos.toByteArray());
+		assertEquals(Boolean.FALSE, rc.getKeepAlive());
+	}
+	
+	@Test
+	public void testFinishWithoutData() throws IOException {
+		rc.setKeepAlive(false);
+		rc.finish();
+		rc.finish();
+		
+		byte[] result = ("HTTP/1.1 200 OK\r\n" + 
+				"Server: DPS\r\n" + 
+				"Content-Type: text/html;charset=UTF-8\r\n" +
+				"Content-Length: 0\r\n" +
+				"Connection: close\r\n" +
+				"\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		assertArrayEquals(result, bos.toByteArray());
+	}
+	
+	@Test
+	public void testBytesSent() throws IOException {
+		rc.setKeepAlive(true);
+		rc.write("abc");
+		rc.write(new byte[100]);
+		rc.finish();
+		assertEquals(bos.size(), rc.getBytesSent());
+
+		bos.reset();
+		rc = new RequestContext(bos, new HashMap<>(), new HashMap<>(), new ArrayList<>());
+		rc.setOutputBuffer(ByteBuffer.allocate(16));
+		rc.setKeepAlive(true);
+		rc.write("0123456789abcdef0123456789");
+		rc.write(new byte[100]);
+		rc.finish();
+		assertEquals(bos.size(), rc.getBytesSent());
+	}
+
+	@Test
+	public void testBufferedContentLength() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		rc.setOutputBuffer(buffer);
+		rc.setKeepAlive(true);
+		rc.write("Čevap");
+		rc.write("čići".getBytes(StandardCharsets.UTF_8));
+		assertEquals(0, bos.size());
+		rc.finish();
+		
+		byte[] result = ("HTTP/1.1 200 OK\r\n" + 
+				"Server: DPS\r\n" + 
+				"Content-Type: text/html;charset=UTF-8\r\n" +
+				"Content-Length: 12\r\n" +
+				"Connection: keep-alive\r\n" +
+				"\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(result);
+		expected.write("Čevapčići".getBytes(StandardCharsets.UTF_8));
+		assertArrayEquals(expected.toByteArray(), bos.toByteArray());
+		
+		bos.reset();
+		RequestContext rc2 = new RequestContext(bos, null, null, null);
+		rc2.setOutputBuffer(buffer);
+		rc2.finish();
+		assertArrayEquals(("HTTP/1.1 200 OK\r\n" + 
+				"Server: DPS\r\n" + 
+				"Content-Type: text/html;charset=UTF-8\r\n" +
+				"Content-Length: 0\r\n" +
+				"\r\n").getBytes(StandardCharsets.ISO_8859_1), bos.toByteArray());
+	}
+	
+	@Test
+	public void testBufferedChunked() throws IOException {
+		rc.setOutputBuffer(ByteBuffer.allocate(16));
+		rc.setKeepAlive(true);
+		rc.write("0123456789");
+		rc.write("abcdefghij");
+		rc.write("xxxxxxxxxxxxxxxxxxxx".getBytes(StandardCharsets.ISO_8859_1));
+		rc.write("yz");
+		rc.finish();
+		
+		byte[] result = ("HTTP/1.1 200 OK\r\n" + 
+				"Server: DPS\r\n" + 
+				"Content-Type: text/html;charset=UTF-8\r\n" +
+				"Transfer-Encoding: chunked\r\n" +
+				"Connection: keep-alive\r\n" +
+				"\r\n" + 
+				"10\r\n0123456789abcdef\r\n" +
+				"4\r\nghij\r\n" +
+				"14\r\nxxxxxxxxxxxxxxxxxxxx\r\n" +
+				"2\r\nyz\r\n" +
+				"0\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		assertArrayEquals(result, bos.toByteArray());
+	}
+	
+	private static String header(byte[] response) {
+		String text = new String(response, StandardCharsets.ISO_8859_1);
+		return text.substring(0, text.indexOf("\r\n\r\n") + 4);
+	}
+	
+	private static byte[] body(byte[] response) {
+		int start = header(response).length();
+		byte[] body = new byte[response.length - start];
+		System.arraycopy(response, start, body, 0, body.length);
+		return body;
+	}
+	
+	@Test
+	public void testCompressed() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			sb.append("Čevapčići ").append(i).append('\n');
+		}
+		rc.setOutputBuffer(ByteBuffer.allocate(8192));
+		rc.setKeepAlive(true);
+		rc.setCompression("gzip", type -> type.startsWith("text/"), 100);
+		rc.setContentLength(12345L);
+		rc.write(sb.toString());
+		rc.finish();
+		
+		byte[] response = bos.toByteArray();
+		byte[] body = body(response);
+		assertEquals("HTTP/1.1 200 OK\r\n" + 
+				"Server: DPS\r\n" + 
+				"Content-Type: text/html;charset=UTF-8\r\n" +
+				"Content-Encoding: gzip\r\n" +
+				"Content-Length: " + body.length + "\r\n" +
+				"Connection: keep-alive\r\n" +
+				"Vary: Accept-Encoding\r\n" +
+				"\r\n", header(response));
+		assertArrayEquals(sb.toString().getBytes(StandardCharsets.UTF_8), CompressionTest.decompress(body, "gzip"));
+	}
+	
+	@Test
+	public void testCompressedChunked() throws IOException {
+		byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + i % 7);
+		}
+		rc.setOutputBuffer(ByteBuffer.allocate(1024));
+		rc.setKeepAlive(true);
+		rc.setCompression("deflate", type -> true, 100);
+		rc.write("start");
+		rc.write(data);
+		rc.finish();
+		
+		byte[] response = bos.toByteArray();
+		String header = header(response);
+		assertTrue(header.contains("Content-Encoding: deflate\r\n"));
+		assertTrue(header.contains("Transfer-Encoding: chunked\r\n"));
+		
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		String chunks = new String(body(response), StandardCharsets.ISO_8859_1);
+		int pos = 0;
+		while (true) {
+			int lineEnd = chunks.indexOf("\r\n", pos);
+			int size = Integer.parseInt(chunks.substring(pos, lineEnd), 16);
+			if (size == 0) {
+				break;
+			}
+			compressed.write(chunks.substring(lineEnd + 2, lineEnd + 2 + size).getBytes(StandardCharsets.ISO_8859_1));
+			pos = lineEnd + 4 + size;
+		}
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write("start".getBytes(StandardCharsets.UTF_8));
+		expected.write(data);
+		assertArrayEquals(expected.toByteArray(), CompressionTest.decompress(compressed.toByteArray(), "deflate"));
+	}
+	
+	@Test
+	public void testNotCompressed() throws IOException {
+		rc.setOutputBuffer(ByteBuffer.allocate(1024));
+		rc.setCompression("gzip", type -> type.startsWith("text/"), 10);
+		rc.write("short");
+		rc.finish();
+		assertTrue(header(bos.toByteArray()).contains("Vary: Accept-Encoding\r\n"));
+		assertEquals("short", new String(body(bos.toByteArray()), StandardCharsets.UTF_8));
+		
+		bos.reset();
+		RequestContext rc2 = new RequestContext(bos, null, null, null);
+		rc2.setCompression("gzip", type -> type.startsWith("text/"), 10);
+		rc2.setMimeType("image/png");
+		rc2.write(new byte[100]);
+		rc2.finish();
+		assertEquals(-1, header(bos.toByteArray()).indexOf("Content-Encoding"));
+		assertEquals(100, body(bos.toByteArray()).length);
+	}
+	
+	@Test(expected=RuntimeException.class)
+	public void testChangeAfterBufferedWrite() throws IOException {
+		rc.setOutputBuffer(ByteBuffer.allocate(64));
+		rc.write("a");
+		rc.setMimeType("text/plain");
+	}
+	
 	@Test(expected=RuntimeException.class)
 	public void testChangeAfterHeaderGenerated1() throws IOException{
 		rc.write(new byte[0]);
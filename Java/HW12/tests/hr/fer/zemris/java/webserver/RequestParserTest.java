@@ -0,0 +1,121 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class RequestParserTest {
+
+	private static InputStream stream(String s) {
+		return new ByteArrayInputStream(s.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void testRequestLine() throws IOException {
+		RequestParser parser = new RequestParser();
+		assertTrue(parser.readRequest(stream("GET /index.html?a=1 HTTP/1.1\r\nHost: localhost\r\n\r\n")));
+		assertEquals("GET", parser.getMethod());
+		assertEquals("/index.html?a=1", parser.getPath());
+		assertEquals("HTTP/1.1", parser.getVersion());
+	}
+
+	@Test
+	public void testInvalidRequestLine() throws IOException {
+		RequestParser parser = new RequestParser();
+		assertTrue(parser.readRequest(stream("GET /index.html\r\n\r\n")));
+		assertNull(parser.getMethod());
+		assertNull(parser.getPath());
+		assertNull(parser.getVersion());
+	}
+
+	@Test
+	public void testIncompleteRequest() throws IOException {
+		RequestParser parser = new RequestParser();
+		assertFalse(parser.readRequest(stream("GET / HTTP/1.1\r\nHost: localhost\r\n")));
+	}
+
+	@Test
+	public void testHeaders() throws IOException {
+		RequestParser parser = new RequestParser();
+		parser.readRequest(stream("GET / HTTP/1.1\r\n" +
+				"Host: localhost:5721\r\n" +
+				"connection: keep-alive\r\n" +
+				"Cookie: a=1\r\n" +
+				"Accept: text/html,\r\n" +
+				"\timage/png\r\n" +
+				"Cookie: sid=\"ABC\"\r\n" +
+				"\r\n"));
+
+		assertEquals("localhost:5721", parser.getHeader("Host"));
+		assertEquals("keep-alive", parser.getHeader("Connection"));
+		assertNull(parser.getHeader("Range"));
+
+		Map<String, String> headers = parser.getHeaders();
+		assertEquals(4, headers.size());
+		assertEquals("a=1; sid=\"ABC\"", headers.get("cookie"));
+		assertEquals("text/html, image/png", headers.get("Accept"));
+		assertEquals("keep-alive", parser.getHeader("CONNECTION"));
+	}
+
+	@Test
+	public void testPipelinedRequests() throws IOException {
+		RequestParser parser = new RequestParser(8, 1024);
+		InputStream is = stream("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.0\r\nConnection: close\r\n\r\n");
+
+		assertTrue(parser.readRequest(is));
+		assertEquals("/a", parser.getPath());
+		parser.next();
+
+		assertTrue(parser.readRequest(is));
+		assertEquals("/b", parser.getPath());
+		assertEquals("close", parser.getHeader("Connection"));
+		parser.next();
+
+		assertFalse(parser.hasBufferedData());
+		assertFalse(parser.readRequest(is));
+	}
+
+	@Test
+	public void testBodyAndPipelinedRequest() throws IOException {
+		RequestParser parser = new RequestParser(64, 1024);
+		InputStream is = stream("POST /a HTTP/1.1\r\nContent-Length: 100\r\n\r\n" + String.join("", Collections.nCopies(10, "0123456789"))
+				+ "GET /b HTTP/1.1\r\n\r\n");
+
+		assertTrue(parser.readRequest(is));
+		int capacity = parser.getBuffer().capacity();
+		RequestBody body = RequestBody.create(parser, 1000, 1000);
+		while (!parser.readBody(body)) {
+			// the buffer is reused for the body
+			assertEquals(capacity, parser.getBuffer().capacity());
+			parser.fill(is);
+		}
+		assertEquals(100, body.getContent().getLength());
+		assertEquals("POST", parser.getMethod());
+		assertEquals("100", parser.getHeader("Content-Length"));
+		parser.next();
+
+		assertTrue(parser.readRequest(is));
+		assertEquals("/b", parser.getPath());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testHeaderTooLarge() throws IOException {
+		RequestParser parser = new RequestParser(16, 64);
+		StringBuilder sb = new StringBuilder("GET / HTTP/1.1\r\n");
+		for (int i = 0; i < 10; i++) {
+			sb.append("X-Header: value\r\n");
+		}
+		parser.readRequest(stream(sb.append("\r\n").toString()));
+	}
+}
@@ -0,0 +1,81 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class ResourcePoolTest {
+
+	@Test
+	public void testPerThread() throws InterruptedException {
+		AtomicInteger created = new AtomicInteger();
+		ResourcePool<Object> pool = ResourcePool.perThread(() -> {
+			created.incrementAndGet();
+			return new Object();
+		});
+		Object first = pool.acquire();
+		pool.release(first);
+		assertSame(first, pool.acquire());
+
+		Object[] other = new Object[1];
+		Thread thread = new Thread(() -> other[0] = pool.acquire());
+		thread.start();
+		thread.join();
+		assertNotSame(first, other[0]);
+		assertEquals(2, created.get());
+	}
+
+	@Test
+	public void testSharedReusesReleased() {
+		AtomicInteger created = new AtomicInteger();
+		ResourcePool<Object> pool = ResourcePool.shared(() -> {
+			created.incrementAndGet();
+			return new Object();
+		}, 10);
+		Object a = pool.acquire();
+		Object b = pool.acquire();
+		assertNotSame(a, b);
+		pool.release(a);
+		assertSame(a, pool.acquire());
+		pool.release(b);
+		pool.release(a);
+		// the most recently released first
+		assertSame(a, pool.acquire());
+		assertSame(b, pool.acquire());
+		assertEquals(2, created.get());
+	}
+
+	@Test
+	public void testSharedIsAcrossThreads() throws InterruptedException {
+		ResourcePool<Object> pool = ResourcePool.shared(Object::new, 10);
+		Object[] released = new Object[1];
+		Thread thread = new Thread(() -> {
+			released[0] = pool.acquire();
+			pool.release(released[0]);
+		});
+		thread.start();
+		thread.join();
+		assertSame(released[0], pool.acquire());
+	}
+
+	@Test
+	public void testSharedKeepsAtMostMaxIdle() {
+		ResourcePool<Object> pool = ResourcePool.shared(Object::new, 1);
+		Object a = pool.acquire();
+		Object b = pool.acquire();
+		pool.release(a);
+		pool.release(b);
+		assertSame(a, pool.acquire());
+		assertNotSame(b, pool.acquire());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMaxIdle() {
+		ResourcePool.shared(Object::new, -1);
+	}
+}
@@ -0,0 +1,172 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+@SuppressWarnings("javadoc")
+public class ScriptCacheTest {
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("scripts");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	private Path script(String name, String body, long lastModified) throws IOException {
+		Path path = Files.write(dir.resolve(name), body.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified));
+		return path;
+	}
+
+	@Test
+	public void testHitsAndMisses() throws IOException {
+		ScriptCache cache = new ScriptCache(1000);
+		Path path = script("a.smscr", "text {$= 1 $}", 1_000_000);
+		DocumentNode document = cache.get(path);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(13, cache.getSize());
+
+		assertSame(document, cache.get(path));
+		assertSame(document, cache.get(path));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testModifiedScriptIsParsedAgain() throws IOException {
+		ScriptCache cache = new ScriptCache(1000);
+		Path path = script("a.smscr", "old", 1_000_000);
+		DocumentNode old = cache.get(path);
+
+		script("a.smscr", "new text", 2_000_000);
+		DocumentNode document = cache.get(path);
+		assertNotSame(old, document);
+		assertEquals(2, cache.getMisses());
+		assertEquals(8, cache.getSize());
+		assertSame(document, cache.get(path));
+	}
+
+	@Test
+	public void testCompiledScriptIsKept() throws IOException {
+		ScriptCache cache = new ScriptCache(1000);
+		Path path = script("a.smscr", "{$= 1 2 + $}", 1_000_000);
+		CompiledScript compiled = cache.getCompiled(path);
+		assertSame(compiled, cache.getCompiled(path));
+
+		script("a.smscr", "{$= 1 3 + $}", 2_000_000);
+		assertNotSame(compiled, cache.getCompiled(path));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws IOException, InterruptedException {
+		ScriptCache cache = new ScriptCache(25);
+		Path a = script("a.smscr", "aaaaaaaaaa", 1_000_000);
+		Path b = script("b.smscr", "bbbbbbbbbb", 1_000_000);
+		Path c = script("c.smscr", "cccccccccc", 1_000_000);
+		DocumentNode documentA = cache.get(a);
+		cache.get(b);
+		Thread.sleep(1);
+		assertSame(documentA, cache.get(a));
+		cache.get(c);
+		assertTrue(cache.getSize() <= 25);
+		assertEquals(20, cache.getSize());
+
+		// b was used least recently
+		long misses = cache.getMisses();
+		assertSame(documentA, cache.get(a));
+		cache.get(b);
+		assertEquals(misses + 1, cache.getMisses());
+	}
+
+	@Test
+	public void testLargeScriptIsNotCached() throws IOException {
+		ScriptCache cache = new ScriptCache(5);
+		Path path = script("a.smscr", "too long", 1_000_000);
+		assertNotSame(cache.get(path), cache.get(path));
+		assertEquals(0, cache.getSize());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test(expected = SmartScriptParserException.class)
+	public void testInvalidScript() throws IOException {
+		new ScriptCache(1000).get(script("a.smscr", "{$ FOR $}", 1_000_000));
+	}
+
+	@Test
+	public void testConcurrentLookups() throws Exception {
+		ScriptCache cache = new ScriptCache(1000);
+		List<Path> paths = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			paths.add(script(i + ".smscr", "script " + i + " {$= " + i + " $}", 1_000_000));
+		}
+
+		int threads = 8;
+		int lookups = 1000;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<DocumentNode[]>> results = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			results.add(pool.submit((Callable<DocumentNode[]>) () -> {
+				start.await();
+				DocumentNode[] last = new DocumentNode[paths.size()];
+				for (int i = 0; i < lookups; i++) {
+					int index = i % paths.size();
+					last[index] = cache.get(paths.get(index));
+				}
+				return last;
+			}));
+		}
+		start.countDown();
+		for (Future<DocumentNode[]> result : results) {
+			for (DocumentNode document : result.get()) {
+				assertNotNull(document);
+			}
+		}
+		pool.shutdown();
+
+		// a script is parsed at most once by every thread which missed it
+		assertEquals(threads * lookups, cache.getHits() + cache.getMisses());
+		assertTrue(cache.getMisses() >= paths.size());
+		assertTrue(cache.getMisses() <= threads * paths.size());
+		long size = 0;
+		for (Path path : paths) {
+			size += Files.size(path);
+		}
+		assertEquals(size, cache.getSize());
+	}
+}
@@ -0,0 +1,167 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class SegmentedResponseTest {
+
+	/** Channel which accepts at most a few bytes per write, like a full socket. */
+	private static class SlowChannel implements WritableByteChannel {
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		private final int limit;
+		private boolean blocked;
+
+		SlowChannel(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			if (blocked) {
+				blocked = false;
+				return 0;
+			}
+			blocked = true;
+			int n = Math.min(limit, src.remaining());
+			for (int i = 0; i < n; i++) {
+				data.write(src.get());
+			}
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static Path tempFile(byte[] content) throws IOException {
+		Path file = Files.createTempFile("segmented", ".bin");
+		Files.write(file, content);
+		file.toFile().deleteOnExit();
+		return file;
+	}
+
+	@Test
+	public void testBytesAndFileRegions() throws IOException {
+		byte[] content = new byte[10_000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i * 31);
+		}
+		Path file = tempFile(content);
+		FileChannel fc = FileChannel.open(file, StandardOpenOption.READ);
+
+		SegmentedResponse response = new SegmentedResponse();
+		response.write("head".getBytes(StandardCharsets.ISO_8859_1));
+		response.write(fc, 100, 5000);
+		response.write('|');
+		response.write("tail".getBytes(StandardCharsets.ISO_8859_1));
+		assertEquals(5009, response.getLength());
+
+		SlowChannel channel = new SlowChannel(1000);
+		int calls = 0;
+		while (!response.writeTo(channel)) {
+			calls++;
+		}
+		assertTrue(calls > 1);
+		assertFalse(fc.isOpen());
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write("head".getBytes(StandardCharsets.ISO_8859_1));
+		expected.write(content, 100, 5000);
+		expected.write("|tail".getBytes(StandardCharsets.ISO_8859_1));
+		assertArrayEquals(expected.toByteArray(), channel.data.toByteArray());
+	}
+
+	@Test
+	public void testRegionsOfSameFile() throws IOException {
+		byte[] content = new byte[10_000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i * 7);
+		}
+		FileChannel fc = FileChannel.open(tempFile(content), StandardOpenOption.READ);
+
+		SegmentedResponse response = new SegmentedResponse();
+		response.write(fc, 5000, 3000);
+		response.write('|');
+		response.write(fc, 0, 2000);
+		SlowChannel channel = new SlowChannel(1000);
+		while (!response.writeTo(channel)) {
+			// the file is still needed for the second region
+			if (channel.data.size() < 3000) {
+				assertTrue(fc.isOpen());
+			}
+		}
+		assertFalse(fc.isOpen());
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(content, 5000, 3000);
+		expected.write('|');
+		expected.write(content, 0, 2000);
+		assertArrayEquals(expected.toByteArray(), channel.data.toByteArray());
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedFile() throws IOException {
+		Path file = tempFile(new byte[100]);
+		SegmentedResponse response = new SegmentedResponse();
+		response.write(FileChannel.open(file, StandardOpenOption.READ), 0, 200);
+		SlowChannel channel = new SlowChannel(1000);
+		while (!response.writeTo(channel)) {
+		}
+	}
+
+	@Test
+	public void testCloseReleasesFiles() throws IOException {
+		FileChannel fc = FileChannel.open(tempFile(new byte[100]), StandardOpenOption.READ);
+		SegmentedResponse response = new SegmentedResponse();
+		response.write(fc, 0, 100);
+		response.close();
+		assertFalse(fc.isOpen());
+	}
+
+	@Test
+	public void testRequestContextRecordsFile() throws IOException {
+		byte[] content = new byte[3000];
+		FileChannel fc = FileChannel.open(tempFile(content), StandardOpenOption.READ);
+		SegmentedResponse response = new SegmentedResponse();
+		RequestContext rc = new RequestContext(response, new HashMap<>(), new HashMap<>(), new ArrayList<>());
+		rc.setOutputBuffer(ByteBuffer.allocate(1024));
+		rc.setMimeType("application/octet-stream");
+		rc.setContentLength(3000L);
+		rc.write(fc, 0, 3000);
+		rc.finish();
+
+		// the file is not read before the response is written
+		assertTrue(fc.isOpen());
+		assertEquals(rc.getBytesSent(), response.getLength());
+		SlowChannel channel = new SlowChannel(Integer.MAX_VALUE);
+		while (!response.writeTo(channel)) {
+		}
+		String text = new String(channel.data.toByteArray(), StandardCharsets.ISO_8859_1);
+		assertTrue(text.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(text.contains("Content-Length: 3000\r\n"));
+		assertEquals(response.getLength(), channel.data.size());
+	}
+}
@@ -0,0 +1,101 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.ServerMetrics.Histogram;
+import hr.fer.zemris.java.webserver.ServerMetrics.Route;
+
+@SuppressWarnings("javadoc")
+public class ServerMetricsTest {
+
+	@Test
+	public void testHistogramBuckets() {
+		long previous = 0;
+		for (int i = 0; i < Histogram.BUCKETS; i++) {
+			long upper = Histogram.upperBound(i);
+			assertTrue(upper > previous);
+			assertEquals(i, Histogram.index(previous));
+			assertEquals(i, Histogram.index(upper - 1));
+			// relative width of a bucket is at most 12.5%
+			assertTrue(previous < 16 || (upper - previous) * 8 <= previous);
+			previous = upper;
+		}
+		assertEquals(Histogram.BUCKETS - 1, Histogram.index(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		histogram.record(-5);
+
+		assertEquals(1001, histogram.getCount());
+		assertEquals(500500, histogram.getSum());
+		long median = histogram.getPercentile(50);
+		assertTrue(median >= 500 && median <= 500 * 1.125 + 1);
+		long p99 = histogram.getPercentile(99);
+		assertTrue(p99 >= 990 && p99 <= 990 * 1.125 + 1);
+		assertEquals(256, histogram.countBelow(256));
+		assertEquals(1001, histogram.countBelow(1024));
+	}
+
+	@Test
+	public void testRecord() {
+		ServerMetrics metrics = new ServerMetrics();
+		metrics.record(Route.STATIC, 2_000_000, 100, 1000);
+		metrics.record(Route.STATIC, 3_000_000, 100, 1000);
+		metrics.record(Route.SCRIPT, 100_000, 200, 500);
+		assertEquals(2, metrics.getRequests(Route.STATIC));
+		assertEquals(1, metrics.getRequests(Route.SCRIPT));
+		assertEquals(0, metrics.getRequests(Route.EXT));
+		long latency = metrics.getLatency(Route.STATIC, 100);
+		assertTrue(latency >= 3000 && latency <= 3000 * 1.125);
+	}
+
+	@Test
+	public void testFormat() {
+		ServerMetrics metrics = new ServerMetrics();
+		metrics.record(Route.SCRIPT, 100_000, 200, 500);
+		metrics.connectionOpened();
+		metrics.connectionOpened();
+		metrics.connectionClosed();
+		metrics.addGauge("sessions", "Number of sessions.", () -> 7);
+
+		String text = metrics.format();
+		assertTrue(text.contains("# TYPE smarthttp_requests_total counter\n"));
+		assertTrue(text.contains("smarthttp_requests_total{route=\"script\"} 1\n"));
+		assertTrue(text.contains("smarthttp_requests_total{route=\"static\"} 0\n"));
+		assertTrue(text.contains("smarthttp_request_duration_seconds_bucket{route=\"script\",le=\"0.000064\"} 0\n"));
+		assertTrue(text.contains("smarthttp_request_duration_seconds_bucket{route=\"script\",le=\"0.000128\"} 1\n"));
+		assertTrue(text.contains("smarthttp_request_duration_seconds_bucket{route=\"script\",le=\"+Inf\"} 1\n"));
+		assertTrue(text.contains("smarthttp_request_duration_seconds_sum{route=\"script\"} 0.0001\n"));
+		assertTrue(text.contains("smarthttp_request_duration_seconds_count{route=\"script\"} 1\n"));
+		assertTrue(text.contains("smarthttp_received_bytes_total 200\n"));
+		assertTrue(text.contains("smarthttp_sent_bytes_total 500\n"));
+		assertTrue(text.contains("smarthttp_open_connections 1\n"));
+		assertTrue(text.contains("# TYPE smarthttp_sessions gauge\nsmarthttp_sessions 7\n"));
+	}
+
+	@Test
+	public void testProcessRequest() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		RequestContext rc = new RequestContext(bos, new HashMap<>(), new HashMap<>(), new ArrayList<>());
+		new ServerMetrics().processRequest(rc);
+		rc.finish();
+		String response = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(response.contains("Content-Type: text/plain; version=0.0.4"));
+		assertTrue(response.contains("smarthttp_requests_total{route=\"ext\"} 0"));
+	}
+}
@@ -0,0 +1,145 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.SessionStore.Session;
+
+@SuppressWarnings("javadoc")
+public class SessionStoreTest {
+
+	private static final long START = 1_000_000_000L;
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTimeout() {
+		new SessionStore(0);
+	}
+
+	@Test
+	public void testCreate() {
+		SessionStore store = new SessionStore(60);
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			Session session = store.create(START);
+			assertEquals(20, session.getId().length());
+			assertTrue(session.getId().matches("[A-Z]+"));
+			assertEquals(START + 60_000, session.getValidUntil());
+			ids.add(session.getId());
+		}
+		assertEquals(1000, ids.size());
+		assertEquals(1000, store.size());
+	}
+
+	@Test
+	public void testGet() {
+		SessionStore store = new SessionStore(60);
+		Session session = store.create(START);
+		session.getParameters().put("a", "1");
+
+		assertNull(store.get("NOSUCHSESSION", START));
+		Session found = store.get(session.getId(), START + 30_000);
+		assertSame(session, found);
+		assertEquals("1", found.getParameters().get("a"));
+		assertEquals(START + 90_000, session.getValidUntil());
+	}
+
+	@Test
+	public void testGetDoesNotShortenValidity() {
+		SessionStore store = new SessionStore(60);
+		Session session = store.create(START);
+		store.get(session.getId(), START + 30_000);
+		store.get(session.getId(), START + 10_000);
+		assertEquals(START + 90_000, session.getValidUntil());
+	}
+
+	@Test
+	public void testGetExpired() {
+		SessionStore store = new SessionStore(60);
+		Session session = store.create(START);
+		assertNull(store.get(session.getId(), START + 60_001));
+		assertEquals(0, store.size());
+		// once expired, the session cannot be revived
+		assertNull(store.get(session.getId(), START));
+	}
+
+	@Test
+	public void testExpire() {
+		SessionStore store = new SessionStore(60);
+		long tick = store.getTickMillis();
+		store.expire(START);
+
+		Session used = store.create(START);
+		Session unused = store.create(START);
+		store.expire(START + 30_000);
+		assertEquals(2, store.size());
+
+		store.get(used.getId(), START + 50_000);
+		store.expire(START + 60_000 + 2 * tick);
+		assertEquals(1, store.size());
+		assertSame(used, store.get(used.getId(), START + 60_000 + 2 * tick));
+		assertNull(store.get(unused.getId(), START + 60_000 + 2 * tick));
+
+		store.expire(START + 200_000);
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void testExpireEachTick() {
+		SessionStore store = new SessionStore(60);
+		long tick = store.getTickMillis();
+		List<Session> sessions = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			sessions.add(store.create(START + i * 1000));
+		}
+
+		for (long now = START; now <= START + 200_000; now += tick / 3) {
+			store.expire(now);
+			int valid = 0;
+			int notLate = 0;
+			for (Session session : sessions) {
+				if (session.getValidUntil() >= now) {
+					valid++;
+				}
+				if (session.getValidUntil() + 2 * tick >= now) {
+					notLate++;
+				}
+			}
+			// valid sessions are kept and expired ones removed within two ticks
+			assertTrue(store.size() >= valid);
+			assertTrue(store.size() <= notLate);
+		}
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		SessionStore store = new SessionStore(60);
+		Session shared = store.create(START);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					store.get(shared.getId(), START + i);
+					store.create(START + i);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40_001, store.size());
+		assertEquals(START + 9_999 + 60_000, shared.getValidUntil());
+	}
+}
@@ -0,0 +1,596 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class SmartHttpServerTest {
+
+	static class Response {
+		int status;
+		Map<String, String> headers = new HashMap<>();
+		byte[] body;
+
+		String header(String name) {
+			return headers.get(name.toLowerCase());
+		}
+
+		String text() {
+			return new String(body, StandardCharsets.UTF_8);
+		}
+	}
+
+	public static class UploadWorker implements IWebWorker {
+		@Override
+		public void processRequest(RequestContext context) {
+			try {
+				process(context);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		private void process(RequestContext context) throws IOException {
+			StringBuilder sb = new StringBuilder("title=" + context.getParameter("title"));
+			for (String name : new TreeSet<>(context.getPartNames())) {
+				MultipartParser.Part part = context.getPart(name);
+				CRC32 crc = new CRC32();
+				try (InputStream is = part.getInputStream()) {
+					byte[] buffer = new byte[4096];
+					int n;
+					while ((n = is.read(buffer)) > 0) {
+						crc.update(buffer, 0, n);
+					}
+				}
+				sb.append('\n').append(name).append(' ').append(part.getFileName()).append(' ').append(part.getSize())
+						.append(' ').append(crc.getValue());
+			}
+			context.write(sb.toString());
+		}
+	}
+
+	private Path dir;
+	private SmartHttpServer server;
+	private int port;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("server");
+		Path root = Files.createDirectories(dir.resolve("webroot"));
+		Files.write(root.resolve("index.html"), "<html>hello</html>".getBytes(StandardCharsets.UTF_8));
+		Files.write(dir.resolve("mime.properties"), "html = text/html\ntxt = text/plain\nbin = application/octet-stream\n"
+				.getBytes(StandardCharsets.ISO_8859_1));
+		Files.write(dir.resolve("workers.properties"),
+				("/hello = hr.fer.zemris.java.webserver.workers.HelloWorker\n"
+						+ "/echo = hr.fer.zemris.java.webserver.workers.EchoParams\n"
+						+ "/upload = hr.fer.zemris.java.webserver.SmartHttpServerTest$UploadWorker\n")
+								.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (server != null) {
+			server.stop();
+		}
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	private Path root() {
+		return dir.resolve("webroot");
+	}
+
+	private void start(String... properties) throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		Properties p = new Properties();
+		p.setProperty("server.address", "127.0.0.1");
+		p.setProperty("server.port", Integer.toString(port));
+		p.setProperty("server.workerThreads", "4");
+		p.setProperty("server.documentRoot", root().toString());
+		p.setProperty("server.mimeConfig", dir.resolve("mime.properties").toString());
+		p.setProperty("server.workers", dir.resolve("workers.properties").toString());
+		p.setProperty("session.timeout", "600");
+		for (int i = 0; i < properties.length; i += 2) {
+			p.setProperty(properties[i], properties[i + 1]);
+		}
+		Path config = dir.resolve("server.properties");
+		try (OutputStream os = Files.newOutputStream(config)) {
+			p.store(os, null);
+		}
+
+		server = new SmartHttpServer(config.toString());
+		server.start();
+		for (int i = 0; i < 100; i++) {
+			try (Socket s = new Socket("127.0.0.1", port)) {
+				return;
+			} catch (ConnectException e) {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException ignorable) {
+				}
+			}
+		}
+		throw new IOException("Server didn't start.");
+	}
+
+	private Socket connect() throws IOException {
+		Socket socket = new Socket("127.0.0.1", port);
+		socket.setSoTimeout(10_000);
+		return socket;
+	}
+
+	private static void send(Socket socket, String method, String path, String... headers) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(method).append(' ').append(path).append(" HTTP/1.1\r\nHost: localhost\r\n");
+		for (String header : headers) {
+			sb.append(header).append("\r\n");
+		}
+		sb.append("\r\n");
+		socket.getOutputStream().write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private Response get(String path, String... headers) throws IOException {
+		try (Socket socket = connect()) {
+			send(socket, "GET", path, headers);
+			return read(socket.getInputStream(), false);
+		}
+	}
+
+	static Response read(InputStream is, boolean head) throws IOException {
+		Response response = new Response();
+		String statusLine = readLine(is);
+		response.status = Integer.parseInt(statusLine.split(" ")[1]);
+		String line;
+		while (!(line = readLine(is)).isEmpty()) {
+			int index = line.indexOf(':');
+			response.headers.put(line.substring(0, index).trim().toLowerCase(), line.substring(index + 1).trim());
+		}
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		String length = response.header("Content-Length");
+		if (head || response.status == 304 || response.status == 204) {
+			// no body
+		} else if ("chunked".equals(response.header("Transfer-Encoding"))) {
+			int size;
+			while ((size = Integer.parseInt(readLine(is).split(";")[0], 16)) > 0) {
+				body.write(readFully(is, size));
+				readLine(is);
+			}
+			readLine(is);
+		} else if (length != null) {
+			body.write(readFully(is, Integer.parseInt(length)));
+		} else {
+			int b;
+			while ((b = is.read()) != -1) {
+				body.write(b);
+			}
+		}
+		response.body = body.toByteArray();
+		return response;
+	}
+
+	private static byte[] readFully(InputStream is, int length) throws IOException {
+		byte[] data = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			int n = is.read(data, offset, length - offset);
+			if (n < 0) {
+				throw new IOException("Unexpected end of stream.");
+			}
+			offset += n;
+		}
+		return data;
+	}
+
+	private static String readLine(InputStream is) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int b;
+		while ((b = is.read()) != '\n') {
+			if (b == -1) {
+				throw new IOException("Unexpected end of stream.");
+			}
+			if (b != '\r') {
+				sb.append((char) b);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testGet() throws IOException {
+		start();
+		Response response = get("/index.html");
+		assertEquals(200, response.status);
+		assertEquals("<html>hello</html>", response.text());
+		assertEquals(404, get("/missing.html").status);
+	}
+
+	@Test
+	public void testLargeFileInSelectorMode() throws IOException {
+		byte[] content = new byte[3 * 1024 * 1024 + 17];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 251);
+		}
+		Files.write(root().resolve("large.bin"), content);
+		start("server.ioMode", "selector", "server.fileCache.maxFileSize", "1024");
+
+		try (Socket socket = connect()) {
+			for (int i = 0; i < 2; i++) {
+				send(socket, "GET", "/large.bin");
+				Response response = read(socket.getInputStream(), false);
+				assertEquals(200, response.status);
+				assertEquals(Integer.toString(content.length), response.header("Content-Length"));
+				assertArrayEquals(content, response.body);
+			}
+		}
+	}
+
+	private void checkConditionalRequests() throws IOException {
+		Path file = root().resolve("index.html");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(1_500_000_000_000L));
+		Response response = get("/index.html");
+		String etag = response.header("ETag");
+		String lastModified = response.header("Last-Modified");
+		assertEquals("Fri, 14 Jul 2017 02:40:00 GMT", lastModified);
+
+		try (Socket socket = connect()) {
+			send(socket, "GET", "/index.html", "If-None-Match: \"x\", " + etag);
+			Response notModified = read(socket.getInputStream(), false);
+			assertEquals(304, notModified.status);
+			assertEquals(etag, notModified.header("ETag"));
+			assertNull(notModified.header("Transfer-Encoding"));
+			assertNull(notModified.header("Content-Length"));
+
+			// nothing follows the 304 header, so the connection can be reused
+			send(socket, "GET", "/index.html", "If-Modified-Since: " + lastModified);
+			assertEquals(304, read(socket.getInputStream(), false).status);
+			send(socket, "GET", "/index.html", "If-None-Match: \"x\"", "If-Modified-Since: " + lastModified);
+			Response modified = read(socket.getInputStream(), false);
+			assertEquals(200, modified.status);
+			assertEquals("<html>hello</html>", modified.text());
+		}
+
+		assertEquals(200, get("/index.html", "If-Modified-Since: Fri, 14 Jul 2017 02:39:59 GMT").status);
+		assertEquals(200, get("/index.html", "If-Modified-Since: yesterday").status);
+
+		Files.setLastModifiedTime(file, FileTime.fromMillis(1_600_000_000_000L));
+		response = get("/index.html", "If-None-Match: " + etag);
+		assertEquals(200, response.status);
+		assertNotEquals(etag, response.header("ETag"));
+	}
+
+	@Test
+	public void testConditionalRequests() throws IOException {
+		start();
+		checkConditionalRequests();
+	}
+
+	@Test
+	public void testConditionalRequestsInSelectorMode() throws IOException {
+		start("server.ioMode", "selector");
+		checkConditionalRequests();
+	}
+
+	@Test
+	public void testCompressedVariantHasOwnEntityTag() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("line ").append(i).append('\n');
+		}
+		Files.write(root().resolve("lines.txt"), sb.toString().getBytes(StandardCharsets.UTF_8));
+		start();
+
+		Response plain = get("/lines.txt");
+		Response gzip = get("/lines.txt", "Accept-Encoding: gzip");
+		assertEquals("gzip", gzip.header("Content-Encoding"));
+		assertEquals("Accept-Encoding", gzip.header("Vary"));
+		assertArrayEquals(plain.body, CompressionTest.decompress(gzip.body, Compression.GZIP));
+		assertNotEquals(plain.header("ETag"), gzip.header("ETag"));
+		assertEquals(304, get("/lines.txt", "Accept-Encoding: gzip", "If-None-Match: " + gzip.header("ETag")).status);
+		assertEquals(200, get("/lines.txt", "If-None-Match: " + gzip.header("ETag")).status);
+	}
+
+	private byte[] writeRangeFile() throws IOException {
+		byte[] content = new byte[3 * 1024 * 1024 + 17];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 251);
+		}
+		Path file = root().resolve("large.bin");
+		Files.write(file, content);
+		Files.setLastModifiedTime(file, FileTime.fromMillis(1_500_000_000_000L));
+		return content;
+	}
+
+	private void checkRanges(byte[] content) throws IOException {
+		String length = Integer.toString(content.length);
+		try (Socket socket = connect()) {
+			send(socket, "GET", "/large.bin", "Range: bytes=100-199");
+			Response single = read(socket.getInputStream(), false);
+			assertEquals(206, single.status);
+			assertEquals("bytes 100-199/" + length, single.header("Content-Range"));
+			assertEquals("bytes", single.header("Accept-Ranges"));
+			assertArrayEquals(Arrays.copyOfRange(content, 100, 200), single.body);
+
+			// the connection stays usable after a partial response
+			send(socket, "GET", "/large.bin", "Range: bytes=-1000");
+			Response suffix = read(socket.getInputStream(), false);
+			assertEquals(206, suffix.status);
+			assertEquals("bytes " + (content.length - 1000) + "-" + (content.length - 1) + "/" + length,
+					suffix.header("Content-Range"));
+			assertArrayEquals(Arrays.copyOfRange(content, content.length - 1000, content.length), suffix.body);
+
+			send(socket, "GET", "/large.bin", "Range: bytes=0-1048575, 2097152-");
+			Response multipart = read(socket.getInputStream(), false);
+			assertEquals(206, multipart.status);
+			String type = multipart.header("Content-Type");
+			assertTrue(type, type.startsWith("multipart/byteranges; boundary="));
+			String boundary = type.substring(type.indexOf('=') + 1);
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			expected.write(("\r\n--" + boundary + "\r\nContent-Type: application/octet-stream\r\nContent-Range: bytes 0-1048575/"
+					+ length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			expected.write(content, 0, 1048576);
+			expected.write(("\r\n--" + boundary + "\r\nContent-Type: application/octet-stream\r\nContent-Range: bytes 2097152-"
+					+ (content.length - 1) + "/" + length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			expected.write(content, 2097152, content.length - 2097152);
+			expected.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			assertArrayEquals(expected.toByteArray(), multipart.body);
+
+			send(socket, "GET", "/large.bin", "Range: bytes=" + length + "-");
+			Response unsatisfiable = read(socket.getInputStream(), false);
+			assertEquals(416, unsatisfiable.status);
+			assertEquals("bytes */" + length, unsatisfiable.header("Content-Range"));
+			assertEquals(0, unsatisfiable.body.length);
+
+			send(socket, "GET", "/large.bin");
+			Response full = read(socket.getInputStream(), false);
+			assertEquals(200, full.status);
+			assertArrayEquals(content, full.body);
+		}
+	}
+
+	@Test
+	public void testRanges() throws IOException {
+		byte[] content = writeRangeFile();
+		start("server.fileCache.maxFileSize", "1024");
+		checkRanges(content);
+	}
+
+	@Test
+	public void testRangesInSelectorMode() throws IOException {
+		byte[] content = writeRangeFile();
+		start("server.ioMode", "selector", "server.fileCache.maxFileSize", "1024");
+		checkRanges(content);
+	}
+
+	@Test
+	public void testIfRange() throws IOException {
+		start();
+		Response full = get("/index.html");
+		String etag = full.header("ETag");
+
+		Response partial = get("/index.html", "Range: bytes=6-10", "If-Range: " + etag);
+		assertEquals(206, partial.status);
+		assertEquals("hello", partial.text());
+		partial = get("/index.html", "Range: bytes=6-10", "If-Range: " + full.header("Last-Modified"));
+		assertEquals(206, partial.status);
+
+		// the client has a part of another version, so it gets the whole file
+		assertEquals(200, get("/index.html", "Range: bytes=6-10", "If-Range: \"x\"").status);
+		assertEquals(200, get("/index.html", "Range: bytes=6-10", "If-Range: W/" + etag).status);
+		assertEquals(200, get("/index.html", "Range: bytes=6-10", "If-Range: Fri, 14 Jul 2017 02:40:00 GMT").status);
+		// invalid ranges are ignored
+		assertEquals(200, get("/index.html", "Range: bytes=10-6").status);
+		assertEquals(200, get("/index.html", "Range: lines=1-2").status);
+	}
+
+	private static void sendBody(Socket socket, String path, byte[] body, String... headers) throws IOException {
+		String[] all = Arrays.copyOf(headers, headers.length + 1);
+		all[headers.length] = "Content-Length: " + body.length;
+		send(socket, "POST", path, all);
+		socket.getOutputStream().write(body);
+	}
+
+	private void checkPost() throws IOException {
+		try (Socket socket = connect()) {
+			sendBody(socket, "/echo", "name=J%C3%B6rg+X&empty=".getBytes(StandardCharsets.ISO_8859_1),
+					"Content-Type: application/x-www-form-urlencoded");
+			Response form = read(socket.getInputStream(), false);
+			assertEquals(200, form.status);
+			assertTrue(form.text(), form.text().contains("<td>name</td><td>J\u00f6rg X</td>"));
+			assertTrue(form.text(), form.text().contains("<td>empty</td><td></td>"));
+
+			// the body is consumed, so the connection can be reused
+			send(socket, "GET", "/index.html");
+			assertEquals("<html>hello</html>", read(socket.getInputStream(), false).text());
+
+			sendBody(socket, "/index.html", new byte[10]);
+			assertEquals(405, read(socket.getInputStream(), false).status);
+		}
+
+		byte[] file = MultipartParserTest.file(200_000);
+		CRC32 crc = new CRC32();
+		crc.update(file);
+		try (Socket socket = connect()) {
+			send(socket, "POST", "/upload", "Transfer-Encoding: chunked",
+					"Content-Type: multipart/form-data; boundary=----WebKitFormBoundary7MA4YWxkTrZu0gW");
+			byte[] body = MultipartParserTest.body(file);
+			OutputStream os = socket.getOutputStream();
+			for (int i = 0; i < body.length; i += 5000) {
+				int n = Math.min(5000, body.length - i);
+				os.write((Integer.toHexString(n) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+				os.write(body, i, n);
+				os.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			}
+			// the next request is pipelined right after the body
+			os.write("0\r\n\r\nGET /index.html HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+
+			Response upload = read(socket.getInputStream(), false);
+			assertEquals(200, upload.status);
+			assertTrue(upload.text(), upload.text().startsWith("title=Holiday \u0161;\nphoto a;b.png 200000 " + crc.getValue()));
+			assertEquals("<html>hello</html>", read(socket.getInputStream(), false).text());
+		}
+
+		try (Socket socket = connect()) {
+			send(socket, "POST", "/echo", "Content-Length: 5", "Expect: 100-continue",
+					"Content-Type: application/x-www-form-urlencoded");
+			Response interim = read(socket.getInputStream(), true);
+			assertEquals(100, interim.status);
+			socket.getOutputStream().write("a=b%3".getBytes(StandardCharsets.ISO_8859_1));
+			assertEquals(400, read(socket.getInputStream(), false).status);
+		}
+
+		try (Socket socket = connect()) {
+			// a form has to fit in memory
+			sendBody(socket, "/echo", new byte[2000], "Content-Type: application/x-www-form-urlencoded");
+			assertEquals(413, read(socket.getInputStream(), false).status);
+
+			send(socket, "POST", "/echo", "Content-Length: 2000000");
+			Response tooLarge = read(socket.getInputStream(), false);
+			assertEquals(413, tooLarge.status);
+			assertEquals("close", tooLarge.header("Connection"));
+		}
+		try (Socket socket = connect()) {
+			send(socket, "POST", "/echo", "Transfer-Encoding: chunked");
+			socket.getOutputStream().write("zz\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			assertEquals(400, read(socket.getInputStream(), false).status);
+		}
+		try (Socket socket = connect()) {
+			// a proxy could have used the length and taken the rest for another request
+			send(socket, "POST", "/echo", "Transfer-Encoding: chunked", "Content-Length: 5");
+			socket.getOutputStream().write("0\r\n\r\nGET /index.html HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			Response smuggled = read(socket.getInputStream(), false);
+			assertEquals(400, smuggled.status);
+			assertEquals("close", smuggled.header("Connection"));
+		}
+	}
+
+	@Test
+	public void testPost() throws IOException {
+		start("server.request.maxBodySize", "1000000", "server.request.memoryThreshold", "1000");
+		checkPost();
+	}
+
+	@Test
+	public void testPostInSelectorMode() throws IOException {
+		start("server.ioMode", "selector", "server.request.maxBodySize", "1000000", "server.request.memoryThreshold",
+				"1000");
+		checkPost();
+	}
+
+	private void checkHttp10KeepAlive() throws IOException {
+		byte[] request = "GET /index.html HTTP/1.0\r\nConnection: keep-alive\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+		try (Socket socket = connect()) {
+			// length of a static file is known, so the connection stays open
+			for (int i = 0; i < 2; i++) {
+				socket.getOutputStream().write(request);
+				Response response = read(socket.getInputStream(), false);
+				assertEquals("keep-alive", response.header("Connection"));
+				assertEquals("<html>hello</html>", response.text());
+			}
+		}
+
+		String expected = get("/echo?name=value").text();
+		try (Socket socket = connect()) {
+			socket.getOutputStream().write(
+					"GET /echo?name=value HTTP/1.0\r\nConnection: keep-alive\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			Response response = read(socket.getInputStream(), false);
+			assertEquals(200, response.status);
+			assertNull(response.header("Transfer-Encoding"));
+			assertNull(response.header("Content-Length"));
+			assertEquals("close", response.header("Connection"));
+			assertEquals(expected, response.text());
+		}
+	}
+
+	@Test
+	public void testHttp10KeepAlive() throws IOException {
+		start("server.outputBufferSize", "16");
+		checkHttp10KeepAlive();
+	}
+
+	@Test
+	public void testHttp10KeepAliveInSelectorMode() throws IOException {
+		start("server.ioMode", "selector", "server.outputBufferSize", "16");
+		checkHttp10KeepAlive();
+	}
+
+	private void checkBadHeader() throws IOException {
+		try (Socket socket = connect()) {
+			// exactly the maximum size, so the server reads all of it
+			byte[] header = new byte[RequestParser.DEFAULT_MAX_HEADER_SIZE];
+			Arrays.fill(header, (byte) 'a');
+			System.arraycopy("GET /".getBytes(StandardCharsets.ISO_8859_1), 0, header, 0, 5);
+			socket.getOutputStream().write(header);
+			Response tooLarge = read(socket.getInputStream(), false);
+			assertEquals(400, tooLarge.status);
+			assertEquals("close", tooLarge.header("Connection"));
+		}
+		try (Socket socket = connect()) {
+			socket.getOutputStream().write("GET /index.html HTTP/1.1\r\nHost: localhost\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			socket.shutdownOutput();
+			Response incomplete = read(socket.getInputStream(), false);
+			assertEquals(400, incomplete.status);
+			assertEquals("close", incomplete.header("Connection"));
+		}
+	}
+
+	@Test
+	public void testBadHeader() throws IOException {
+		start();
+		checkBadHeader();
+	}
+
+	@Test
+	public void testBadHeaderInSelectorMode() throws IOException {
+		start("server.ioMode", "selector");
+		checkBadHeader();
+	}
+
+	@Test
+	public void testIdleConnectionGivesUpThread() throws IOException {
+		start("server.workerThreads", "1", "server.keepAliveTimeout", "5");
+		try (Socket idle = connect()) {
+			send(idle, "GET", "/index.html");
+			Response first = read(idle.getInputStream(), false);
+			assertEquals("keep-alive", first.header("Connection"));
+
+			// the only worker thread is held by the idle connection
+			long start = System.nanoTime();
+			Response second = get("/index.html");
+			long millis = (System.nanoTime() - start) / 1_000_000;
+			assertEquals(200, second.status);
+			assertTrue("Waited " + millis + " ms", millis < 2000);
+			assertEquals(-1, idle.getInputStream().read());
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class SpooledDataTest {
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1000];
+		int n;
+		while ((n = is.read(buffer)) > 0) {
+			bos.write(buffer, 0, n);
+		}
+		is.close();
+		return bos.toByteArray();
+	}
+
+	private static byte[] content(int length) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) (i * 13);
+		}
+		return content;
+	}
+
+	@Test
+	public void testSmallDataStaysInMemory() throws IOException {
+		byte[] content = content(1000);
+		SpooledData data = new SpooledData(1000);
+		data.write(content, 0, 600);
+		data.write(content, 600, 400);
+		assertTrue(data.isInMemory());
+		assertEquals(1000, data.getLength());
+		assertArrayEquals(content, readAll(data.getInputStream()));
+		assertArrayEquals(content, data.toByteArray());
+	}
+
+	@Test
+	public void testLargeDataMovesToFile() throws IOException {
+		byte[] content = content(100_000);
+		SpooledData data = new SpooledData(1000);
+		data.write(content[0]);
+		for (int i = 1; i < content.length; i += 777) {
+			data.write(content, i, Math.min(777, content.length - i));
+		}
+		assertFalse(data.isInMemory());
+		assertEquals(content.length, data.getLength());
+		assertArrayEquals(content, readAll(data.getInputStream()));
+		assertArrayEquals(content, readAll(data.getInputStream()));
+		data.delete();
+		assertEquals(0, data.getLength());
+	}
+
+	@Test
+	public void testZeroThreshold() throws IOException {
+		SpooledData data = new SpooledData(0);
+		data.write(content(1), 0, 1);
+		assertFalse(data.isInMemory());
+		data.delete();
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterClose() throws IOException {
+		SpooledData data = new SpooledData(0);
+		data.write(1);
+		data.close();
+		try {
+			data.write(2);
+		} finally {
+			data.delete();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeThreshold() {
+		new SpooledData(-1);
+	}
+}
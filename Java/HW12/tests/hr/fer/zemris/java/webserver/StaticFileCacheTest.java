@@ -0,0 +1,143 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class StaticFileCacheTest {
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("cache");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	private Path file(String name, int size, int value) throws IOException {
+		byte[] data = new byte[size];
+		Arrays.fill(data, (byte) value);
+		return Files.write(dir.resolve(name), data);
+	}
+
+	@Test
+	public void testCacheable() {
+		StaticFileCache cache = new StaticFileCache(1000, 100);
+		assertTrue(cache.isCacheable(100));
+		assertFalse(cache.isCacheable(101));
+		// a single file can't be larger than the whole cache
+		assertFalse(new StaticFileCache(50, 100).isCacheable(51));
+	}
+
+	@Test
+	public void testContentIsCached() throws IOException {
+		StaticFileCache cache = new StaticFileCache(1000, 100);
+		Path path = file("a.txt", 10, 1);
+		byte[] first = cache.get(path, 1);
+		assertEquals(10, cache.getSize());
+
+		// unchanged modification time; the file is not read again
+		file("a.txt", 10, 2);
+		assertSame(first, cache.get(path, 1));
+	}
+
+	@Test
+	public void testModifiedFileIsReadAgain() throws IOException {
+		StaticFileCache cache = new StaticFileCache(1000, 100);
+		Path path = file("a.txt", 10, 1);
+		cache.get(path, 1);
+
+		file("a.txt", 20, 2);
+		byte[] data = cache.get(path, 2);
+		assertEquals(20, data.length);
+		assertEquals(2, data[0]);
+		assertEquals(20, cache.getSize());
+	}
+
+	@Test
+	public void testLargeFileIsNotCached() throws IOException {
+		StaticFileCache cache = new StaticFileCache(1000, 100);
+		assertNull(cache.get(file("large.bin", 101, 1), 1));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws IOException {
+		StaticFileCache cache = new StaticFileCache(250, 100);
+		Path a = file("a.txt", 100, 1);
+		Path b = file("b.txt", 100, 1);
+		Path c = file("c.txt", 100, 1);
+		byte[] cachedA = cache.get(a, 1);
+		byte[] cachedB = cache.get(b, 1);
+		assertSame(cachedA, cache.get(a, 1));
+		byte[] cachedC = cache.get(c, 1);
+		assertEquals(200, cache.getSize());
+
+		// b was used least recently, so it was evicted and is read again
+		file("b.txt", 100, 2);
+		byte[] newB = cache.get(b, 1);
+		assertEquals(2, newB[0]);
+		assertTrue(cachedB != newB);
+		// now a is the least recently used one
+		assertSame(cachedC, cache.get(c, 1));
+		file("a.txt", 100, 2);
+		assertEquals(2, cache.get(a, 1)[0]);
+	}
+
+	@Test
+	public void testCompressedVariants() throws IOException {
+		StaticFileCache cache = new StaticFileCache(10_000, 1000);
+		Path path = file("a.txt", 1000, 'a');
+		byte[] gzip = cache.getCompressed(path, 1, Compression.GZIP);
+		assertSame(gzip, cache.getCompressed(path, 1, Compression.GZIP));
+		byte[] deflate = cache.getCompressed(path, 1, Compression.DEFLATE);
+		assertEquals(gzip.length + deflate.length, cache.getSize());
+
+		byte[] data = cache.get(path, 1);
+		assertEquals(gzip.length + deflate.length + data.length, cache.getSize());
+		assertArrayEquals(data, CompressionTest.decompress(gzip, Compression.GZIP));
+
+		// variants are dropped together with the modified content
+		file("a.txt", 500, 'b');
+		byte[] newGzip = cache.getCompressed(path, 2, Compression.GZIP);
+		assertEquals(500, CompressionTest.decompress(newGzip, Compression.GZIP).length);
+		assertEquals(newGzip.length, cache.getSize());
+	}
+
+	@Test
+	public void testVariantOfLargeFileIsCached() throws IOException {
+		StaticFileCache cache = new StaticFileCache(100_000, 100, 10_000);
+		Path path = file("large.txt", 10_000, 'a');
+		assertNull(cache.get(path, 1));
+		byte[] gzip = cache.getCompressed(path, 1, Compression.GZIP);
+		assertSame(gzip, cache.getCompressed(path, 1, Compression.GZIP));
+		assertEquals(gzip.length, cache.getSize());
+
+		// variants of files larger than the variant limit are not cached
+		Path larger = file("larger.txt", 10_001, 'a');
+		byte[] compressed = cache.getCompressed(larger, 1, Compression.GZIP);
+		assertTrue(compressed != cache.getCompressed(larger, 1, Compression.GZIP));
+		assertEquals(gzip.length, cache.getSize());
+	}
+}
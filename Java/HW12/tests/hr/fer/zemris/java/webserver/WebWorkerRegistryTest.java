@@ -0,0 +1,66 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.workers.HelloWorker;
+
+@SuppressWarnings("javadoc")
+public class WebWorkerRegistryTest {
+
+	@Prototype
+	public static class PrototypeWorker implements IWebWorker {
+
+		@Override
+		public void processRequest(RequestContext context) {
+		}
+	}
+
+	public static abstract class AbstractWorker implements IWebWorker {
+	}
+
+	@Test
+	public void testSingleton() {
+		WebWorkerRegistry registry = new WebWorkerRegistry("hr.fer.zemris.java.webserver.workers");
+		IWebWorker worker = registry.getWorker("HelloWorker");
+		assertTrue(worker instanceof HelloWorker);
+		assertSame(worker, registry.getWorker("HelloWorker"));
+		assertSame(worker, registry.getFactory("hr.fer.zemris.java.webserver.workers.HelloWorker").get());
+	}
+
+	@Test
+	public void testPrototype() {
+		WebWorkerRegistry registry = new WebWorkerRegistry("hr.fer.zemris.java.webserver");
+		IWebWorker worker = registry.getWorker("WebWorkerRegistryTest$PrototypeWorker");
+		assertTrue(worker instanceof PrototypeWorker);
+		assertNotSame(worker, registry.getWorker("WebWorkerRegistryTest$PrototypeWorker"));
+	}
+
+	@Test
+	public void testUnknownWorker() {
+		WebWorkerRegistry registry = new WebWorkerRegistry("hr.fer.zemris.java.webserver.workers");
+		assertNull(registry.getWorker("NoSuchWorker"));
+		assertNull(registry.getWorker(""));
+		assertNull(registry.getWorker("../HelloWorker"));
+		assertNull(registry.getWorker("sub.HelloWorker"));
+	}
+
+	@Test
+	public void testNotAWorker() {
+		WebWorkerRegistry registry = new WebWorkerRegistry("hr.fer.zemris.java.webserver");
+		assertNull(registry.getWorker("RequestContext"));
+		assertNull(registry.getWorker("IWebWorker"));
+		assertNull(registry.getWorker("WebWorkerRegistryTest$AbstractWorker"));
+		assertNotNull(registry.getWorker("WebWorkerRegistryTest$PrototypeWorker"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidFactory() {
+		new WebWorkerRegistry("hr.fer.zemris.java.webserver.workers").getFactory("java.lang.String");
+	}
+}